@@ -0,0 +1,94 @@
+package org.pojomatic.benchmark;
+
+import java.io.PrintWriter;
+
+import org.pojomatic.internal.SelfPopulatingMap;
+
+import com.google.caliper.BeforeExperiment;
+import com.google.caliper.Benchmark;
+import com.google.caliper.Param;
+import com.google.caliper.runner.CaliperMain;
+
+/**
+ * Compares the steady-state cost of looking up a per-class value in a {@link SelfPopulatingMap}, which is how
+ * Pojomators used to be cached, and in a {@link ClassValue}, which is how they are cached now.
+ */
+public class ClassLookup {
+  public static void main(String[] args) throws Exception {
+    String[] fullArgs = new String[args.length + 1];
+    fullArgs[0] = ClassLookup.class.getName();
+    System.arraycopy(args, 0, fullArgs, 1, args.length);
+    CaliperMain.exitlessMain(
+      fullArgs,
+      new PrintWriter(System.out, true),
+      new PrintWriter(System.err, true));
+  }
+
+  private static final Class<?>[] CLASSES = {
+    String.class, Integer.class, Long.class, Double.class, Object.class, ClassLookup.class, Class.class,
+    StringBuilder.class
+  };
+
+  @Param({ "SELF_POPULATING_MAP", "CLASS_VALUE" })
+  private Cache cache;
+
+  /**
+   * How many distinct classes are looked up in turn; a single class makes every lookup site monomorphic.
+   */
+  @Param({ "1", "8" })
+  private int classCount;
+
+  private Class<?>[] classes;
+
+  @BeforeExperiment
+  public void setUp() {
+    classes = new Class<?>[classCount];
+    System.arraycopy(CLASSES, 0, classes, 0, classCount);
+    for (Class<?> clazz: classes) {
+      cache.lookup(clazz);
+    }
+  }
+
+  @Benchmark
+  public int lookup(int reps) {
+    int dummy = 0;
+    for (int rep = 0, i = 0; rep < reps; rep++) {
+      dummy += cache.lookup(classes[i]).length();
+      if (++i == classes.length) {
+        i = 0;
+      }
+    }
+    return dummy;
+  }
+
+  public static enum Cache {
+    SELF_POPULATING_MAP {
+      private final SelfPopulatingMap<Class<?>, String> map = new SelfPopulatingMap<Class<?>, String>() {
+        @Override
+        protected String create(Class<?> key) {
+          return key.getName();
+        }
+      };
+
+      @Override
+      public String lookup(Class<?> clazz) {
+        return map.get(clazz);
+      }
+    },
+    CLASS_VALUE {
+      private final ClassValue<String> classValue = new ClassValue<String>() {
+        @Override
+        protected String computeValue(Class<?> type) {
+          return type.getName();
+        }
+      };
+
+      @Override
+      public String lookup(Class<?> clazz) {
+        return classValue.get(clazz);
+      }
+    };
+
+    public abstract String lookup(Class<?> clazz);
+  }
+}
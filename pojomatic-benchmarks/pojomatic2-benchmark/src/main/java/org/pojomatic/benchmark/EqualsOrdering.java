@@ -0,0 +1,141 @@
+package org.pojomatic.benchmark;
+
+import java.io.PrintWriter;
+import java.util.Arrays;
+
+import org.pojomatic.Pojomatic;
+import org.pojomatic.Pojomator;
+import org.pojomatic.annotations.AutoProperty;
+import org.pojomatic.annotations.EqualsOrder;
+import org.pojomatic.annotations.EqualsOrderPolicy;
+
+import com.google.caliper.BeforeExperiment;
+import com.google.caliper.Benchmark;
+import com.google.caliper.Param;
+import com.google.caliper.runner.CaliperMain;
+
+/**
+ * Compare the cost of {@code doEquals} on pairs which differ only in a cheap property declared after expensive ones,
+ * with properties compared in declared order, in cost order, and in adaptive order.
+ */
+public class EqualsOrdering {
+  public static void main(String[] args) throws Exception {
+    String[] fullArgs = new String[args.length + 1];
+    fullArgs[0] = EqualsOrdering.class.getName();
+    System.arraycopy(args, 0, fullArgs, 1, args.length);
+    CaliperMain.exitlessMain(
+      fullArgs,
+      new PrintWriter(System.out, true),
+      new PrintWriter(System.err, true));
+  }
+
+  public interface Event {
+    void init(String source, long[] payload, int sequenceId);
+  }
+
+  @AutoProperty
+  public static class DeclaredOrderEvent implements Event {
+    String source;
+    long[] payload;
+    int sequenceId;
+
+    @Override
+    public void init(String source, long[] payload, int sequenceId) {
+      this.source = source;
+      this.payload = payload;
+      this.sequenceId = sequenceId;
+    }
+  }
+
+  @AutoProperty
+  @EqualsOrder(EqualsOrderPolicy.COST)
+  public static class CostOrderEvent implements Event {
+    String source;
+    long[] payload;
+    int sequenceId;
+
+    @Override
+    public void init(String source, long[] payload, int sequenceId) {
+      this.source = source;
+      this.payload = payload;
+      this.sequenceId = sequenceId;
+    }
+  }
+
+  @AutoProperty
+  @EqualsOrder(EqualsOrderPolicy.ADAPTIVE)
+  public static class AdaptiveOrderEvent implements Event {
+    String source;
+    long[] payload;
+    int sequenceId;
+
+    @Override
+    public void init(String source, long[] payload, int sequenceId) {
+      this.source = source;
+      this.payload = payload;
+      this.sequenceId = sequenceId;
+    }
+  }
+
+  private static final String SOURCE_PREFIX = "com.example.ingest.partition-0042.consumer-";
+
+  private Event[] events;
+
+  @Param({ "DECLARED", "COST", "ADAPTIVE" })
+  private Order order;
+
+  @BeforeExperiment
+  public void setUp() {
+    events = makeEvents(800);
+  }
+
+  /**
+   * Compare adjacent events, which are unequal, but agree on all but their sequence ids.
+   */
+  @Benchmark
+  public int unequalPairs(int reps) {
+    int dummy = 0, i = 0;
+    for (int rep = 0; rep < reps; rep++) {
+      if (order.pojomator.doEquals(events[i], events[i + 1])) {
+        dummy++;
+      }
+      if (++i == events.length - 1) {
+        i = 0;
+      }
+    }
+    return dummy;
+  }
+
+  private Event[] makeEvents(int count) {
+    Event[] events = new Event[count];
+    long[] payload = new long[32];
+    Arrays.fill(payload, 17);
+    for (int i = 0; i < count; i++) {
+      events[i] = order.makeEvent();
+      // distinct but equal instances, so that neither reference equality nor string interning short cuts comparisons
+      events[i].init(new String(SOURCE_PREFIX + "7"), payload.clone(), i);
+    }
+    return events;
+  }
+
+  public static enum Order {
+    DECLARED(DeclaredOrderEvent.class), COST(CostOrderEvent.class), ADAPTIVE(AdaptiveOrderEvent.class);
+
+    @SuppressWarnings("unchecked")
+    private Order(Class<? extends Event> eventClass) {
+      this.pojomator = (Pojomator<Event>) Pojomatic.pojomator(eventClass);
+      this.eventClass = eventClass;
+    }
+
+    private final Pojomator<Event> pojomator;
+    private final Class<? extends Event> eventClass;
+
+    public Event makeEvent() {
+      try {
+        return eventClass.newInstance();
+      } catch (InstantiationException | IllegalAccessException e) {
+        throw new RuntimeException(e);
+      }
+    }
+  }
+}
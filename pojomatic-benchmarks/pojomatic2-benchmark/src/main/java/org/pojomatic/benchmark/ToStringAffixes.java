@@ -0,0 +1,84 @@
+package org.pojomatic.benchmark;
+
+import java.io.PrintWriter;
+
+import org.pojomatic.Pojomatic;
+import org.pojomatic.Pojomator;
+import org.pojomatic.PropertyElement;
+import org.pojomatic.annotations.AutoProperty;
+import org.pojomatic.annotations.PojoFormat;
+import org.pojomatic.formatter.DefaultEnhancedPojoFormatter;
+
+import com.google.caliper.Benchmark;
+import com.google.caliper.Param;
+import com.google.caliper.runner.CaliperMain;
+
+/**
+ * Compare the cost of {@code doToString} with the default pojo formatter, whose property prefixes and suffixes are
+ * appended as constants by the generated code, and with a subclass producing the same output, whose prefixes and
+ * suffixes are appended by calls to the formatter.
+ */
+public class ToStringAffixes {
+  public static void main(String[] args) throws Exception {
+    String[] fullArgs = new String[args.length + 1];
+    fullArgs[0] = ToStringAffixes.class.getName();
+    System.arraycopy(args, 0, fullArgs, 1, args.length);
+    CaliperMain.exitlessMain(
+      fullArgs,
+      new PrintWriter(System.out, true),
+      new PrintWriter(System.err, true));
+  }
+
+  /**
+   * Produces the same output as {@link DefaultEnhancedPojoFormatter}, but prevents prefixes and suffixes from being
+   * appended as constants.
+   */
+  public static class CallingFormatter extends DefaultEnhancedPojoFormatter {
+    @Override
+    public void appendPropertyPrefix(StringBuilder builder, PropertyElement property, int propertyIndex) {
+      super.appendPropertyPrefix(builder, property, propertyIndex);
+    }
+  }
+
+  public interface Point {}
+
+  @AutoProperty
+  public static class FoldedPoint implements Point {
+    int x = 1, y = 2, z = 3, w = 4;
+    String label = "origin";
+    long timestamp = 1500000000000L;
+  }
+
+  @AutoProperty
+  @PojoFormat(CallingFormatter.class)
+  public static class CallingPoint implements Point {
+    int x = 1, y = 2, z = 3, w = 4;
+    String label = "origin";
+    long timestamp = 1500000000000L;
+  }
+
+  @Param
+  private Affixes affixes;
+
+  @Benchmark
+  public int toStringLength(int reps) {
+    int dummy = 0;
+    for (int rep = 0; rep < reps; rep++) {
+      dummy += affixes.pojomator.doToString(affixes.point).length();
+    }
+    return dummy;
+  }
+
+  public static enum Affixes {
+    FOLDED(new FoldedPoint()), CALLED(new CallingPoint());
+
+    @SuppressWarnings("unchecked")
+    private Affixes(Point point) {
+      this.point = point;
+      this.pojomator = (Pojomator<Point>) Pojomatic.pojomator(point.getClass());
+    }
+
+    private final Point point;
+    private final Pojomator<Point> pojomator;
+  }
+}
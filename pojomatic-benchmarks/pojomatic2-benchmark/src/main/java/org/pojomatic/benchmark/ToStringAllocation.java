@@ -0,0 +1,102 @@
+package org.pojomatic.benchmark;
+
+import java.io.PrintWriter;
+
+import org.pojomatic.Pojomatic;
+import org.pojomatic.Pojomator;
+import org.pojomatic.annotations.AutoProperty;
+
+import com.google.caliper.BeforeExperiment;
+import com.google.caliper.Benchmark;
+import com.google.caliper.Param;
+import com.google.caliper.runner.CaliperMain;
+
+/**
+ * Compare the cost of {@code toString} for a pojo with many properties when building into a default sized
+ * {@code StringBuilder}, as {@code doToString} used to, and into one sized from the lengths of earlier
+ * representations, as {@code doToString} now does. Run with {@code -i allocation} (which requires the
+ * java-allocation-instrumenter agent) to compare bytes allocated per call, as well as with the default runtime
+ * instrument.
+ */
+public class ToStringAllocation {
+  public static void main(String[] args) throws Exception {
+    String[] fullArgs = new String[args.length + 1];
+    fullArgs[0] = ToStringAllocation.class.getName();
+    System.arraycopy(args, 0, fullArgs, 1, args.length);
+    CaliperMain.exitlessMain(
+      fullArgs,
+      new PrintWriter(System.out, true),
+      new PrintWriter(System.err, true));
+  }
+
+  @AutoProperty
+  public static class Order {
+    long orderId = 1234567890123L;
+    String customerName = "Ada Lovelace";
+    String street = "12 Analytical Engine Way";
+    String city = "London";
+    String postalCode = "EC1A 1BB";
+    String country = "United Kingdom";
+    int quantity = 3;
+    double unitPrice = 19.99;
+    String currency = "GBP";
+    boolean giftWrapped = true;
+    String sku = "ENG-0001-DIFF";
+    String warehouse = "north-east-2";
+    long createdMillis = 1500000000000L;
+    long updatedMillis = 1500000360000L;
+    String status = "SHIPPED";
+    String carrier = "Royal Mail";
+    String trackingNumber = "RM123456789GB";
+    int priority = 2;
+    String notes = "Leave with neighbour if not at home";
+    String channel = "web";
+  }
+
+  private final Pojomator<Order> pojomator = Pojomatic.pojomator(Order.class);
+
+  private Order order;
+
+  @Param
+  private Sizing sizing;
+
+  @BeforeExperiment
+  public void setUp() {
+    order = new Order();
+  }
+
+  @Benchmark
+  public int toStringLength(int reps) {
+    int dummy = 0;
+    for (int rep = 0; rep < reps; rep++) {
+      dummy += sizing.toString(pojomator, order).length();
+    }
+    return dummy;
+  }
+
+  public static enum Sizing {
+    /**
+     * Build into a {@code StringBuilder} of the default capacity, which is grown repeatedly.
+     */
+    DEFAULT {
+      @Override
+      String toString(Pojomator<Order> pojomator, Order order) {
+        StringBuilder builder = new StringBuilder();
+        pojomator.appendTo(order, builder);
+        return builder.toString();
+      }
+    },
+
+    /**
+     * Use {@code doToString}, which sizes its builder from the lengths of earlier representations.
+     */
+    LEARNED {
+      @Override
+      String toString(Pojomator<Order> pojomator, Order order) {
+        return pojomator.doToString(order);
+      }
+    };
+
+    abstract String toString(Pojomator<Order> pojomator, Order order);
+  }
+}
@@ -0,0 +1,160 @@
+package org.pojomatic.processor;
+
+import java.io.BufferedReader;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+import org.pojomatic.annotations.AutoProperty;
+import org.pojomatic.annotations.Property;
+
+/**
+ * An annotation processor which records the binary name of every class compiled alongside it which uses Pojomatic -
+ * that is, every class or interface which is annotated with {@link AutoProperty @AutoProperty}, declares a member
+ * annotated with {@link Property @Property}, or extends such a class. The names are written, one per line, to the
+ * class output resource {@value #INDEX_RESOURCE}, where {@link PojomatorPregenerator} will find them.
+ * <p>
+ * Pojomators cannot be generated by the processor itself, since they are generated from compiled classes; this
+ * processor merely saves {@code PojomatorPregenerator} from having to scan every class produced by the build.
+ */
+@SupportedAnnotationTypes("*")
+public class PojomaticProcessor extends AbstractProcessor {
+  /**
+   * The class output resource which lists the classes using Pojomatic.
+   */
+  public static final String INDEX_RESOURCE = "META-INF/pojomatic/pojo-classes";
+
+  private final Set<String> pojoClassNames = new TreeSet<>();
+
+  @Override
+  public SourceVersion getSupportedSourceVersion() {
+    return SourceVersion.latestSupported();
+  }
+
+  @Override
+  public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+    if (roundEnv.processingOver()) {
+      writeIndex();
+    }
+    else {
+      for (TypeElement type: ElementFilter.typesIn(roundEnv.getRootElements())) {
+        visitType(type);
+      }
+    }
+    // we are only observing; other processors may claim the annotations
+    return false;
+  }
+
+  private void visitType(TypeElement type) {
+    if (usesPojomatic(type)) {
+      pojoClassNames.add(processingEnv.getElementUtils().getBinaryName(type).toString());
+    }
+    for (TypeElement nestedType: ElementFilter.typesIn(type.getEnclosedElements())) {
+      visitType(nestedType);
+    }
+  }
+
+  /**
+   * Determine whether Pojomatic can create a Pojomator for {@code type}.
+   * @param type the type to check
+   * @return {@code true} if {@code type}, or one of its superclasses, has Pojomatic properties.
+   */
+  private static boolean usesPojomatic(TypeElement type) {
+    if (type.getKind() == ElementKind.ANNOTATION_TYPE || type.getKind() == ElementKind.ENUM) {
+      return false;
+    }
+    for (TypeElement clazz = type; clazz != null; clazz = superclass(clazz)) {
+      if (declaresPojomaticProperties(clazz)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean declaresPojomaticProperties(TypeElement type) {
+    if (type.getAnnotation(AutoProperty.class) != null) {
+      return true;
+    }
+    for (Element member: type.getEnclosedElements()) {
+      if ((member.getKind() == ElementKind.FIELD || member.getKind() == ElementKind.METHOD)
+        && member.getAnnotation(Property.class) != null) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static TypeElement superclass(TypeElement type) {
+    TypeMirror superclass = type.getSuperclass();
+    return superclass.getKind() == TypeKind.DECLARED
+      ? (TypeElement) ((DeclaredType) superclass).asElement()
+      : null;
+  }
+
+  /**
+   * Write out the index, preserving the entries of any index left behind by a previous (incremental) compilation.
+   * Entries for classes which no longer exist are harmless; {@link PojomatorPregenerator} skips them.
+   */
+  private void writeIndex() {
+    if (pojoClassNames.isEmpty()) {
+      return;
+    }
+    try {
+      readExistingIndex();
+      FileObject index = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", INDEX_RESOURCE);
+      try (Writer writer = new OutputStreamWriter(index.openOutputStream(), StandardCharsets.UTF_8)) {
+        for (String pojoClassName: pojoClassNames) {
+          writer.write(pojoClassName);
+          writer.write('\n');
+        }
+      }
+    }
+    catch (IOException e) {
+      processingEnv.getMessager().printMessage(
+        Diagnostic.Kind.ERROR, "Unable to write " + INDEX_RESOURCE + ": " + e);
+    }
+  }
+
+  private void readExistingIndex() throws IOException {
+    FileObject existingIndex;
+    try {
+      existingIndex = processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT, "", INDEX_RESOURCE);
+    }
+    catch (IOException | IllegalArgumentException e) {
+      return;
+    }
+    try (BufferedReader reader = new BufferedReader(
+      new InputStreamReader(existingIndex.openInputStream(), StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (!line.trim().isEmpty()) {
+          pojoClassNames.add(line.trim());
+        }
+      }
+    }
+    catch (FileNotFoundException | NoSuchFileException e) {
+      // no previous index
+    }
+  }
+}
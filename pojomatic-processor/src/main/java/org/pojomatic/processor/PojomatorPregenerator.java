@@ -0,0 +1,96 @@
+package org.pojomatic.processor;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+
+import org.pojomatic.NoPojomaticPropertiesException;
+import org.pojomatic.internal.PojomatorFactory;
+
+/**
+ * Generates Pojomator classes ahead of time for the classes listed in the index written by
+ * {@link PojomaticProcessor}. Each Pojomator class is written into the classes directory next to the class it was
+ * generated for; at runtime, {@link org.pojomatic.Pojomatic#pojomator(Class)} will find and use it instead of
+ * generating byte code.
+ * <p>
+ * This is intended to be run after compilation, for example in the {@code process-classes} phase with the
+ * {@code exec-maven-plugin}, passing the classes directory as the sole argument. The classes being processed, along
+ * with their dependencies, must be on the classpath of the generator.
+ */
+public final class PojomatorPregenerator {
+  private PojomatorPregenerator() {}
+
+  public static void main(String[] args) throws IOException {
+    if (args.length != 1) {
+      System.err.println("usage: " + PojomatorPregenerator.class.getName() + " <classes directory>");
+      System.exit(1);
+    }
+    int count = pregenerate(new File(args[0]), Thread.currentThread().getContextClassLoader(), System.err);
+    System.out.println("Generated " + count + " pojomator class(es) in " + args[0]);
+  }
+
+  /**
+   * Generate Pojomator classes for all classes listed in the index in {@code classesDirectory}.
+   * @param classesDirectory the directory holding compiled classes, and the index written by
+   * {@link PojomaticProcessor}
+   * @param parent the class loader to use for loading dependencies of the classes in {@code classesDirectory}
+   * @param log where to report classes which were skipped
+   * @return the number of Pojomator classes generated
+   * @throws IOException if the index could not be read, or a class could not be written
+   */
+  public static int pregenerate(File classesDirectory, ClassLoader parent, PrintStream log) throws IOException {
+    File index = new File(classesDirectory, PojomaticProcessor.INDEX_RESOURCE);
+    if (!index.isFile()) {
+      return 0;
+    }
+    int count = 0;
+    try (URLClassLoader classLoader = new URLClassLoader(new URL[] { classesDirectory.toURI().toURL() }, parent);
+      BufferedReader reader = new BufferedReader(
+        new InputStreamReader(new FileInputStream(index), StandardCharsets.UTF_8))) {
+      String pojoClassName;
+      while ((pojoClassName = reader.readLine()) != null) {
+        pojoClassName = pojoClassName.trim();
+        if (pojoClassName.isEmpty()) {
+          continue;
+        }
+        Class<?> pojoClass;
+        try {
+          pojoClass = Class.forName(pojoClassName, false, classLoader);
+        }
+        catch (ClassNotFoundException | LinkageError e) {
+          log.println("Skipping " + pojoClassName + ": unable to load class (" + e + ")");
+          continue;
+        }
+        byte[] pojomatorBytes;
+        try {
+          pojomatorBytes = PojomatorFactory.pregeneratePojomatorClassBytes(pojoClass);
+        }
+        catch (NoPojomaticPropertiesException e) {
+          continue;
+        }
+        catch (RuntimeException e) {
+          log.println("Skipping " + pojoClassName + ": " + e);
+          continue;
+        }
+        writeClass(classesDirectory, PojomatorFactory.pregeneratedPojomatorClassName(pojoClass), pojomatorBytes);
+        count++;
+      }
+    }
+    return count;
+  }
+
+  private static void writeClass(File classesDirectory, String className, byte[] classBytes) throws IOException {
+    File classFile = new File(classesDirectory, className.replace('.', File.separatorChar) + ".class");
+    try (OutputStream out = new FileOutputStream(classFile)) {
+      out.write(classBytes);
+    }
+  }
+}
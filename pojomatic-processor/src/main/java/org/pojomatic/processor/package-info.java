@@ -0,0 +1,6 @@
+/**
+ * Build-time generation of Pojomators. {@link org.pojomatic.processor.PojomaticProcessor} is registered as an
+ * annotation processor, and so runs automatically whenever this library is on the compiler's classpath;
+ * {@link org.pojomatic.processor.PojomatorPregenerator} is then run over the compiled classes.
+ */
+package org.pojomatic.processor;
@@ -0,0 +1,119 @@
+package org.pojomatic.processor;
+
+import static org.testng.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+
+import org.pojomatic.Pojomatic;
+import org.pojomatic.Pojomator;
+import org.pojomatic.annotations.AutoProperty;
+import org.pojomatic.internal.PojomatorFactory;
+import org.testng.annotations.Test;
+
+public class PojomaticProcessorTest {
+  private static final String SOURCE =
+    "package example;\n"
+    + "import org.pojomatic.annotations.*;\n"
+    + "public class Outer {\n"
+    + "  @AutoProperty public static class Auto { int x = 3; }\n"
+    + "  public static class Explicit { @Property String name = \"bob\"; }\n"
+    + "  public static class Child extends Explicit { }\n"
+    + "  public static class Plain { int y; }\n"
+    + "  @AutoProperty public enum Color { RED }\n"
+    + "}\n";
+
+  private static class StringSource extends SimpleJavaFileObject {
+    private final String source;
+
+    StringSource(String className, String source) {
+      super(URI.create("string:///" + className.replace('.', '/') + Kind.SOURCE.extension), Kind.SOURCE);
+      this.source = source;
+    }
+
+    @Override
+    public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+      return source;
+    }
+  }
+
+  private static File compile(String className, String source) throws IOException, URISyntaxException {
+    File classesDirectory = Files.createTempDirectory("pojomatic-processor").toFile();
+    JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, null)) {
+      fileManager.setLocation(StandardLocation.CLASS_OUTPUT, Collections.singleton(classesDirectory));
+      fileManager.setLocation(
+        StandardLocation.CLASS_PATH, Collections.singleton(new File(codeSource(AutoProperty.class))));
+      JavaCompiler.CompilationTask task = compiler.getTask(
+        null, fileManager, null, Arrays.asList("-source", "1.7", "-target", "1.7", "-nowarn"), null,
+        Collections.<JavaFileObject>singleton(new StringSource(className, source)));
+      task.setProcessors(Collections.singleton(new PojomaticProcessor()));
+      assertTrue(task.call());
+    }
+    return classesDirectory;
+  }
+
+  private static URI codeSource(Class<?> clazz) throws URISyntaxException {
+    return clazz.getProtectionDomain().getCodeSource().getLocation().toURI();
+  }
+
+  @Test
+  public void testIndex() throws Exception {
+    File classesDirectory = compile("example.Outer", SOURCE);
+    List<String> index = Files.readAllLines(
+      new File(classesDirectory, PojomaticProcessor.INDEX_RESOURCE).toPath(), StandardCharsets.UTF_8);
+    assertEquals(index, Arrays.asList("example.Outer$Auto", "example.Outer$Child", "example.Outer$Explicit"));
+  }
+
+  @Test
+  public void testNoIndexWithoutPojos() throws Exception {
+    File classesDirectory = compile("example.Plain", "package example; public class Plain { int x; }");
+    assertFalse(new File(classesDirectory, PojomaticProcessor.INDEX_RESOURCE).exists());
+  }
+
+  @Test
+  public void testPregenerate() throws Exception {
+    File classesDirectory = compile("example.Outer", SOURCE);
+    ByteArrayOutputStream log = new ByteArrayOutputStream();
+    assertEquals(
+      PojomatorPregenerator.pregenerate(classesDirectory, getClass().getClassLoader(), new PrintStream(log)), 3);
+    assertEquals(log.toString(), "");
+
+    try (URLClassLoader classLoader = new URLClassLoader(
+      new URL[] { classesDirectory.toURI().toURL() }, getClass().getClassLoader())) {
+      for (String pojoClassName: Arrays.asList("example.Outer$Auto", "example.Outer$Child")) {
+        Class<?> pojoClass = classLoader.loadClass(pojoClassName);
+        Pojomator<?> pojomator = Pojomatic.pojomator(pojoClass);
+        assertEquals(pojomator.getClass().getName(), PojomatorFactory.pregeneratedPojomatorClassName(pojoClass));
+      }
+      Class<?> autoClass = classLoader.loadClass("example.Outer$Auto");
+      assertEquals(Pojomatic.toString(autoClass.newInstance()), "Auto{x: {3}}");
+      Class<?> childClass = classLoader.loadClass("example.Outer$Child");
+      assertTrue(Pojomatic.equals(childClass.newInstance(), childClass.newInstance()));
+    }
+  }
+
+  @Test
+  public void testPregenerateWithoutIndex() throws Exception {
+    File classesDirectory = Files.createTempDirectory("pojomatic-processor").toFile();
+    assertEquals(PojomatorPregenerator.pregenerate(classesDirectory, getClass().getClassLoader(), System.err), 0);
+  }
+}
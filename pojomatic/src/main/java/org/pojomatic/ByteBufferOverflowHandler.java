@@ -0,0 +1,24 @@
+package org.pojomatic;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A handler for a {@code ByteBuffer} filling up while
+ * {@link Pojomator#writeUtf8(Object, ByteBuffer, ByteBufferOverflowHandler)} writes to it.
+ * <p>
+ * A handler can either provide a larger buffer holding the bytes written so far (growing), or consume the bytes
+ * written so far and hand back a buffer with free space, typically the same buffer after it has been drained to a
+ * channel and cleared (resuming). Writing continues at the position of the returned buffer.
+ * </p>
+ *
+ * @since 2.1
+ */
+public interface ByteBufferOverflowHandler {
+  /**
+   * Provide a buffer to continue writing into.
+   * @param buffer the full buffer; its position is at its limit
+   * @param bytesNeeded the number of bytes which remain to be written
+   * @return the buffer to continue writing into, which must have at least one byte remaining
+   */
+  ByteBuffer onOverflow(ByteBuffer buffer, int bytesNeeded);
+}
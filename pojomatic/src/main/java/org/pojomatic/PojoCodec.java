@@ -0,0 +1,62 @@
+package org.pojomatic;
+
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * A compact binary encoding of the properties of a POJO class which are used for equals, obtained from
+ * {@link Pojomatic#codec(Class)}. Reading back what was written produces an instance which is equal, according to
+ * {@link Pojomator#doEquals(Object, Object)}, to the one written.
+ * <p>
+ * Each record starts with a four-byte {@link #schemaHash() schema hash}, computed from the names and types of the
+ * properties, followed by the property values in the order of {@link Pojomator#getEqualsProperties()}:
+ * </p>
+ * <ul>
+ *   <li>primitive values in their fixed width, in the byte order of the buffer, with {@code boolean} values as a
+ *   single byte;</li>
+ *   <li>strings as a varint of one more than their length in UTF-8 bytes (zero for {@code null}), followed by those
+ *   bytes;</li>
+ *   <li>arrays of primitives as a varint of one more than their length (zero for {@code null}), followed by their
+ *   elements;</li>
+ *   <li>boxed primitives, enums (by name) and nested POJOs as a byte which is zero for {@code null} and one otherwise,
+ *   followed by the value; nested POJOs are written without a schema hash of their own.</li>
+ * </ul>
+ * <p>
+ * Properties of other types are not supported. Instances are constructed when read either through a constructor
+ * whose parameters are the properties, in order, or through a no-argument constructor followed by a setter, or
+ * failing that the non-final field, of each property. Since parameter names are not available, a constructor is only
+ * used if no two properties have the same type.
+ * </p>
+ *
+ * @param <T> the type of the POJOs
+ * @since 2.1
+ */
+public interface PojoCodec<T> {
+  /**
+   * Write a POJO to a buffer.
+   * @param instance the POJO
+   * @param buffer the buffer to write to
+   * @throws NullPointerException if {@code instance} or {@code buffer} is null
+   * @throws BufferOverflowException if {@code buffer} is too small; some bytes may already have been written
+   * @throws IllegalArgumentException if a nested POJO is not of the declared type of its property
+   */
+  void write(T instance, ByteBuffer buffer);
+
+  /**
+   * Read a POJO from a buffer.
+   * @param buffer the buffer to read from, positioned at the start of a record
+   * @return the POJO
+   * @throws NullPointerException if {@code buffer} is null
+   * @throws BufferUnderflowException if {@code buffer} does not hold an entire record
+   * @throws IllegalArgumentException if the record was written with a different schema
+   */
+  T read(ByteBuffer buffer);
+
+  /**
+   * Get the hash of the names and types of the properties encoded, including those of nested POJOs, which starts
+   * every record.
+   * @return the schema hash
+   */
+  int schemaHash();
+}
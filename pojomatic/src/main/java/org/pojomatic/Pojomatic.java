@@ -1,8 +1,12 @@
 package org.pojomatic;
 
+import java.util.concurrent.Executor;
+
 import org.pojomatic.diff.Differences;
+import org.pojomatic.diff.ReconciliationListener;
 import org.pojomatic.internal.PojomatorFactory;
-import org.pojomatic.internal.SelfPopulatingMap;
+import org.pojomatic.internal.PropertyCodec;
+import org.pojomatic.internal.Reconciler;
 
 /**
  * <style>
@@ -71,14 +75,17 @@ import org.pojomatic.internal.SelfPopulatingMap;
  */
 public class Pojomatic {
 
-  private final static SelfPopulatingMap<Class<?>, Pojomator<?>> POJOMATORS =
-    new SelfPopulatingMap<Class<?>, Pojomator<?>>() {
-      @Override
-      // compiler does not know that the type parameter to Pojomator is the same as the type
-      // parameter to Class
-      protected Pojomator<?> create(Class<?> key) {
-        return PojomatorFactory.makePojomator(key);
-      }
+  /**
+   * Pojomators, by POJO class. Using a {@code ClassValue} rather than a map keyed by class keeps reads lock-free,
+   * and does not prevent POJO classes from being unloaded.
+   */
+  private final static ClassValue<Pojomator<?>> POJOMATORS = new ClassValue<Pojomator<?>>() {
+    @Override
+    // compiler does not know that the type parameter to Pojomator is the same as the type
+    // parameter to Class
+    protected Pojomator<?> computeValue(Class<?> type) {
+      return PojomatorFactory.makePojomator(type);
+    }
   };
 
   private Pojomatic() {}
@@ -96,6 +103,22 @@ public class Pojomatic {
     return pojomator(getClass(pojo)).doToString(pojo);
   }
 
+  /**
+   * Get a {@code CharSequence} providing the {@code toString} representation for a POJO, which is only computed when
+   * first needed. This is useful for passing a POJO to a log statement which may be disabled.
+   * @param <T> the type of the POJO
+   * @param pojo the POJO - must not be null
+   * @return a {@code CharSequence} whose {@code toString} method returns the {@code toString} representation of
+   * {@code pojo}.
+   * @throws NoPojomaticPropertiesException if {@code pojo}'s class has no properties annotated for
+   * use with Pojomatic
+   * @see Pojomator#lazyToString(Object)
+   * @since 2.1
+   */
+  public static <T> CharSequence lazyToString(T pojo) throws NoPojomaticPropertiesException {
+    return pojomator(getClass(pojo)).lazyToString(pojo);
+  }
+
   /**
    * Compute the {@code hashCode} for a POJO.
    * @param <T> the type of the POJO
@@ -109,6 +132,21 @@ public class Pojomatic {
     return pojomator(getClass(pojo)).doHashCode(pojo);
   }
 
+  /**
+   * Compute a 64 bit hash code for a POJO.
+   * @param <T> the type of the POJO
+   * @param pojo the POJO - must not be null
+   * @param seed the seed for the hash function
+   * @return the 64 bit hash code for {@code pojo}.
+   * @throws NoPojomaticPropertiesException if {@code pojo}'s class has no properties annotated for
+   * use with Pojomatic
+   * @see Pojomator#doLongHashCode(Object, long)
+   * @since 2.1
+   */
+  public static <T> long longHashCode(T pojo, long seed) throws NoPojomaticPropertiesException {
+    return pojomator(getClass(pojo)).doLongHashCode(pojo, seed);
+  }
+
   /**
    * Compute whether {@code pojo} and {@code other} are equal to each other in the sense of
    * {@code Object}'s {@code equals} method.
@@ -125,6 +163,22 @@ public class Pojomatic {
     return pojomator(getClass(pojo)).doEquals(pojo, other);
   }
 
+  /**
+   * Compare two POJOs for order.
+   * @param <T> the type of the POJO
+   * @param pojo the POJO - must not be null
+   * @param other the instance to compare {@code pojo} with - must not be null
+   * @return a negative number, zero, or a positive number as {@code pojo} is less than, equal to, or greater than
+   * {@code other}
+   * @throws NoPojomaticPropertiesException if {@code pojo}'s class has no properties annotated for
+   * use with Pojomatic
+   * @see Pojomator#doCompare(Object, Object)
+   * @since 2.1
+   */
+  public static <T> int compare(T pojo, T other) throws NoPojomaticPropertiesException {
+    return pojomator(getClass(pojo)).doCompare(pojo, other);
+  }
+
   /**
    * Compute whether {@code classA} and {@code classB} are compatible for equality as specified
    * by the documentation for {@link Pojomator#isCompatibleForEquality(Class)}.
@@ -164,6 +218,66 @@ public class Pojomatic {
     return pojomator(getClass(pojo)).doDiff(pojo, other);
   }
 
+  /**
+   * Reconcile two collections of POJOs, such as the previous and current states of a large data set. Elements are
+   * matched by the values of their key properties, and each element is reported to {@code listener} as added,
+   * removed, changed or unchanged. Matched elements are compared with {@link Pojomator#doEquals(Object, Object)}, and
+   * for those which differ, the differing properties are found with {@link Pojomator#diffBitSet(Object, Object)}.
+   * <p>
+   * The work is partitioned by key, and runs in parallel on the calling thread and a shared pool of daemon threads,
+   * one per processor beyond the first; {@code listener} must therefore be thread-safe. Outcomes are passed to
+   * {@code listener} as they are found, rather than accumulated. All of {@code left} is held in memory, but
+   * {@code right} is iterated once, a chunk at a time, keeping only the key values of elements reported as added.
+   * </p>
+   * @param <T> the type of the POJOs
+   * @param pojoClass the class of the POJOs
+   * @param left the previous state
+   * @param right the current state
+   * @param listener the listener to report each element to
+   * @param keyProperties the names of the properties used for equals which identify an element
+   * @throws NoPojomaticPropertiesException if {@code pojoClass} has no properties annotated for use
+   * with Pojomatic
+   * @throws NullPointerException if any argument or element is null
+   * @throws IllegalArgumentException if no key properties are given, if a key property is not a property used for
+   * equals, or if two elements of the same collection have the same key; some elements may already have been
+   * reported to {@code listener} when this is detected
+   * @see #reconcile(Class, Iterable, Iterable, ReconciliationListener, Executor, String...)
+   * @since 2.1
+   */
+  public static <T> void reconcile(
+    Class<T> pojoClass, Iterable<? extends T> left, Iterable<? extends T> right,
+    ReconciliationListener<? super T> listener, String... keyProperties)
+  throws NoPojomaticPropertiesException {
+    Reconciler.reconcile(pojomator(pojoClass), left, right, listener, keyProperties);
+  }
+
+  /**
+   * Reconcile two collections of POJOs, running in parallel on the calling thread and threads provided by
+   * {@code executor}, rather than on the shared pool.
+   * @param <T> the type of the POJOs
+   * @param pojoClass the class of the POJOs
+   * @param left the previous state
+   * @param right the current state
+   * @param listener the listener to report each element to
+   * @param executor the executor to run on, in addition to the calling thread
+   * @param keyProperties the names of the properties used for equals which identify an element
+   * @throws NoPojomaticPropertiesException if {@code pojoClass} has no properties annotated for use
+   * with Pojomatic
+   * @throws NullPointerException if any argument or element is null
+   * @throws IllegalArgumentException if no key properties are given, if a key property is not a property used for
+   * equals, or if two elements of the same collection have the same key
+   * @see #reconcile(Class, Iterable, Iterable, ReconciliationListener, String...)
+   * @since 2.1
+   */
+  public static <T> void reconcile(
+    Class<T> pojoClass, Iterable<? extends T> left, Iterable<? extends T> right,
+    ReconciliationListener<? super T> listener, Executor executor, String... keyProperties)
+  throws NoPojomaticPropertiesException {
+    Reconciler.reconcile(
+      pojomator(pojoClass), left, right, listener, executor, Runtime.getRuntime().availableProcessors(),
+      keyProperties);
+  }
+
   /**
    * Get the {@code Pojomator} for {@code pojoClass}. While the same instance will be returned every time
    * for a given value of {@code pojoClass}, highly performance-sensitive applications may want to cache the value
@@ -181,6 +295,23 @@ public class Pojomatic {
     return (Pojomator<T>) POJOMATORS.get(pojoClass);
   }
 
+  /**
+   * Get the {@code PojoCodec} for {@code pojoClass}, which writes and reads the properties used for equals in a compact
+   * binary form. The same instance will be returned every time for a given value of {@code pojoClass}.
+   * @param <T> the type represented by {@code pojoClass}
+   * @param pojoClass the class to get a {@code PojoCodec} for
+   * @return a {@code PojoCodec<T>}
+   * @throws NoPojomaticPropertiesException if {@code pojoClass} has no properties annotated for use
+   * with Pojomatic
+   * @throws IllegalArgumentException if a property of {@code pojoClass} is of a type which cannot be encoded, or if
+   * instances of {@code pojoClass} cannot be constructed from their properties
+   * @see PojoCodec
+   * @since 2.1
+   */
+  public static <T> PojoCodec<T> codec(Class<T> pojoClass) throws NoPojomaticPropertiesException {
+    return PropertyCodec.forClass(pojoClass);
+  }
+
   @SuppressWarnings("unchecked") // Since Object.getClass returns Class<?>
   private static <T> Class<T> getClass(T pojo) {
     return (Class<T>) pojo.getClass();
@@ -0,0 +1,113 @@
+package org.pojomatic;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.ConstantCallSite;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * A bootstrap method for {@code invokedynamic} call sites implementing {@link Object#equals(Object)},
+ * {@link Object#hashCode()} and {@link Object#toString()} on a POJO, in the spirit of
+ * {@code java.lang.runtime.ObjectMethods}. It is intended to be targeted by byte code weavers, or by other tools
+ * generating byte code for POJO classes; it cannot be referenced from Java source.
+ * <p>
+ * Calls to {@link Pojomatic#equals(Object, Object)} and friends must look up the {@link Pojomator} for the class of
+ * the POJO on every call. A call site bootstrapped by {@link #bootstrap(MethodHandles.Lookup, String, MethodType,
+ * Class)} instead looks up the {@code Pojomator} once, when the call site is linked, and is permanently bound to it.
+ * As long as the POJO passed in is exactly of the class the call site was bootstrapped for, the JIT compiler is free
+ * to inline the generated code. If the POJO is of some other class (typically a subclass inheriting the
+ * {@code equals} method the call site lives in), the call is delegated to {@link Pojomatic}.
+ * <p>
+ * For example, a weaver could implement {@code hashCode} for a class {@code Pojo} as
+ * <pre>
+ *   aload_0
+ *   invokedynamic hashCode(LPojo;)I [PojomaticBootstrap.bootstrap, Pojo.class]
+ *   ireturn
+ * </pre>
+ *
+ * @since 2.1
+ */
+public final class PojomaticBootstrap {
+  private PojomaticBootstrap() {}
+
+  private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+  private static final MethodHandle IS_EXACTLY;
+
+  static {
+    try {
+      IS_EXACTLY = LOOKUP.findStatic(
+        PojomaticBootstrap.class, "isExactly", MethodType.methodType(boolean.class, Class.class, Object.class));
+    }
+    catch (NoSuchMethodException | IllegalAccessException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  /**
+   * Bootstrap an {@code invokedynamic} call site for one of the methods {@code equals}, {@code hashCode} or
+   * {@code toString}.
+   *
+   * @param lookup the lookup provided by the JVM; unused
+   * @param methodName the name of the method to implement; one of {@code "equals"}, {@code "hashCode"} or
+   * {@code "toString"}
+   * @param type the type of the call site. This must be {@code (P, Object)boolean} for {@code equals},
+   * {@code (P)int} for {@code hashCode}, or {@code (P)String} for {@code toString}, where {@code P} is
+   * {@code pojoClass} or one of its supertypes.
+   * @param pojoClass the class of POJO to bind the call site to
+   * @return a call site bound to the {@link Pojomator} for {@code pojoClass}
+   * @throws NoPojomaticPropertiesException if {@code pojoClass} has no properties annotated for use with Pojomatic
+   * @throws IllegalArgumentException if {@code methodName} is not one of the supported methods, or if {@code type}
+   * does not match it
+   */
+  public static CallSite bootstrap(
+    MethodHandles.Lookup lookup, String methodName, MethodType type, Class<?> pojoClass)
+  throws NoPojomaticPropertiesException {
+    MethodType genericType;
+    switch (methodName) {
+      case "equals":
+        genericType = MethodType.methodType(boolean.class, Object.class, Object.class);
+        break;
+      case "hashCode":
+        genericType = MethodType.methodType(int.class, Object.class);
+        break;
+      case "toString":
+        genericType = MethodType.methodType(String.class, Object.class);
+        break;
+      default:
+        throw new IllegalArgumentException("Unsupported method name: " + methodName);
+    }
+    if (!type.erase().equals(genericType.erase())
+      || !type.parameterType(0).isAssignableFrom(pojoClass)
+      || (type.parameterCount() == 2 && type.parameterType(1) != Object.class)) {
+      throw new IllegalArgumentException("Invalid type " + type + " for method " + methodName);
+    }
+
+    Pojomator<?> pojomator = Pojomatic.pojomator(pojoClass);
+    MethodHandle target;
+    MethodHandle fallback;
+    try {
+      target = LOOKUP.findVirtual(Pojomator.class, "do" + capitalize(methodName), genericType)
+        .bindTo(pojomator);
+      fallback = LOOKUP.findStatic(Pojomatic.class, methodName, genericType);
+    }
+    catch (NoSuchMethodException | IllegalAccessException e) {
+      throw new IllegalStateException(e); // our own methods should always be found
+    }
+    MethodHandle test = IS_EXACTLY.bindTo(pojoClass);
+    if (type.parameterCount() == 2) {
+      test = MethodHandles.dropArguments(test, 1, Object.class);
+    }
+    return new ConstantCallSite(MethodHandles.guardWithTest(test, target, fallback).asType(type));
+  }
+
+  private static String capitalize(String methodName) {
+    return Character.toUpperCase(methodName.charAt(0)) + methodName.substring(1);
+  }
+
+  @SuppressWarnings("unused") // used via IS_EXACTLY
+  private static boolean isExactly(Class<?> clazz, Object pojo) {
+    return pojo != null && pojo.getClass() == clazz;
+  }
+}
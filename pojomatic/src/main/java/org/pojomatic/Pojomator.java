@@ -1,13 +1,19 @@
 package org.pojomatic;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
 import java.util.List;
 
+import org.pojomatic.annotations.CompareOrder;
 import org.pojomatic.annotations.OverridesEquals;
 import org.pojomatic.annotations.PojomaticPolicy;
 import org.pojomatic.annotations.Property;
 import org.pojomatic.annotations.SkipArrayCheck;
 import org.pojomatic.annotations.SubclassCannotOverrideEquals;
+import org.pojomatic.diff.DifferenceVisitor;
 import org.pojomatic.diff.Differences;
 import org.pojomatic.formatter.DefaultEnhancedPojoFormatter;
 import org.pojomatic.formatter.DefaultEnhancedPropertyFormatter;
@@ -45,6 +51,56 @@ public interface Pojomator<T> {
    */
   int doHashCode(T instance);
 
+  /**
+   * Compute a 64 bit hash code for a given instance of {@code T}, using a seed of {@code 0}. This is equivalent to
+   * {@link #doLongHashCode(Object, long) doLongHashCode(instance, 0)}.
+   *
+   * @param instance the instance to compute the hash code for - must not be {@code null}
+   * @return the 64 bit hash code of {@code instance}
+   * @throws NullPointerException if {@code instance} is {@code null}
+   * @since 2.1
+   */
+  long doLongHashCode(T instance);
+
+  /**
+   * Compute a 64 bit hash code for a given instance of {@code T}. The same properties are used as for
+   * {@link #doHashCode(Object)}, but their values are combined with a strong mixing function (similar to that of
+   * xxHash64), so that the bits of the result are well dispersed even for closely related instances. This is suitable
+   * for large hash tables and probabilistic data structures, where the collision rate of a 32 bit hash code would be
+   * too high.
+   * <p>
+   * Primitive properties, and boxed {@code Long}s and {@code Double}s, are hashed by their value (floats and doubles
+   * by their bits), strings by their characters, arrays by their length and elements, and instances of classes with
+   * Pojomatic properties by their own pojomator's {@code doLongHashCode}. Other objects contribute their own
+   * {@code hashCode}. As such, the result is only stable across JVM runs if the {@code hashCode} of each such property
+   * value is.
+   * </p>
+   * <p>
+   * Different seeds give (for practical purposes) independent hash functions, as needed by structures such as Bloom
+   * filters.
+   * </p>
+   *
+   * @param instance the instance to compute the hash code for - must not be {@code null}
+   * @param seed the seed for the hash function
+   * @return the 64 bit hash code of {@code instance}
+   * @throws NullPointerException if {@code instance} is {@code null}
+   * @since 2.1
+   */
+  long doLongHashCode(T instance, long seed);
+
+  /**
+   * Pass the value of each property used by {@link #doHashCode(Object)} to {@code sink}, in the same order in which
+   * {@code doHashCode} uses them. Primitive values are passed without boxing, and no intermediate objects are
+   * created, so this can be used to feed the contents of an instance to an external hash function.
+   *
+   * @param instance the instance whose properties should be passed to {@code sink} - must not be {@code null}
+   * @param sink the receiver of the property values - must not be {@code null}
+   * @throws NullPointerException if {@code instance} or {@code sink} is {@code null}
+   * @see PropertySink
+   * @since 2.1
+   */
+  void hashInto(T instance, PropertySink sink);
+
   /**
    * Compute the {@code toString} representation for a given instance of {@code T}.
    * <p>
@@ -86,6 +142,165 @@ public interface Pojomator<T> {
    */
   String doToString(T instance);
 
+  /**
+   * Compute the {@code toString} representation for a given instance of {@code T}, limited to a maximum length. While
+   * formatting, a {@link org.pojomatic.formatter.FormattingBudget} of {@code maxChars} characters is in effect, so
+   * that arrays and collections formatted by {@link DefaultEnhancedPropertyFormatter} are abbreviated, as in
+   * {@code [1, 2, 3, ... (99997 more)]}, once it is used up. If the representation is still longer than
+   * {@code maxChars}, it is truncated, ending in {@code "..."}.
+   * <p>
+   * With {@link DefaultEnhancedPropertyFormatter}, the budget caps how much is appended for the following values,
+   * including those nested inside other values: a {@link CharSequence} such as a {@code String} is appended only up
+   * to the budget; arrays, collections and maps omit their remaining elements once it is used up; and nested pojos are
+   * formatted by their own pojomators, within the same budget. The {@code toString()} of any other value, such as a
+   * number, a date or an object without Pojomatic properties, is still appended whole before the representation is
+   * truncated, as is the output of a custom property formatter.
+   * </p>
+   *
+   * @param instance the instance to compute the {@code toString} representation for - must not be {@code null}
+   * @param maxChars the maximum length of the representation
+   * @return the {@code toString} representation of {@code instance}, at most {@code maxChars} long
+   * @throws NullPointerException if {@code instance} is {@code null}
+   * @throws IllegalArgumentException if {@code maxChars} is negative
+   * @see #doToString(Object)
+   * @see org.pojomatic.annotations.ToStringBudget
+   * @since 2.1
+   */
+  String doToString(T instance, int maxChars);
+
+  /**
+   * Append the {@code toString} representation for a given instance of {@code T} to a {@code StringBuilder}. This
+   * produces the same characters as {@link #doToString(Object)}, but writes them directly into {@code builder}, without
+   * creating an intermediate {@code StringBuilder} or {@code String}.
+   *
+   * @param instance the instance to append the {@code toString} representation of - must not be {@code null}
+   * @param builder the builder to append to - must not be {@code null}
+   * @throws NullPointerException if {@code instance} or {@code builder} is {@code null}
+   * @see #doToString(Object)
+   * @since 2.1
+   */
+  void appendTo(T instance, StringBuilder builder);
+
+  /**
+   * Append the {@code toString} representation for a given instance of {@code T} to an {@code Appendable}, such as a
+   * {@link java.io.Writer}. If {@code appendable} is a {@code StringBuilder}, this is equivalent to
+   * {@link #appendTo(Object, StringBuilder)}. Otherwise, the representation is built in a {@code StringBuilder} which is
+   * reused by later calls on the same thread, and then appended to {@code appendable}. A {@link java.io.Writer} is
+   * given the representation through {@link java.io.Writer#write(char[], int, int)}, so that no {@code String} is
+   * created; any other {@code Appendable} through {@link Appendable#append(CharSequence)}.
+   *
+   * @param instance the instance to append the {@code toString} representation of - must not be {@code null}
+   * @param appendable the appendable to append to - must not be {@code null}
+   * @throws IOException if {@code appendable} throws an {@code IOException}
+   * @throws NullPointerException if {@code instance} or {@code appendable} is {@code null}
+   * @see #doToString(Object)
+   * @since 2.1
+   */
+  void appendTo(T instance, Appendable appendable) throws IOException;
+
+  /**
+   * Write the {@code toString} representation for a given instance of {@code T}, encoded as UTF-8, to a
+   * {@code ByteBuffer}. This writes the same bytes as {@code doToString(instance).getBytes(UTF_8)}, but encodes the
+   * representation directly into {@code buffer}, without creating an intermediate {@code String}. If {@code buffer}
+   * does not have enough space remaining, nothing is written.
+   *
+   * @param instance the instance to write the {@code toString} representation of - must not be {@code null}
+   * @param buffer the buffer to write to, starting at its position - must not be {@code null}
+   * @throws java.nio.BufferOverflowException if {@code buffer} does not have enough space remaining
+   * @throws NullPointerException if {@code instance} or {@code buffer} is {@code null}
+   * @see #doToString(Object)
+   * @since 2.1
+   */
+  void writeUtf8(T instance, ByteBuffer buffer);
+
+  /**
+   * Write the {@code toString} representation for a given instance of {@code T}, encoded as UTF-8, to a
+   * {@code ByteBuffer}, calling {@code overflowHandler} whenever the buffer being written to fills up. This writes the
+   * same bytes as {@code doToString(instance).getBytes(UTF_8)}, but encodes the representation directly into
+   * {@code buffer}, without creating an intermediate {@code String}.
+   *
+   * @param instance the instance to write the {@code toString} representation of - must not be {@code null}
+   * @param buffer the buffer to write to, starting at its position - must not be {@code null}
+   * @param overflowHandler the handler to provide further space when needed - must not be {@code null}
+   * @return the buffer the last byte was written to; this is {@code buffer} unless {@code overflowHandler} returned a
+   *   different buffer
+   * @throws IllegalStateException if {@code overflowHandler} does not return a buffer with space remaining
+   * @throws NullPointerException if {@code instance}, {@code buffer} or {@code overflowHandler} is {@code null}
+   * @see #doToString(Object)
+   * @since 2.1
+   */
+  ByteBuffer writeUtf8(T instance, ByteBuffer buffer, ByteBufferOverflowHandler overflowHandler);
+
+  /**
+   * Append a JSON object representing a given instance of {@code T} to a {@code StringBuilder}. The object has a member
+   * for each property used by {@link #doToString(Object)}, in the same order, named by {@link PropertyElement#getName()}.
+   * Property values are written as follows:
+   * <ul>
+   *   <li>{@code null} as {@code null}</li>
+   *   <li>booleans and numbers, primitive or boxed, as JSON booleans and numbers, except that {@code NaN} and infinite
+   *   floating point values, which JSON numbers cannot represent, are written as strings</li>
+   *   <li>{@code char}s, {@code CharSequence}s and enums (by {@link Enum#name() name}) as strings</li>
+   *   <li>arrays and {@code Collection}s as arrays, with elements written by these same rules</li>
+   *   <li>{@code Map}s as objects, with keys converted by {@link String#valueOf(Object)}</li>
+   *   <li>instances of classes with Pojomatic properties as nested objects, by their own {@code Pojomator}</li>
+   *   <li>anything else as a string, by its {@code toString} method</li>
+   * </ul>
+   * Property formatters and pojo formatters are not used. Cyclic structures are not supported.
+   *
+   * @param instance the instance to write as JSON - must not be {@code null}
+   * @param builder the builder to append to - must not be {@code null}
+   * @throws NullPointerException if {@code instance} or {@code builder} is {@code null}
+   * @since 2.1
+   */
+  void writeJson(T instance, StringBuilder builder);
+
+  /**
+   * Append a JSON object representing a given instance of {@code T} to an {@code Appendable}, as described for
+   * {@link #writeJson(Object, StringBuilder)}. If {@code appendable} is not a {@code StringBuilder}, the JSON is built
+   * in a {@code StringBuilder} which is reused by later calls on the same thread, and then appended to
+   * {@code appendable}, in the same way as by {@link #appendTo(Object, Appendable)}.
+   *
+   * @param instance the instance to write as JSON - must not be {@code null}
+   * @param appendable the appendable to append to - must not be {@code null}
+   * @throws IOException if {@code appendable} throws an {@code IOException}
+   * @throws NullPointerException if {@code instance} or {@code appendable} is {@code null}
+   * @since 2.1
+   */
+  void writeJson(T instance, Appendable appendable) throws IOException;
+
+  /**
+   * Get a {@code CharSequence} whose {@code toString} method returns the {@code toString} representation for a given
+   * instance of {@code T}, as computed by {@link #doToString(Object)}. The representation is only computed when first
+   * needed, and then remembered, so that passing the result to a log statement which turns out to be disabled costs
+   * little more than allocating the result. The result may be retained, and shared between threads.
+   *
+   * @param instance the instance to provide the {@code toString} representation of - must not be {@code null}
+   * @return a {@code CharSequence} providing the {@code toString} representation of {@code instance}
+   * @throws NullPointerException if {@code instance} is {@code null}
+   * @see #doToString(Object)
+   * @since 2.1
+   */
+  CharSequence lazyToString(T instance);
+
+  /**
+   * Get a reusable {@code CharSequence} whose {@code toString} method returns the {@code toString} representation for a
+   * given instance of {@code T}, as computed by {@link #doToString(Object)}. This is like
+   * {@link #lazyToString(Object)}, but allocates nothing: each thread has a single view, shared by all pojomators,
+   * which this method rebinds to {@code instance} and returns.
+   * <p>
+   * Consequently, the result is only valid on the calling thread, and only until the next call to this method, on any
+   * pojomator, on the calling thread; it must not be retained, or handed to another thread. In particular, it must not be passed to a
+   * logging framework which formats messages asynchronously; use {@link #lazyToString(Object)} for those.
+   * </p>
+   *
+   * @param instance the instance to provide the {@code toString} representation of - must not be {@code null}
+   * @return a {@code CharSequence} providing the {@code toString} representation of {@code instance}
+   * @throws NullPointerException if {@code instance} is {@code null}
+   * @see #doToString(Object)
+   * @since 2.1
+   */
+  CharSequence deferredToString(T instance);
+
   /**
    * Compute whether {@code instance} and {@code other} are equal to each other in the sense of
    * {@code Object}'s {@link Object#equals(Object) equals} method. For two instances to be
@@ -154,6 +369,49 @@ public interface Pojomator<T> {
    */
   boolean isCompatibleForEquality(Class<?> otherClass);
 
+  /**
+   * Get the properties examined by {@link #doEquals(Object, Object)}, in the order in which they are reported by
+   * {@link #doDiff(Object, Object)}. The index of a property in this list is its bit in the results of
+   * {@link #diffMask(Object, Object)} and {@link #diffBitSet(Object, Object)}.
+   *
+   * @return an unmodifiable list of the properties used for equals
+   * @since 2.1
+   */
+  List<PropertyElement> getEqualsProperties();
+
+  /**
+   * Compare {@code instance} and {@code other} for order, by the properties examined by
+   * {@link #doEquals(Object, Object)}. Properties annotated with {@link CompareOrder @CompareOrder} are compared first,
+   * in order of their rank, and in the direction and with the placement of nulls they specify; the others follow, in
+   * ascending order with nulls first, in the order in which they are declared. Primitive values are compared as by
+   * the {@code compare} method of their wrapper class, without boxing; arrays are compared lexicographically; other
+   * values must be {@link Comparable} with each other.
+   * <p>
+   * This ordering is consistent with {@code doEquals}, provided that the {@code compareTo} method of each property value
+   * is consistent with its {@code equals} method.
+   * </p>
+   *
+   * @param instance the first instance to compare
+   * @param other the second instance to compare
+   * @return a negative number, zero, or a positive number as {@code instance} is less than, equal to, or greater than
+   * {@code other}
+   * @throws NullPointerException if {@code instance} or {@code other} is null
+   * @throws IllegalArgumentException the type of {@code instance} or of {@code other} is not a
+   * class which is compatible for equality with {@code T}
+   * @throws ClassCastException if the values of a property cannot be compared with each other
+   * @see #comparator()
+   * @since 2.1
+   */
+  int doCompare(T instance, T other);
+
+  /**
+   * Get a {@code Comparator} which compares instances using {@link #doCompare(Object, Object)}.
+   *
+   * @return a comparator for instances of {@code T}
+   * @since 2.1
+   */
+  Comparator<T> comparator();
+
   /**
    * Compute the differences between {@code instance} and {@code other} among the properties
    * examined by {@link #doEquals(Object, Object)}.  Assuming that {@code instance} and {@code other}
@@ -174,6 +432,88 @@ public interface Pojomator<T> {
    */
   Differences doDiff(T instance, T other);
 
+  /**
+   * Report the differences between {@code instance} and {@code other}, among the properties examined by
+   * {@link #doEquals(Object, Object)}, to a visitor. Unlike {@link #doDiff(Object, Object)}, this allocates nothing:
+   * each differing property is passed to the callback of {@code visitor} for its type, together with its two values,
+   * unboxed. Properties are visited in the order used by {@code doDiff}; visiting stops early if a callback returns
+   * {@code false}.
+   *
+   * @param instance the instance to diff against
+   * @param other the instance to diff
+   * @param visitor the visitor to report differences to
+   * @return {@code false} if {@code visitor} stopped visiting early, or {@code true} otherwise
+   * @throws NullPointerException if {@code instance}, {@code other} or {@code visitor} is null
+   * @throws IllegalArgumentException the type of {@code instance} or of {@code other} is not a
+   * class which is compatible for equality with {@code T}
+   * @see #doDiff(Object, Object)
+   * @since 2.1
+   */
+  boolean visitDifferences(T instance, T other, DifferenceVisitor visitor);
+
+  /**
+   * Compute the differences between {@code instance} and {@code other}, as {@link #doDiff(Object, Object)} does, but
+   * descending into differing values to report only the parts which differ. Each difference is named by the path to
+   * the differing value, such as {@code orders[3].price}:
+   * <ul>
+   *   <li>Values of classes with Pojomatic properties, which are compatible for equality, are diffed by their own
+   *   pojomators, with paths such as {@code customer.name}.</li>
+   *   <li>{@link java.util.List Lists} and arrays of objects are diffed element by element, with paths such as
+   *   {@code orders[3]}.</li>
+   *   <li>Arrays of primitives are reported as a single {@link org.pojomatic.diff.ArrayDifference}, giving the ranges
+   *   of indexes at which they differ. Very long arrays are scanned in parallel.</li>
+   *   <li>{@link java.util.Map Maps} are diffed by key, with paths such as {@code prices[EUR]}.</li>
+   * </ul>
+   * An element or entry present on only one side is reported as a {@link org.pojomatic.diff.OneSidedDifference}.
+   * Values are only descended into once they have been found unequal, so equal values cost no more than they do for
+   * {@code doDiff}. Cyclic graphs of unequal values are not supported.
+   *
+   * @param instance the instance to diff against
+   * @param other the instance to diff
+   * @return the list of differences (possibly empty) between {@code instance} and {@code other}
+   * @throws NullPointerException if {@code instance} or {@code other} is null
+   * @throws IllegalArgumentException the type of {@code instance} or of {@code other} is not a
+   * class which is compatible for equality with {@code T}
+   * @see #doDiff(Object, Object)
+   * @since 2.1
+   */
+  Differences doDeepDiff(T instance, T other);
+
+  /**
+   * Compute which properties differ between {@code instance} and {@code other}, among the properties examined by
+   * {@link #doEquals(Object, Object)}. Bit {@code i} of the result is set if and only if the property at index
+   * {@code i} of {@link #getEqualsProperties()} differs. Properties are compared exactly as by
+   * {@code doEquals}, but no {@link org.pojomatic.diff.Difference Difference} objects are created.
+   *
+   * @param instance the instance to diff against
+   * @param other the instance to diff
+   * @return the mask of differing properties, which is {@code 0} if there are no differences
+   * @throws NullPointerException if {@code instance} or {@code other} is null
+   * @throws IllegalArgumentException the type of {@code instance} or of {@code other} is not a
+   * class which is compatible for equality with {@code T}
+   * @throws UnsupportedOperationException if {@code T} has more than 64 properties used for equals; use
+   * {@link #diffBitSet(Object, Object)} for such classes
+   * @see #diffBitSet(Object, Object)
+   * @since 2.1
+   */
+  long diffMask(T instance, T other);
+
+  /**
+   * Compute which properties differ between {@code instance} and {@code other}, among the properties examined by
+   * {@link #doEquals(Object, Object)}, for classes with any number of properties. Bit {@code i} of the result is set
+   * if and only if the property at index {@code i} of {@link #getEqualsProperties()} differs.
+   *
+   * @param instance the instance to diff against
+   * @param other the instance to diff
+   * @return the set of indexes of differing properties, which is empty if there are no differences
+   * @throws NullPointerException if {@code instance} or {@code other} is null
+   * @throws IllegalArgumentException the type of {@code instance} or of {@code other} is not a
+   * class which is compatible for equality with {@code T}
+   * @see #diffMask(Object, Object)
+   * @since 2.1
+   */
+  BitSet diffBitSet(T instance, T other);
+
   /**
    * Return a simple String representation of this Pojomator. This is meant to aid in debugging
    * which properties are being used for which purposes. The contents and format of this
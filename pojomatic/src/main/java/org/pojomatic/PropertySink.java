@@ -0,0 +1,69 @@
+package org.pojomatic;
+
+import org.pojomatic.annotations.SkipArrayCheck;
+
+/**
+ * A receiver of property values, used by {@link Pojomator#hashInto(Object, PropertySink)} to feed the contents of a
+ * POJO to an external hash function (such as those of a Bloom filter or a consistent hash ring) without boxing
+ * primitive values or building intermediate strings.
+ * <p>
+ * Each property value is passed to the method corresponding to the declared type of the property. Properties of array
+ * type are passed to the array method for their type; properties of type {@code Object} which are not annotated with
+ * {@link SkipArrayCheck @SkipArrayCheck} are passed to the array method for their runtime type if they hold an array.
+ * Reference values, including arrays, may be {@code null}.
+ * </p>
+ *
+ * @since 2.1
+ */
+public interface PropertySink {
+  void putBoolean(boolean value);
+
+  void putByte(byte value);
+
+  void putChar(char value);
+
+  void putShort(short value);
+
+  void putInt(int value);
+
+  void putLong(long value);
+
+  void putFloat(float value);
+
+  void putDouble(double value);
+
+  /**
+   * Receive the value of a property of type {@code String}.
+   * @param value the property value, possibly {@code null}
+   */
+  void putString(String value);
+
+  /**
+   * Receive the value of a property of any non-array reference type other than {@code String}.
+   * @param value the property value, possibly {@code null}
+   */
+  void putObject(Object value);
+
+  void putBooleans(boolean[] values);
+
+  void putBytes(byte[] values);
+
+  void putChars(char[] values);
+
+  void putShorts(short[] values);
+
+  void putInts(int[] values);
+
+  void putLongs(long[] values);
+
+  void putFloats(float[] values);
+
+  void putDoubles(double[] values);
+
+  /**
+   * Receive the value of a property of any array type whose component type is not primitive. Elements which are
+   * themselves arrays are not unpacked; implementations wishing to hash them by their contents must do so themselves.
+   * @param values the property value, possibly {@code null}
+   */
+  void putObjects(Object[] values);
+}
@@ -0,0 +1,40 @@
+package org.pojomatic.annotations;
+
+import static java.lang.annotation.ElementType.TYPE;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import org.pojomatic.Pojomator;
+
+/**
+ * Declares that the hash code of instances of the annotated class should be computed only once, and then cached. This
+ * is only appropriate for classes whose properties used for {@code hashCode} never change once an instance has been
+ * constructed - typically, immutable value classes used as map keys.
+ * <p>
+ * The hash code is cached in the field named by {@link #value()}, if given; otherwise it is kept in a side table keyed
+ * by instance identity. Either way, a hash code of zero is treated as not yet computed, so instances whose hash code
+ * is zero will have it recomputed on every call. Once cached, hash codes are also used by
+ * {@link Pojomator#doEquals(Object, Object)} to quickly reject instances with differing hash codes.
+ * <p>
+ * Hash codes are only cached for instances whose class is exactly the class the {@code Pojomator} was created for;
+ * since this annotation is inherited, subclasses will have their hash codes cached by their own {@code Pojomator}.
+ *
+ * @see Pojomator#doHashCode(Object)
+ * @since 2.1
+ */
+@Target(TYPE)
+@Retention(RUNTIME)
+@Documented
+@Inherited
+public @interface CacheHashCode {
+  /**
+   * The name of the field in which to cache the hash code. The field must be a non-static, non-final field of type
+   * {@code int}, declared by the annotated class or one of its superclasses, and it will not be considered a property.
+   * If empty (the default), hash codes are cached in a side table instead.
+   */
+  public String value() default "";
+}
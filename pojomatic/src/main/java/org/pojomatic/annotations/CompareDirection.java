@@ -0,0 +1,21 @@
+package org.pojomatic.annotations;
+
+import org.pojomatic.Pojomator;
+
+/**
+ * The direction in which {@link Pojomator#doCompare(Object, Object)} orders the values of a property, as set using
+ * {@link CompareOrder}.
+ *
+ * @since 2.1
+ */
+public enum CompareDirection {
+  /**
+   * Order values from least to greatest.
+   */
+  ASCENDING,
+
+  /**
+   * Order values from greatest to least.
+   */
+  DESCENDING
+}
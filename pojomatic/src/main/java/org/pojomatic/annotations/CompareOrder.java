@@ -0,0 +1,42 @@
+package org.pojomatic.annotations;
+
+import static java.lang.annotation.ElementType.FIELD;
+import static java.lang.annotation.ElementType.METHOD;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import org.pojomatic.Pojomator;
+
+/**
+ * Specifies where, and how, the annotated property is compared by {@link Pojomator#doCompare(Object, Object)}.
+ * Properties annotated with {@code CompareOrder} are compared first, in increasing order of {@link #rank()}; the
+ * remaining properties used for equals are compared afterwards, in ascending order with nulls first, in the order in
+ * which they are declared. Properties with the same rank are compared in the order in which they are declared.
+ * <p>
+ * If the annotated property is not used for equals, this annotation has no effect.
+ * </p>
+ *
+ * @since 2.1
+ */
+@Target({FIELD, METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface CompareOrder {
+  /**
+   * The rank of the property; properties of lower rank are compared first.
+   */
+  int rank();
+
+  /**
+   * The direction in which values of the property are ordered.
+   */
+  CompareDirection direction() default CompareDirection.ASCENDING;
+
+  /**
+   * Where {@code null} values of the property are ordered, regardless of {@link #direction()}.
+   */
+  NullOrderPolicy nulls() default NullOrderPolicy.FIRST;
+}
@@ -0,0 +1,28 @@
+package org.pojomatic.annotations;
+
+import java.lang.annotation.*;
+
+import org.pojomatic.Pojomator;
+
+/**
+ * Specifies the order in which the properties of the annotated class should be compared by
+ * {@link Pojomator#doEquals(Object, Object)}. Absent this annotation, properties are compared in the order in which
+ * they are declared.
+ * <p>
+ * Reordering comparisons pays off when most comparisons are between unequal instances, and a cheap property (such as
+ * an {@code int} id) is declared after expensive ones (such as strings or arrays).
+ * </p>
+ *
+ * @see EqualsOrderPolicy
+ * @since 2.1
+ */
+@Documented
+@Inherited
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface EqualsOrder {
+  /**
+   * The order in which to compare properties.
+   */
+  EqualsOrderPolicy value();
+}
@@ -0,0 +1,33 @@
+package org.pojomatic.annotations;
+
+import org.pojomatic.Pojomator;
+
+/**
+ * A policy for determining the order in which properties are compared by {@link Pojomator#doEquals(Object, Object)}.
+ * The order never affects the result of {@code doEquals}, only how quickly it is determined that two instances are not
+ * equal. This policy is set class-wide using {@link EqualsOrder}.
+ */
+public enum EqualsOrderPolicy {
+  /**
+   * Compare properties in the order in which they are declared.
+   */
+  DECLARED,
+
+  /**
+   * Compare properties in order of how expensive they are to compare, as estimated from their declared types:
+   * primitives first, then enums and boxed primitives, then strings, and finally arrays and all other objects.
+   * Properties with the same estimated cost are compared in the order in which they are declared.
+   */
+  COST,
+
+  /**
+   * Start by comparing properties in order of cost, as for {@link #COST}, while counting which property decides
+   * inequality when unequal instances are compared. After a number of such comparisons, compare the properties which
+   * most often decided inequality first. This suits workloads where a single property, such as a sequence number,
+   * almost always distinguishes unequal instances, but is not the cheapest to compare.
+   * <p>
+   * Profiling happens once per {@link Pojomator}; properties are not reordered again if the workload changes later.
+   * </p>
+   */
+  ADAPTIVE
+}
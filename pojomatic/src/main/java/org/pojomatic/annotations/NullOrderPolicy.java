@@ -0,0 +1,21 @@
+package org.pojomatic.annotations;
+
+import org.pojomatic.Pojomator;
+
+/**
+ * A policy for where {@link Pojomator#doCompare(Object, Object)} orders {@code null} values of a property, as set
+ * using {@link CompareOrder}.
+ *
+ * @since 2.1
+ */
+public enum NullOrderPolicy {
+  /**
+   * Order {@code null} before all other values.
+   */
+  FIRST,
+
+  /**
+   * Order {@code null} after all other values.
+   */
+  LAST
+}
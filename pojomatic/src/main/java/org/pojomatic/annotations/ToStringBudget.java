@@ -0,0 +1,37 @@
+package org.pojomatic.annotations;
+
+import java.lang.annotation.*;
+
+import org.pojomatic.Pojomator;
+import org.pojomatic.formatter.DefaultEnhancedPropertyFormatter;
+import org.pojomatic.formatter.FormattingBudget;
+
+/**
+ * Limits the size of the {@code String} representations of instances of the annotated class, for classes whose
+ * properties may hold large arrays or collections. When formatting an instance of the annotated class, arrays and
+ * collections formatted by {@link DefaultEnhancedPropertyFormatter} are abbreviated, as in
+ * {@code [1, 2, 3, ... (99997 more)]}, once either limit is reached, and the representation is then truncated to
+ * {@link #maxChars()} characters.
+ * <p>
+ * The limits apply wherever the representation is produced, including {@link Pojomator#doToString(Object)},
+ * {@link Pojomator#appendTo(Object, StringBuilder)} and {@link Pojomator#writeUtf8(Object, java.nio.ByteBuffer)}.
+ * </p>
+ *
+ * @see FormattingBudget
+ * @see Pojomator#doToString(Object, int)
+ * @since 2.1
+ */
+@Documented
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ToStringBudget {
+  /**
+   * The maximum number of characters in the representation of an instance.
+   */
+  int maxChars() default Integer.MAX_VALUE;
+
+  /**
+   * The maximum number of elements of any one array or collection to format.
+   */
+  int maxElements() default Integer.MAX_VALUE;
+}
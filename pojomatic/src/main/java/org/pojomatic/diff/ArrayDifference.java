@@ -0,0 +1,79 @@
+package org.pojomatic.diff;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.pojomatic.Pojomatic;
+import org.pojomatic.annotations.Property;
+
+/**
+ * A difference between two arrays, identifying the ranges of indexes at which they differ. Indexes beyond the end of
+ * the shorter array are considered to differ.
+ *
+ * @since 2.1
+ */
+public final class ArrayDifference implements Difference {
+  @Property
+  private final String propertyName;
+
+  @Property
+  private final Object leftValue;
+
+  @Property
+  private final Object rightValue;
+
+  @Property
+  private final List<IndexRange> differingRanges;
+
+  /**
+   * @param propertyName the name of the property
+   * @param leftValue the array from the left instance
+   * @param rightValue the array from the right instance
+   * @param differingRanges the ranges of indexes at which the arrays differ, in ascending order
+   */
+  public ArrayDifference(String propertyName, Object leftValue, Object rightValue, List<IndexRange> differingRanges) {
+    this.propertyName = propertyName;
+    this.leftValue = leftValue;
+    this.rightValue = rightValue;
+    this.differingRanges = Collections.unmodifiableList(differingRanges);
+  }
+
+  @Override
+  public String propertyName() {
+    return propertyName;
+  }
+
+  @Override
+  public Object leftValue() {
+    return leftValue;
+  }
+
+  @Override
+  public Object rightValue() {
+    return rightValue;
+  }
+
+  /**
+   * The ranges of indexes at which the arrays differ, in ascending order. Adjacent ranges are always merged.
+   *
+   * @return the ranges of indexes at which the arrays differ
+   */
+  public List<IndexRange> differingRanges() {
+    return differingRanges;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    return Pojomatic.equals(this, obj);
+  }
+
+  @Override
+  public int hashCode() {
+    return Pojomatic.hashCode(this);
+  }
+
+  @Override
+  public String toString() {
+    return propertyName + ": differs at " + differingRanges;
+  }
+}
@@ -0,0 +1,42 @@
+package org.pojomatic.diff;
+
+import org.pojomatic.Pojomator;
+import org.pojomatic.PropertyElement;
+
+/**
+ * A receiver of the differences found by {@link Pojomator#visitDifferences(Object, Object, DifferenceVisitor)}.
+ * Differences are reported without boxing or allocation, through the callback for the declared type of the property:
+ * a callback for each primitive type, and {@link #onObjectDifference(PropertyElement, Object, Object)} for all others.
+ * Each callback returns whether to continue looking for differences.
+ * <p>
+ * Implementations which only need to know which properties differ can extend {@link DifferingPropertyVisitor}.
+ * </p>
+ *
+ * @since 2.1
+ */
+public interface DifferenceVisitor {
+  boolean onBooleanDifference(PropertyElement property, boolean leftValue, boolean rightValue);
+
+  boolean onByteDifference(PropertyElement property, byte leftValue, byte rightValue);
+
+  boolean onCharDifference(PropertyElement property, char leftValue, char rightValue);
+
+  boolean onShortDifference(PropertyElement property, short leftValue, short rightValue);
+
+  boolean onIntDifference(PropertyElement property, int leftValue, int rightValue);
+
+  boolean onLongDifference(PropertyElement property, long leftValue, long rightValue);
+
+  boolean onFloatDifference(PropertyElement property, float leftValue, float rightValue);
+
+  boolean onDoubleDifference(PropertyElement property, double leftValue, double rightValue);
+
+  /**
+   * Receive a difference in a property which is not of primitive type, including arrays.
+   * @param property the property which differs
+   * @param leftValue the value of the property for the first instance, possibly {@code null}
+   * @param rightValue the value of the property for the second instance, possibly {@code null}
+   * @return {@code true} to continue looking for differences, or {@code false} to stop
+   */
+  boolean onObjectDifference(PropertyElement property, Object leftValue, Object rightValue);
+}
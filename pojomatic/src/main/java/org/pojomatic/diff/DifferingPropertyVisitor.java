@@ -0,0 +1,63 @@
+package org.pojomatic.diff;
+
+import org.pojomatic.PropertyElement;
+
+/**
+ * A {@link DifferenceVisitor} for when only the properties which differ matter, and not their values. Every callback
+ * delegates to {@link #onDifference(PropertyElement)}.
+ *
+ * @since 2.1
+ */
+public abstract class DifferingPropertyVisitor implements DifferenceVisitor {
+  /**
+   * Receive a property which differs.
+   * @param property the property which differs
+   * @return {@code true} to continue looking for differences, or {@code false} to stop
+   */
+  protected abstract boolean onDifference(PropertyElement property);
+
+  @Override
+  public boolean onBooleanDifference(PropertyElement property, boolean leftValue, boolean rightValue) {
+    return onDifference(property);
+  }
+
+  @Override
+  public boolean onByteDifference(PropertyElement property, byte leftValue, byte rightValue) {
+    return onDifference(property);
+  }
+
+  @Override
+  public boolean onCharDifference(PropertyElement property, char leftValue, char rightValue) {
+    return onDifference(property);
+  }
+
+  @Override
+  public boolean onShortDifference(PropertyElement property, short leftValue, short rightValue) {
+    return onDifference(property);
+  }
+
+  @Override
+  public boolean onIntDifference(PropertyElement property, int leftValue, int rightValue) {
+    return onDifference(property);
+  }
+
+  @Override
+  public boolean onLongDifference(PropertyElement property, long leftValue, long rightValue) {
+    return onDifference(property);
+  }
+
+  @Override
+  public boolean onFloatDifference(PropertyElement property, float leftValue, float rightValue) {
+    return onDifference(property);
+  }
+
+  @Override
+  public boolean onDoubleDifference(PropertyElement property, double leftValue, double rightValue) {
+    return onDifference(property);
+  }
+
+  @Override
+  public boolean onObjectDifference(PropertyElement property, Object leftValue, Object rightValue) {
+    return onDifference(property);
+  }
+}
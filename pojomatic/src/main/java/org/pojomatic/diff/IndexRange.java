@@ -0,0 +1,59 @@
+package org.pojomatic.diff;
+
+import org.pojomatic.Pojomatic;
+import org.pojomatic.annotations.Property;
+
+/**
+ * A range of array indexes, from {@link #start()}, inclusive, to {@link #end()}, exclusive.
+ *
+ * @since 2.1
+ */
+public final class IndexRange {
+  @Property
+  private final int start;
+
+  @Property
+  private final int end;
+
+  /**
+   * @param start the first index in the range
+   * @param end the index after the last index in the range
+   * @throws IllegalArgumentException if {@code start} is negative, or {@code end} is not greater than {@code start}
+   */
+  public IndexRange(int start, int end) {
+    if (start < 0 || end <= start) {
+      throw new IllegalArgumentException("invalid range [" + start + ", " + end + ")");
+    }
+    this.start = start;
+    this.end = end;
+  }
+
+  /**
+   * @return the first index in the range
+   */
+  public int start() {
+    return start;
+  }
+
+  /**
+   * @return the index after the last index in the range
+   */
+  public int end() {
+    return end;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    return Pojomatic.equals(this, obj);
+  }
+
+  @Override
+  public int hashCode() {
+    return Pojomatic.hashCode(this);
+  }
+
+  @Override
+  public String toString() {
+    return "[" + start + ", " + end + ")";
+  }
+}
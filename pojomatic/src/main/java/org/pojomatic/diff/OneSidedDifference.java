@@ -0,0 +1,87 @@
+package org.pojomatic.diff;
+
+import java.util.NoSuchElementException;
+
+import org.pojomatic.Pojomatic;
+import org.pojomatic.annotations.Property;
+
+/**
+ * A difference in which a value exists on only one side, such as an element beyond the end of the shorter of two
+ * lists, or an entry whose key is in only one of two maps.
+ *
+ * @since 2.1
+ */
+public final class OneSidedDifference implements Difference {
+  @Property
+  private final String propertyName;
+
+  @Property
+  private final boolean onLeft;
+
+  @Property
+  private final Object value;
+
+  private OneSidedDifference(String propertyName, boolean onLeft, Object value) {
+    this.propertyName = propertyName;
+    this.onLeft = onLeft;
+    this.value = value;
+  }
+
+  /**
+   * A difference for a value which exists only on the left instance.
+   * @param propertyName the name of the property
+   * @param leftValue the value from the left instance (possibly {@code null})
+   * @return the difference
+   */
+  public static OneSidedDifference leftOnly(String propertyName, Object leftValue) {
+    return new OneSidedDifference(propertyName, true, leftValue);
+  }
+
+  /**
+   * A difference for a value which exists only on the right instance.
+   * @param propertyName the name of the property
+   * @param rightValue the value from the right instance (possibly {@code null})
+   * @return the difference
+   */
+  public static OneSidedDifference rightOnly(String propertyName, Object rightValue) {
+    return new OneSidedDifference(propertyName, false, rightValue);
+  }
+
+  @Override
+  public String propertyName() {
+    return propertyName;
+  }
+
+  @Override
+  public Object leftValue() throws NoSuchElementException {
+    if (!onLeft) {
+      throw new NoSuchElementException(propertyName + " does not exist on the left instance");
+    }
+    return value;
+  }
+
+  @Override
+  public Object rightValue() throws NoSuchElementException {
+    if (onLeft) {
+      throw new NoSuchElementException(propertyName + " does not exist on the right instance");
+    }
+    return value;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    return Pojomatic.equals(this, obj);
+  }
+
+  @Override
+  public int hashCode() {
+    return Pojomatic.hashCode(this);
+  }
+
+  @Override
+  public String toString() {
+    return onLeft
+      ? propertyName + ": {" + value + "} versus nothing"
+      : propertyName + ": nothing versus {" + value + "}";
+  }
+}
@@ -0,0 +1,47 @@
+package org.pojomatic.diff;
+
+import java.util.BitSet;
+
+import org.pojomatic.Pojomatic;
+import org.pojomatic.Pojomator;
+
+/**
+ * Receives the outcome of {@link Pojomatic#reconcile(Class, Iterable, Iterable, ReconciliationListener, String...)}
+ * for each element of the two collections being reconciled. Elements are matched by the values of their key
+ * properties; each element is reported exactly once.
+ * <p>
+ * Reconciliation runs in parallel, so methods of a listener may be called concurrently from several threads, and in
+ * no particular order.
+ * </p>
+ *
+ * @param <T> the type of the elements being reconciled
+ * @since 2.1
+ */
+public interface ReconciliationListener<T> {
+  /**
+   * Called for an element of the right collection whose key does not occur in the left collection.
+   * @param right the element
+   */
+  void onAdded(T right);
+
+  /**
+   * Called for an element of the left collection whose key does not occur in the right collection.
+   * @param left the element
+   */
+  void onRemoved(T left);
+
+  /**
+   * Called for a pair of elements with the same key which are not equal.
+   * @param left the element of the left collection
+   * @param right the element of the right collection
+   * @param changedProperties the indexes, in {@link Pojomator#getEqualsProperties()}, of the properties which differ
+   */
+  void onChanged(T left, T right, BitSet changedProperties);
+
+  /**
+   * Called for a pair of elements with the same key which are equal.
+   * @param left the element of the left collection
+   * @param right the element of the right collection
+   */
+  void onUnchanged(T left, T right);
+}
@@ -12,10 +12,14 @@ import org.pojomatic.PropertyElement;
  * are using {@link DefaultPropertyFormatter}, then the Person
  * instance representing Joe Blow would be represented as
  * <code>"Person{firstName: {Joe}, lastName: {Blow}}"</code>
+ * <p>
+ * When used as a {@link StatelessPojoFormatter}, instances are thread safe. The methods of
+ * {@link EnhancedPojoFormatter} which do not take a property index track whether a property has already been printed,
+ * and so are not.
  *
  * @since 2.0
  */
-public class DefaultEnhancedPojoFormatter implements EnhancedPojoFormatter {
+public class DefaultEnhancedPojoFormatter implements StatelessPojoFormatter {
   private boolean firstPropertyPrinted = false;
 
   @Override
@@ -71,4 +75,17 @@ public class DefaultEnhancedPojoFormatter implements EnhancedPojoFormatter {
   public void appendPropertySuffix(StringBuilder builder, PropertyElement property) {
     builder.append('}');
   }
+
+  @Override
+  public void appendPropertyPrefix(StringBuilder builder, PropertyElement property, int propertyIndex) {
+    if (propertyIndex > 0) {
+      builder.append(", ");
+    }
+    builder.append(property.getName()).append(": {");
+  }
+
+  @Override
+  public void appendPropertySuffix(StringBuilder builder, PropertyElement property, int propertyIndex) {
+    builder.append('}');
+  }
 }
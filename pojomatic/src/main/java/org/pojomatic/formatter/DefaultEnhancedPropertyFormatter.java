@@ -1,9 +1,15 @@
 package org.pojomatic.formatter;
 
 import java.lang.reflect.AnnotatedElement;
+import java.util.Collection;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.Set;
 
+import org.pojomatic.Pojomator;
+import org.pojomatic.internal.BasePojomator;
+
 /**
  * The default property formatter used by Pojomatic.  While the particulars of the formatting
  * strategy are subject to change, the general principle is to provide a meaningful representation.
@@ -27,9 +33,99 @@ public class DefaultEnhancedPropertyFormatter implements EnhancedPropertyFormatt
     return builder.toString();
   }
 
+  /**
+   * {@inheritDoc}
+   * <p>
+   * When a {@link FormattingBudget} is in effect for {@code builder}, the budget also applies to nested values:
+   * collections and maps are formatted like {@link java.util.AbstractCollection#toString()} and
+   * {@link java.util.AbstractMap#toString()} do, but abbreviated once the budget is used up, values of classes with
+   * Pojomatic properties are formatted by their {@link org.pojomatic.Pojomator#appendTo(Object, StringBuilder)
+   * pojomator}, and only as much of a {@link CharSequence} is appended as the budget allows.
+   * </p>
+   */
   @Override
   public void appendFormatted(StringBuilder builder, Object value) {
-    builder.append(value);
+    FormattingBudget budget = value == null ? null : FormattingBudget.forBuilder(builder);
+    if (budget == null) {
+      builder.append(value);
+    }
+    else if (value instanceof CharSequence) {
+      appendFormatted(builder, (CharSequence) value, budget);
+    }
+    else if (value instanceof Collection) {
+      appendFormatted(builder, (Collection<?>) value, budget);
+    }
+    else if (value instanceof Map) {
+      appendFormatted(builder, (Map<?, ?>) value, budget);
+    }
+    else {
+      Pojomator<Object> pojomator = BasePojomator.nestedPojomator(value.getClass());
+      if (pojomator != null) {
+        pojomator.appendTo(value, builder);
+      }
+      else {
+        builder.append(value);
+      }
+    }
+  }
+
+  private static void appendFormatted(StringBuilder builder, CharSequence chars, FormattingBudget budget) {
+    // one character past the limit is enough for the budget's owner to see that truncation is needed
+    long room = (long) budget.getLimit() - builder.length() + 1;
+    if (room > 0) {
+      builder.append(chars, 0, (int) Math.min(chars.length(), room));
+    }
+  }
+
+  private void appendFormatted(StringBuilder builder, Collection<?> collection, FormattingBudget budget) {
+    builder.append('[');
+    int i = 0;
+    for (Iterator<?> iterator = collection.iterator(); iterator.hasNext(); i++) {
+      if (budget.omitsElement(i)) {
+        FormattingBudget.appendOmitted(builder, collection.size() - i);
+        break;
+      }
+      Object element = iterator.next();
+      if (element == collection) {
+        builder.append("(this Collection)");
+      }
+      else {
+        appendFormatted(builder, element);
+      }
+      if (iterator.hasNext()) {
+        builder.append(", ");
+      }
+    }
+    builder.append(']');
+  }
+
+  private void appendFormatted(StringBuilder builder, Map<?, ?> map, FormattingBudget budget) {
+    builder.append('{');
+    int i = 0;
+    for (Iterator<? extends Map.Entry<?, ?>> iterator = map.entrySet().iterator(); iterator.hasNext(); i++) {
+      if (budget.omitsElement(i)) {
+        FormattingBudget.appendOmitted(builder, map.size() - i);
+        break;
+      }
+      Map.Entry<?, ?> entry = iterator.next();
+      if (entry.getKey() == map) {
+        builder.append("(this Map)");
+      }
+      else {
+        appendFormatted(builder, entry.getKey());
+      }
+      builder.append('=');
+      if (entry.getValue() == map) {
+        builder.append("(this Map)");
+      }
+      else {
+        appendFormatted(builder, entry.getValue());
+      }
+      if (iterator.hasNext()) {
+        builder.append(", ");
+      }
+    }
+    builder.append('}');
   }
 
   @Override
@@ -90,9 +186,14 @@ public class DefaultEnhancedPropertyFormatter implements EnhancedPropertyFormatt
       builder.append("[...]");
     }
     else {
+      FormattingBudget budget = FormattingBudget.forBuilder(builder);
       builder.append('[');
       int iMax = array.length - 1;
       for (int i = 0; i <= iMax; i++) {
+        if (budget != null && budget.omitsElement(i)) {
+          FormattingBudget.appendOmitted(builder, array.length - i);
+          break;
+        }
         Object element = array[i];
         if (element != null && element.getClass().isArray()) {
           Class<?> componentType = element.getClass().getComponentType();
@@ -193,9 +294,14 @@ public class DefaultEnhancedPropertyFormatter implements EnhancedPropertyFormatt
       builder.append("null");
     }
     else {
+      FormattingBudget budget = FormattingBudget.forBuilder(builder);
       builder.append('[');
       int iMax = array.length - 1;
       for (int i = 0; i <= iMax; i++) {
+        if (budget != null && budget.omitsElement(i)) {
+          FormattingBudget.appendOmitted(builder, array.length - i);
+          break;
+        }
         appendFormatted(builder, array[i]);
         if (i != iMax) {
           builder.append(", ");
@@ -211,9 +317,14 @@ public class DefaultEnhancedPropertyFormatter implements EnhancedPropertyFormatt
       builder.append("null");
     }
     else {
+      FormattingBudget budget = FormattingBudget.forBuilder(builder);
       builder.append('[');
       int iMax = array.length - 1;
       for (int i = 0; i <= iMax; i++) {
+        if (budget != null && budget.omitsElement(i)) {
+          FormattingBudget.appendOmitted(builder, array.length - i);
+          break;
+        }
         appendFormatted(builder, array[i]);
         if (i != iMax) {
           builder.append(", ");
@@ -229,9 +340,14 @@ public class DefaultEnhancedPropertyFormatter implements EnhancedPropertyFormatt
       builder.append("null");
     }
     else {
+      FormattingBudget budget = FormattingBudget.forBuilder(builder);
       builder.append('[');
       int iMax = array.length - 1;
       for (int i = 0; i <= iMax; i++) {
+        if (budget != null && budget.omitsElement(i)) {
+          FormattingBudget.appendOmitted(builder, array.length - i);
+          break;
+        }
         appendFormatted(builder, array[i]);
         if (i != iMax) {
           builder.append(", ");
@@ -247,9 +363,14 @@ public class DefaultEnhancedPropertyFormatter implements EnhancedPropertyFormatt
       builder.append("null");
     }
     else {
+      FormattingBudget budget = FormattingBudget.forBuilder(builder);
       builder.append('[');
       int iMax = array.length - 1;
       for (int i = 0; i <= iMax; i++) {
+        if (budget != null && budget.omitsElement(i)) {
+          FormattingBudget.appendOmitted(builder, array.length - i);
+          break;
+        }
         appendFormatted(builder, array[i]);
         if (i != iMax) {
           builder.append(", ");
@@ -265,9 +386,14 @@ public class DefaultEnhancedPropertyFormatter implements EnhancedPropertyFormatt
       builder.append("null");
     }
     else {
+      FormattingBudget budget = FormattingBudget.forBuilder(builder);
       builder.append('[');
       int iMax = array.length - 1;
       for (int i = 0; i <= iMax; i++) {
+        if (budget != null && budget.omitsElement(i)) {
+          FormattingBudget.appendOmitted(builder, array.length - i);
+          break;
+        }
         appendFormatted(builder, array[i]);
         if (i != iMax) {
           builder.append(", ");
@@ -283,9 +409,14 @@ public class DefaultEnhancedPropertyFormatter implements EnhancedPropertyFormatt
       builder.append("null");
     }
     else {
+      FormattingBudget budget = FormattingBudget.forBuilder(builder);
       builder.append('[');
       int iMax = array.length - 1;
       for (int i = 0; i <= iMax; i++) {
+        if (budget != null && budget.omitsElement(i)) {
+          FormattingBudget.appendOmitted(builder, array.length - i);
+          break;
+        }
         appendFormatted(builder, array[i]);
         if (i != iMax) {
           builder.append(", ");
@@ -301,9 +432,14 @@ public class DefaultEnhancedPropertyFormatter implements EnhancedPropertyFormatt
       builder.append("null");
     }
     else {
+      FormattingBudget budget = FormattingBudget.forBuilder(builder);
       builder.append('[');
       int iMax = array.length - 1;
       for (int i = 0; i <= iMax; i++) {
+        if (budget != null && budget.omitsElement(i)) {
+          FormattingBudget.appendOmitted(builder, array.length - i);
+          break;
+        }
         appendFormatted(builder, array[i]);
         if (i != iMax) {
           builder.append(", ");
@@ -319,9 +455,14 @@ public class DefaultEnhancedPropertyFormatter implements EnhancedPropertyFormatt
       builder.append("null");
     }
     else {
+      FormattingBudget budget = FormattingBudget.forBuilder(builder);
       builder.append('[');
       int iMax = array.length - 1;
       for (int i = 0; i <= iMax; i++) {
+        if (budget != null && budget.omitsElement(i)) {
+          FormattingBudget.appendOmitted(builder, array.length - i);
+          break;
+        }
         appendFormatted(builder, array[i]);
         if (i != iMax) {
           builder.append(", ");
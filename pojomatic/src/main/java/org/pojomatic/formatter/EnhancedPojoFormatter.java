@@ -7,8 +7,9 @@ import org.pojomatic.PropertyElement;
  * A formatter to aid in creating a {@code String} representation of a POJO.
  *
  * Any implementation of {@code EnhancedPojoFormatter} must have a public no-argument constructor. A new instance will
- * be created for each time that {@link Pojomator#doToString(Object)} is called. Consequently, implementations do
- * <em>not</em> need to be thread safe.
+ * be created for each time that {@link Pojomator#doToString(Object)} is called, unless the implementation is a
+ * {@link StatelessPojoFormatter}. Consequently, implementations which are not stateless do <em>not</em> need to be
+ * thread safe.
  *
  * @since 2.0
  * @see DefaultEnhancedPojoFormatter
@@ -0,0 +1,105 @@
+package org.pojomatic.formatter;
+
+import org.pojomatic.Pojomator;
+import org.pojomatic.annotations.ToStringBudget;
+
+/**
+ * A limit on how much should be appended to a {@code StringBuilder} while formatting a POJO, established by
+ * {@link Pojomator#doToString(Object, int)} or by {@link ToStringBudget @ToStringBudget}. Property formatters which
+ * format arrays or collections can look up the budget for the builder they are appending to with
+ * {@link #forBuilder(StringBuilder)}, and abbreviate once it is used up, as {@link DefaultEnhancedPropertyFormatter}
+ * does.
+ * <p>
+ * Budgets are confined to the thread which established them. Budgets established while another is in effect for the
+ * same builder are never more generous than the enclosing one.
+ * </p>
+ *
+ * @since 2.1
+ */
+public final class FormattingBudget {
+  private static final ThreadLocal<FormattingBudget> CURRENT = new ThreadLocal<>();
+
+  private final StringBuilder builder;
+  private final int limit;
+  private final int maxElements;
+  private final FormattingBudget enclosing;
+
+  private FormattingBudget(StringBuilder builder, int limit, int maxElements, FormattingBudget enclosing) {
+    this.builder = builder;
+    this.limit = limit;
+    this.maxElements = maxElements;
+    this.enclosing = enclosing;
+  }
+
+  /**
+   * Get the budget in effect for appending to a builder.
+   * @param builder the builder being appended to
+   * @return the budget in effect for {@code builder}, or {@code null} if there is none
+   */
+  public static FormattingBudget forBuilder(StringBuilder builder) {
+    FormattingBudget budget = CURRENT.get();
+    return budget != null && budget.builder == builder ? budget : null;
+  }
+
+  /**
+   * Establish a budget for appending to a builder, which remains in effect until {@link #exit()} is called. This is
+   * intended for use by {@link Pojomator} implementations; callers must call {@code exit()} in a {@code finally}
+   * block.
+   * @param builder the builder to be appended to
+   * @param maxChars the maximum number of characters to append to {@code builder}, beyond its current length
+   * @param maxElements the maximum number of elements of any one array or collection to format
+   * @return the budget
+   */
+  public static FormattingBudget enter(StringBuilder builder, int maxChars, int maxElements) {
+    FormattingBudget enclosing = CURRENT.get();
+    int limit = (int) Math.min(Integer.MAX_VALUE, (long) builder.length() + maxChars);
+    if (enclosing != null && enclosing.builder == builder) {
+      limit = Math.min(limit, enclosing.limit);
+      maxElements = Math.min(maxElements, enclosing.maxElements);
+    }
+    FormattingBudget budget = new FormattingBudget(builder, limit, maxElements, enclosing);
+    CURRENT.set(budget);
+    return budget;
+  }
+
+  /**
+   * Stop applying this budget, restoring whichever budget was in effect when it was established.
+   */
+  public void exit() {
+    CURRENT.set(enclosing);
+  }
+
+  /**
+   * Determine whether the builder has reached the length this budget allows.
+   * @return {@code true} if nothing more should be appended
+   */
+  public boolean isExhausted() {
+    return builder.length() >= limit;
+  }
+
+  /**
+   * Determine whether to stop formatting the elements of an array or collection.
+   * @param elementIndex the index of the next element to format
+   * @return {@code true} if the element at {@code elementIndex}, and those after it, should be omitted
+   */
+  public boolean omitsElement(int elementIndex) {
+    return elementIndex >= maxElements || isExhausted();
+  }
+
+  /**
+   * Get the length which the builder may reach under this budget.
+   * @return the length of the builder at which this budget is exhausted
+   */
+  public int getLimit() {
+    return limit;
+  }
+
+  /**
+   * Append the marker for omitted elements of an array or collection, such as {@code "... (99997 more)"}.
+   * @param builder the builder to append to
+   * @param omittedCount the number of elements omitted
+   */
+  public static void appendOmitted(StringBuilder builder, int omittedCount) {
+    builder.append("... (").append(omittedCount).append(" more)");
+  }
+}
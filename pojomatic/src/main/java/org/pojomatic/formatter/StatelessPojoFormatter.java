@@ -0,0 +1,50 @@
+package org.pojomatic.formatter;
+
+import org.pojomatic.Pojomator;
+import org.pojomatic.PropertyElement;
+
+/**
+ * An {@link EnhancedPojoFormatter} which keeps no state between calls, and so can be shared. Rather than tracking
+ * which properties have already been formatted, the methods for property prefixes and suffixes are passed the
+ * position of the property among those being formatted.
+ * <p>
+ * Where a {@link Pojomator} can use an implementation of this interface, it creates a single instance, and uses it for
+ * every call to {@link Pojomator#doToString(Object)}, calling
+ * {@link #appendPropertyPrefix(StringBuilder, PropertyElement, int)} and
+ * {@link #appendPropertySuffix(StringBuilder, PropertyElement, int)} instead of their counterparts in
+ * {@code EnhancedPojoFormatter}. Consequently, implementations <em>must</em> be thread safe. Any implementation must
+ * also have a public no-argument constructor.
+ * </p>
+ * <p>
+ * If a subclass overrides {@link #appendPropertyPrefix(StringBuilder, PropertyElement)} or
+ * {@link #appendPropertySuffix(StringBuilder, PropertyElement)}, but not the corresponding method taking a property
+ * index, it is assumed to depend on the stateful methods; a new instance will then be created for each call to
+ * {@code doToString}, and only the methods of {@code EnhancedPojoFormatter} will be used. The same applies to
+ * subclasses of {@link DefaultEnhancedPojoFormatter} which declare instance fields, since such subclasses were written
+ * when a new instance was created for each call.
+ * </p>
+ *
+ * @since 2.1
+ * @see DefaultEnhancedPojoFormatter
+ */
+public interface StatelessPojoFormatter extends EnhancedPojoFormatter {
+  /**
+   * Append the {@code String} prefix for a given {@code PropertyElement} to the supplied StringBuilder.
+   *
+   * @param builder the builder to append to.
+   * @param property the property for which to generate a prefix
+   * @param propertyIndex the position of {@code property} among the properties being formatted, starting at 0
+   * @see EnhancedPojoFormatter#appendPropertyPrefix(StringBuilder, PropertyElement)
+   */
+  void appendPropertyPrefix(StringBuilder builder, PropertyElement property, int propertyIndex);
+
+  /**
+   * Append the {@code String} suffix for a given {@code PropertyElement} to the supplied StringBuilder.
+   *
+   * @param builder the builder to append to.
+   * @param property the property for which to generate a suffix
+   * @param propertyIndex the position of {@code property} among the properties being formatted, starting at 0
+   * @see EnhancedPojoFormatter#appendPropertySuffix(StringBuilder, PropertyElement)
+   */
+  void appendPropertySuffix(StringBuilder builder, PropertyElement property, int propertyIndex);
+}
@@ -0,0 +1,127 @@
+package org.pojomatic.internal;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.MutableCallSite;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.pojomatic.annotations.EqualsOrderPolicy;
+
+/**
+ * The call site used by {@link org.pojomatic.Pojomator#doEquals(Object, Object)} to compare properties for classes
+ * using {@link EqualsOrderPolicy#ADAPTIVE}. Each property is compared by its own method handle, taking both pojos and
+ * returning whether the property values are equal; the target of this call site chains these together.
+ * <p>
+ * Initially, the target counts which property decides each comparison of unequal pojos. Once enough such comparisons
+ * have been seen, properties are reordered so that those which most often decided inequality are compared first, and
+ * the target is replaced by one which no longer counts. The counts are updated without synchronization; lost updates
+ * only make the profile slightly less accurate.
+ */
+final class AdaptiveEqualsCallSite extends MutableCallSite {
+  /**
+   * The number of comparisons of unequal pojos to profile before reordering properties.
+   */
+  static final int DEFAULT_PROFILE_SIZE = 10000;
+
+  private static final MethodType COMPARE_TYPE = MethodType.methodType(boolean.class, Object.class, Object.class);
+  private static final MethodHandle RECORD_MISMATCH;
+  private static final MethodHandle ALWAYS_TRUE = constant(true);
+  private static final MethodHandle ALWAYS_FALSE = constant(false);
+
+  static {
+    try {
+      RECORD_MISMATCH = MethodHandles.lookup().findVirtual(
+        AdaptiveEqualsCallSite.class, "recordMismatch", MethodType.methodType(boolean.class, int.class));
+    }
+    catch (NoSuchMethodException | IllegalAccessException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private final MethodHandle[] propertyComparisons;
+  private final int profileSize;
+  private final int[] mismatchCounts;
+  private int mismatches;
+  private boolean reordered;
+  private volatile int[] order;
+
+  /**
+   * @param propertyComparisons method handles of type {@code (Object, Object)boolean} comparing each property, in the
+   *   order in which they should initially be compared
+   * @param profileSize the number of comparisons of unequal pojos to profile before reordering properties
+   */
+  AdaptiveEqualsCallSite(MethodHandle[] propertyComparisons, int profileSize) {
+    super(COMPARE_TYPE);
+    this.propertyComparisons = propertyComparisons.clone();
+    this.profileSize = profileSize;
+    this.mismatchCounts = new int[propertyComparisons.length];
+    int[] initialOrder = new int[propertyComparisons.length];
+    for (int i = 0; i < initialOrder.length; i++) {
+      initialOrder[i] = i;
+    }
+    this.order = initialOrder;
+    setTarget(chain(initialOrder, true));
+  }
+
+  /**
+   * Get the order in which properties are currently compared.
+   * @return the indexes, into the array of property comparisons this call site was created with, of the properties
+   *   in the order in which they are compared
+   */
+  int[] getOrder() {
+    return order.clone();
+  }
+
+  private MethodHandle chain(int[] propertyOrder, boolean profile) {
+    MethodHandle chain = ALWAYS_TRUE;
+    for (int i = propertyOrder.length - 1; i >= 0; i--) {
+      int property = propertyOrder[i];
+      MethodHandle mismatch = profile
+        ? MethodHandles.dropArguments(
+          MethodHandles.insertArguments(RECORD_MISMATCH, 0, this, property), 0, Object.class, Object.class)
+        : ALWAYS_FALSE;
+      chain = MethodHandles.guardWithTest(propertyComparisons[property], chain, mismatch);
+    }
+    return chain;
+  }
+
+  @SuppressWarnings("unused") // invoked via RECORD_MISMATCH
+  private boolean recordMismatch(int property) {
+    mismatchCounts[property]++;
+    if (++mismatches >= profileSize && !reordered) {
+      reordered = true;
+      reorder();
+    }
+    return false;
+  }
+
+  private void reorder() {
+    List<Integer> properties = new ArrayList<>();
+    for (int i = 0; i < propertyComparisons.length; i++) {
+      properties.add(i);
+    }
+    // a stable sort, so that properties which never decided inequality keep their initial order
+    Collections.sort(properties, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer left, Integer right) {
+        return Integer.compare(mismatchCounts[right], mismatchCounts[left]);
+      }
+    });
+    int[] newOrder = new int[properties.size()];
+    for (int i = 0; i < newOrder.length; i++) {
+      newOrder[i] = properties.get(i);
+    }
+    setTarget(chain(newOrder, false));
+    order = newOrder;
+    syncAll(new MutableCallSite[] { this });
+  }
+
+  private static MethodHandle constant(boolean value) {
+    return MethodHandles.dropArguments(
+      MethodHandles.constant(boolean.class, value), 0, Object.class, Object.class);
+  }
+}
@@ -0,0 +1,189 @@
+package org.pojomatic.internal;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import org.pojomatic.diff.IndexRange;
+
+/**
+ * Finds the ranges of indexes at which two arrays of the same class differ. Elements are compared as by
+ * {@link BasePojomator#compareArrays(Object, Object)}. Arrays shorter than {@link #PARALLEL_THRESHOLD} are compared
+ * on the calling thread, starting with {@code Arrays.equals}; longer arrays are split into chunks which are scanned in
+ * parallel on a shared {@code ForkJoinPool}.
+ */
+final class ArrayDiffer {
+  /**
+   * The length from which arrays are scanned in parallel.
+   */
+  static final int PARALLEL_THRESHOLD = 1 << 16;
+
+  /**
+   * The largest number of elements scanned by a single task.
+   */
+  static final int CHUNK_SIZE = 1 << 14;
+
+  private static final class SharedPool {
+    static final ForkJoinPool POOL = new ForkJoinPool();
+  }
+
+  private ArrayDiffer() {}
+
+  /**
+   * Find the ranges of indexes at which two arrays differ. Indexes beyond the end of the shorter array are considered
+   * to differ.
+   * @param left an array
+   * @param right an array of the same class as {@code left}
+   * @return the ranges of indexes at which {@code left} and {@code right} differ, in ascending order, with adjacent
+   * ranges merged
+   */
+  static List<IndexRange> differingRanges(Object left, Object right) {
+    int leftLength = Array.getLength(left);
+    int rightLength = Array.getLength(right);
+    int commonLength = Math.min(leftLength, rightLength);
+    List<IndexRange> ranges;
+    if (commonLength < PARALLEL_THRESHOLD) {
+      ranges = leftLength == rightLength && BasePojomator.compareArrays(left, right)
+        ? new ArrayList<IndexRange>()
+        : scanChunk(left, right, 0, commonLength);
+    }
+    else {
+      ranges = SharedPool.POOL.invoke(new ScanTask(left, right, 0, commonLength));
+    }
+    if (leftLength != rightLength) {
+      append(ranges, commonLength, Math.max(leftLength, rightLength));
+    }
+    return ranges;
+  }
+
+  private static final class ScanTask extends RecursiveTask<List<IndexRange>> {
+    private static final long serialVersionUID = 1L;
+
+    private final Object left;
+    private final Object right;
+    private final int from;
+    private final int to;
+
+    ScanTask(Object left, Object right, int from, int to) {
+      this.left = left;
+      this.right = right;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected List<IndexRange> compute() {
+      if (to - from <= CHUNK_SIZE) {
+        return scanChunk(left, right, from, to);
+      }
+      int middle = (from + to) >>> 1;
+      ScanTask lower = new ScanTask(left, right, from, middle);
+      lower.fork();
+      List<IndexRange> upperRanges = new ScanTask(left, right, middle, to).compute();
+      List<IndexRange> ranges = lower.join();
+      for (IndexRange range: upperRanges) {
+        append(ranges, range.start(), range.end());
+      }
+      return ranges;
+    }
+  }
+
+  /**
+   * Append a range, merging it with the last range if they are adjacent.
+   */
+  private static void append(List<IndexRange> ranges, int start, int end) {
+    int last = ranges.size() - 1;
+    if (last >= 0 && ranges.get(last).end() == start) {
+      ranges.set(last, new IndexRange(ranges.get(last).start(), end));
+    }
+    else {
+      ranges.add(new IndexRange(start, end));
+    }
+  }
+
+  private static List<IndexRange> scanChunk(Object left, Object right, int from, int to) {
+    List<IndexRange> ranges = new ArrayList<>();
+    int index = from;
+    while ((index = scan(left, right, index, to, false)) < to) {
+      int end = scan(left, right, index + 1, to, true);
+      ranges.add(new IndexRange(index, end));
+      index = end;
+    }
+    return ranges;
+  }
+
+  /**
+   * Find the first index at which elements are equal, or differ.
+   * @param left an array
+   * @param right an array of the same class as {@code left}
+   * @param from the index to start at
+   * @param to the index to stop at
+   * @param equal {@code true} to look for equal elements, or {@code false} to look for differing ones
+   * @return the first index in {@code [from, to)} at which the elements of {@code left} and {@code right} are equal
+   * or differ, as requested, or {@code to} if there is none
+   */
+  private static int scan(Object left, Object right, int from, int to, boolean equal) {
+    int i = from;
+    Class<?> componentType = left.getClass().getComponentType();
+    if (!componentType.isPrimitive()) {
+      Object[] l = (Object[]) left, r = (Object[]) right;
+      while (i < to && BasePojomator.areObjectValuesEqual(l[i], r[i]) != equal) {
+        i++;
+      }
+    }
+    else if (componentType == boolean.class) {
+      boolean[] l = (boolean[]) left, r = (boolean[]) right;
+      while (i < to && (l[i] == r[i]) != equal) {
+        i++;
+      }
+    }
+    else if (componentType == byte.class) {
+      byte[] l = (byte[]) left, r = (byte[]) right;
+      while (i < to && (l[i] == r[i]) != equal) {
+        i++;
+      }
+    }
+    else if (componentType == char.class) {
+      char[] l = (char[]) left, r = (char[]) right;
+      while (i < to && (l[i] == r[i]) != equal) {
+        i++;
+      }
+    }
+    else if (componentType == short.class) {
+      short[] l = (short[]) left, r = (short[]) right;
+      while (i < to && (l[i] == r[i]) != equal) {
+        i++;
+      }
+    }
+    else if (componentType == int.class) {
+      int[] l = (int[]) left, r = (int[]) right;
+      while (i < to && (l[i] == r[i]) != equal) {
+        i++;
+      }
+    }
+    else if (componentType == long.class) {
+      long[] l = (long[]) left, r = (long[]) right;
+      while (i < to && (l[i] == r[i]) != equal) {
+        i++;
+      }
+    }
+    else if (componentType == float.class) {
+      float[] l = (float[]) left, r = (float[]) right;
+      while (i < to && (Float.floatToIntBits(l[i]) == Float.floatToIntBits(r[i])) != equal) {
+        i++;
+      }
+    }
+    else if (componentType == double.class) {
+      double[] l = (double[]) left, r = (double[]) right;
+      while (i < to && (Double.doubleToLongBits(l[i]) == Double.doubleToLongBits(r[i])) != equal) {
+        i++;
+      }
+    }
+    else {
+      throw new IllegalStateException("unknown primitive type " + componentType.getName());
+    }
+    return i;
+  }
+}
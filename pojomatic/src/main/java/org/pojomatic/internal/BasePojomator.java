@@ -1,33 +1,94 @@
 package org.pojomatic.internal;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.lang.invoke.CallSite;
 import java.lang.invoke.ConstantCallSite;
 import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodHandles;
 import java.lang.invoke.MethodType;
 import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.Array;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.nio.Buffer;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.security.AccessController;
 import java.security.PrivilegedActionException;
 import java.security.PrivilegedExceptionAction;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
 
+import org.pojomatic.ByteBufferOverflowHandler;
+import org.pojomatic.NoPojomaticPropertiesException;
+import org.pojomatic.Pojomatic;
 import org.pojomatic.Pojomator;
 import org.pojomatic.PropertyElement;
+import org.pojomatic.PropertySink;
+import org.pojomatic.annotations.ToStringBudget;
+import org.pojomatic.diff.Differences;
+import org.pojomatic.formatter.DefaultEnhancedPojoFormatter;
+import org.pojomatic.formatter.EnhancedPropertyFormatter;
+import org.pojomatic.formatter.FormattingBudget;
 
 public abstract class BasePojomator<T> implements Pojomator<T> {
   protected final Class<?> pojoClass;
   private final ClassProperties classProperties;
+  private final List<PropertyElement> equalsProperties;
+
+  /**
+   * The comparator returned by {@link #comparator()}.
+   */
+  private final Comparator<T> comparator = new Comparator<T>() {
+    @Override
+    public int compare(T left, T right) {
+      return doCompare(left, right);
+    }
+  };
+  private final IdentityHashCodeCache hashCodeSideTable;
+
+  /**
+   * The encoded class prefix written by {@link #putUtf8ToStringPrefix(ByteBuffer)}.
+   */
+  private volatile byte[] toStringPrefixUtf8;
+
+  /**
+   * A decaying maximum of the lengths of the {@code toString} representations produced so far, or 0 if none have been.
+   * This is read and written without synchronization; a lost update only makes the estimate slightly less accurate.
+   */
+  private int toStringLengthEstimate;
 
   protected BasePojomator(Class<?> pojoClass, ClassProperties classProperties) {
     this.pojoClass = pojoClass;
     this.classProperties = classProperties;
+    this.equalsProperties = Collections.unmodifiableList(new ArrayList<>(classProperties.getEqualsProperties()));
+    this.hashCodeSideTable =
+      classProperties.isHashCodeCached() && classProperties.getHashCodeCacheField() == null
+      ? new IdentityHashCodeCache()
+      : null;
   }
 
   @Override
   public boolean isCompatibleForEquality(Class<?> otherClass) {
-    return classProperties.isCompatibleForEquals(otherClass);
+    // the pojo class itself needs no inspection, which it may have been spared by a pregenerated pojomator
+    return otherClass == pojoClass || classProperties.isCompatibleForEquals(otherClass);
+  }
+
+  @Override
+  public List<PropertyElement> getEqualsProperties() {
+    return equalsProperties;
+  }
+
+  @Override
+  public Comparator<T> comparator() {
+    return comparator;
   }
 
   @Override
@@ -62,10 +123,16 @@ public abstract class BasePojomator<T> implements Pojomator<T> {
    * parameter in {@code methodType} cannot be {@code pojoClass}, but instead must be just {@code Object.class}. The
    * {@code pojoClass} parameter will be stored as static field in the Pojomator class, and passed in from it's
    * bootstrap method.
+   * <p>
+   * This is also used to read and write the field named by {@link org.pojomatic.annotations.CacheHashCode}, in which
+   * case {@code name} is either {@value PojomatorByteCodeGenerator#GET_CACHED_HASH_CODE} or
+   * {@value PojomatorByteCodeGenerator#SET_CACHED_HASH_CODE}, and to compare properties for classes using
+   * {@link org.pojomatic.annotations.EqualsOrderPolicy#ADAPTIVE}, in which case {@code name} is
+   * {@value PojomatorByteCodeGenerator#COMPARE_EQUALS_PROPERTIES}.
    * @param caller A Lookup from the original call site.
    * @param name the name of the dynamic method. This should either be "field_&lt;fieldName&gt;" or "method_&lt;methodName&gt;".
    * @param methodType the type of the dynamic method; the return type should be the type of the aforementioned field
-   *   or method
+   *   or method (or void, for setting the cached hash code), and the first parameter should be {@code Object}
    * @param pojomatorClass the type of the pojomator class
    * @return a CallSite which invokes the method or gets the field value.
    * @throws NoSuchMethodException
@@ -75,10 +142,50 @@ public abstract class BasePojomator<T> implements Pojomator<T> {
   protected static CallSite bootstrap(
       MethodHandles.Lookup caller, String name, MethodType methodType, Class<?> pojomatorClass)
       throws Throwable {
+    if (PojomatorByteCodeGenerator.COMPARE_EQUALS_PROPERTIES.equals(name)) {
+      return makeAdaptiveEqualsCallSite(caller, pojomatorClass);
+    }
     return new ConstantCallSite(
-      MethodHandles.explicitCastArguments(
-        getTypedMethod(caller, name, pojomatorClass),
-        MethodType.methodType(methodType.returnType(), Object.class)));
+      MethodHandles.explicitCastArguments(getTypedMethod(caller, name, pojomatorClass), methodType));
+  }
+
+  /**
+   * Construct the call site comparing properties for classes using
+   * {@link org.pojomatic.annotations.EqualsOrderPolicy#ADAPTIVE}, from the methods generated by
+   * {@link PojomatorByteCodeGenerator} to compare each property.
+   */
+  private static CallSite makeAdaptiveEqualsCallSite(MethodHandles.Lookup caller, Class<?> pojomatorClass)
+      throws Throwable {
+    int propertyCount = (int) caller.findStaticGetter(
+      pojomatorClass, PojomatorByteCodeGenerator.EQUALS_PROPERTY_COUNT_FIELD_NAME, int.class).invokeExact();
+    MethodHandle[] propertyComparisons = new MethodHandle[propertyCount];
+    for (int i = 0; i < propertyCount; i++) {
+      propertyComparisons[i] = caller.findStatic(
+        pojomatorClass,
+        PojomatorByteCodeGenerator.propertyEqualsMethodName(i),
+        MethodType.methodType(boolean.class, Object.class, Object.class));
+    }
+    return new AdaptiveEqualsCallSite(propertyComparisons, AdaptiveEqualsCallSite.DEFAULT_PROFILE_SIZE);
+  }
+
+  /**
+   * Get the hash code of {@code pojo} cached in the side table used for classes annotated with
+   * {@link org.pojomatic.annotations.CacheHashCode} which do not name a field to cache hash codes in.
+   * @param pojo the pojo
+   * @return the cached hash code, or 0 if none is cached
+   */
+  protected final int getSideTableHashCode(Object pojo) {
+    return hashCodeSideTable.get(pojo);
+  }
+
+  /**
+   * Cache the hash code of {@code pojo} in the side table.
+   * @param pojo the pojo
+   * @param hashCode the hash code of {@code pojo}
+   * @see #getSideTableHashCode(Object)
+   */
+  protected final void putSideTableHashCode(Object pojo, int hashCode) {
+    hashCodeSideTable.put(pojo, hashCode);
   }
 
   /**
@@ -108,6 +215,106 @@ public abstract class BasePojomator<T> implements Pojomator<T> {
     return true;
   }
 
+  /**
+   * Order two values of static type Object, for {@link #doCompare(Object, Object)}. If both values are arrays, they are
+   * compared lexicographically; otherwise, {@code instanceValue} must be {@link Comparable}.
+   * @param instanceValue the first value to compare
+   * @param otherValue the second value to compare
+   * @param nullsFirst whether {@code null} is ordered before all other values, rather than after them
+   * @return a negative number, zero, or a positive number as {@code instanceValue} is less than, equal to, or greater
+   * than {@code otherValue}
+   * @throws ClassCastException if the values cannot be compared with each other
+   */
+  @SuppressWarnings("unchecked")
+  protected static int compareValues(Object instanceValue, Object otherValue, boolean nullsFirst) {
+    if (instanceValue == otherValue) {
+      return 0;
+    }
+    if (instanceValue == null) {
+      return nullsFirst ? -1 : 1;
+    }
+    if (otherValue == null) {
+      return nullsFirst ? 1 : -1;
+    }
+    if (instanceValue.getClass().isArray() && otherValue.getClass().isArray()) {
+      return compareArrayValues(instanceValue, otherValue);
+    }
+    return ((Comparable<Object>) instanceValue).compareTo(otherValue);
+  }
+
+  /**
+   * Compare two non-null arrays of the same class lexicographically: by their first differing elements, or, if one is
+   * a prefix of the other, by their lengths. Elements of object arrays are compared as by
+   * {@link #compareValues(Object, Object, boolean)}, with nulls first.
+   */
+  private static int compareArrayValues(Object instanceValue, Object otherValue) {
+    Class<?> componentType = instanceValue.getClass().getComponentType();
+    if (!instanceValue.getClass().equals(otherValue.getClass())) {
+      throw new ClassCastException("cannot compare " + instanceValue.getClass().getName() + " with "
+        + otherValue.getClass().getName());
+    }
+    int commonLength = Math.min(Array.getLength(instanceValue), Array.getLength(otherValue));
+    int result = 0;
+    if (!componentType.isPrimitive()) {
+      Object[] l = (Object[]) instanceValue, r = (Object[]) otherValue;
+      for (int i = 0; result == 0 && i < commonLength; i++) {
+        result = compareValues(l[i], r[i], true);
+      }
+    }
+    else if (componentType == boolean.class) {
+      boolean[] l = (boolean[]) instanceValue, r = (boolean[]) otherValue;
+      for (int i = 0; result == 0 && i < commonLength; i++) {
+        result = Boolean.compare(l[i], r[i]);
+      }
+    }
+    else if (componentType == byte.class) {
+      byte[] l = (byte[]) instanceValue, r = (byte[]) otherValue;
+      for (int i = 0; result == 0 && i < commonLength; i++) {
+        result = Byte.compare(l[i], r[i]);
+      }
+    }
+    else if (componentType == char.class) {
+      char[] l = (char[]) instanceValue, r = (char[]) otherValue;
+      for (int i = 0; result == 0 && i < commonLength; i++) {
+        result = Character.compare(l[i], r[i]);
+      }
+    }
+    else if (componentType == short.class) {
+      short[] l = (short[]) instanceValue, r = (short[]) otherValue;
+      for (int i = 0; result == 0 && i < commonLength; i++) {
+        result = Short.compare(l[i], r[i]);
+      }
+    }
+    else if (componentType == int.class) {
+      int[] l = (int[]) instanceValue, r = (int[]) otherValue;
+      for (int i = 0; result == 0 && i < commonLength; i++) {
+        result = Integer.compare(l[i], r[i]);
+      }
+    }
+    else if (componentType == long.class) {
+      long[] l = (long[]) instanceValue, r = (long[]) otherValue;
+      for (int i = 0; result == 0 && i < commonLength; i++) {
+        result = Long.compare(l[i], r[i]);
+      }
+    }
+    else if (componentType == float.class) {
+      float[] l = (float[]) instanceValue, r = (float[]) otherValue;
+      for (int i = 0; result == 0 && i < commonLength; i++) {
+        result = Float.compare(l[i], r[i]);
+      }
+    }
+    else if (componentType == double.class) {
+      double[] l = (double[]) instanceValue, r = (double[]) otherValue;
+      for (int i = 0; result == 0 && i < commonLength; i++) {
+        result = Double.compare(l[i], r[i]);
+      }
+    }
+    else {
+      throw new IllegalStateException("unknown primitive type " + componentType.getName());
+    }
+    return result != 0 ? result : Integer.compare(Array.getLength(instanceValue), Array.getLength(otherValue));
+  }
+
   /**
    * Compare two values of array type for equality. They will be considered
    * equal iff they have the same class, and (recursively) an equal set of elements.
@@ -213,72 +420,1325 @@ public abstract class BasePojomator<T> implements Pojomator<T> {
     throw new IllegalStateException("unknown primitive type " + componentType.getName());
   }
 
-  protected static <T> T checkNotNull(T reference) {
-    if (reference == null) {
-      throw new NullPointerException();
+  @Override
+  public String doToString(T instance, int maxChars) {
+    checkNotNull(instance);
+    if (maxChars < 0) {
+      throw new IllegalArgumentException("maxChars must not be negative, but was " + maxChars);
     }
-    return reference;
+    int estimate = toStringLengthEstimate;
+    StringBuilder builder = new StringBuilder(Math.min(maxChars, estimate == 0 ? 16 : estimate));
+    FormattingBudget budget = FormattingBudget.enter(builder, maxChars, Integer.MAX_VALUE);
+    try {
+      appendTo(instance, builder);
+    }
+    finally {
+      budget.exit();
+    }
+    truncate(builder, 0, maxChars);
+    return builder.toString();
   }
 
-  protected static <T> T checkNotNull(T reference, String message) {
-    if (reference == null) {
-      throw new NullPointerException(message);
+  /**
+   * Append the {@code toString} representation of a pojo whose class has a {@link ToStringBudget}, within that
+   * budget. The generated {@link #appendTo(Object, StringBuilder)} for such classes delegates to this.
+   * @param instance the pojo
+   * @param builder the builder to append to
+   */
+  protected final void appendWithinBudget(T instance, StringBuilder builder) {
+    ToStringBudget limits = classProperties.getToStringBudget();
+    int start = builder.length();
+    FormattingBudget budget = FormattingBudget.enter(builder, limits.maxChars(), limits.maxElements());
+    try {
+      appendWithoutBudget(instance, builder);
     }
-    return reference;
+    finally {
+      budget.exit();
+    }
+    truncate(builder, start, limits.maxChars());
   }
 
-  protected static void checkNotNullPop(Object reference) {
-    if (reference == null) {
-      throw new NullPointerException();
+  /**
+   * Append the {@code toString} representation of a pojo, disregarding any {@link ToStringBudget}. The generated
+   * {@link #appendTo(Object, StringBuilder)} delegates to this, through {@link #appendWithinBudget} for classes with
+   * a {@code ToStringBudget}.
+   * @param instance the pojo
+   * @param builder the builder to append to
+   */
+  protected abstract void appendWithoutBudget(T instance, StringBuilder builder);
+
+  /**
+   * The marker for a truncated {@code toString} representation.
+   */
+  private static final String TRUNCATION_MARKER = "...";
+
+  /**
+   * Truncate what has been appended to a builder to a maximum length, ending it with {@link #TRUNCATION_MARKER} if
+   * there is room.
+   * @param builder the builder
+   * @param start the length of {@code builder} before appending
+   * @param maxChars the maximum number of characters to keep after {@code start}
+   */
+  private static void truncate(StringBuilder builder, int start, int maxChars) {
+    if (builder.length() - start > maxChars) {
+      if (maxChars >= TRUNCATION_MARKER.length()) {
+        builder.setLength(start + maxChars - TRUNCATION_MARKER.length());
+        builder.append(TRUNCATION_MARKER);
+      }
+      else {
+        builder.setLength(start + maxChars);
+      }
     }
   }
 
-  protected void checkCompatibleForEquality(T instance, String label) {
-    if (!isCompatibleForEquality(instance.getClass())) {
-      throw new IllegalArgumentException(
-        label + " has type " + instance.getClass().getName()
-        + " which is not compatible for equality with " + pojoClass.getName());
+  /**
+   * Get the value of a property used for equals, boxing primitive values.
+   * @param instance the pojo, which must be an instance of the pojo class
+   * @param index the index of the property in {@link #getEqualsProperties()}
+   * @return the value of the property
+   * @throws IndexOutOfBoundsException if {@code index} is not the index of a property used for equals
+   */
+  protected abstract Object getEqualsPropertyValue(Object instance, int index);
+
+  /**
+   * Pass the value of each property used for equals to {@code sink}, in the order of {@link #getEqualsProperties()},
+   * as {@link #hashInto(Object, PropertySink)} does for the properties used for hashCode.
+   * @param instance the pojo, which must be an instance of the pojo class
+   * @param sink the receiver of the property values
+   * @throws NullPointerException if {@code instance} or {@code sink} is {@code null}
+   */
+  protected abstract void equalsPropertiesInto(Object instance, PropertySink sink);
+
+  @Override
+  public Differences doDeepDiff(T instance, T other) {
+    return DeepDiffer.deepen(doDiff(instance, other));
+  }
+
+  /**
+   * The largest number of properties for which {@link #diffMask(Object, Object)} is generated.
+   */
+  static final int MAX_DIFF_MASK_PROPERTIES = Long.SIZE;
+
+  /**
+   * Compute a mask of differing properties. This is generated only for classes with at most
+   * {@value #MAX_DIFF_MASK_PROPERTIES} properties used for equals; for others, only
+   * {@link #diffBitSet(Object, Object)} is generated.
+   */
+  @Override
+  public long diffMask(T instance, T other) {
+    throw new UnsupportedOperationException(
+      "pojo class " + pojoClass.getName() + " has more than " + MAX_DIFF_MASK_PROPERTIES
+      + " properties used for equals; use diffBitSet instead");
+  }
+
+  @Override
+  public CharSequence lazyToString(T instance) {
+    return new LazyToString<>(this, checkNotNull(instance));
+  }
+
+  @Override
+  public CharSequence deferredToString(T instance) {
+    return DEFERRED_TO_STRINGS.get().bind(this, checkNotNull(instance));
+  }
+
+  /**
+   * Estimates of the {@code toString} length are capped at this, so that a single huge representation does not cause
+   * large builders to be allocated for many calls afterwards.
+   */
+  private static final int MAX_TO_STRING_LENGTH_ESTIMATE = 64 * 1024;
+
+  /**
+   * The views returned by {@link #deferredToString(Object)}, one per thread, shared by all pojomators. This is static,
+   * rather than one per pojomator, because a thread local value referring to the pojomator which owns the thread local
+   * would keep the pojomator, and its pojo class, reachable for as long as the thread lives.
+   */
+  private static final ThreadLocal<DeferredToString> DEFERRED_TO_STRINGS = new ThreadLocal<DeferredToString>() {
+    @Override
+    protected DeferredToString initialValue() {
+      return new DeferredToString();
+    }
+  };
+
+  /**
+   * Create a builder for {@link #doToString(Object)}, sized to hold a representation of the length estimated from those
+   * produced so far.
+   * @param initialEstimate the estimated length to use before any representations have been produced
+   * @return a new builder
+   */
+  protected final StringBuilder newToStringBuilder(int initialEstimate) {
+    int estimate = toStringLengthEstimate;
+    if (estimate == 0) {
+      estimate = initialEstimate;
     }
+    // allow some headroom, so that a representation slightly longer than the estimate does not double the builder
+    return new StringBuilder(estimate + (estimate >> 3));
   }
 
   /**
-   * Get a method handle to access a field or invoke a no-arg method.
-   * @param caller A Lookup from the original call site.
-   * @param name the name of the dynamic method. This should be of the form "get_xxx", where "element_xxx" will be a
-   * static field containing a {@link PropertyElement} instance referring to the property to be accessed.
-   * @param pojomatorClass the type of the pojomator class
-   * @return the MethodHandle
-   * @throws Throwable
+   * Finish {@link #doToString(Object)}, updating the estimated length of representations from {@code builder}.
+   * @param builder the builder created by {@link #newToStringBuilder(int)}, holding the representation
+   * @return the representation
    */
-  private static MethodHandle getTypedMethod(
-    final MethodHandles.Lookup caller, final String name, final Class<?> pojomatorClass)
-    throws Throwable {
+  protected final String finishToString(StringBuilder builder) {
+    int length = Math.min(builder.length(), MAX_TO_STRING_LENGTH_ESTIMATE);
+    int estimate = toStringLengthEstimate;
+    // jump up to longer lengths at once, but decay slowly towards shorter ones
+    toStringLengthEstimate = length >= estimate ? length : estimate - ((estimate - length) >> 4);
+    return builder.toString();
+  }
+
+  /**
+   * Get the current estimate of the length of {@code toString} representations.
+   * @return the estimate, or 0 if no representations have been produced yet
+   */
+  int getToStringLengthEstimate() {
+    return toStringLengthEstimate;
+  }
+
+  /**
+   * Builders for {@link #appendTo(Object, Appendable)} and {@link #writeUtf8(Object, ByteBuffer)} to reuse. A builder
+   * is removed while in use, so that a nested call (from a property formatter, say) uses a builder of its own.
+   */
+  private static final ThreadLocal<StringBuilder> REUSABLE_BUILDERS = new ThreadLocal<>();
+
+  /**
+   * Builders which have grown beyond this capacity are not kept for reuse, so that formatting a single large pojo
+   * does not pin a large buffer to the thread.
+   */
+  private static final int MAX_REUSED_BUILDER_CAPACITY = 16 * 1024;
+
+  /**
+   * Buffers for {@link #copy(StringBuilder, Appendable)} to reuse, removed while in use as for
+   * {@link #REUSABLE_BUILDERS}.
+   */
+  private static final ThreadLocal<char[]> REUSABLE_COPY_BUFFERS = new ThreadLocal<>();
+
+  private static final int COPY_BUFFER_SIZE = 1024;
+
+  @Override
+  public void appendTo(T instance, Appendable appendable) throws IOException {
+    if (appendable instanceof StringBuilder) {
+      appendTo(instance, (StringBuilder) appendable);
+      return;
+    }
+    checkNotNull(appendable);
+    StringBuilder builder = borrowBuilder();
     try {
-      return AccessController.doPrivileged(new PrivilegedExceptionAction<MethodHandle>() {
-        @Override
-        public MethodHandle run() throws Exception {
-          return getTypedMethodPrivileged(caller, name, pojomatorClass);
-        }
-      });
-    } catch (PrivilegedActionException e) {
-      throw e.getCause();
+      appendTo(instance, builder);
+      copy(builder, appendable);
+    }
+    finally {
+      returnBuilder(builder);
     }
   }
 
+  @Override
+  public void writeUtf8(T instance, ByteBuffer buffer) {
+    encodeUtf8(instance, buffer, null);
+  }
+
+  @Override
+  public ByteBuffer writeUtf8(T instance, ByteBuffer buffer, ByteBufferOverflowHandler overflowHandler) {
+    return encodeUtf8(instance, buffer, checkNotNull(overflowHandler));
+  }
+
   /**
-   * Do the work for {@link #getTypedMethod(java.lang.invoke.MethodHandles.Lookup, String, Class)}. This method will be
-   * run inside of a {@link AccessController#doPrivileged(PrivilegedExceptionAction)} block, hence should make sure to
-   * not run untrusted code.
-   * @param pojomatorClass the type of the pojomator class
-   * @return the MethodHandle
-   * @param pojomatorClass
-   * @return the MethodHandle
-   * @throws NoSuchFieldException
-   * @throws IllegalAccessException
+   * @param overflowHandler the handler for the buffer filling up, or {@code null} to throw a
+   *   {@code BufferOverflowException} if {@code buffer} is too small
    */
-  private static MethodHandle getTypedMethodPrivileged(
-    MethodHandles.Lookup caller, String name, Class<?> pojomatorClass)
-    throws NoSuchFieldException, IllegalAccessException {
+  private ByteBuffer encodeUtf8(T instance, ByteBuffer buffer, ByteBufferOverflowHandler overflowHandler) {
+    checkNotNull(instance);
+    checkNotNull(buffer);
+    int start = buffer.position();
+    try {
+      if (writeUtf8Directly(instance, buffer)) {
+        return buffer;
+      }
+    }
+    catch (BufferOverflowException e) {
+      // discard what was written, and start again through a builder, which can tell how many bytes are needed
+      ((Buffer) buffer).position(start);
+    }
+    StringBuilder builder = borrowBuilder();
+    try {
+      appendTo(instance, builder);
+      return Utf8Encoder.encode(builder, buffer, overflowHandler);
+    }
+    finally {
+      returnBuilder(builder);
+    }
+  }
+
+  /**
+   * Copy the contents of a builder to an appendable. {@link Writer#append(CharSequence)} would convert the builder to a
+   * {@code String}, so a {@code Writer} is instead given the contents in chunks, through a reused {@code char[]}.
+   */
+  private static void copy(StringBuilder builder, Appendable appendable) throws IOException {
+    if (!(appendable instanceof Writer)) {
+      appendable.append(builder);
+      return;
+    }
+    Writer writer = (Writer) appendable;
+    char[] chars = REUSABLE_COPY_BUFFERS.get();
+    if (chars == null) {
+      chars = new char[COPY_BUFFER_SIZE];
+    }
+    else {
+      REUSABLE_COPY_BUFFERS.set(null);
+    }
+    try {
+      for (int start = 0; start < builder.length(); start += chars.length) {
+        int end = Math.min(builder.length(), start + chars.length);
+        builder.getChars(start, end, chars, 0);
+        writer.write(chars, 0, end - start);
+      }
+    }
+    finally {
+      REUSABLE_COPY_BUFFERS.set(chars);
+    }
+  }
+
+  /**
+   * Write the {@code toString} representation of an instance, encoded as UTF-8, straight into a buffer, without
+   * building it in a {@code StringBuilder} first. This is generated for classes using the default pojo and property
+   * formatters, and no {@link ToStringBudget}; otherwise, this returns {@code false}, and
+   * {@link #writeUtf8(Object, ByteBuffer)} builds the representation as characters, and then encodes those.
+   * @param instance the instance to write the representation of
+   * @param buffer the buffer to write to
+   * @return {@code true} if the representation was written, or {@code false} if this pojomator cannot write directly
+   * @throws BufferOverflowException if {@code buffer} fills up, in which case part of the representation may have been
+   *   written
+   */
+  protected boolean writeUtf8Directly(T instance, ByteBuffer buffer) {
+    return false;
+  }
+
+  /**
+   * Write the class prefix of the default pojo formatter, encoded once, when first needed.
+   * @param buffer the buffer to write to
+   */
+  protected final void putUtf8ToStringPrefix(ByteBuffer buffer) {
+    byte[] prefix = toStringPrefixUtf8;
+    if (prefix == null) {
+      StringBuilder builder = new StringBuilder();
+      new DefaultEnhancedPojoFormatter().appendToStringPrefix(builder, pojoClass);
+      toStringPrefixUtf8 = prefix = builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+    buffer.put(prefix);
+  }
+
+  /*
+   * Writers for the code generated for writeUtf8Directly, each writing a value as the default property formatter
+   * would format it. Each either writes the whole value, or throws a BufferOverflowException.
+   */
+
+  private static final byte[] NULL_UTF8 = { 'n', 'u', 'l', 'l' };
+  private static final byte[] TRUE_UTF8 = { 't', 'r', 'u', 'e' };
+  private static final byte[] FALSE_UTF8 = { 'f', 'a', 'l', 's', 'e' };
+  private static final byte[] ELEMENT_SEPARATOR_UTF8 = { ',', ' ' };
+
+  protected static void putUtf8(ByteBuffer buffer, boolean value) {
+    buffer.put(value ? TRUE_UTF8 : FALSE_UTF8);
+  }
+
+  /**
+   * Write a {@code byte}, {@code short} or {@code int}.
+   */
+  protected static void putUtf8(ByteBuffer buffer, int value) {
+    putUtf8(buffer, (long) value);
+  }
+
+  protected static void putUtf8(ByteBuffer buffer, long value) {
+    // work with the negated value, which, unlike the absolute value, cannot overflow
+    long negative = value < 0 ? value : -value;
+    int length = value < 0 ? 2 : 1;
+    for (long rest = negative; rest <= -10; rest /= 10) {
+      length++;
+    }
+    if (length > buffer.remaining()) {
+      throw new BufferOverflowException();
+    }
+    int position = buffer.position();
+    if (value < 0) {
+      buffer.put(position, (byte) '-');
+    }
+    for (int i = position + length - 1; i >= position + (value < 0 ? 1 : 0); i--) {
+      buffer.put(i, (byte) ('0' - negative % 10));
+      negative /= 10;
+    }
+    ((Buffer) buffer).position(position + length);
+  }
+
+  /**
+   * Write a {@code char} quoted, with ISO control characters as unicode escapes.
+   */
+  protected static void putUtf8(ByteBuffer buffer, char value) {
+    if (Character.isISOControl(value)) {
+      if (buffer.remaining() < 8) {
+        throw new BufferOverflowException();
+      }
+      buffer.put((byte) '\'').put((byte) '\\').put((byte) 'u');
+      for (int shift = 12; shift >= 0; shift -= 4) {
+        buffer.put((byte) HEX_DIGITS[value >> shift & 0xF]);
+      }
+      buffer.put((byte) '\'');
+    }
+    else {
+      if (buffer.remaining() < 5) {
+        // enough for any char; a char which would in fact fit is written by the fallback instead
+        throw new BufferOverflowException();
+      }
+      buffer.put((byte) '\'');
+      putUtf8Char(buffer, value);
+      buffer.put((byte) '\'');
+    }
+  }
+
+  /**
+   * Write a single {@code char}, which must fit in the buffer, encoding an unpaired surrogate as {@code '?'}, as
+   * {@code String.getBytes(UTF_8)} does.
+   */
+  private static void putUtf8Char(ByteBuffer buffer, char c) {
+    if (c < 0x80) {
+      buffer.put((byte) c);
+    }
+    else if (c < 0x800) {
+      buffer.put((byte) (0xC0 | c >> 6)).put((byte) (0x80 | c & 0x3F));
+    }
+    else if (Character.isSurrogate(c)) {
+      buffer.put((byte) '?');
+    }
+    else {
+      buffer.put((byte) (0xE0 | c >> 12)).put((byte) (0x80 | c >> 6 & 0x3F)).put((byte) (0x80 | c & 0x3F));
+    }
+  }
+
+  protected static void putUtf8(ByteBuffer buffer, float value) {
+    putAscii(buffer, Float.toString(value));
+  }
+
+  protected static void putUtf8(ByteBuffer buffer, double value) {
+    putAscii(buffer, Double.toString(value));
+  }
+
+  private static void putAscii(ByteBuffer buffer, String ascii) {
+    int length = ascii.length();
+    if (length > buffer.remaining()) {
+      throw new BufferOverflowException();
+    }
+    for (int i = 0; i < length; i++) {
+      buffer.put((byte) ascii.charAt(i));
+    }
+  }
+
+  private static void putUtf8(ByteBuffer buffer, String value) {
+    int length = value.length();
+    if (length > buffer.remaining()) {
+      throw new BufferOverflowException();
+    }
+    int position = buffer.position();
+    for (int i = 0; i < length; i++) {
+      char c = value.charAt(i);
+      if (c >= 0x80) {
+        // not all ASCII; encode the rest as a whole, so that surrogate pairs are handled
+        ((Buffer) buffer).position(position + i);
+        Utf8Encoder.encode(value.substring(i), buffer, null);
+        return;
+      }
+      buffer.put(position + i, (byte) c);
+    }
+    ((Buffer) buffer).position(position + length);
+  }
+
+  /**
+   * Write a reference value: strings, boxed integral values and booleans, and, if {@code possibleArray} is
+   * {@code true}, primitive arrays, directly; anything else is formatted by {@code formatter} into a builder, and
+   * then encoded.
+   * @param buffer the buffer to write to
+   * @param formatter the property formatter, which is a {@link org.pojomatic.formatter.DefaultEnhancedPropertyFormatter}
+   * @param value the value to write
+   * @param possibleArray whether the value should be formatted by
+   *   {@link EnhancedPropertyFormatter#appendFormattedPossibleArray(StringBuilder, Object)} rather than
+   *   {@link EnhancedPropertyFormatter#appendFormatted(StringBuilder, Object)}
+   */
+  protected static void putUtf8Formatted(
+    ByteBuffer buffer, EnhancedPropertyFormatter formatter, Object value, boolean possibleArray) {
+    if (value == null) {
+      buffer.put(NULL_UTF8);
+    }
+    else if (value instanceof String) {
+      putUtf8(buffer, (String) value);
+    }
+    else if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+      putUtf8(buffer, ((Number) value).longValue());
+    }
+    else if (value instanceof Boolean) {
+      putUtf8(buffer, ((Boolean) value).booleanValue());
+    }
+    else if (possibleArray && value.getClass().isArray() && value.getClass().getComponentType().isPrimitive()) {
+      putUtf8PrimitiveArray(buffer, value);
+    }
+    else {
+      StringBuilder builder = borrowBuilder();
+      try {
+        if (possibleArray) {
+          formatter.appendFormattedPossibleArray(builder, value);
+        }
+        else {
+          formatter.appendFormatted(builder, value);
+        }
+        Utf8Encoder.encode(builder, buffer, null);
+      }
+      finally {
+        returnBuilder(builder);
+      }
+    }
+  }
+
+  private static void putUtf8PrimitiveArray(ByteBuffer buffer, Object array) {
+    Class<?> componentType = array.getClass().getComponentType();
+    if (componentType == boolean.class) {
+      putUtf8(buffer, (boolean[]) array);
+    }
+    else if (componentType == byte.class) {
+      putUtf8(buffer, (byte[]) array);
+    }
+    else if (componentType == char.class) {
+      putUtf8(buffer, (char[]) array);
+    }
+    else if (componentType == short.class) {
+      putUtf8(buffer, (short[]) array);
+    }
+    else if (componentType == int.class) {
+      putUtf8(buffer, (int[]) array);
+    }
+    else if (componentType == long.class) {
+      putUtf8(buffer, (long[]) array);
+    }
+    else if (componentType == float.class) {
+      putUtf8(buffer, (float[]) array);
+    }
+    else if (componentType == double.class) {
+      putUtf8(buffer, (double[]) array);
+    }
+    else {
+      throw new IllegalStateException("unknown primitive type " + componentType.getName());
+    }
+  }
+
+  protected static void putUtf8(ByteBuffer buffer, boolean[] array) {
+    if (array == null) {
+      buffer.put(NULL_UTF8);
+      return;
+    }
+    buffer.put((byte) '[');
+    for (int i = 0; i < array.length; i++) {
+      if (i > 0) {
+        buffer.put(ELEMENT_SEPARATOR_UTF8);
+      }
+      putUtf8(buffer, array[i]);
+    }
+    buffer.put((byte) ']');
+  }
+
+  protected static void putUtf8(ByteBuffer buffer, byte[] array) {
+    if (array == null) {
+      buffer.put(NULL_UTF8);
+      return;
+    }
+    buffer.put((byte) '[');
+    for (int i = 0; i < array.length; i++) {
+      if (i > 0) {
+        buffer.put(ELEMENT_SEPARATOR_UTF8);
+      }
+      putUtf8(buffer, (long) array[i]);
+    }
+    buffer.put((byte) ']');
+  }
+
+  protected static void putUtf8(ByteBuffer buffer, char[] array) {
+    if (array == null) {
+      buffer.put(NULL_UTF8);
+      return;
+    }
+    buffer.put((byte) '[');
+    for (int i = 0; i < array.length; i++) {
+      if (i > 0) {
+        buffer.put(ELEMENT_SEPARATOR_UTF8);
+      }
+      putUtf8(buffer, array[i]);
+    }
+    buffer.put((byte) ']');
+  }
+
+  protected static void putUtf8(ByteBuffer buffer, short[] array) {
+    if (array == null) {
+      buffer.put(NULL_UTF8);
+      return;
+    }
+    buffer.put((byte) '[');
+    for (int i = 0; i < array.length; i++) {
+      if (i > 0) {
+        buffer.put(ELEMENT_SEPARATOR_UTF8);
+      }
+      putUtf8(buffer, (long) array[i]);
+    }
+    buffer.put((byte) ']');
+  }
+
+  protected static void putUtf8(ByteBuffer buffer, int[] array) {
+    if (array == null) {
+      buffer.put(NULL_UTF8);
+      return;
+    }
+    buffer.put((byte) '[');
+    for (int i = 0; i < array.length; i++) {
+      if (i > 0) {
+        buffer.put(ELEMENT_SEPARATOR_UTF8);
+      }
+      putUtf8(buffer, (long) array[i]);
+    }
+    buffer.put((byte) ']');
+  }
+
+  protected static void putUtf8(ByteBuffer buffer, long[] array) {
+    if (array == null) {
+      buffer.put(NULL_UTF8);
+      return;
+    }
+    buffer.put((byte) '[');
+    for (int i = 0; i < array.length; i++) {
+      if (i > 0) {
+        buffer.put(ELEMENT_SEPARATOR_UTF8);
+      }
+      putUtf8(buffer, array[i]);
+    }
+    buffer.put((byte) ']');
+  }
+
+  protected static void putUtf8(ByteBuffer buffer, float[] array) {
+    if (array == null) {
+      buffer.put(NULL_UTF8);
+      return;
+    }
+    buffer.put((byte) '[');
+    for (int i = 0; i < array.length; i++) {
+      if (i > 0) {
+        buffer.put(ELEMENT_SEPARATOR_UTF8);
+      }
+      putUtf8(buffer, array[i]);
+    }
+    buffer.put((byte) ']');
+  }
+
+  protected static void putUtf8(ByteBuffer buffer, double[] array) {
+    if (array == null) {
+      buffer.put(NULL_UTF8);
+      return;
+    }
+    buffer.put((byte) '[');
+    for (int i = 0; i < array.length; i++) {
+      if (i > 0) {
+        buffer.put(ELEMENT_SEPARATOR_UTF8);
+      }
+      putUtf8(buffer, array[i]);
+    }
+    buffer.put((byte) ']');
+  }
+
+  private static StringBuilder borrowBuilder() {
+    StringBuilder builder = REUSABLE_BUILDERS.get();
+    if (builder == null) {
+      return new StringBuilder();
+    }
+    REUSABLE_BUILDERS.set(null);
+    return builder;
+  }
+
+  private static void returnBuilder(StringBuilder builder) {
+    if (builder.capacity() <= MAX_REUSED_BUILDER_CAPACITY) {
+      builder.setLength(0);
+      REUSABLE_BUILDERS.set(builder);
+    }
+  }
+
+  @Override
+  public long doLongHashCode(T instance) {
+    return doLongHashCode(instance, 0L);
+  }
+
+  /*
+   * Mixing functions for doLongHashCode. These follow xxHash64: each value is folded into the hash with a multiply and
+   * rotate round, and the final hash is run through an avalanche step so that every input bit affects every output bit.
+   */
+
+  private static final long PRIME64_1 = 0x9E3779B185EBCA87L;
+  private static final long PRIME64_2 = 0xC2B2AE3D27D4EB4FL;
+  private static final long PRIME64_3 = 0x165667B19E3779F9L;
+  private static final long PRIME64_4 = 0x85EBCA77C2B2AE63L;
+  private static final long PRIME64_5 = 0x27D4EB2F165667C5L;
+
+  /** The value mixed in for {@code null} references, chosen to differ from the contribution of 0 or an empty array. */
+  private static final long NULL_LONG_HASH = PRIME64_3;
+
+  /**
+   * Compute the initial state for a 64 bit hash.
+   * @param seed the seed
+   * @return the initial hash state
+   */
+  protected static long longHashStart(long seed) {
+    return seed + PRIME64_5;
+  }
+
+  /**
+   * Complete a 64 bit hash.
+   * @param hash the hash state, after all values have been mixed in
+   * @return the final hash
+   */
+  protected static long longHashFinish(long hash) {
+    hash ^= hash >>> 33;
+    hash *= PRIME64_2;
+    hash ^= hash >>> 29;
+    hash *= PRIME64_3;
+    hash ^= hash >>> 32;
+    return hash;
+  }
+
+  /**
+   * Mix a value into a 64 bit hash. Values of type {@code boolean}, {@code byte}, {@code char}, {@code short},
+   * {@code int} and {@code float} are widened to {@code long} (after conversion to bits, for floats) before being
+   * passed in.
+   * @param hash the current hash state
+   * @param value the value to mix in
+   * @return the new hash state
+   */
+  protected static long longHashMix(long hash, long value) {
+    hash ^= Long.rotateLeft(value * PRIME64_2, 31) * PRIME64_1;
+    return Long.rotateLeft(hash, 27) * PRIME64_1 + PRIME64_4;
+  }
+
+  /**
+   * Mix an object into a 64 bit hash. Strings are mixed in by their characters, boxed {@code Long}s and
+   * {@code Double}s by their full 64 bit value (as for primitives), and instances of classes with Pojomatic
+   * properties by their own pojomator's {@link Pojomator#doLongHashCode(Object, long) doLongHashCode}; other objects
+   * by their {@code hashCode}.
+   * @param hash the current hash state
+   * @param value the value to mix in, possibly {@code null}
+   * @return the new hash state
+   */
+  protected static long longHashMix(long hash, Object value) {
+    if (value == null) {
+      return longHashMix(hash, NULL_LONG_HASH);
+    }
+    if (value instanceof String) {
+      return longHashMix(hash, (String) value);
+    }
+    if (value instanceof Long) {
+      return longHashMix(hash, ((Long) value).longValue());
+    }
+    if (value instanceof Double) {
+      return longHashMix(hash, Double.doubleToLongBits((Double) value));
+    }
+    Pojomator<Object> pojomator = nestedPojomator(value.getClass());
+    if (pojomator != null) {
+      return longHashMix(hash, pojomator.doLongHashCode(value, hash));
+    }
+    return longHashMix(hash, value.hashCode());
+  }
+
+  /**
+   * Mix an object which might be an array into a 64 bit hash.
+   * @param hash the current hash state
+   * @param value the value to mix in, possibly {@code null}
+   * @param deepArray whether to mix in the elements of nested arrays by their contents
+   * @return the new hash state
+   */
+  protected static long longHashMixPossibleArray(long hash, Object value, boolean deepArray) {
+    if (value == null || !value.getClass().isArray()) {
+      return longHashMix(hash, value);
+    }
+    Class<?> componentType = value.getClass().getComponentType();
+    if (! componentType.isPrimitive()) {
+      return longHashMix(hash, (Object[]) value, deepArray);
+    }
+    if (componentType == boolean.class) {
+      return longHashMix(hash, (boolean[]) value);
+    }
+    if (componentType == byte.class) {
+      return longHashMix(hash, (byte[]) value);
+    }
+    if (componentType == char.class) {
+      return longHashMix(hash, (char[]) value);
+    }
+    if (componentType == short.class) {
+      return longHashMix(hash, (short[]) value);
+    }
+    if (componentType == int.class) {
+      return longHashMix(hash, (int[]) value);
+    }
+    if (componentType == long.class) {
+      return longHashMix(hash, (long[]) value);
+    }
+    if (componentType == float.class) {
+      return longHashMix(hash, (float[]) value);
+    }
+    if (componentType == double.class) {
+      return longHashMix(hash, (double[]) value);
+    }
+    throw new IllegalStateException("unknown primitive type " + componentType.getName());
+  }
+
+  /**
+   * Mix an array of objects into a 64 bit hash.
+   * @param hash the current hash state
+   * @param array the array to mix in, possibly {@code null}
+   * @param deepArray whether to mix in the elements of nested arrays by their contents
+   * @return the new hash state
+   */
+  protected static long longHashMix(long hash, Object[] array, boolean deepArray) {
+    if (array == null) {
+      return longHashMix(hash, NULL_LONG_HASH);
+    }
+    hash = longHashMix(hash, array.length);
+    for (Object element: array) {
+      hash = deepArray ? longHashMixPossibleArray(hash, element, true) : longHashMix(hash, element);
+    }
+    return hash;
+  }
+
+  private static long longHashMix(long hash, String string) {
+    int length = string.length();
+    hash = longHashMix(hash, length);
+    int i = 0;
+    for (; i + 4 <= length; i += 4) {
+      hash = longHashMix(hash,
+        string.charAt(i) | (long) string.charAt(i + 1) << 16
+        | (long) string.charAt(i + 2) << 32 | (long) string.charAt(i + 3) << 48);
+    }
+    if (i < length) {
+      long bits = 0;
+      for (int shift = 0; i < length; i++, shift += 16) {
+        bits |= (long) string.charAt(i) << shift;
+      }
+      hash = longHashMix(hash, bits);
+    }
+    return hash;
+  }
+
+  protected static long longHashMix(long hash, boolean[] array) {
+    if (array == null) {
+      return longHashMix(hash, NULL_LONG_HASH);
+    }
+    hash = longHashMix(hash, array.length);
+    long bits = 0;
+    for (int i = 0; i < array.length; i++) {
+      if (array[i]) {
+        bits |= 1L << (i & 63);
+      }
+      if ((i & 63) == 63) {
+        hash = longHashMix(hash, bits);
+        bits = 0;
+      }
+    }
+    return (array.length & 63) == 0 ? hash : longHashMix(hash, bits);
+  }
+
+  protected static long longHashMix(long hash, byte[] array) {
+    if (array == null) {
+      return longHashMix(hash, NULL_LONG_HASH);
+    }
+    hash = longHashMix(hash, array.length);
+    int i = 0;
+    for (; i + 8 <= array.length; i += 8) {
+      hash = longHashMix(hash,
+        (array[i] & 0xFFL) | (array[i + 1] & 0xFFL) << 8 | (array[i + 2] & 0xFFL) << 16
+        | (array[i + 3] & 0xFFL) << 24 | (array[i + 4] & 0xFFL) << 32 | (array[i + 5] & 0xFFL) << 40
+        | (array[i + 6] & 0xFFL) << 48 | (array[i + 7] & 0xFFL) << 56);
+    }
+    if (i < array.length) {
+      long bits = 0;
+      for (int shift = 0; i < array.length; i++, shift += 8) {
+        bits |= (array[i] & 0xFFL) << shift;
+      }
+      hash = longHashMix(hash, bits);
+    }
+    return hash;
+  }
+
+  protected static long longHashMix(long hash, char[] array) {
+    if (array == null) {
+      return longHashMix(hash, NULL_LONG_HASH);
+    }
+    hash = longHashMix(hash, array.length);
+    int i = 0;
+    for (; i + 4 <= array.length; i += 4) {
+      hash = longHashMix(hash,
+        array[i] | (long) array[i + 1] << 16 | (long) array[i + 2] << 32 | (long) array[i + 3] << 48);
+    }
+    if (i < array.length) {
+      long bits = 0;
+      for (int shift = 0; i < array.length; i++, shift += 16) {
+        bits |= (long) array[i] << shift;
+      }
+      hash = longHashMix(hash, bits);
+    }
+    return hash;
+  }
+
+  protected static long longHashMix(long hash, short[] array) {
+    if (array == null) {
+      return longHashMix(hash, NULL_LONG_HASH);
+    }
+    hash = longHashMix(hash, array.length);
+    int i = 0;
+    for (; i + 4 <= array.length; i += 4) {
+      hash = longHashMix(hash,
+        (array[i] & 0xFFFFL) | (array[i + 1] & 0xFFFFL) << 16
+        | (array[i + 2] & 0xFFFFL) << 32 | (array[i + 3] & 0xFFFFL) << 48);
+    }
+    if (i < array.length) {
+      long bits = 0;
+      for (int shift = 0; i < array.length; i++, shift += 16) {
+        bits |= (array[i] & 0xFFFFL) << shift;
+      }
+      hash = longHashMix(hash, bits);
+    }
+    return hash;
+  }
+
+  protected static long longHashMix(long hash, int[] array) {
+    if (array == null) {
+      return longHashMix(hash, NULL_LONG_HASH);
+    }
+    hash = longHashMix(hash, array.length);
+    int i = 0;
+    for (; i + 2 <= array.length; i += 2) {
+      hash = longHashMix(hash, (array[i] & 0xFFFFFFFFL) | (long) array[i + 1] << 32);
+    }
+    return i < array.length ? longHashMix(hash, array[i] & 0xFFFFFFFFL) : hash;
+  }
+
+  protected static long longHashMix(long hash, long[] array) {
+    if (array == null) {
+      return longHashMix(hash, NULL_LONG_HASH);
+    }
+    hash = longHashMix(hash, array.length);
+    for (long element: array) {
+      hash = longHashMix(hash, element);
+    }
+    return hash;
+  }
+
+  protected static long longHashMix(long hash, float[] array) {
+    if (array == null) {
+      return longHashMix(hash, NULL_LONG_HASH);
+    }
+    hash = longHashMix(hash, array.length);
+    int i = 0;
+    for (; i + 2 <= array.length; i += 2) {
+      hash = longHashMix(hash,
+        (Float.floatToIntBits(array[i]) & 0xFFFFFFFFL) | (long) Float.floatToIntBits(array[i + 1]) << 32);
+    }
+    return i < array.length ? longHashMix(hash, Float.floatToIntBits(array[i]) & 0xFFFFFFFFL) : hash;
+  }
+
+  protected static long longHashMix(long hash, double[] array) {
+    if (array == null) {
+      return longHashMix(hash, NULL_LONG_HASH);
+    }
+    hash = longHashMix(hash, array.length);
+    for (double element: array) {
+      hash = longHashMix(hash, Double.doubleToLongBits(element));
+    }
+    return hash;
+  }
+
+  /**
+   * Pass a value which might be an array to the appropriate method of a {@link PropertySink}.
+   * @param sink the sink
+   * @param value the value, possibly {@code null}
+   */
+  protected static void putPossibleArray(PropertySink sink, Object value) {
+    if (value == null || !value.getClass().isArray()) {
+      sink.putObject(value);
+      return;
+    }
+    Class<?> componentType = value.getClass().getComponentType();
+    if (! componentType.isPrimitive()) {
+      sink.putObjects((Object[]) value);
+    }
+    else if (componentType == boolean.class) {
+      sink.putBooleans((boolean[]) value);
+    }
+    else if (componentType == byte.class) {
+      sink.putBytes((byte[]) value);
+    }
+    else if (componentType == char.class) {
+      sink.putChars((char[]) value);
+    }
+    else if (componentType == short.class) {
+      sink.putShorts((short[]) value);
+    }
+    else if (componentType == int.class) {
+      sink.putInts((int[]) value);
+    }
+    else if (componentType == long.class) {
+      sink.putLongs((long[]) value);
+    }
+    else if (componentType == float.class) {
+      sink.putFloats((float[]) value);
+    }
+    else if (componentType == double.class) {
+      sink.putDoubles((double[]) value);
+    }
+    else {
+      throw new IllegalStateException("unknown primitive type " + componentType.getName());
+    }
+  }
+
+  /**
+   * Pojomators for the classes of nested values, such as those written by {@link #appendJson(StringBuilder, Object)},
+   * or {@code null} for classes without Pojomatic properties.
+   */
+  private static final ClassValue<Pojomator<?>> NESTED_POJOMATORS = new ClassValue<Pojomator<?>>() {
+    @Override
+    protected Pojomator<?> computeValue(Class<?> type) {
+      try {
+        return Pojomatic.pojomator(type);
+      }
+      catch (NoPojomaticPropertiesException e) {
+        return null;
+      }
+    }
+  };
+
+  /**
+   * Get the pojomator for the class of a nested value, such as one formatted by a property formatter within a
+   * {@link FormattingBudget}.
+   * @param type the class of the value
+   * @return the pojomator for {@code type}, or {@code null} if {@code type} has no Pojomatic properties
+   */
+  @SuppressWarnings("unchecked")
+  public static Pojomator<Object> nestedPojomator(Class<?> type) {
+    return (Pojomator<Object>) NESTED_POJOMATORS.get(type);
+  }
+
+  private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+  @Override
+  public void writeJson(T instance, Appendable appendable) throws IOException {
+    if (appendable instanceof StringBuilder) {
+      writeJson(instance, (StringBuilder) appendable);
+      return;
+    }
+    checkNotNull(appendable);
+    StringBuilder builder = borrowBuilder();
+    try {
+      writeJson(instance, builder);
+      copy(builder, appendable);
+    }
+    finally {
+      returnBuilder(builder);
+    }
+  }
+
+  protected static void appendJson(StringBuilder builder, boolean value) {
+    builder.append(value);
+  }
+
+  /**
+   * Append a {@code byte}, {@code short} or {@code int} as JSON.
+   * @param builder the builder to append to
+   * @param value the value
+   */
+  protected static void appendJson(StringBuilder builder, int value) {
+    builder.append(value);
+  }
+
+  protected static void appendJson(StringBuilder builder, long value) {
+    builder.append(value);
+  }
+
+  protected static void appendJson(StringBuilder builder, char value) {
+    builder.append('"');
+    appendJsonEscaped(builder, value);
+    builder.append('"');
+  }
+
+  /**
+   * Append a {@code float} as JSON. Since JSON numbers cannot represent them, {@code NaN} and infinite values are
+   * appended as strings.
+   * @param builder the builder to append to
+   * @param value the value
+   */
+  protected static void appendJson(StringBuilder builder, float value) {
+    if (Float.isNaN(value) || Float.isInfinite(value)) {
+      builder.append('"').append(value).append('"');
+    }
+    else {
+      builder.append(value);
+    }
+  }
+
+  /**
+   * Append a {@code double} as JSON. Since JSON numbers cannot represent them, {@code NaN} and infinite values are
+   * appended as strings.
+   * @param builder the builder to append to
+   * @param value the value
+   */
+  protected static void appendJson(StringBuilder builder, double value) {
+    if (Double.isNaN(value) || Double.isInfinite(value)) {
+      builder.append('"').append(value).append('"');
+    }
+    else {
+      builder.append(value);
+    }
+  }
+
+  /**
+   * Append a reference value as JSON, as described for {@link Pojomator#writeJson(Object, StringBuilder)}.
+   * @param builder the builder to append to
+   * @param value the value, possibly {@code null}
+   */
+  protected static void appendJson(StringBuilder builder, Object value) {
+    if (value == null) {
+      builder.append("null");
+    }
+    else if (value instanceof CharSequence) {
+      appendJsonString(builder, (CharSequence) value);
+    }
+    else if (value instanceof Boolean) {
+      builder.append(((Boolean) value).booleanValue());
+    }
+    else if (value instanceof Double) {
+      appendJson(builder, ((Double) value).doubleValue());
+    }
+    else if (value instanceof Float) {
+      appendJson(builder, ((Float) value).floatValue());
+    }
+    else if (value instanceof Number) {
+      builder.append(value);
+    }
+    else if (value instanceof Character) {
+      appendJson(builder, ((Character) value).charValue());
+    }
+    else if (value instanceof Enum) {
+      appendJsonString(builder, ((Enum<?>) value).name());
+    }
+    else if (value.getClass().isArray()) {
+      appendJsonArray(builder, value);
+    }
+    else if (value instanceof Collection) {
+      builder.append('[');
+      boolean first = true;
+      for (Object element: (Collection<?>) value) {
+        if (!first) {
+          builder.append(',');
+        }
+        first = false;
+        appendJson(builder, element);
+      }
+      builder.append(']');
+    }
+    else if (value instanceof Map) {
+      builder.append('{');
+      boolean first = true;
+      for (Map.Entry<?, ?> entry: ((Map<?, ?>) value).entrySet()) {
+        if (!first) {
+          builder.append(',');
+        }
+        first = false;
+        appendJsonString(builder, String.valueOf(entry.getKey()));
+        builder.append(':');
+        appendJson(builder, entry.getValue());
+      }
+      builder.append('}');
+    }
+    else {
+      @SuppressWarnings("unchecked")
+      Pojomator<Object> pojomator = nestedPojomator(value.getClass());
+      if (pojomator != null) {
+        pojomator.writeJson(value, builder);
+      }
+      else {
+        appendJsonString(builder, value.toString());
+      }
+    }
+  }
+
+  private static void appendJsonArray(StringBuilder builder, Object array) {
+    builder.append('[');
+    int length = Array.getLength(array);
+    Class<?> componentType = array.getClass().getComponentType();
+    for (int i = 0; i < length; i++) {
+      if (i > 0) {
+        builder.append(',');
+      }
+      if (!componentType.isPrimitive()) {
+        appendJson(builder, ((Object[]) array)[i]);
+      }
+      else if (componentType == boolean.class) {
+        appendJson(builder, ((boolean[]) array)[i]);
+      }
+      else if (componentType == byte.class) {
+        appendJson(builder, ((byte[]) array)[i]);
+      }
+      else if (componentType == char.class) {
+        appendJson(builder, ((char[]) array)[i]);
+      }
+      else if (componentType == short.class) {
+        appendJson(builder, ((short[]) array)[i]);
+      }
+      else if (componentType == int.class) {
+        appendJson(builder, ((int[]) array)[i]);
+      }
+      else if (componentType == long.class) {
+        appendJson(builder, ((long[]) array)[i]);
+      }
+      else if (componentType == float.class) {
+        appendJson(builder, ((float[]) array)[i]);
+      }
+      else if (componentType == double.class) {
+        appendJson(builder, ((double[]) array)[i]);
+      }
+      else {
+        throw new IllegalStateException("unknown primitive type " + componentType.getName());
+      }
+    }
+    builder.append(']');
+  }
+
+  /**
+   * Append a string as a quoted, escaped JSON string.
+   * @param builder the builder to append to
+   * @param value the string
+   */
+  static void appendJsonString(StringBuilder builder, CharSequence value) {
+    builder.append('"');
+    int length = value.length();
+    int unescapedStart = 0;
+    for (int i = 0; i < length; i++) {
+      char c = value.charAt(i);
+      if (c < 0x20 || c == '"' || c == '\\') {
+        builder.append(value, unescapedStart, i);
+        appendJsonEscaped(builder, c);
+        unescapedStart = i + 1;
+      }
+    }
+    builder.append(value, unescapedStart, length);
+    builder.append('"');
+  }
+
+  private static void appendJsonEscaped(StringBuilder builder, char c) {
+    switch (c) {
+      case '"':
+        builder.append("\\\"");
+        break;
+      case '\\':
+        builder.append("\\\\");
+        break;
+      case '\n':
+        builder.append("\\n");
+        break;
+      case '\r':
+        builder.append("\\r");
+        break;
+      case '\t':
+        builder.append("\\t");
+        break;
+      case '\b':
+        builder.append("\\b");
+        break;
+      case '\f':
+        builder.append("\\f");
+        break;
+      default:
+        if (c < 0x20) {
+          builder.append("\\u00").append(HEX_DIGITS[c >> 4]).append(HEX_DIGITS[c & 0xF]);
+        }
+        else {
+          builder.append(c);
+        }
+    }
+  }
+
+  protected static <T> T checkNotNull(T reference) {
+    if (reference == null) {
+      throw new NullPointerException();
+    }
+    return reference;
+  }
+
+  protected static <T> T checkNotNull(T reference, String message) {
+    if (reference == null) {
+      throw new NullPointerException(message);
+    }
+    return reference;
+  }
+
+  protected static void checkNotNullPop(Object reference) {
+    if (reference == null) {
+      throw new NullPointerException();
+    }
+  }
+
+  protected void checkCompatibleForEquality(T instance, String label) {
+    if (!isCompatibleForEquality(instance.getClass())) {
+      throw new IllegalArgumentException(
+        label + " has type " + instance.getClass().getName()
+        + " which is not compatible for equality with " + pojoClass.getName());
+    }
+  }
+
+  /**
+   * Get a method handle to access a field or invoke a no-arg method.
+   * @param caller A Lookup from the original call site.
+   * @param name the name of the dynamic method. This should be of the form "get_xxx", where "element_xxx" will be a
+   * static field containing a {@link PropertyElement} instance referring to the property to be accessed.
+   * @param pojomatorClass the type of the pojomator class
+   * @return the MethodHandle
+   * @throws Throwable
+   */
+  private static MethodHandle getTypedMethod(
+    final MethodHandles.Lookup caller, final String name, final Class<?> pojomatorClass)
+    throws Throwable {
+    try {
+      return AccessController.doPrivileged(new PrivilegedExceptionAction<MethodHandle>() {
+        @Override
+        public MethodHandle run() throws Exception {
+          return getTypedMethodPrivileged(caller, name, pojomatorClass);
+        }
+      });
+    } catch (PrivilegedActionException e) {
+      throw e.getCause();
+    }
+  }
+
+  /**
+   * Do the work for {@link #getTypedMethod(java.lang.invoke.MethodHandles.Lookup, String, Class)}. This method will be
+   * run inside of a {@link AccessController#doPrivileged(PrivilegedExceptionAction)} block, hence should make sure to
+   * not run untrusted code.
+   * @param pojomatorClass the type of the pojomator class
+   * @return the MethodHandle
+   * @param pojomatorClass
+   * @return the MethodHandle
+   * @throws NoSuchFieldException
+   * @throws IllegalAccessException
+   */
+  private static MethodHandle getTypedMethodPrivileged(
+    MethodHandles.Lookup caller, String name, Class<?> pojomatorClass)
+    throws NoSuchFieldException, IllegalAccessException {
+    if (PojomatorByteCodeGenerator.GET_CACHED_HASH_CODE.equals(name)
+      || PojomatorByteCodeGenerator.SET_CACHED_HASH_CODE.equals(name)) {
+      Field cacheFieldField =
+        pojomatorClass.getDeclaredField(PojomatorByteCodeGenerator.HASH_CODE_CACHE_FIELD_NAME);
+      cacheFieldField.setAccessible(true);
+      Field cacheField = (Field) cacheFieldField.get(null);
+      cacheField.setAccessible(true);
+      return PojomatorByteCodeGenerator.GET_CACHED_HASH_CODE.equals(name)
+        ? caller.unreflectGetter(cacheField)
+        : caller.unreflectSetter(cacheField);
+    }
     String elementName = "element_" + name.substring(4);
     Field elementField = pojomatorClass.getDeclaredField(elementName);
     elementField.setAccessible(true);
@@ -5,8 +5,12 @@ import java.lang.reflect.Member;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
@@ -32,13 +36,19 @@ public class ClassProperties {
 
   private final boolean subclassCannotOverrideEquals;
 
-  private final static SelfPopulatingMap<Class<?>, ClassProperties> INSTANCES =
-    new SelfPopulatingMap<Class<?>, ClassProperties>() {
-      @Override
-      protected ClassProperties create(Class<?> key) {
-        return new ClassProperties(key);
-      }
-    };
+  private final boolean hashCodeCached;
+
+  private final Field hashCodeCacheField;
+
+  private final EqualsOrderPolicy equalsOrder;
+  private final ToStringBudget toStringBudget;
+
+  private final static ClassValue<ClassProperties> INSTANCES = new ClassValue<ClassProperties>() {
+    @Override
+    protected ClassProperties computeValue(Class<?> type) {
+      return new ClassProperties(type);
+    }
+  };
 
   private final static class ClassContributionTracker {
     private Class<?> clazz = Object.class;
@@ -72,7 +82,36 @@ public class ClassProperties {
    * with Pojomatic.
    */
   private ClassProperties(Class<?> pojoClass) throws NoPojomaticPropertiesException {
-    if (pojoClass.isInterface()) {
+    this(pojoClass, null, null);
+  }
+
+  /**
+   * Creates an instance for the given {@code pojoClass}, either by inspecting it, or from properties already known.
+   *
+   * @param pojoClass the class to inspect for properties
+   * @param describedProperties the properties of {@code pojoClass} for each role, as recreated by
+   *   {@link #fromDescriptor(Class, String)}, or {@code null} to inspect {@code pojoClass}
+   * @param describedEqualsParentClass the most specific class contributing to equals, if
+   *   {@code describedProperties} is not {@code null}
+   * @throws NoPojomaticPropertiesException if {@code pojoClass} has no properties annotated for use
+   * with Pojomatic.
+   */
+  private ClassProperties(
+    Class<?> pojoClass,
+    Map<PropertyRole, List<PropertyElement>> describedProperties,
+    Class<?> describedEqualsParentClass) throws NoPojomaticPropertiesException {
+    CacheHashCode cacheHashCode = pojoClass.isInterface() ? null : pojoClass.getAnnotation(CacheHashCode.class);
+    hashCodeCached = cacheHashCode != null;
+    hashCodeCacheField = cacheHashCode == null || cacheHashCode.value().isEmpty()
+      ? null
+      : findHashCodeCacheField(pojoClass, cacheHashCode.value());
+    if (describedProperties != null) {
+      for (PropertyRole role: PropertyRole.values()) {
+        properties.get(role).addAll(describedProperties.get(role));
+      }
+      equalsParentClass = describedEqualsParentClass;
+    }
+    else if (pojoClass.isInterface()) {
       extractClassProperties(pojoClass, new OverridableMethods(), new ClassContributionTracker());
       equalsParentClass = pojoClass;
     }
@@ -84,6 +123,181 @@ public class ClassProperties {
     verifyPropertiesNotEmpty(pojoClass);
     subclassCannotOverrideEquals = pojoClass.isAnnotationPresent(SubclassCannotOverrideEquals.class)
       || pojoClass.isInterface();
+    EqualsOrder equalsOrderAnnotation = pojoClass.getAnnotation(EqualsOrder.class);
+    equalsOrder = equalsOrderAnnotation == null ? EqualsOrderPolicy.DECLARED : equalsOrderAnnotation.value();
+    toStringBudget = pojoClass.getAnnotation(ToStringBudget.class);
+  }
+
+  /**
+   * Describe these properties, so that {@link #fromDescriptor(Class, String)} can recreate them without inspecting
+   * every member of the class hierarchy, and without reading class files. The description names each property's
+   * member, its type and its {@link Property#name()}, along with the classes of the hierarchy and how many fields and
+   * methods each declares.
+   * @param pojoClass the class these properties were created for
+   * @return the description
+   */
+  String descriptor(Class<?> pojoClass) {
+    List<Class<?>> hierarchy = hierarchy(pojoClass);
+    StringBuilder builder = new StringBuilder("hierarchy:");
+    for (Class<?> clazz: hierarchy) {
+      builder.append(fingerprint(clazz)).append(',');
+    }
+    builder.append(";equalsParent:").append(hierarchy.indexOf(equalsParentClass)).append(';');
+    for (PropertyRole role: PropertyRole.values()) {
+      builder.append(role).append(':');
+      for (PropertyElement property: properties.get(role)) {
+        builder
+          .append(property instanceof PropertyField ? 'F' : 'M')
+          .append(hierarchy.indexOf(property.getDeclaringClass())).append('/')
+          .append(escape(property.getElementName())).append('/')
+          .append(escape(property.getPropertyType().getName())).append('/')
+          .append(escape(property.getName())).append(',');
+      }
+      builder.append(';');
+    }
+    return builder.toString();
+  }
+
+  /**
+   * Recreate the properties of a class from a {@link #descriptor(Class) description}. Each described member is looked
+   * up directly, and must still have the described type and property name; the classes of the hierarchy must still
+   * declare as many fields and methods as they did. Other changes, such as a change to only the annotations of a
+   * member which is not described, are not detected, so a description must be recreated whenever {@code pojoClass} is
+   * recompiled.
+   * @param pojoClass the class to create an instance for
+   * @param descriptor the description
+   * @return an instance for {@code pojoClass}, or {@code null} if the description does not match {@code pojoClass}.
+   * Unlike those returned by {@link #forClass(Class)}, the instance is not cached.
+   */
+  static ClassProperties fromDescriptor(Class<?> pojoClass, String descriptor) {
+    String[] sections = descriptor.split(";", -1);
+    if (sections.length != 3 + PropertyRole.values().length) {
+      return null;
+    }
+    List<Class<?>> hierarchy = hierarchy(pojoClass);
+    List<String> fingerprints = elements(sections[0], "hierarchy");
+    if (fingerprints == null || fingerprints.size() != hierarchy.size()) {
+      return null;
+    }
+    for (int i = 0; i < hierarchy.size(); i++) {
+      if (!fingerprint(hierarchy.get(i)).equals(fingerprints.get(i))) {
+        return null;
+      }
+    }
+    String equalsParent = value(sections[1], "equalsParent");
+    if (equalsParent == null) {
+      return null;
+    }
+    int equalsParentIndex = Integer.parseInt(equalsParent);
+    Class<?> equalsParentClass = equalsParentIndex < 0 ? Object.class : hierarchy.get(equalsParentIndex);
+
+    Map<String, PropertyElement> elements = new HashMap<>();
+    Map<PropertyRole, List<PropertyElement>> describedProperties = makeProperties();
+    for (PropertyRole role: PropertyRole.values()) {
+      List<String> described = elements(sections[2 + role.ordinal()], role.name());
+      if (described == null) {
+        return null;
+      }
+      for (String element: described) {
+        PropertyElement property = elements.get(element);
+        if (property == null) {
+          property = findDescribedProperty(hierarchy, element);
+          if (property == null) {
+            return null;
+          }
+          elements.put(element, property);
+        }
+        describedProperties.get(role).add(property);
+      }
+    }
+    return new ClassProperties(pojoClass, describedProperties, equalsParentClass);
+  }
+
+  /**
+   * Look up a property named in a description.
+   * @param hierarchy the classes which may declare the property
+   * @param element the description of the property
+   * @return the property, or {@code null} if there is no longer a matching member
+   */
+  private static PropertyElement findDescribedProperty(List<Class<?>> hierarchy, String element) {
+    String[] parts = element.substring(1).split("/", -1);
+    if (parts.length != 4) {
+      return null;
+    }
+    int declaringIndex = Integer.parseInt(parts[0]);
+    if (declaringIndex < 0 || declaringIndex >= hierarchy.size()) {
+      return null;
+    }
+    Class<?> declaringClass = hierarchy.get(declaringIndex);
+    String memberName = unescape(parts[1]);
+    String typeName = unescape(parts[2]);
+    String propertyName = unescape(parts[3]);
+    PropertyElement property;
+    try {
+      if (element.charAt(0) == 'F') {
+        Field field = declaringClass.getDeclaredField(memberName);
+        if (isStatic(field)) {
+          return null;
+        }
+        property = new PropertyField(field, getPropertyName(field.getAnnotation(Property.class)));
+      }
+      else {
+        Method method = declaringClass.getDeclaredMethod(memberName);
+        if (isStatic(method) || method.isSynthetic()) {
+          return null;
+        }
+        property = new PropertyAccessor(method, getPropertyName(method.getAnnotation(Property.class)));
+      }
+    }
+    catch (NoSuchFieldException | NoSuchMethodException e) {
+      return null;
+    }
+    return property.getPropertyType().getName().equals(typeName) && property.getName().equals(propertyName)
+      ? property
+      : null;
+  }
+
+  /**
+   * Get the classes which may contribute properties to {@code pojoClass}, starting with {@code pojoClass} itself.
+   */
+  private static List<Class<?>> hierarchy(Class<?> pojoClass) {
+    List<Class<?>> hierarchy = new ArrayList<>();
+    if (pojoClass.isInterface()) {
+      hierarchy.add(pojoClass);
+    }
+    else {
+      for (Class<?> clazz = pojoClass; clazz != Object.class; clazz = clazz.getSuperclass()) {
+        hierarchy.add(clazz);
+      }
+    }
+    return hierarchy;
+  }
+
+  private static String fingerprint(Class<?> clazz) {
+    return escape(clazz.getName()) + "/" + clazz.getDeclaredFields().length + "/" + clazz.getDeclaredMethods().length;
+  }
+
+  private static String value(String section, String name) {
+    return section.startsWith(name + ":") ? section.substring(name.length() + 1) : null;
+  }
+
+  private static List<String> elements(String section, String name) {
+    String value = value(section, name);
+    if (value == null || !value.isEmpty() && !value.endsWith(",")) {
+      return null;
+    }
+    return value.isEmpty() ? Collections.<String>emptyList() : Arrays.asList(value.split(","));
+  }
+
+  /**
+   * Escape the characters which separate parts of a description.
+   */
+  private static String escape(String text) {
+    return text.replace("%", "%25").replace(",", "%2C").replace(";", "%3B").replace("/", "%2F");
+  }
+
+  private static String unescape(String text) {
+    return text.replace("%2F", "/").replace("%3B", ";").replace("%2C", ",").replace("%25", "%");
   }
 
   /**
@@ -94,6 +308,88 @@ public class ClassProperties {
     return properties.get(PropertyRole.EQUALS);
   }
 
+  /**
+   * Gets the properties to use for {@link Pojomator#doEquals(Object, Object)}, in the order in which they should be
+   * compared, as specified by {@link EqualsOrder}. For {@link EqualsOrderPolicy#ADAPTIVE}, this is the order in which
+   * properties are compared before any have been reordered.
+   * @return the properties to use for {@link Pojomator#doEquals(Object, Object)}, in comparison order.
+   */
+  public List<PropertyElement> getEqualsComparisonOrder() {
+    List<PropertyElement> equalsProperties = new ArrayList<>(getEqualsProperties());
+    if (equalsOrder == EqualsOrderPolicy.COST || equalsOrder == EqualsOrderPolicy.ADAPTIVE) {
+      Collections.sort(equalsProperties, new Comparator<PropertyElement>() {
+        @Override
+        public int compare(PropertyElement left, PropertyElement right) {
+          return Integer.compare(comparisonCost(left), comparisonCost(right));
+        }
+      });
+    }
+    return equalsProperties;
+  }
+
+  /**
+   * Estimate the relative cost of comparing values of a property for equality, as described for
+   * {@link EqualsOrderPolicy#COST}.
+   * @param propertyElement the property
+   * @return the estimated cost; lower is cheaper
+   */
+  static int comparisonCost(PropertyElement propertyElement) {
+    Class<?> type = propertyElement.getPropertyType();
+    if (type.isPrimitive()) {
+      return 0;
+    }
+    if (type.isEnum() || Primitives.isWrapperClass(type)) {
+      return 1;
+    }
+    if (type == String.class) {
+      return 2;
+    }
+    return 3;
+  }
+
+  /**
+   * Gets the order in which properties should be compared for {@link Pojomator#doEquals(Object, Object)}.
+   * @return the order in which properties should be compared
+   */
+  public EqualsOrderPolicy getEqualsOrder() {
+    return equalsOrder;
+  }
+
+  /**
+   * Gets the properties to use for {@link Pojomator#doCompare(Object, Object)}, in the order in which they should be
+   * compared, as specified by {@link CompareOrder}.
+   * @return the properties to use for {@link Pojomator#doCompare(Object, Object)}, in comparison order.
+   */
+  public List<PropertyElement> getCompareOrder() {
+    List<PropertyElement> compareProperties = new ArrayList<>(getEqualsProperties());
+    Collections.sort(compareProperties, new Comparator<PropertyElement>() {
+      @Override
+      public int compare(PropertyElement left, PropertyElement right) {
+        return Long.compare(compareRank(left), compareRank(right));
+      }
+    });
+    return compareProperties;
+  }
+
+  /**
+   * Get the rank of a property for {@link Pojomator#doCompare(Object, Object)}, placing properties without a
+   * {@link CompareOrder} annotation after all those with one.
+   * @param propertyElement the property
+   * @return the rank of the property
+   */
+  private static long compareRank(PropertyElement propertyElement) {
+    CompareOrder compareOrder = propertyElement.getElement().getAnnotation(CompareOrder.class);
+    return compareOrder == null ? Long.MAX_VALUE : compareOrder.rank();
+  }
+
+  /**
+   * Gets the limits on the size of {@code String} representations, if any.
+   * @return the {@link ToStringBudget} annotation of the pojo class, or {@code null} if it has none
+   */
+  public ToStringBudget getToStringBudget() {
+    return toStringBudget;
+  }
+
   /**
    * Gets the properties to use for {@link Pojomator#doHashCode(Object)}.
    * @return the properties to use for {@link Pojomator#doHashCode(Object)}.
@@ -110,6 +406,23 @@ public class ClassProperties {
     return properties.get(PropertyRole.TO_STRING);
   }
 
+  /**
+   * Whether hash codes of instances are cached, as requested by {@link CacheHashCode}.
+   * @return {@code true} if hash codes should be cached
+   */
+  public boolean isHashCodeCached() {
+    return hashCodeCached;
+  }
+
+  /**
+   * Get the field to cache hash codes in.
+   * @return the field named by {@link CacheHashCode#value()}, or {@code null} if hash codes are not cached, or are
+   * cached in a side table.
+   */
+  public Field getHashCodeCacheField() {
+    return hashCodeCacheField;
+  }
+
   /**
    * Get the union of all properties used for any Pojomator methods. The resulting set will have a predictable iteration
    * order: first, the ordered list of elements used for equals, followed by an ordered list of any additional elements
@@ -267,6 +580,14 @@ public class ClassProperties {
         continue;
       }
       Property property = field.getAnnotation(Property.class);
+      if (field.equals(hashCodeCacheField)) {
+        if (property != null) {
+          throw new IllegalArgumentException(
+            "Field " + clazz.getName() + "." + field.getName()
+            + " is named by @CacheHashCode, and so cannot be annotated with @Property");
+        }
+        continue;
+      }
       if (isStatic(field)) {
         if (property != null) {
           throw new IllegalArgumentException(
@@ -297,6 +618,27 @@ public class ClassProperties {
     return propertiesMap;
   }
 
+  private static Field findHashCodeCacheField(Class<?> pojoClass, String fieldName) {
+    for (Class<?> clazz = pojoClass; clazz != null; clazz = clazz.getSuperclass()) {
+      Field field;
+      try {
+        field = clazz.getDeclaredField(fieldName);
+      }
+      catch (NoSuchFieldException e) {
+        continue;
+      }
+      if (field.getType() != int.class || isStatic(field) || Modifier.isFinal(field.getModifiers())) {
+        throw new IllegalArgumentException(
+          "Field " + clazz.getName() + "." + fieldName
+          + " is named by @CacheHashCode, but is not a non-static, non-final int field");
+      }
+      return field;
+    }
+    throw new IllegalArgumentException(
+      "Class " + pojoClass.getName() + " is annotated with @CacheHashCode(\"" + fieldName
+      + "\"), but has no such field");
+  }
+
   private void verifyPropertiesNotEmpty(Class<?> pojoClass) {
     for (Collection<PropertyElement> propertyElements : properties.values()) {
       if (!propertyElements.isEmpty()) {
@@ -306,7 +648,7 @@ public class ClassProperties {
     throw new NoPojomaticPropertiesException(pojoClass);
   }
 
-  private String getPropertyName(Property property) {
+  private static String getPropertyName(Property property) {
     return property == null ? "" : property.name();
   }
 
@@ -0,0 +1,152 @@
+package org.pojomatic.internal;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.pojomatic.Pojomator;
+import org.pojomatic.diff.ArrayDifference;
+import org.pojomatic.diff.Difference;
+import org.pojomatic.diff.Differences;
+import org.pojomatic.diff.IndexRange;
+import org.pojomatic.diff.NoDifferences;
+import org.pojomatic.diff.OneSidedDifference;
+import org.pojomatic.diff.PropertyDifferences;
+import org.pojomatic.diff.ValueDifference;
+
+/**
+ * Refines the differences found by {@link Pojomator#doDiff(Object, Object)}, for
+ * {@link Pojomator#doDeepDiff(Object, Object)}. Each differing value is only descended into after it has already been
+ * found unequal, so equal values, however large, cost no more than they do for {@code doDiff}.
+ */
+final class DeepDiffer {
+  private DeepDiffer() {}
+
+  /**
+   * Refine shallow differences into path-qualified differences.
+   * @param differences the differences found by {@code doDiff}
+   * @return the deep differences
+   */
+  static Differences deepen(Differences differences) {
+    if (differences.areEqual()) {
+      return differences;
+    }
+    List<Difference> deepDifferences = new ArrayList<>();
+    for (Difference difference: differences.differences()) {
+      diffValues(difference.propertyName(), difference.leftValue(), difference.rightValue(), deepDifferences);
+    }
+    return deepDifferences.isEmpty() ? NoDifferences.getInstance() : new PropertyDifferences(deepDifferences);
+  }
+
+  /**
+   * Add the differences between two values which are known to differ.
+   * @param path the path of the values
+   * @param leftValue the value from the left instance
+   * @param rightValue the value from the right instance
+   * @param differences the list to add differences to
+   */
+  private static void diffValues(String path, Object leftValue, Object rightValue, List<Difference> differences) {
+    int found = differences.size();
+    if (leftValue != null && rightValue != null) {
+      if (leftValue instanceof List && rightValue instanceof List) {
+        diffLists(path, (List<?>) leftValue, (List<?>) rightValue, differences);
+      }
+      else if (leftValue instanceof Map && rightValue instanceof Map) {
+        diffMaps(path, (Map<?, ?>) leftValue, (Map<?, ?>) rightValue, differences);
+      }
+      else if (leftValue.getClass().isArray() && leftValue.getClass() == rightValue.getClass()) {
+        diffArrays(path, leftValue, rightValue, differences);
+      }
+      else {
+        diffPojos(path, leftValue, rightValue, differences);
+      }
+    }
+    if (differences.size() == found) {
+      // either the values cannot be descended into, or they differ in a way their parts do not reveal
+      differences.add(new ValueDifference(path, leftValue, rightValue));
+    }
+  }
+
+  /**
+   * Add the differences between two lists, walking both with iterators, so that lists without random access, such as
+   * {@code LinkedList}s, are not traversed again for each element.
+   */
+  private static void diffLists(String path, List<?> leftList, List<?> rightList, List<Difference> differences) {
+    Iterator<?> leftIterator = leftList.iterator();
+    Iterator<?> rightIterator = rightList.iterator();
+    int i = 0;
+    for (; leftIterator.hasNext() && rightIterator.hasNext(); i++) {
+      diffElements(path + "[" + i + "]", leftIterator.next(), rightIterator.next(), differences);
+    }
+    for (; leftIterator.hasNext(); i++) {
+      differences.add(OneSidedDifference.leftOnly(path + "[" + i + "]", leftIterator.next()));
+    }
+    for (; rightIterator.hasNext(); i++) {
+      differences.add(OneSidedDifference.rightOnly(path + "[" + i + "]", rightIterator.next()));
+    }
+  }
+
+  /**
+   * Add the differences between two arrays of the same class. Differing elements are located by
+   * {@link ArrayDiffer}, in parallel for long arrays. Primitive arrays are reported as a single
+   * {@link ArrayDifference}; elements of object arrays are descended into.
+   */
+  private static void diffArrays(String path, Object leftArray, Object rightArray, List<Difference> differences) {
+    List<IndexRange> differingRanges = ArrayDiffer.differingRanges(leftArray, rightArray);
+    if (leftArray.getClass().getComponentType().isPrimitive()) {
+      differences.add(new ArrayDifference(path, leftArray, rightArray, differingRanges));
+      return;
+    }
+    Object[] leftElements = (Object[]) leftArray;
+    Object[] rightElements = (Object[]) rightArray;
+    for (IndexRange range: differingRanges) {
+      for (int i = range.start(); i < range.end(); i++) {
+        String elementPath = path + "[" + i + "]";
+        if (i >= rightElements.length) {
+          differences.add(OneSidedDifference.leftOnly(elementPath, leftElements[i]));
+        }
+        else if (i >= leftElements.length) {
+          differences.add(OneSidedDifference.rightOnly(elementPath, rightElements[i]));
+        }
+        else {
+          diffValues(elementPath, leftElements[i], rightElements[i], differences);
+        }
+      }
+    }
+  }
+
+  private static void diffMaps(String path, Map<?, ?> leftMap, Map<?, ?> rightMap, List<Difference> differences) {
+    for (Map.Entry<?, ?> entry: leftMap.entrySet()) {
+      Object key = entry.getKey();
+      String keyPath = path + "[" + key + "]";
+      if (rightMap.containsKey(key)) {
+        diffElements(keyPath, entry.getValue(), rightMap.get(key), differences);
+      }
+      else {
+        differences.add(OneSidedDifference.leftOnly(keyPath, entry.getValue()));
+      }
+    }
+    for (Map.Entry<?, ?> entry: rightMap.entrySet()) {
+      if (!leftMap.containsKey(entry.getKey())) {
+        differences.add(OneSidedDifference.rightOnly(path + "[" + entry.getKey() + "]", entry.getValue()));
+      }
+    }
+  }
+
+  private static void diffPojos(String path, Object leftPojo, Object rightPojo, List<Difference> differences) {
+    Pojomator<Object> pojomator = BasePojomator.nestedPojomator(leftPojo.getClass());
+    if (pojomator != null && pojomator.isCompatibleForEquality(rightPojo.getClass())) {
+      for (Difference difference: pojomator.doDiff(leftPojo, rightPojo).differences()) {
+        diffValues(
+          path + "." + difference.propertyName(), difference.leftValue(), difference.rightValue(), differences);
+      }
+    }
+  }
+
+  private static void diffElements(String path, Object leftValue, Object rightValue, List<Difference> differences) {
+    if (!BasePojomator.areObjectValuesEqual(leftValue, rightValue)) {
+      diffValues(path, leftValue, rightValue, differences);
+    }
+  }
+}
@@ -0,0 +1,64 @@
+package org.pojomatic.internal;
+
+import org.pojomatic.Pojomator;
+
+/**
+ * A reusable {@code CharSequence} view of the {@code toString} representation of whichever pojo it was last bound to.
+ * The representation is only computed when first needed after binding, and then remembered until the view is bound
+ * again. Instances are confined to a single thread, and are never shared.
+ * <p>
+ * A thread's view is shared by every pojomator, so it must not keep a pojomator, or its pojo class, reachable for
+ * longer than necessary; the binding is therefore forgotten as soon as the representation has been computed.
+ * </p>
+ */
+final class DeferredToString implements CharSequence {
+  private Pojomator<Object> pojomator;
+  private Object instance;
+  private String string;
+
+  /**
+   * Bind this view to a pojo, forgetting any representation of the previous one.
+   * @param pojomator the pojomator for the pojo
+   * @param instance the pojo
+   * @return this view
+   */
+  @SuppressWarnings("unchecked") // instance is a T, so pojomator can be treated as accepting it
+  <T> DeferredToString bind(Pojomator<T> pojomator, T instance) {
+    this.pojomator = (Pojomator<Object>) pojomator;
+    this.instance = instance;
+    this.string = null;
+    return this;
+  }
+
+  @Override
+  public String toString() {
+    String result = string;
+    if (result == null) {
+      Pojomator<Object> boundPojomator = pojomator;
+      Object boundInstance = instance;
+      result = boundPojomator.doToString(boundInstance);
+      // formatting a property may have rebound this view, in which case the result belongs to the previous binding
+      if (pojomator == boundPojomator && instance == boundInstance) {
+        string = result;
+        pojomator = null;
+        instance = null;
+      }
+    }
+    return result;
+  }
+
+  @Override
+  public int length() {
+    return toString().length();
+  }
+
+  @Override
+  public char charAt(int index) {
+    return toString().charAt(index);
+  }
+
+  @Override
+  public CharSequence subSequence(int start, int end) {
+    return toString().subSequence(start, end);
+  }
+}
@@ -0,0 +1,181 @@
+package org.pojomatic.internal;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+/**
+ * Defines pojomator classes as hidden classes which are nestmates of the pojo class they were generated for, using
+ * {@code MethodHandles.Lookup.defineHiddenClass}. Being a nestmate, a hidden pojomator class can read private fields
+ * and invoke private methods of the pojo class directly, without going through
+ * {@link BasePojomator#bootstrap(java.lang.invoke.MethodHandles.Lookup, String, java.lang.invoke.MethodType, Class)}.
+ * <p>
+ * Hidden classes were introduced in Java 15, while Pojomatic is built to run on Java 7, so all access to the API is
+ * reflective. On older runtimes, {@link #isSupported()} returns {@code false}.
+ * <p>
+ * Note that frames for methods of hidden classes are omitted from stack traces by default; run with
+ * {@code -XX:+ShowHiddenFrames} to see them.
+ */
+final class HiddenClassDefiner {
+  private HiddenClassDefiner() {}
+
+  private static final Method PRIVATE_LOOKUP_IN;
+  private static final Method DEFINE_HIDDEN_CLASS;
+  private static final Object NESTMATE_OPTIONS;
+  private static final Method GET_NEST_HOST;
+  private static final Method GET_MODULE;
+  private static final Method IS_EXPORTED;
+
+  static {
+    Method privateLookupIn = null;
+    Method defineHiddenClass = null;
+    Object nestmateOptions = null;
+    Method getNestHost = null;
+    Method getModule = null;
+    Method isExported = null;
+    try {
+      privateLookupIn = MethodHandles.class.getMethod(
+        "privateLookupIn", Class.class, MethodHandles.Lookup.class);
+      Class<?> classOptionClass = Class.forName("java.lang.invoke.MethodHandles$Lookup$ClassOption");
+      nestmateOptions = Array.newInstance(classOptionClass, 1);
+      Array.set(nestmateOptions, 0, enumConstant(classOptionClass, "NESTMATE"));
+      defineHiddenClass = MethodHandles.Lookup.class.getMethod(
+        "defineHiddenClass", byte[].class, boolean.class, nestmateOptions.getClass());
+      getNestHost = Class.class.getMethod("getNestHost");
+      getModule = Class.class.getMethod("getModule");
+      isExported = getModule.getReturnType().getMethod("isExported", String.class);
+    }
+    catch (ClassNotFoundException | NoSuchMethodException e) {
+      defineHiddenClass = null; // pre-Java 15 runtime
+    }
+    PRIVATE_LOOKUP_IN = privateLookupIn;
+    DEFINE_HIDDEN_CLASS = defineHiddenClass;
+    NESTMATE_OPTIONS = nestmateOptions;
+    GET_NEST_HOST = getNestHost;
+    GET_MODULE = getModule;
+    IS_EXPORTED = isExported;
+  }
+
+  private static Object enumConstant(Class<?> enumClass, String name) {
+    for (Object constant: enumClass.getEnumConstants()) {
+      if (((Enum<?>) constant).name().equals(name)) {
+        return constant;
+      }
+    }
+    throw new IllegalStateException("No constant " + name + " in " + enumClass.getName());
+  }
+
+  /**
+   * @return {@code true} if the runtime supports defining hidden classes
+   */
+  static boolean isSupported() {
+    return DEFINE_HIDDEN_CLASS != null;
+  }
+
+  /**
+   * Determine whether a hidden pojomator class could be defined for {@code pojoClass}. This requires that the class
+   * loader of {@code pojoClass} sees the same Pojomatic classes that we do, since the pojomator class will be defined
+   * in that loader.
+   * @param pojoClass the pojo class
+   * @return {@code true} if a hidden pojomator class may be defined for {@code pojoClass}
+   */
+  static boolean canDefineFor(Class<?> pojoClass) {
+    ClassLoader classLoader = pojoClass.getClassLoader();
+    if (!isSupported() || classLoader == null || pojoClass.isArray() || pojoClass.isPrimitive()) {
+      return false;
+    }
+    try {
+      return Class.forName(BasePojomator.class.getName(), false, classLoader) == BasePojomator.class;
+    }
+    catch (ClassNotFoundException | LinkageError e) {
+      return false;
+    }
+  }
+
+  /**
+   * Get the name to use for a hidden pojomator class. A hidden class must be in the same package as its host class.
+   * @param pojoClass the pojo class
+   * @return the name of the hidden pojomator class (before the JVM appends a suffix to make it unique)
+   */
+  static String pojomatorClassName(Class<?> pojoClass) {
+    return pojoClass.getName() + "$$HiddenPojomator";
+  }
+
+  /**
+   * Define a hidden class which is a nestmate of {@code pojoClass}.
+   * @param pojoClass the pojo class
+   * @param classBytes the bytes of the class to define; the class must be in the same package as {@code pojoClass}
+   * @return the hidden class
+   * @throws IllegalAccessException if Pojomatic does not have private access to {@code pojoClass}, for example because
+   * its package is not open to Pojomatic, or because it is in a different module
+   */
+  static Class<?> defineHiddenNestmate(Class<?> pojoClass, byte[] classBytes) throws IllegalAccessException {
+    try {
+      MethodHandles.Lookup lookup =
+        (MethodHandles.Lookup) PRIVATE_LOOKUP_IN.invoke(null, pojoClass, MethodHandles.lookup());
+      return ((MethodHandles.Lookup) DEFINE_HIDDEN_CLASS.invoke(lookup, classBytes, true, NESTMATE_OPTIONS))
+        .lookupClass();
+    }
+    catch (InvocationTargetException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IllegalAccessException) {
+        throw (IllegalAccessException) cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IllegalStateException(cause);
+    }
+  }
+
+  /**
+   * Determine whether code in a hidden nestmate of {@code pojoClass} can access {@code member} directly, via
+   * {@code GETFIELD} or {@code INVOKEVIRTUAL}.
+   * @param member the field or method to access
+   * @param pojoClass the pojo class
+   * @return {@code true} if {@code member} can be accessed directly
+   */
+  static boolean isAccessibleFromNestmate(Member member, Class<?> pojoClass) {
+    Class<?> declaringClass = member.getDeclaringClass();
+    if (nestHost(declaringClass) == nestHost(pojoClass)) {
+      return true;
+    }
+    int modifiers = member.getModifiers();
+    int classModifiers = declaringClass.getModifiers();
+    if (!Modifier.isPrivate(modifiers) && !Modifier.isPrivate(classModifiers)
+      && declaringClass.getClassLoader() == pojoClass.getClassLoader()
+      && packageName(declaringClass).equals(packageName(pojoClass))) {
+      return true;
+    }
+    return Modifier.isPublic(modifiers) && Modifier.isPublic(classModifiers) && isExported(declaringClass);
+  }
+
+  private static Class<?> nestHost(Class<?> clazz) {
+    return (Class<?>) invoke(GET_NEST_HOST, clazz);
+  }
+
+  private static boolean isExported(Class<?> clazz) {
+    return (Boolean) invoke(IS_EXPORTED, invoke(GET_MODULE, clazz), packageName(clazz));
+  }
+
+  private static String packageName(Class<?> clazz) {
+    String name = clazz.getName();
+    int lastDot = name.lastIndexOf('.');
+    return lastDot < 0 ? "" : name.substring(0, lastDot);
+  }
+
+  private static Object invoke(Method method, Object target, Object... args) {
+    try {
+      return method.invoke(target, args);
+    }
+    catch (IllegalAccessException | InvocationTargetException e) {
+      throw new IllegalStateException(e); // only used for public methods which do not throw
+    }
+  }
+}
@@ -0,0 +1,85 @@
+package org.pojomatic.internal;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A side table of cached hash codes, for classes annotated with {@link org.pojomatic.annotations.CacheHashCode} which
+ * do not provide a field to cache hash codes in. Instances are keyed by identity, and weakly held.
+ */
+final class IdentityHashCodeCache {
+  private final ConcurrentMap<Object, Integer> hashCodes = new ConcurrentHashMap<>();
+  private final ReferenceQueue<Object> collected = new ReferenceQueue<>();
+
+  /**
+   * Get the cached hash code for an instance.
+   * @param pojo the instance
+   * @return the cached hash code, or {@code 0} if none is cached
+   */
+  int get(Object pojo) {
+    Integer hashCode = hashCodes.get(new LookupKey(pojo));
+    return hashCode == null ? 0 : hashCode;
+  }
+
+  /**
+   * Cache the hash code for an instance.
+   * @param pojo the instance
+   * @param hashCode the hash code of {@code pojo}
+   */
+  void put(Object pojo, int hashCode) {
+    Reference<?> reference;
+    while ((reference = collected.poll()) != null) {
+      hashCodes.remove(reference);
+    }
+    hashCodes.put(new WeakKey(pojo, collected), hashCode);
+  }
+
+  private static final class WeakKey extends WeakReference<Object> {
+    private final int hash;
+
+    WeakKey(Object referent, ReferenceQueue<Object> queue) {
+      super(referent, queue);
+      hash = System.identityHashCode(referent);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (other == this) {
+        return true;
+      }
+      Object referent = get();
+      if (referent == null) {
+        return false;
+      }
+      return other instanceof LookupKey
+        ? ((LookupKey) other).referent == referent
+        : other instanceof WeakKey && ((WeakKey) other).get() == referent;
+    }
+  }
+
+  private static final class LookupKey {
+    private final Object referent;
+
+    LookupKey(Object referent) {
+      this.referent = referent;
+    }
+
+    @Override
+    public int hashCode() {
+      return System.identityHashCode(referent);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      return other instanceof WeakKey && ((WeakKey) other).get() == referent;
+    }
+  }
+}
@@ -0,0 +1,46 @@
+package org.pojomatic.internal;
+
+import org.pojomatic.Pojomator;
+
+/**
+ * A {@code CharSequence} holding the {@code toString} representation of a pojo, which is only computed when first
+ * needed, and then remembered. Instances may be shared between threads; a representation computed concurrently by
+ * several threads is simply computed more than once.
+ *
+ * @param <T> the type of the pojo
+ */
+final class LazyToString<T> implements CharSequence {
+  private final Pojomator<T> pojomator;
+  private final T instance;
+  private String string;
+
+  LazyToString(Pojomator<T> pojomator, T instance) {
+    this.pojomator = pojomator;
+    this.instance = instance;
+  }
+
+  @Override
+  public String toString() {
+    String result = string;
+    if (result == null) {
+      result = pojomator.doToString(instance);
+      string = result;
+    }
+    return result;
+  }
+
+  @Override
+  public int length() {
+    return toString().length();
+  }
+
+  @Override
+  public char charAt(int index) {
+    return toString().charAt(index);
+  }
+
+  @Override
+  public CharSequence subSequence(int start, int end) {
+    return toString().subSequence(start, end);
+  }
+}
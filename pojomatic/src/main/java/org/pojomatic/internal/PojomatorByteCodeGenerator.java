@@ -3,8 +3,16 @@ package org.pojomatic.internal;
 import java.lang.invoke.CallSite;
 import java.lang.invoke.MethodHandles;
 import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -20,15 +28,25 @@ import org.kohsuke.asm5.MethodVisitor;
 import org.kohsuke.asm5.Type;
 import org.pojomatic.Pojomator;
 import org.pojomatic.PropertyElement;
+import org.pojomatic.PropertySink;
+import org.pojomatic.annotations.CacheHashCode;
+import org.pojomatic.annotations.CompareDirection;
+import org.pojomatic.annotations.CompareOrder;
+import org.pojomatic.annotations.EqualsOrderPolicy;
+import org.pojomatic.annotations.NullOrderPolicy;
 import org.pojomatic.annotations.PojoFormat;
+import org.pojomatic.annotations.PropertyFormat;
 import org.pojomatic.annotations.SkipArrayCheck;
+import org.pojomatic.diff.DifferenceVisitor;
 import org.pojomatic.diff.Differences;
 import org.pojomatic.diff.NoDifferences;
 import org.pojomatic.diff.PropertyDifferences;
 import org.pojomatic.diff.ValueDifference;
 import org.pojomatic.formatter.DefaultEnhancedPojoFormatter;
+import org.pojomatic.formatter.DefaultEnhancedPropertyFormatter;
 import org.pojomatic.formatter.EnhancedPojoFormatter;
 import org.pojomatic.formatter.EnhancedPropertyFormatter;
+import org.pojomatic.formatter.StatelessPojoFormatter;
 
 import static org.kohsuke.asm5.Opcodes.*;
 
@@ -40,7 +58,23 @@ class PojomatorByteCodeGenerator {
   private static final String OBJECT_INTERNAL_NAME = internalName(Object.class);
   private static final String BASE_POJOMATOR_INTERNAL_NAME = internalName(BasePojomator.class);
   static final String POJO_CLASS_FIELD_NAME = "pojoClass";
+  static final String PROPERTY_SIGNATURE_FIELD_NAME = "propertySignature";
+  static final String PROPERTY_DESCRIPTOR_FIELD_NAME = "propertyDescriptor";
+  /**
+   * The version of the generated byte code, which is part of the {@link #propertySignature property signature}. This
+   * must be incremented whenever the methods which pojomators implement, or the way they are implemented, change, so
+   * that pojomators generated ahead of time by an earlier version are not used.
+   */
+  static final int GENERATOR_VERSION = 3;
   private static final String BOOTSTRAP_METHOD_NAME = "bootstrap";
+  static final String HASH_CODE_CACHE_FIELD_NAME = "hashCodeCacheField";
+  static final String GET_CACHED_HASH_CODE = "getCachedHashCode";
+  static final String SET_CACHED_HASH_CODE = "setCachedHashCode";
+  private static final String COMPUTE_HASH_CODE = "computeHashCode";
+  static final String COMPARE_EQUALS_PROPERTIES = "compareEqualsProperties";
+  static final String EQUALS_PROPERTY_COUNT_FIELD_NAME = "EQUALS_PROPERTY_COUNT";
+  static final String POJO_FORMATTER_FIELD_NAME = "pojoFormatter";
+  static final String UTF8_CONSTANTS_FIELD_NAME = "utf8Constants";
 
   private static final AtomicLong counter = new AtomicLong();
 
@@ -51,6 +85,7 @@ class PojomatorByteCodeGenerator {
   private final String pojoDescriptor;
   private final ClassProperties classProperties;
   private final Handle bootstrapMethod;
+  private final boolean hiddenNestmate;
   private final Map<PropertyElement, Integer> propertyNumbers = new HashMap<>();
 
   private MethodVisitor mv; // the active method visitor
@@ -70,7 +105,33 @@ class PojomatorByteCodeGenerator {
   }
 
   PojomatorByteCodeGenerator(Class<?> pojoClass, ClassProperties classProperties) {
-    this.pojomatorClassName = PojomatorStub.class.getName() + "$" + counter.incrementAndGet();
+    this(PojomatorStub.class.getName() + "$" + counter.incrementAndGet(), pojoClass, classProperties);
+  }
+
+  /**
+   * Create a generator for a pojomator class with a specific name. This is used when generating pojomators ahead of
+   * time, in which case the class will be loaded by the class loader of the pojo class itself.
+   * @param pojomatorClassName the binary name of the pojomator class to generate
+   * @param pojoClass the class to generate a pojomator for
+   * @param classProperties the properties of {@code pojoClass}
+   */
+  PojomatorByteCodeGenerator(String pojomatorClassName, Class<?> pojoClass, ClassProperties classProperties) {
+    this(pojomatorClassName, pojoClass, classProperties, false);
+  }
+
+  /**
+   * Create a generator for a pojomator class with a specific name.
+   * @param pojomatorClassName the binary name of the pojomator class to generate
+   * @param pojoClass the class to generate a pojomator for
+   * @param classProperties the properties of {@code pojoClass}
+   * @param hiddenNestmate whether the class will be defined as a hidden nestmate of {@code pojoClass} (see
+   * {@link HiddenClassDefiner}), in which case properties it has access to will be accessed directly, rather than
+   * through InvokeDynamic.
+   */
+  PojomatorByteCodeGenerator(
+    String pojomatorClassName, Class<?> pojoClass, ClassProperties classProperties, boolean hiddenNestmate) {
+    this.pojomatorClassName = pojomatorClassName;
+    this.hiddenNestmate = hiddenNestmate;
     this.pojomatorInternalClassName = internalName(pojomatorClassName);
     this.pojomatorInternalClassDesc = "L" + pojomatorInternalClassName + ";";
     this.pojoClass = pojoClass;
@@ -107,24 +168,82 @@ class PojomatorByteCodeGenerator {
       makeAccessor(classWriter, propertyElement);
     }
 
+    if (classProperties.getHashCodeCacheField() != null) {
+      makeCachedHashCodeAccessors(classWriter);
+    }
+
+    if (classProperties.getEqualsOrder() == EqualsOrderPolicy.ADAPTIVE) {
+      int index = 0;
+      for (PropertyElement propertyElement: classProperties.getEqualsComparisonOrder()) {
+        makePropertyEquals(classWriter, index++, propertyElement);
+      }
+    }
+
     makeDoEquals(classWriter);
+    if (classProperties.isHashCodeCached()) {
+      makeCachingDoHashCode(classWriter);
+    }
     makeDoHashCode(classWriter);
+    makeDoLongHashCode(classWriter);
+    makePropertiesInto(classWriter, "hashInto", ACC_PUBLIC, classProperties.getHashCodeProperties(), 80);
+    makePropertiesInto(
+      classWriter, "equalsPropertiesInto", ACC_PROTECTED, classProperties.getEqualsProperties(), 1);
     makeDoToString(classWriter);
+    makeAppendWithoutBudget(classWriter);
+    makeWriteJson(classWriter);
+    makeAppendTo(classWriter);
+    if (writesUtf8Directly(pojoClass, classProperties)) {
+      makeWriteUtf8Directly(classWriter);
+    }
     makeDoDiff(classWriter);
+    makeVisitDifferences(classWriter);
+    if (classProperties.getEqualsProperties().size() <= BasePojomator.MAX_DIFF_MASK_PROPERTIES) {
+      makeDiffMask(classWriter, false);
+    }
+    makeDiffMask(classWriter, true);
+    makeGetEqualsPropertyValue(classWriter);
+    makeDoCompare(classWriter);
 
     classWriter.visitEnd();
   }
 
   private void makeFields(ClassVisitor classVisitor) {
     //visitField(classVisitor, ACC_STATIC, POJO_CLASS_FIELD_NAME, classDesc(Class.class));
+    classVisitor.visitField(
+      ACC_STATIC | ACC_FINAL,
+      PROPERTY_SIGNATURE_FIELD_NAME,
+      classDesc(String.class),
+      null,
+      propertySignature(pojoClass, classProperties)).visitEnd();
+    classVisitor.visitField(
+      ACC_STATIC | ACC_FINAL,
+      PROPERTY_DESCRIPTOR_FIELD_NAME,
+      classDesc(String.class),
+      null,
+      classProperties.descriptor(pojoClass)).visitEnd();
+    if (classProperties.getHashCodeCacheField() != null) {
+      visitField(classVisitor, ACC_STATIC, HASH_CODE_CACHE_FIELD_NAME, classDesc(Field.class));
+    }
+    if (classProperties.getEqualsOrder() == EqualsOrderPolicy.ADAPTIVE) {
+      classVisitor.visitField(
+        ACC_PRIVATE | ACC_STATIC | ACC_FINAL, EQUALS_PROPERTY_COUNT_FIELD_NAME, classDesc(int.class), null,
+        classProperties.getEqualsProperties().size())
+        .visitEnd();
+    }
     for (PropertyElement property: classProperties.getToStringProperties()) {
       visitField(
         classVisitor, ACC_STATIC, propertyFormatterName(property), classDesc(EnhancedPropertyFormatter.class));
     }
+    if (sharedPojoFormatterClass(pojoClass) != null) {
+      visitField(classVisitor, ACC_STATIC, POJO_FORMATTER_FIELD_NAME, classDesc(StatelessPojoFormatter.class));
+    }
     for (PropertyElement property: classProperties.getAllProperties()) {
       visitField(
         classVisitor, ACC_STATIC, propertyElementName(property), classDesc(PropertyElement.class));
     }
+    if (writesUtf8Directly(pojoClass, classProperties)) {
+      visitField(classVisitor, ACC_STATIC, UTF8_CONSTANTS_FIELD_NAME, classDesc(byte[][].class));
+    }
   }
 
   private static void visitField(ClassVisitor classVisitor, int flags, String name, String classDescriptor) {
@@ -132,8 +251,10 @@ class PojomatorByteCodeGenerator {
   }
 
   /**
-   * Generate an accessor method for a property. The generated method uses InvokeDynamic, calling the method generated
-   * by {@link #makeBootstrapMethod(ClassVisitor)}
+   * Generate an accessor method for a property. If the pojomator class is a hidden nestmate of the pojo class with
+   * access to the property's field or method, the generated method accesses it directly; otherwise, it uses
+   * InvokeDynamic, with {@link BasePojomator#bootstrap(MethodHandles.Lookup, String, MethodType, Class)} as the
+   * bootstrap method.
    * @param classWriter
    * @param propertyElement the property to generate the accessor for
    */
@@ -146,9 +267,30 @@ class PojomatorByteCodeGenerator {
     mv.visitCode();
     Label start = visitNewLabel();
     pojo.acceptLoad(mv);
-    visitLineNumber(4, propertyElement);
-    mv.visitInvokeDynamicInsn(
-      accessorName, accessorMethodDescription(propertyElement), bootstrapMethod, Type.getType(pojomatorInternalClassDesc));
+    Member member = (Member) propertyElement.getElement();
+    if (hiddenNestmate && HiddenClassDefiner.isAccessibleFromNestmate(member, pojoClass)) {
+      Class<?> declaringClass = member.getDeclaringClass();
+      mv.visitTypeInsn(CHECKCAST, internalName(declaringClass));
+      visitLineNumber(67, propertyElement);
+      if (member instanceof Field) {
+        mv.visitFieldInsn(
+          GETFIELD, internalName(declaringClass), member.getName(), classDesc(((Field) member).getType()));
+      }
+      else {
+        mv.visitMethodInsn(
+          declaringClass.isInterface() ? INVOKEINTERFACE : INVOKEVIRTUAL,
+          internalName(declaringClass),
+          member.getName(),
+          Type.getMethodDescriptor((Method) member),
+          declaringClass.isInterface());
+      }
+    }
+    else {
+      visitLineNumber(4, propertyElement);
+      mv.visitInvokeDynamicInsn(
+        accessorName, accessorMethodDescription(propertyElement), bootstrapMethod,
+        Type.getType(pojomatorInternalClassDesc));
+    }
     visitLineNumber(5, propertyElement);
 
     // return using the appropriate return byte code, based on type
@@ -179,6 +321,86 @@ class PojomatorByteCodeGenerator {
     mv.visitEnd();
   }
 
+  /**
+   * Generate static methods to read and write the field named by {@link CacheHashCode}. As with property accessors,
+   * these access the field directly if possible, and otherwise use InvokeDynamic.
+   * @param cw
+   */
+  private void makeCachedHashCodeAccessors(ClassVisitor cw) {
+    Field cacheField = classProperties.getHashCodeCacheField();
+    boolean direct = hiddenNestmate && HiddenClassDefiner.isAccessibleFromNestmate(cacheField, pojoClass);
+    String cacheFieldOwner = internalName(cacheField.getDeclaringClass());
+    for (boolean getter: new boolean[] { true, false }) {
+      LocalVariable pojo = new LocalVariable("pojo", Object.class, null, 0);
+      LocalVariable hashCode = new LocalVariable("hashCode", int.class, null, 1);
+      String methodName = getter ? GET_CACHED_HASH_CODE : SET_CACHED_HASH_CODE;
+      String methodDescription = getter
+        ? methodDesc(int.class, Object.class)
+        : methodDesc(void.class, Object.class, int.class);
+      mv = cw.visitMethod(ACC_PRIVATE | ACC_STATIC, methodName, methodDescription, null, null);
+      mv.visitCode();
+      Label start = visitNewLabel();
+      pojo.acceptLoad(mv);
+      if (direct) {
+        mv.visitTypeInsn(CHECKCAST, cacheFieldOwner);
+      }
+      if (!getter) {
+        hashCode.acceptLoad(mv);
+      }
+      visitLineNumber(68, null);
+      if (direct) {
+        mv.visitFieldInsn(getter ? GETFIELD : PUTFIELD, cacheFieldOwner, cacheField.getName(), classDesc(int.class));
+      }
+      else {
+        mv.visitInvokeDynamicInsn(
+          methodName, methodDescription, bootstrapMethod, Type.getType(pojomatorInternalClassDesc));
+      }
+      mv.visitInsn(getter ? IRETURN : RETURN);
+      Label end = visitNewLabel();
+      pojo.withScope(start, end).acceptLocalVariable(mv);
+      if (!getter) {
+        hashCode.withScope(start, end).acceptLocalVariable(mv);
+      }
+      mv.visitMaxs(2, getter ? 1 : 2);
+      mv.visitEnd();
+    }
+  }
+
+  /**
+   * Load the hash code cached for the pojo in a local variable onto the stack, or 0 if none is cached.
+   * @param varThis the "this" local variable
+   * @param varPojo the local variable holding the pojo
+   */
+  private void loadCachedHashCode(LocalVariable varThis, LocalVariable varPojo) {
+    if (classProperties.getHashCodeCacheField() != null) {
+      varPojo.acceptLoad(mv);
+      visitLineNumber(69, null);
+      mv.visitMethodInsn(
+        INVOKESTATIC, pojomatorInternalClassName, GET_CACHED_HASH_CODE, methodDesc(int.class, Object.class), false);
+    }
+    else {
+      varThis.acceptLoad(mv);
+      varPojo.acceptLoad(mv);
+      visitLineNumber(70, null);
+      invokeVirtual(BasePojomator.class, "getSideTableHashCode", int.class, Object.class);
+    }
+  }
+
+  /**
+   * Jump to {@code label} unless the class of the pojo in a local variable is exactly the pojo class. Cached hash
+   * codes are only used for such pojos, since a pojo of a subclass may have more properties.
+   * @param varThis the "this" local variable
+   * @param varPojo the local variable holding the pojo
+   * @param label where to jump if the pojo is not exactly of the pojo class
+   */
+  private void jumpUnlessExactPojoClass(LocalVariable varThis, LocalVariable varPojo, Label label) {
+    varPojo.acceptLoad(mv);
+    visitLineNumber(71, null);
+    invokeVirtual(Object.class, "getClass", Class.class);
+    loadPojoClass(varThis);
+    mv.visitJumpInsn(IF_ACMPNE, label);
+  }
+
   private void makeConstructor(ClassVisitor cw) {
     LocalVariable varThis = new LocalVariable("this", pojomatorInternalClassDesc, null, 0);
     LocalVariable varPojoClass = new LocalVariable(POJO_CLASS_FIELD_NAME, Class.class, null, 1);
@@ -264,18 +486,55 @@ class PojomatorByteCodeGenerator {
     mv.visitLabel(compatibleTypes);
     mv.visitFrame(F_FULL, 3, localVars, 0, NO_STACK);
 
-    // Compare properties
-    for(PropertyElement propertyElement: classProperties.getHashCodeProperties()) {
-      visitLineNumber(14, propertyElement);
-      visitAccessorAndConvert(varPojo1, propertyElement);
-      visitLineNumber(15, propertyElement);
-      visitAccessorAndConvert(varPojo2, propertyElement);
-      visitLineNumber(16, propertyElement);
-      compareProperties(mv, returnFalse, propertyElement, stackAdjustments);
+    if (classProperties.isHashCodeCached()) {
+      // if both hash codes have been cached, and they differ, the pojos cannot be equal
+      LocalVariable varHashCode1 = new LocalVariable("hashCode1", int.class, null, 3);
+      Label compareProperties = new Label();
+      Label popAndCompareProperties = new Label();
+      jumpUnlessExactPojoClass(varThis, varPojo1, compareProperties);
+      jumpUnlessExactPojoClass(varThis, varPojo2, compareProperties);
+      loadCachedHashCode(varThis, varPojo1);
+      varHashCode1.acceptStore(mv);
+      varHashCode1.acceptLoad(mv);
+      mv.visitJumpInsn(IFEQ, compareProperties);
+      loadCachedHashCode(varThis, varPojo2);
+      mv.visitInsn(DUP);
+      mv.visitJumpInsn(IFEQ, popAndCompareProperties);
+      varHashCode1.acceptLoad(mv);
+      mv.visitJumpInsn(IF_ICMPNE, returnFalse);
+      mv.visitJumpInsn(GOTO, compareProperties);
+      mv.visitLabel(popAndCompareProperties);
+      mv.visitFrame(F_FULL, 4, new Object[] {
+        pojomatorInternalClassName, OBJECT_INTERNAL_NAME, OBJECT_INTERNAL_NAME, INTEGER }, 1, new Object[] { INTEGER });
+      mv.visitInsn(POP);
+      mv.visitLabel(compareProperties);
+      mv.visitFrame(F_FULL, 3, localVars, 0, NO_STACK);
+    }
+
+    if (classProperties.getEqualsOrder() == EqualsOrderPolicy.ADAPTIVE) {
+      // Let the call site compare properties, in whatever order it has settled on
+      varPojo1.acceptLoad(mv);
+      varPojo2.acceptLoad(mv);
+      visitLineNumber(82, null);
+      mv.visitInvokeDynamicInsn(
+        COMPARE_EQUALS_PROPERTIES, methodDesc(boolean.class, Object.class, Object.class), bootstrapMethod,
+        Type.getType(pojomatorInternalClassDesc));
+      mv.visitInsn(IRETURN);
+    }
+    else {
+      // Compare properties
+      for(PropertyElement propertyElement: classProperties.getEqualsComparisonOrder()) {
+        visitLineNumber(14, propertyElement);
+        visitAccessorAndConvert(varPojo1, propertyElement);
+        visitLineNumber(15, propertyElement);
+        visitAccessorAndConvert(varPojo2, propertyElement);
+        visitLineNumber(16, propertyElement);
+        compareProperties(mv, returnFalse, propertyElement, stackAdjustments);
+      }
+      // If we have gotten this far, all properties are equal, so return true.
+      mv.visitInsn(ICONST_1);
+      mv.visitInsn(IRETURN);
     }
-    // If we have gotten this far, all properties are equal, so return true.
-    mv.visitInsn(ICONST_1);
-    mv.visitInsn(IRETURN);
 
     mv.visitLabel(returnFalse);
     mv.visitFrame(F_FULL, 3, localVars, 0, NO_STACK);
@@ -286,10 +545,120 @@ class PojomatorByteCodeGenerator {
     varThis.withScope(start, end).acceptLocalVariable(mv);
     varPojo1.withScope(start, end).acceptLocalVariable(mv);
     varPojo2.withScope(start, end).acceptLocalVariable(mv);
-    mv.visitMaxs(2 + stackAdjustments.adjustments(2,  1), 3);
+    mv.visitMaxs(
+      2 + stackAdjustments.adjustments(2,  1) + (classProperties.isHashCodeCached() ? 1 : 0),
+      classProperties.isHashCodeCached() ? 4 : 3);
+    mv.visitEnd();
+  }
+
+  /**
+   * Generate the {@link Pojomator#doHashCode(Object)} method for a class annotated with {@link CacheHashCode}. The
+   * hash code is actually computed by the method generated by {@link #makeDoHashCode(ClassVisitor)}.
+   * @param cw
+   */
+  private void makeCachingDoHashCode(ClassVisitor cw) {
+    LocalVariable varThis = new LocalVariable("this", pojomatorInternalClassDesc, null, 0);
+    LocalVariable varPojo = new LocalVariable("pojo", pojoClass, pojoDescriptor, 1);
+    LocalVariable varHashCode = new LocalVariable("hashCode", int.class, null, 2);
+    Object[] localVars = new Object[] {pojomatorInternalClassName, OBJECT_INTERNAL_NAME};
+    String computeDescription = methodDesc(int.class, Object.class);
+
+    mv = cw.visitMethod(ACC_PUBLIC, "doHashCode", methodDesc(int.class, Object.class), null, null);
+    mv.visitCode();
+    Label start = visitNewLabel();
+    varPojo.acceptLoad(mv);
+    visitLineNumber(72, null);
+    checkNotNullPop();
+
+    Label notCacheable = new Label();
+    jumpUnlessExactPojoClass(varThis, varPojo, notCacheable);
+    loadCachedHashCode(varThis, varPojo);
+    mv.visitInsn(DUP);
+    Label notCached = new Label();
+    mv.visitJumpInsn(IFEQ, notCached);
+    mv.visitInsn(IRETURN);
+
+    // compute the hash code, and cache it
+    mv.visitLabel(notCached);
+    mv.visitFrame(F_FULL, 2, localVars, 1, new Object[] { INTEGER });
+    mv.visitInsn(POP);
+    varThis.acceptLoad(mv);
+    varPojo.acceptLoad(mv);
+    visitLineNumber(73, null);
+    mv.visitMethodInsn(INVOKESPECIAL, pojomatorInternalClassName, COMPUTE_HASH_CODE, computeDescription, false);
+    varHashCode.acceptStore(mv);
+    if (classProperties.getHashCodeCacheField() != null) {
+      varPojo.acceptLoad(mv);
+      varHashCode.acceptLoad(mv);
+      visitLineNumber(74, null);
+      mv.visitMethodInsn(INVOKESTATIC, pojomatorInternalClassName, SET_CACHED_HASH_CODE,
+        methodDesc(void.class, Object.class, int.class), false);
+    }
+    else {
+      varThis.acceptLoad(mv);
+      varPojo.acceptLoad(mv);
+      varHashCode.acceptLoad(mv);
+      visitLineNumber(75, null);
+      invokeVirtual(BasePojomator.class, "putSideTableHashCode", void.class, Object.class, int.class);
+    }
+    varHashCode.acceptLoad(mv);
+    mv.visitInsn(IRETURN);
+
+    // not exactly of the pojo class; compute the hash code without caching it
+    mv.visitLabel(notCacheable);
+    mv.visitFrame(F_FULL, 2, localVars, 0, NO_STACK);
+    varThis.acceptLoad(mv);
+    varPojo.acceptLoad(mv);
+    visitLineNumber(76, null);
+    mv.visitMethodInsn(INVOKESPECIAL, pojomatorInternalClassName, COMPUTE_HASH_CODE, computeDescription, false);
+    mv.visitInsn(IRETURN);
+
+    Label end = visitNewLabel();
+    varThis.withScope(start, end).acceptLocalVariable(mv);
+    varPojo.withScope(start, end).acceptLocalVariable(mv);
+    mv.visitMaxs(3, 3);
+    mv.visitEnd();
+  }
+
+  /**
+   * Generate a static method comparing a single property of two pojos, for use by {@link AdaptiveEqualsCallSite}.
+   * @param cw
+   * @param index the position of the property in {@link ClassProperties#getEqualsComparisonOrder()}
+   * @param propertyElement the property to compare
+   */
+  private void makePropertyEquals(ClassVisitor cw, int index, PropertyElement propertyElement) {
+    LocalVariable varPojo1 = new LocalVariable("instance", pojoClass, pojoDescriptor, 0);
+    LocalVariable varPojo2 = new LocalVariable("other", pojoClass, pojoDescriptor, 1);
+    StackAdjustments stackAdjustments = new StackAdjustments();
+
+    mv = cw.visitMethod(ACC_PRIVATE | ACC_STATIC, propertyEqualsMethodName(index),
+      methodDesc(boolean.class, Object.class, Object.class), null, null);
+    mv.visitCode();
+    Label start = visitNewLabel();
+    Label returnFalse = new Label();
+    visitLineNumber(83, propertyElement);
+    visitAccessorAndConvert(varPojo1, propertyElement);
+    visitAccessorAndConvert(varPojo2, propertyElement);
+    compareProperties(mv, returnFalse, propertyElement, stackAdjustments);
+    mv.visitInsn(ICONST_1);
+    mv.visitInsn(IRETURN);
+
+    mv.visitLabel(returnFalse);
+    mv.visitFrame(F_FULL, 2, new Object[] {OBJECT_INTERNAL_NAME, OBJECT_INTERNAL_NAME}, 0, NO_STACK);
+    mv.visitInsn(ICONST_0);
+    mv.visitInsn(IRETURN);
+
+    Label end = visitNewLabel();
+    varPojo1.withScope(start, end).acceptLocalVariable(mv);
+    varPojo2.withScope(start, end).acceptLocalVariable(mv);
+    mv.visitMaxs(2 + stackAdjustments.adjustments(2, 1), 2);
     mv.visitEnd();
   }
 
+  static String propertyEqualsMethodName(int index) {
+    return "propertyEquals_" + index;
+  }
+
   /**
    * Compare a property from each pojo. It is assumed when this method is called that both property values have been
    * loaded onto the stack. In the event the property value is a float or double, it is further assumed that it has
@@ -340,7 +709,8 @@ class PojomatorByteCodeGenerator {
   }
 
   /**
-   * Generate the {@link Pojomator#doHashCode(Object)} method.
+   * Generate the {@link Pojomator#doHashCode(Object)} method, or, if hash codes are cached, the private method it
+   * calls to compute hash codes.
    * @param cw
    */
   private void makeDoHashCode(ClassVisitor cw) {
@@ -350,7 +720,9 @@ class PojomatorByteCodeGenerator {
     int longOrDoubleStackAdjustment = 0;
     Object[] localVars = new Object[] {pojomatorInternalClassName, OBJECT_INTERNAL_NAME};
 
-    mv = cw.visitMethod(ACC_PUBLIC, "doHashCode", methodDesc(int.class, Object.class), null, null);
+    mv = classProperties.isHashCodeCached()
+      ? cw.visitMethod(ACC_PRIVATE, COMPUTE_HASH_CODE, methodDesc(int.class, Object.class), null, null)
+      : cw.visitMethod(ACC_PUBLIC, "doHashCode", methodDesc(int.class, Object.class), null, null);
     mv.visitCode();
     Label start = visitNewLabel();
     visitLineNumber(21, null);
@@ -484,126 +856,680 @@ class PojomatorByteCodeGenerator {
   }
 
   /**
-   * Generate {@link Pojomator#doToString(Object)}
+   * Generate the {@link Pojomator#doLongHashCode(Object, long)} method. Each property is mixed into the hash by one of
+   * the {@code longHashMix} methods of {@link BasePojomator}, chosen by the static type of the property, so that
+   * primitive values are never boxed.
    * @param cw
    */
-  private void makeDoToString(ClassVisitor cw) {
-    int longOrDoubleStackAdjustment = 1;
+  private void makeDoLongHashCode(ClassVisitor cw) {
     LocalVariable varThis = new LocalVariable("this", pojomatorInternalClassDesc, null, 0);
-    LocalVariable varPojo = new LocalVariable("pojo", pojoClass, null, 1);
-    LocalVariable varPojoFormatter=
-      new LocalVariable("pojoFormattor", classDesc(EnhancedPojoFormatter.class), null, 2);
-    LocalVariable varBuilder= new LocalVariable("builder", classDesc(String.class), null, 3);
+    LocalVariable varPojo = new LocalVariable("pojo", pojoClass, pojoDescriptor, 1);
+    LocalVariable varSeed = new LocalVariable("seed", long.class, null, 2);
 
-    mv = cw.visitMethod(ACC_PUBLIC, "doToString", methodDesc(String.class, Object.class), null, null);
+    mv = cw.visitMethod(ACC_PUBLIC, "doLongHashCode", methodDesc(long.class, Object.class, long.class), null, null);
     mv.visitCode();
     Label start = visitNewLabel();
     varPojo.acceptLoad(mv);
+    visitLineNumber(77, null);
     checkNotNullPop();
+    varSeed.acceptLoad(mv);
+    invokeStatic(BasePojomator.class, "longHashStart", long.class, long.class);
 
-    constructEnhancedPojoFormatter();
-    varPojoFormatter.acceptStore(mv);
-
-    visitLineNumber(33, null);
-    mv.visitTypeInsn(NEW, internalName(StringBuilder.class));
-    mv.visitInsn(DUP);
-    construct(StringBuilder.class);
-    varBuilder.acceptStore(mv);
-
-    varPojoFormatter.acceptLoad(mv);
-    varBuilder.acceptLoad(mv);
-    loadPojoClass(varThis);
-
-    visitLineNumber(34, null);
-
-    invokeInterface(EnhancedPojoFormatter.class,  "appendToStringPrefix", void.class, StringBuilder.class, Class.class);
-
-    for(PropertyElement propertyElement: classProperties.getToStringProperties()) {
-      if (isWide(propertyElement)) {
-        longOrDoubleStackAdjustment = 1; // having any double-wide values on our stack increases max stack depth by one
+    for (PropertyElement propertyElement: classProperties.getHashCodeProperties()) {
+      visitAccessorAndConvert(varPojo, propertyElement);
+      visitLineNumber(78, propertyElement);
+      Class<?> propertyType = propertyElement.getPropertyType();
+      if (propertyType.isPrimitive()) {
+        if (!isWide(propertyElement)) {
+          mv.visitInsn(I2L);
+        }
+        invokeStatic(BasePojomator.class, "longHashMix", long.class, long.class, long.class);
+      }
+      else if (propertyType.isArray()) {
+        Class<?> arrayType = effectiveType(propertyType);
+        if (arrayType.getComponentType().isPrimitive()) {
+          invokeStatic(BasePojomator.class, "longHashMix", long.class, long.class, arrayType);
+        }
+        else {
+          mv.visitInsn(isDeepArray(propertyElement) ? ICONST_1 : ICONST_0);
+          invokeStatic(BasePojomator.class, "longHashMix", long.class, long.class, Object[].class, boolean.class);
+        }
       }
+      else if (isObjectPossiblyHoldingArray(propertyElement)) {
+        mv.visitInsn(ICONST_1);
+        invokeStatic(
+          BasePojomator.class, "longHashMixPossibleArray", long.class, long.class, Object.class, boolean.class);
+      }
+      else {
+        invokeStatic(BasePojomator.class, "longHashMix", long.class, long.class, Object.class);
+      }
+    }
 
-      // append the property prefix
-      varPojoFormatter.acceptLoad(mv);
-      varBuilder.acceptLoad(mv);
-      visitLineNumber(35, propertyElement);
-      loadPropertyElementField(propertyElement);
-      visitLineNumber(36, propertyElement);
-      invokeInterface(
-        EnhancedPojoFormatter.class, "appendPropertyPrefix", void.class, StringBuilder.class, PropertyElement.class);
+    visitLineNumber(79, null);
+    invokeStatic(BasePojomator.class, "longHashFinish", long.class, long.class);
+    mv.visitInsn(LRETURN);
+    Label end = visitNewLabel();
+    varThis.withScope(start, end).acceptLocalVariable(mv);
+    varPojo.withScope(start, end).acceptLocalVariable(mv);
+    varSeed.withScope(start, end).acceptLocalVariable(mv);
+    mv.visitMaxs(5, 4);
+    mv.visitEnd();
+  }
 
-      // get the propertyFormatter for this property
-      visitLineNumber(37, propertyElement);
-      mv.visitFieldInsn(
-        GETSTATIC,
-        pojomatorInternalClassName,
-        propertyFormatterName(propertyElement),
-        classDesc(EnhancedPropertyFormatter.class));
+  /**
+   * Generate a method passing the values of properties to a {@link PropertySink}: either
+   * {@link Pojomator#hashInto(Object, PropertySink)}, or {@link BasePojomator#equalsPropertiesInto(Object, PropertySink)}.
+   * @param cw
+   * @param methodName the name of the method
+   * @param access the access flags of the method
+   * @param properties the properties to pass to the sink, in order
+   * @param lineNumberBase the base for line numbers in the method
+   */
+  private void makePropertiesInto(
+    ClassVisitor cw, String methodName, int access, Iterable<PropertyElement> properties, int lineNumberBase) {
+    LocalVariable varThis = new LocalVariable("this", pojomatorInternalClassDesc, null, 0);
+    LocalVariable varPojo = new LocalVariable("pojo", pojoClass, pojoDescriptor, 1);
+    LocalVariable varSink = new LocalVariable("sink", PropertySink.class, null, 2);
 
-      // The propertyFormatter will format the property value and append the results to our StringBuilder
-      varBuilder.acceptLoad(mv);
-      visitLineNumber(38, propertyElement);
+    mv = cw.visitMethod(
+      access, methodName, methodDesc(void.class, Object.class, PropertySink.class), null, null);
+    mv.visitCode();
+    Label start = visitNewLabel();
+    varPojo.acceptLoad(mv);
+    visitLineNumber(lineNumberBase, null);
+    checkNotNullPop();
+    varSink.acceptLoad(mv);
+    checkNotNullPop();
+
+    for (PropertyElement propertyElement: properties) {
+      varSink.acceptLoad(mv);
       visitAccessor(varPojo, propertyElement);
-      Class<?> appendType = appendFormattedType(propertyElement.getPropertyType());
-      if (isObjectPossiblyHoldingArray(propertyElement)) {
-        visitLineNumber(39, propertyElement);
-        invokeInterface(
-          EnhancedPropertyFormatter.class, "appendFormattedPossibleArray", void.class, StringBuilder.class, appendType);
+      visitLineNumber(lineNumberBase + 1, propertyElement);
+      Class<?> propertyType = propertyElement.getPropertyType();
+      Class<?> effectiveType = effectiveType(propertyType);
+      if (propertyType.isPrimitive()) {
+        String typeName = propertyType.getName();
+        invokeInterface(PropertySink.class,
+          "put" + Character.toUpperCase(typeName.charAt(0)) + typeName.substring(1), void.class, propertyType);
+      }
+      else if (propertyType.isArray()) {
+        String typeName = effectiveType.getComponentType().getSimpleName();
+        invokeInterface(PropertySink.class,
+          "put" + Character.toUpperCase(typeName.charAt(0)) + typeName.substring(1) + "s", void.class, effectiveType);
+      }
+      else if (propertyType == String.class) {
+        mv.visitTypeInsn(CHECKCAST, internalName(String.class));
+        invokeInterface(PropertySink.class, "putString", void.class, String.class);
+      }
+      else if (isObjectPossiblyHoldingArray(propertyElement)) {
+        invokeStatic(BasePojomator.class, "putPossibleArray", void.class, PropertySink.class, Object.class);
       }
       else {
-        visitLineNumber(40, propertyElement);
-        invokeInterface(
-          EnhancedPropertyFormatter.class,  "appendFormatted", void.class, StringBuilder.class, appendType);
+        invokeInterface(PropertySink.class, "putObject", void.class, Object.class);
       }
-
-      // have any property suffix appended to the StringBuilder
-      varPojoFormatter.acceptLoad(mv);
-      varBuilder.acceptLoad(mv);
-      visitLineNumber(41, propertyElement);
-      loadPropertyElementField(propertyElement);
-      visitLineNumber(42, propertyElement);
-      invokeInterface(
-        EnhancedPojoFormatter.class,  "appendPropertySuffix", void.class, StringBuilder.class, PropertyElement.class);
     }
 
-    // Have any toString suffix appended
-    varPojoFormatter.acceptLoad(mv);
-    varBuilder.acceptLoad(mv);
-    loadPojoClass(varThis);
-    visitLineNumber(43, null);
-    invokeInterface(EnhancedPojoFormatter.class,  "appendToStringSuffix", void.class, StringBuilder.class, Class.class);
+    mv.visitInsn(RETURN);
+    Label end = visitNewLabel();
+    varThis.withScope(start, end).acceptLocalVariable(mv);
+    varPojo.withScope(start, end).acceptLocalVariable(mv);
+    varSink.withScope(start, end).acceptLocalVariable(mv);
+    mv.visitMaxs(3, 3);
+    mv.visitEnd();
+  }
 
-    // invoke toString and return the result
+  /**
+   * Generate {@link Pojomator#writeJson(Object, StringBuilder)}. Member names, and the punctuation around them, are
+   * appended as constants; values are appended by the {@code appendJson} methods of {@link BasePojomator}.
+   * @param cw
+   */
+  private void makeWriteJson(ClassVisitor cw) {
+    LocalVariable varThis = new LocalVariable("this", pojomatorInternalClassDesc, null, 0);
+    LocalVariable varPojo = new LocalVariable("pojo", pojoClass, pojoDescriptor, 1);
+    LocalVariable varBuilder = new LocalVariable("builder", classDesc(StringBuilder.class), null, 2);
+
+    mv = cw.visitMethod(
+      ACC_PUBLIC, "writeJson", methodDesc(void.class, Object.class, StringBuilder.class), null, null);
+    mv.visitCode();
+    Label start = visitNewLabel();
+    varPojo.acceptLoad(mv);
+    visitLineNumber(88, null);
+    checkNotNullPop();
     varBuilder.acceptLoad(mv);
-    visitLineNumber(44, null);
-    invokeVirtual(StringBuilder.class, "toString", String.class);
-    mv.visitInsn(ARETURN);
+    checkNotNullPop();
+
+    StringBuilder pendingText = new StringBuilder("{");
+    for (PropertyElement propertyElement: classProperties.getToStringProperties()) {
+      if (pendingText.length() == 0) {
+        pendingText.append(',');
+      }
+      BasePojomator.appendJsonString(pendingText, propertyElement.getName());
+      pendingText.append(':');
+      visitLineNumber(89, propertyElement);
+      appendConstant(varBuilder, pendingText);
+
+      varBuilder.acceptLoad(mv);
+      visitAccessor(varPojo, propertyElement);
+      Class<?> propertyType = propertyElement.getPropertyType();
+      Class<?> valueType = propertyType == byte.class || propertyType == short.class ? int.class
+        : propertyType.isPrimitive() ? propertyType
+        : Object.class;
+      invokeStatic(BasePojomator.class, "appendJson", void.class, StringBuilder.class, valueType);
+    }
+    pendingText.append('}');
+    visitLineNumber(88, null);
+    appendConstant(varBuilder, pendingText);
+    mv.visitInsn(RETURN);
 
     Label end = visitNewLabel();
     varThis.withScope(start, end).acceptLocalVariable(mv);
     varPojo.withScope(start, end).acceptLocalVariable(mv);
-    varPojoFormatter.withScope(start, end).acceptLocalVariable(mv);
     varBuilder.withScope(start, end).acceptLocalVariable(mv);
-    mv.visitMaxs(3 + longOrDoubleStackAdjustment, 4);
+    mv.visitMaxs(4, 3);
     mv.visitEnd();
   }
 
-  private static Class<?> appendFormattedType(Class<?> propertyType) {
-    if (propertyType.isPrimitive()) {
-      return propertyType;
-    }
-    else if (propertyType.isArray()) {
-      return propertyType.getComponentType().isPrimitive() ? propertyType : Object[].class;
-    }
-    else {
-      return Object.class;
-    }
-  }
-
-  private void loadPropertyElementField(PropertyElement propertyElement) {
-    mv.visitFieldInsn(
-      GETSTATIC,
-      pojomatorInternalClassName,
+  /**
+   * Generate {@link Pojomator#doToString(Object)}, which creates a {@link StringBuilder}, and delegates to the
+   * method generated by {@link #makeAppendTo(ClassVisitor)}.
+   * @param cw
+   */
+  private void makeDoToString(ClassVisitor cw) {
+    LocalVariable varThis = new LocalVariable("this", pojomatorInternalClassDesc, null, 0);
+    LocalVariable varPojo = new LocalVariable("pojo", pojoClass, null, 1);
+    LocalVariable varBuilder = new LocalVariable("builder", classDesc(StringBuilder.class), null, 2);
+
+    mv = cw.visitMethod(ACC_PUBLIC, "doToString", methodDesc(String.class, Object.class), null, null);
+    mv.visitCode();
+    Label start = visitNewLabel();
+    varPojo.acceptLoad(mv);
+    checkNotNullPop();
+
+    varThis.acceptLoad(mv);
+    mv.visitLdcInsn(initialToStringLength(pojoClass, classProperties));
+    visitLineNumber(33, null);
+    mv.visitMethodInsn(INVOKEVIRTUAL, pojomatorInternalClassName, "newToStringBuilder",
+      methodDesc(StringBuilder.class, int.class), false);
+    varBuilder.acceptStore(mv);
+
+    varThis.acceptLoad(mv);
+    varPojo.acceptLoad(mv);
+    varBuilder.acceptLoad(mv);
+    visitLineNumber(85, null);
+    mv.visitMethodInsn(INVOKEVIRTUAL, pojomatorInternalClassName, "appendTo",
+      methodDesc(void.class, Object.class, StringBuilder.class), false);
+
+    // invoke toString and return the result
+    varThis.acceptLoad(mv);
+    varBuilder.acceptLoad(mv);
+    visitLineNumber(44, null);
+    mv.visitMethodInsn(INVOKEVIRTUAL, pojomatorInternalClassName, "finishToString",
+      methodDesc(String.class, StringBuilder.class), false);
+    mv.visitInsn(ARETURN);
+
+    Label end = visitNewLabel();
+    varThis.withScope(start, end).acceptLocalVariable(mv);
+    varPojo.withScope(start, end).acceptLocalVariable(mv);
+    varBuilder.withScope(start, end).acceptLocalVariable(mv);
+    mv.visitMaxs(3, 3);
+    mv.visitEnd();
+  }
+
+  /**
+   * The length assumed for a property value when estimating the length of a {@code toString} representation.
+   */
+  private static final int ESTIMATED_PROPERTY_VALUE_LENGTH = 8;
+
+  /**
+   * Estimate the length of a {@code toString} representation before any have been produced, from the lengths of the
+   * class and property names, and the punctuation which the default formatters add around them.
+   * @param pojoClass the class to estimate the representation length for
+   * @param classProperties the properties of {@code pojoClass}
+   * @return the estimated length
+   */
+  static int initialToStringLength(Class<?> pojoClass, ClassProperties classProperties) {
+    // "SimpleName{" ... "}"; the simple name is taken from the binary name, since getSimpleName() needs the enclosing
+    // class, which may not be loadable
+    String name = pojoClass.getName();
+    int length = name.length() - Math.max(name.lastIndexOf('.'), name.lastIndexOf('$')) - 1 + 2;
+    for (PropertyElement property: classProperties.getToStringProperties()) {
+      // "name: {" value "}, "
+      length += property.getName().length() + 6 + ESTIMATED_PROPERTY_VALUE_LENGTH;
+    }
+    return length;
+  }
+
+  /**
+   * Generate {@link BasePojomator#appendWithoutBudget(Object, StringBuilder)}, which formats each property in turn.
+   * @param cw
+   */
+  private void makeAppendWithoutBudget(ClassVisitor cw) {
+    int longOrDoubleStackAdjustment = 1;
+    LocalVariable varThis = new LocalVariable("this", pojomatorInternalClassDesc, null, 0);
+    LocalVariable varPojo = new LocalVariable("pojo", pojoClass, null, 1);
+    LocalVariable varBuilder = new LocalVariable("builder", classDesc(StringBuilder.class), null, 2);
+    LocalVariable varPojoFormatter =
+      new LocalVariable("pojoFormattor", classDesc(EnhancedPojoFormatter.class), null, 3);
+
+    mv = cw.visitMethod(
+      ACC_PROTECTED, "appendWithoutBudget", methodDesc(void.class, Object.class, StringBuilder.class), null, null);
+    mv.visitCode();
+    Label start = visitNewLabel();
+    varPojo.acceptLoad(mv);
+    checkNotNullPop();
+    varBuilder.acceptLoad(mv);
+    visitLineNumber(86, null);
+    checkNotNullPop();
+
+    Class<? extends StatelessPojoFormatter> sharedPojoFormatterClass = sharedPojoFormatterClass(pojoClass);
+    boolean sharedPojoFormatter = sharedPojoFormatterClass != null;
+    // With the default pojo formatter, property prefixes and suffixes depend only on property names and positions, so
+    // are computed here and appended as constants, merging each suffix with the following prefix.
+    DefaultEnhancedPojoFormatter affixFolder = sharedPojoFormatterClass == DefaultEnhancedPojoFormatter.class
+      ? new DefaultEnhancedPojoFormatter()
+      : null;
+    StringBuilder pendingAffixes = new StringBuilder();
+    if (sharedPojoFormatter) {
+      visitLineNumber(84, null);
+      mv.visitFieldInsn(
+        GETSTATIC, pojomatorInternalClassName, POJO_FORMATTER_FIELD_NAME, classDesc(StatelessPojoFormatter.class));
+    }
+    else {
+      constructEnhancedPojoFormatter();
+    }
+    varPojoFormatter.acceptStore(mv);
+
+    varPojoFormatter.acceptLoad(mv);
+    varBuilder.acceptLoad(mv);
+    loadPojoClass(varThis);
+
+    visitLineNumber(34, null);
+
+    invokeInterface(EnhancedPojoFormatter.class,  "appendToStringPrefix", void.class, StringBuilder.class, Class.class);
+
+    int propertyIndex = 0;
+    for(PropertyElement propertyElement: classProperties.getToStringProperties()) {
+      if (isWide(propertyElement)) {
+        longOrDoubleStackAdjustment = 1; // having any double-wide values on our stack increases max stack depth by one
+      }
+
+      // append the property prefix
+      if (affixFolder != null) {
+        affixFolder.appendPropertyPrefix(pendingAffixes, propertyElement, propertyIndex);
+        visitLineNumber(35, propertyElement);
+        appendConstant(varBuilder, pendingAffixes);
+      }
+      else {
+        varPojoFormatter.acceptLoad(mv);
+        varBuilder.acceptLoad(mv);
+        visitLineNumber(35, propertyElement);
+        loadPropertyElementField(propertyElement);
+        visitLineNumber(36, propertyElement);
+        invokeAppendPropertyAffix("appendPropertyPrefix", sharedPojoFormatter, propertyIndex);
+      }
+
+      // get the propertyFormatter for this property
+      visitLineNumber(37, propertyElement);
+      mv.visitFieldInsn(
+        GETSTATIC,
+        pojomatorInternalClassName,
+        propertyFormatterName(propertyElement),
+        classDesc(EnhancedPropertyFormatter.class));
+
+      // The propertyFormatter will format the property value and append the results to our StringBuilder
+      varBuilder.acceptLoad(mv);
+      visitLineNumber(38, propertyElement);
+      visitAccessor(varPojo, propertyElement);
+      Class<?> appendType = appendFormattedType(propertyElement.getPropertyType());
+      if (isObjectPossiblyHoldingArray(propertyElement)) {
+        visitLineNumber(39, propertyElement);
+        invokeInterface(
+          EnhancedPropertyFormatter.class, "appendFormattedPossibleArray", void.class, StringBuilder.class, appendType);
+      }
+      else {
+        visitLineNumber(40, propertyElement);
+        invokeInterface(
+          EnhancedPropertyFormatter.class,  "appendFormatted", void.class, StringBuilder.class, appendType);
+      }
+
+      // have any property suffix appended to the StringBuilder
+      if (affixFolder != null) {
+        affixFolder.appendPropertySuffix(pendingAffixes, propertyElement, propertyIndex);
+      }
+      else {
+        varPojoFormatter.acceptLoad(mv);
+        varBuilder.acceptLoad(mv);
+        visitLineNumber(41, propertyElement);
+        loadPropertyElementField(propertyElement);
+        visitLineNumber(42, propertyElement);
+        invokeAppendPropertyAffix("appendPropertySuffix", sharedPojoFormatter, propertyIndex);
+      }
+      propertyIndex++;
+    }
+
+    // Have any toString suffix appended
+    if (affixFolder != null) {
+      affixFolder.appendToStringSuffix(pendingAffixes, pojoClass);
+      visitLineNumber(43, null);
+      appendConstant(varBuilder, pendingAffixes);
+    }
+    else {
+      varPojoFormatter.acceptLoad(mv);
+      varBuilder.acceptLoad(mv);
+      loadPojoClass(varThis);
+      visitLineNumber(43, null);
+      invokeInterface(
+        EnhancedPojoFormatter.class,  "appendToStringSuffix", void.class, StringBuilder.class, Class.class);
+    }
+    mv.visitInsn(RETURN);
+
+    Label end = visitNewLabel();
+    varThis.withScope(start, end).acceptLocalVariable(mv);
+    varPojo.withScope(start, end).acceptLocalVariable(mv);
+    varPojoFormatter.withScope(start, end).acceptLocalVariable(mv);
+    varBuilder.withScope(start, end).acceptLocalVariable(mv);
+    mv.visitMaxs(4 + longOrDoubleStackAdjustment, 4);
+    mv.visitEnd();
+  }
+
+  /**
+   * Generate {@link Pojomator#appendTo(Object, StringBuilder)}, delegating to
+   * {@link BasePojomator#appendWithinBudget} for a class with a {@link org.pojomatic.annotations.ToStringBudget}, and
+   * to {@link BasePojomator#appendWithoutBudget} otherwise.
+   * @param cw
+   */
+  private void makeAppendTo(ClassVisitor cw) {
+    LocalVariable varThis = new LocalVariable("this", pojomatorInternalClassDesc, null, 0);
+    LocalVariable varPojo = new LocalVariable("pojo", pojoClass, null, 1);
+    LocalVariable varBuilder = new LocalVariable("builder", classDesc(StringBuilder.class), null, 2);
+
+    mv = cw.visitMethod(
+      ACC_PUBLIC, "appendTo", methodDesc(void.class, Object.class, StringBuilder.class), null, null);
+    mv.visitCode();
+    Label start = visitNewLabel();
+    varThis.acceptLoad(mv);
+    varPojo.acceptLoad(mv);
+    varBuilder.acceptLoad(mv);
+    visitLineNumber(87, null);
+    mv.visitMethodInsn(INVOKEVIRTUAL, pojomatorInternalClassName,
+      classProperties.getToStringBudget() != null ? "appendWithinBudget" : "appendWithoutBudget",
+      methodDesc(void.class, Object.class, StringBuilder.class), false);
+    mv.visitInsn(RETURN);
+
+    Label end = visitNewLabel();
+    varThis.withScope(start, end).acceptLocalVariable(mv);
+    varPojo.withScope(start, end).acceptLocalVariable(mv);
+    varBuilder.withScope(start, end).acceptLocalVariable(mv);
+    mv.visitMaxs(3, 3);
+    mv.visitEnd();
+  }
+
+  /**
+   * Determine whether {@link BasePojomator#writeUtf8Directly(Object, ByteBuffer)} is generated for a class: that is,
+   * whether it uses the default pojo formatter and default property formatters, and has no
+   * {@link org.pojomatic.annotations.ToStringBudget}, so that its representation can be written without a
+   * {@code StringBuilder}.
+   * @param pojoClass the pojo class
+   * @param classProperties the properties of {@code pojoClass}
+   * @return {@code true} if {@code writeUtf8Directly} is generated
+   */
+  static boolean writesUtf8Directly(Class<?> pojoClass, ClassProperties classProperties) {
+    if (sharedPojoFormatterClass(pojoClass) != DefaultEnhancedPojoFormatter.class
+      || classProperties.getToStringBudget() != null) {
+      return false;
+    }
+    for (PropertyElement property: classProperties.getToStringProperties()) {
+      PropertyFormat format = property.getElement().getAnnotation(PropertyFormat.class);
+      if (format != null && format.value() != DefaultEnhancedPropertyFormatter.class) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Compute the UTF-8 encoded text which {@link #makeWriteUtf8Directly(ClassVisitor)} writes around the property
+   * values: the first property prefix, then each property suffix merged with the following property prefix, and
+   * finally the last property suffix and the class suffix. The class prefix, which needs the class's simple name, is
+   * left to {@link BasePojomator#putUtf8ToStringPrefix(ByteBuffer)}, as {@link #makeAppendWithoutBudget} leaves it to
+   * the pojo formatter.
+   * @param pojoClass the pojo class
+   * @param classProperties the properties of {@code pojoClass}
+   * @return the constants, one more than there are {@code toString} properties, or {@code null} if
+   *   {@link #writesUtf8Directly(Class, ClassProperties)} is {@code false}
+   */
+  static byte[][] utf8Constants(Class<?> pojoClass, ClassProperties classProperties) {
+    if (!writesUtf8Directly(pojoClass, classProperties)) {
+      return null;
+    }
+    DefaultEnhancedPojoFormatter formatter = new DefaultEnhancedPojoFormatter();
+    Collection<PropertyElement> properties = classProperties.getToStringProperties();
+    byte[][] constants = new byte[properties.size() + 1][];
+    StringBuilder text = new StringBuilder();
+    int i = 0;
+    for (PropertyElement property: properties) {
+      formatter.appendPropertyPrefix(text, property, i);
+      constants[i] = text.toString().getBytes(StandardCharsets.UTF_8);
+      text.setLength(0);
+      formatter.appendPropertySuffix(text, property, i++);
+    }
+    formatter.appendToStringSuffix(text, pojoClass);
+    constants[properties.size()] = text.toString().getBytes(StandardCharsets.UTF_8);
+    return constants;
+  }
+
+  /**
+   * Generate {@link BasePojomator#writeUtf8Directly(Object, ByteBuffer)}. The text around property values is written
+   * from the constants computed by {@link #utf8Constants(Class, ClassProperties)}; primitive values and primitive
+   * arrays are written by the {@code putUtf8} methods of {@link BasePojomator}, and other values by
+   * {@link BasePojomator#putUtf8Formatted(ByteBuffer, EnhancedPropertyFormatter, Object, boolean)}.
+   * @param cw
+   */
+  private void makeWriteUtf8Directly(ClassVisitor cw) {
+    LocalVariable varThis = new LocalVariable("this", pojomatorInternalClassDesc, null, 0);
+    LocalVariable varPojo = new LocalVariable("pojo", pojoClass, pojoDescriptor, 1);
+    LocalVariable varBuffer = new LocalVariable("buffer", classDesc(ByteBuffer.class), null, 2);
+
+    mv = cw.visitMethod(
+      ACC_PROTECTED, "writeUtf8Directly", methodDesc(boolean.class, Object.class, ByteBuffer.class), null, null);
+    mv.visitCode();
+    Label start = visitNewLabel();
+    visitLineNumber(93, null);
+    varThis.acceptLoad(mv);
+    varBuffer.acceptLoad(mv);
+    invokeVirtual(BasePojomator.class, "putUtf8ToStringPrefix", void.class, ByteBuffer.class);
+
+    int constantIndex = 0;
+    for (PropertyElement propertyElement: classProperties.getToStringProperties()) {
+      visitLineNumber(93, propertyElement);
+      putUtf8Constant(varBuffer, constantIndex++);
+
+      varBuffer.acceptLoad(mv);
+      Class<?> propertyType = propertyElement.getPropertyType();
+      Class<?> effectiveType = effectiveType(propertyType);
+      if (effectiveType.isPrimitive() || effectiveType.isArray() && effectiveType.getComponentType().isPrimitive()) {
+        visitAccessor(varPojo, propertyElement);
+        visitLineNumber(94, propertyElement);
+        Class<?> valueType = propertyType == byte.class || propertyType == short.class ? int.class : propertyType;
+        invokeStatic(BasePojomator.class, "putUtf8", void.class, ByteBuffer.class, valueType);
+      }
+      else {
+        mv.visitFieldInsn(
+          GETSTATIC,
+          pojomatorInternalClassName,
+          propertyFormatterName(propertyElement),
+          classDesc(EnhancedPropertyFormatter.class));
+        visitAccessor(varPojo, propertyElement);
+        mv.visitInsn(isObjectPossiblyHoldingArray(propertyElement) || propertyType.isArray() ? ICONST_1 : ICONST_0);
+        visitLineNumber(94, propertyElement);
+        invokeStatic(BasePojomator.class, "putUtf8Formatted", void.class,
+          ByteBuffer.class, EnhancedPropertyFormatter.class, Object.class, boolean.class);
+      }
+    }
+    visitLineNumber(93, null);
+    putUtf8Constant(varBuffer, constantIndex);
+    mv.visitInsn(ICONST_1);
+    mv.visitInsn(IRETURN);
+
+    Label end = visitNewLabel();
+    varThis.withScope(start, end).acceptLocalVariable(mv);
+    varPojo.withScope(start, end).acceptLocalVariable(mv);
+    varBuffer.withScope(start, end).acceptLocalVariable(mv);
+    mv.visitMaxs(4, 3);
+    mv.visitEnd();
+  }
+
+  /**
+   * Write one of the constants computed by {@link #utf8Constants(Class, ClassProperties)} to a buffer.
+   * @param varBuffer the buffer to write to
+   * @param index the index of the constant
+   */
+  private void putUtf8Constant(LocalVariable varBuffer, int index) {
+    varBuffer.acceptLoad(mv);
+    mv.visitFieldInsn(GETSTATIC, pojomatorInternalClassName, UTF8_CONSTANTS_FIELD_NAME, classDesc(byte[][].class));
+    mv.visitLdcInsn(index);
+    mv.visitInsn(AALOAD);
+    invokeVirtual(ByteBuffer.class, "put", ByteBuffer.class, byte[].class);
+    mv.visitInsn(POP);
+  }
+
+  /**
+   * Append text computed at generation time to a builder, and clear the text.
+   * @param varBuilder the builder to append to
+   * @param text the text to append
+   */
+  private void appendConstant(LocalVariable varBuilder, StringBuilder text) {
+    varBuilder.acceptLoad(mv);
+    mv.visitLdcInsn(text.toString());
+    invokeVirtual(StringBuilder.class, "append", StringBuilder.class, String.class);
+    mv.visitInsn(POP);
+    text.setLength(0);
+  }
+
+  /**
+   * Invoke {@code appendPropertyPrefix} or {@code appendPropertySuffix} on the pojo formatter, with the formatter,
+   * builder and property element already on the stack. For a shared {@link StatelessPojoFormatter}, the variant taking
+   * a property index is used.
+   * @param methodName the method to invoke
+   * @param sharedPojoFormatter whether the pojo formatter is a shared {@code StatelessPojoFormatter}
+   * @param propertyIndex the position of the property among those being formatted
+   */
+  private void invokeAppendPropertyAffix(String methodName, boolean sharedPojoFormatter, int propertyIndex) {
+    if (sharedPojoFormatter) {
+      mv.visitLdcInsn(propertyIndex);
+      invokeInterface(
+        StatelessPojoFormatter.class, methodName, void.class, StringBuilder.class, PropertyElement.class, int.class);
+    }
+    else {
+      invokeInterface(EnhancedPojoFormatter.class, methodName, void.class, StringBuilder.class, PropertyElement.class);
+    }
+  }
+
+  /**
+   * Determine the class of {@link StatelessPojoFormatter} which a single instance of can be shared by all calls to
+   * {@link Pojomator#doToString(Object)}, if any. See {@link StatelessPojoFormatter} for when a formatter is shared.
+   * @param pojoClass the pojo class
+   * @return the class of the shared formatter, or {@code null} if a new formatter should be created for each call
+   */
+  static Class<? extends StatelessPojoFormatter> sharedPojoFormatterClass(Class<?> pojoClass) {
+    PojoFormat format = pojoClass.getAnnotation(PojoFormat.class);
+    if (format == null) {
+      return DefaultEnhancedPojoFormatter.class;
+    }
+    if (!StatelessPojoFormatter.class.isAssignableFrom(format.value())) {
+      return null;
+    }
+    Class<? extends StatelessPojoFormatter> formatterClass = format.value().asSubclass(StatelessPojoFormatter.class);
+    try {
+      for (String methodName: new String[] { "appendPropertyPrefix", "appendPropertySuffix" }) {
+        Class<?> statefulDeclarer =
+          formatterClass.getMethod(methodName, StringBuilder.class, PropertyElement.class).getDeclaringClass();
+        Class<?> statelessDeclarer = formatterClass.getMethod(
+          methodName, StringBuilder.class, PropertyElement.class, int.class).getDeclaringClass();
+        if (statefulDeclarer != statelessDeclarer && statelessDeclarer.isAssignableFrom(statefulDeclarer)) {
+          return null; // only the stateful method was overridden
+        }
+      }
+    }
+    catch (NoSuchMethodException e) {
+      throw new IllegalStateException(e); // both are declared by StatelessPojoFormatter
+    }
+    for (Class<?> clazz = formatterClass; clazz != DefaultEnhancedPojoFormatter.class; clazz = clazz.getSuperclass()) {
+      if (!DefaultEnhancedPojoFormatter.class.isAssignableFrom(clazz)) {
+        break;
+      }
+      for (Field field: clazz.getDeclaredFields()) {
+        if (!Modifier.isStatic(field.getModifiers())) {
+          return null;
+        }
+      }
+    }
+    return formatterClass;
+  }
+
+  /**
+   * Compute a signature describing everything about a pojo class which is baked into the generated byte code: the
+   * version of the generator, the properties used for each role, in order, with their types and names, and the pojo
+   * formatter. A pojomator generated ahead of time can only be
+   * used if its signature matches the signature computed for the class at runtime.
+   * @param pojoClass the pojo class
+   * @param classProperties the properties of {@code pojoClass}
+   * @return the signature
+   */
+  static String propertySignature(Class<?> pojoClass, ClassProperties classProperties) {
+    StringBuilder builder = new StringBuilder();
+    builder.append("version:").append(GENERATOR_VERSION).append(';');
+    appendSignature(builder, "equals", classProperties.getEqualsProperties());
+    appendSignature(builder, "hashCode", classProperties.getHashCodeProperties());
+    appendSignature(builder, "toString", classProperties.getToStringProperties());
+    PojoFormat format = pojoClass.getAnnotation(PojoFormat.class);
+    builder.append("format:").append(format == null ? "" : format.value().getName()).append(';');
+    builder.append("cacheHashCode:");
+    if (classProperties.isHashCodeCached()) {
+      Field cacheField = classProperties.getHashCodeCacheField();
+      builder.append(cacheField == null ? "*" : cacheField.getDeclaringClass().getName() + "." + cacheField.getName());
+    }
+    builder.append(";equalsOrder:").append(classProperties.getEqualsOrder());
+    builder.append(";toStringBudget:").append(classProperties.getToStringBudget() != null);
+    builder.append(";compare:");
+    for (PropertyElement property: classProperties.getCompareOrder()) {
+      CompareOrder compareOrder = property.getElement().getAnnotation(CompareOrder.class);
+      builder.append(property.getName());
+      if (compareOrder != null) {
+        builder.append('/').append(compareOrder.direction()).append('/').append(compareOrder.nulls());
+      }
+      builder.append(',');
+    }
+    return builder.toString();
+  }
+
+  private static void appendSignature(StringBuilder builder, String role, Iterable<PropertyElement> properties) {
+    builder.append(role).append(':');
+    for (PropertyElement property: properties) {
+      builder.append(qualifiedPropertyName(property))
+        .append(':').append(property.getPropertyType().getName())
+        .append(':').append(property.getName())
+        .append(',');
+    }
+    builder.append(';');
+  }
+
+  private static Class<?> appendFormattedType(Class<?> propertyType) {
+    if (propertyType.isPrimitive()) {
+      return propertyType;
+    }
+    else if (propertyType.isArray()) {
+      return propertyType.getComponentType().isPrimitive() ? propertyType : Object[].class;
+    }
+    else {
+      return Object.class;
+    }
+  }
+
+  private void loadPropertyElementField(PropertyElement propertyElement) {
+    mv.visitFieldInsn(
+      GETSTATIC,
+      pojomatorInternalClassName,
       propertyElementName(propertyElement),
       classDesc(PropertyElement.class));
   }
@@ -701,7 +1627,7 @@ class PojomatorByteCodeGenerator {
 
     List<LocalVariable> propertyVariables = new ArrayList<>(); // these will occur in a block scope
     // compare properties
-    for(PropertyElement propertyElement: classProperties.getHashCodeProperties()) {
+    for(PropertyElement propertyElement: classProperties.getEqualsProperties()) {
       int width = isWide(propertyElement) ? 2 : 1;
       Class<?> propertyType = propertyElement.getPropertyType();
       LocalVariable varProp1 = new LocalVariable(
@@ -799,6 +1725,307 @@ class PojomatorByteCodeGenerator {
     mv.visitEnd();
   }
 
+  /**
+   * Generate {@link Pojomator#visitDifferences(Object, Object, DifferenceVisitor)}. Each property is compared as for
+   * {@code doDiff}; if the values differ, they are fetched again, and passed to the visitor callback for the property
+   * type.
+   * @param cw
+   */
+  private void makeVisitDifferences(ClassVisitor cw) {
+    LocalVariable varThis = new LocalVariable("this", pojomatorInternalClassDesc, null, 0);
+    LocalVariable varPojo1 = new LocalVariable("instance", pojoClass, pojoDescriptor, 1);
+    LocalVariable varPojo2 = new LocalVariable("other", pojoClass, pojoDescriptor, 2);
+    LocalVariable varVisitor = new LocalVariable("visitor", DifferenceVisitor.class, null, 3);
+
+    StackAdjustments stackAdjustments = new StackAdjustments();
+    Object[] localVarTypes = new Object[] {
+      pojomatorInternalClassName, OBJECT_INTERNAL_NAME, OBJECT_INTERNAL_NAME, internalName(DifferenceVisitor.class) };
+
+    mv = cw.visitMethod(ACC_PUBLIC, "visitDifferences",
+      methodDesc(boolean.class, Object.class, Object.class, DifferenceVisitor.class), null, null);
+    mv.visitCode();
+    Label start = visitNewLabel();
+    varVisitor.acceptLoad(mv);
+    visitLineNumber(90, null);
+    checkNotNullPop();
+    varPojo1.acceptLoad(mv);
+    checkNotNull("instance is null");
+    varPojo2.acceptLoad(mv);
+    checkNotNull("other is null");
+
+    // If instance and other are the same object, there are no differences
+    Label notSameInstance = new Label();
+    mv.visitJumpInsn(IF_ACMPNE, notSameInstance);
+    mv.visitInsn(ICONST_1);
+    mv.visitInsn(IRETURN);
+
+    mv.visitLabel(notSameInstance);
+    mv.visitFrame(F_FULL, 4, localVarTypes, 0, NO_STACK);
+    checkCompatibleForEquality(varThis, varPojo1, "instance");
+    checkCompatibleForEquality(varThis, varPojo2, "other");
+
+    for (PropertyElement propertyElement: classProperties.getEqualsProperties()) {
+      Class<?> propertyType = propertyElement.getPropertyType();
+      visitLineNumber(91, propertyElement);
+      visitAccessorAndConvert(varPojo1, propertyElement);
+      visitAccessorAndConvert(varPojo2, propertyElement);
+      Label propertiesNotEqual = new Label();
+      Label next = new Label();
+      compareProperties(mv, propertiesNotEqual, propertyElement, stackAdjustments);
+      mv.visitJumpInsn(GOTO, next);
+
+      mv.visitLabel(propertiesNotEqual);
+      mv.visitFrame(F_FULL, 4, localVarTypes, 0, NO_STACK);
+      varVisitor.acceptLoad(mv);
+      loadPropertyElementField(propertyElement);
+      visitAccessor(varPojo1, propertyElement);
+      visitAccessor(varPojo2, propertyElement);
+      Class<?> valueType = propertyType.isPrimitive() ? propertyType : Object.class;
+      String typeName = valueType.getSimpleName();
+      visitLineNumber(92, propertyElement);
+      invokeInterface(DifferenceVisitor.class,
+        "on" + Character.toUpperCase(typeName.charAt(0)) + typeName.substring(1) + "Difference",
+        boolean.class, PropertyElement.class, valueType, valueType);
+      mv.visitJumpInsn(IFNE, next);
+      mv.visitInsn(ICONST_0);
+      mv.visitInsn(IRETURN);
+
+      mv.visitLabel(next);
+      mv.visitFrame(F_FULL, 4, localVarTypes, 0, NO_STACK);
+    }
+    mv.visitInsn(ICONST_1);
+    mv.visitInsn(IRETURN);
+
+    Label end = visitNewLabel();
+    varThis.withScope(start, end).acceptLocalVariable(mv);
+    varPojo1.withScope(start, end).acceptLocalVariable(mv);
+    varPojo2.withScope(start, end).acceptLocalVariable(mv);
+    varVisitor.withScope(start, end).acceptLocalVariable(mv);
+    mv.visitMaxs(6 + stackAdjustments.adjustments(0, 0), 4);
+    mv.visitEnd();
+  }
+
+  /**
+   * Generate {@link Pojomator#diffMask(Object, Object)} or {@link Pojomator#diffBitSet(Object, Object)}. Each property
+   * is compared as for {@code doEquals}; if the values differ, the bit for the property's index is set in the mask.
+   * @param cw
+   * @param bitSet {@code true} to generate {@code diffBitSet}, or {@code false} to generate {@code diffMask}
+   */
+  private void makeDiffMask(ClassVisitor cw, boolean bitSet) {
+    LocalVariable varThis = new LocalVariable("this", pojomatorInternalClassDesc, null, 0);
+    LocalVariable varPojo1 = new LocalVariable("instance", pojoClass, pojoDescriptor, 1);
+    LocalVariable varPojo2 = new LocalVariable("other", pojoClass, pojoDescriptor, 2);
+    LocalVariable varMask = new LocalVariable("mask", bitSet ? BitSet.class : long.class, null, 3);
+    int lineNumberBase = bitSet ? 95 : 93;
+    int propertyCount = classProperties.getEqualsProperties().size();
+
+    StackAdjustments stackAdjustments = new StackAdjustments();
+    Object[] localVarTypes = new Object[] {
+      pojomatorInternalClassName, OBJECT_INTERNAL_NAME, OBJECT_INTERNAL_NAME,
+      bitSet ? internalName(BitSet.class) : LONG };
+
+    mv = cw.visitMethod(
+      ACC_PUBLIC, bitSet ? "diffBitSet" : "diffMask",
+      methodDesc(bitSet ? BitSet.class : long.class, Object.class, Object.class), null, null);
+    mv.visitCode();
+    Label start = visitNewLabel();
+    varPojo1.acceptLoad(mv);
+    visitLineNumber(lineNumberBase, null);
+    checkNotNull("instance is null");
+    varPojo2.acceptLoad(mv);
+    checkNotNull("other is null");
+
+    // If instance and other are the same object, there are no differences
+    Label notSameInstance = new Label();
+    mv.visitJumpInsn(IF_ACMPNE, notSameInstance);
+    visitEmptyMask(bitSet, propertyCount);
+    mv.visitInsn(bitSet ? ARETURN : LRETURN);
+
+    mv.visitLabel(notSameInstance);
+    mv.visitFrame(F_FULL, 3, localVarTypes, 0, NO_STACK);
+    checkCompatibleForEquality(varThis, varPojo1, "instance");
+    checkCompatibleForEquality(varThis, varPojo2, "other");
+    visitEmptyMask(bitSet, propertyCount);
+    varMask.acceptStore(mv);
+
+    int index = 0;
+    for (PropertyElement propertyElement: classProperties.getEqualsProperties()) {
+      visitLineNumber(lineNumberBase + 1, propertyElement);
+      visitAccessorAndConvert(varPojo1, propertyElement);
+      visitAccessorAndConvert(varPojo2, propertyElement);
+      Label propertiesNotEqual = new Label();
+      Label next = new Label();
+      compareProperties(mv, propertiesNotEqual, propertyElement, stackAdjustments);
+      mv.visitJumpInsn(GOTO, next);
+
+      mv.visitLabel(propertiesNotEqual);
+      mv.visitFrame(F_FULL, 4, localVarTypes, 0, NO_STACK);
+      varMask.acceptLoad(mv);
+      if (bitSet) {
+        mv.visitLdcInsn(index);
+        invokeVirtual(BitSet.class, "set", void.class, int.class);
+      }
+      else {
+        mv.visitLdcInsn(1L << index);
+        mv.visitInsn(LOR);
+        varMask.acceptStore(mv);
+      }
+
+      mv.visitLabel(next);
+      mv.visitFrame(F_FULL, 4, localVarTypes, 0, NO_STACK);
+      index++;
+    }
+    varMask.acceptLoad(mv);
+    mv.visitInsn(bitSet ? ARETURN : LRETURN);
+
+    Label end = visitNewLabel();
+    varThis.withScope(start, end).acceptLocalVariable(mv);
+    varPojo1.withScope(start, end).acceptLocalVariable(mv);
+    varPojo2.withScope(start, end).acceptLocalVariable(mv);
+    varMask.withScope(notSameInstance, end).acceptLocalVariable(mv);
+    mv.visitMaxs(6 + stackAdjustments.adjustments(0, 0), 5);
+    mv.visitEnd();
+  }
+
+  /**
+   * Generate {@link Pojomator#doCompare(Object, Object)}. Properties are compared in the order given by
+   * {@link ClassProperties#getCompareOrder()}; primitive values are compared with the {@code compare} method of their
+   * wrapper class, and others with {@link BasePojomator#compareValues(Object, Object, boolean)}. For a descending
+   * property, the values are loaded in reverse order, and nulls are moved to the opposite end to compensate.
+   * @param cw
+   */
+  private void makeDoCompare(ClassVisitor cw) {
+    LocalVariable varThis = new LocalVariable("this", pojomatorInternalClassDesc, null, 0);
+    LocalVariable varPojo1 = new LocalVariable("instance", pojoClass, pojoDescriptor, 1);
+    LocalVariable varPojo2 = new LocalVariable("other", pojoClass, pojoDescriptor, 2);
+    Object[] localVarTypes = new Object[] { pojomatorInternalClassName, OBJECT_INTERNAL_NAME, OBJECT_INTERNAL_NAME };
+
+    mv = cw.visitMethod(ACC_PUBLIC, "doCompare", methodDesc(int.class, Object.class, Object.class), null, null);
+    mv.visitCode();
+    Label start = visitNewLabel();
+    varPojo1.acceptLoad(mv);
+    visitLineNumber(99, null);
+    checkNotNull("instance is null");
+    varPojo2.acceptLoad(mv);
+    checkNotNull("other is null");
+
+    // If instance and other are the same object, they compare as equal
+    Label notSameInstance = new Label();
+    mv.visitJumpInsn(IF_ACMPNE, notSameInstance);
+    mv.visitInsn(ICONST_0);
+    mv.visitInsn(IRETURN);
+
+    mv.visitLabel(notSameInstance);
+    mv.visitFrame(F_FULL, 3, localVarTypes, 0, NO_STACK);
+    checkCompatibleForEquality(varThis, varPojo1, "instance");
+    checkCompatibleForEquality(varThis, varPojo2, "other");
+
+    for (PropertyElement propertyElement: classProperties.getCompareOrder()) {
+      CompareOrder compareOrder = propertyElement.getElement().getAnnotation(CompareOrder.class);
+      boolean descending = compareOrder != null && compareOrder.direction() == CompareDirection.DESCENDING;
+      boolean nullsFirst = compareOrder == null || compareOrder.nulls() == NullOrderPolicy.FIRST;
+      Class<?> propertyType = propertyElement.getPropertyType();
+      visitLineNumber(99, propertyElement);
+      visitAccessor(descending ? varPojo2 : varPojo1, propertyElement);
+      visitAccessor(descending ? varPojo1 : varPojo2, propertyElement);
+      if (propertyType.isPrimitive()) {
+        invokeStatic(Primitives.getWrapperClass(propertyType), "compare", int.class, propertyType, propertyType);
+      }
+      else {
+        mv.visitInsn(nullsFirst != descending ? ICONST_1 : ICONST_0);
+        invokeStatic(BasePojomator.class, "compareValues", int.class, Object.class, Object.class, boolean.class);
+      }
+      Label propertiesEqual = new Label();
+      mv.visitInsn(DUP);
+      mv.visitJumpInsn(IFEQ, propertiesEqual);
+      mv.visitInsn(IRETURN);
+
+      mv.visitLabel(propertiesEqual);
+      mv.visitFrame(F_FULL, 3, localVarTypes, 1, new Object[] { INTEGER });
+      mv.visitInsn(POP);
+    }
+    mv.visitInsn(ICONST_0);
+    mv.visitInsn(IRETURN);
+
+    Label end = visitNewLabel();
+    varThis.withScope(start, end).acceptLocalVariable(mv);
+    varPojo1.withScope(start, end).acceptLocalVariable(mv);
+    varPojo2.withScope(start, end).acceptLocalVariable(mv);
+    mv.visitMaxs(5, 3);
+    mv.visitEnd();
+  }
+
+  /**
+   * Generate {@link BasePojomator#getEqualsPropertyValue(Object, int)}, as a switch on the property index.
+   * @param cw
+   */
+  private void makeGetEqualsPropertyValue(ClassVisitor cw) {
+    LocalVariable varThis = new LocalVariable("this", pojomatorInternalClassDesc, null, 0);
+    LocalVariable varPojo = new LocalVariable("instance", pojoClass, pojoDescriptor, 1);
+    LocalVariable varIndex = new LocalVariable("index", int.class, null, 2);
+    Object[] localVarTypes = new Object[] { pojomatorInternalClassName, OBJECT_INTERNAL_NAME, INTEGER };
+
+    mv = cw.visitMethod(
+      ACC_PROTECTED, "getEqualsPropertyValue", methodDesc(Object.class, Object.class, int.class), null, null);
+    mv.visitCode();
+    Label start = visitNewLabel();
+    int propertyCount = classProperties.getEqualsProperties().size();
+    visitLineNumber(97, null);
+    // a tableswitch needs at least one case, so with no properties, every index is out of bounds
+    if (propertyCount > 0) {
+      Label[] cases = new Label[propertyCount];
+      for (int i = 0; i < propertyCount; i++) {
+        cases[i] = new Label();
+      }
+      Label noSuchProperty = new Label();
+      varIndex.acceptLoad(mv);
+      mv.visitTableSwitchInsn(0, propertyCount - 1, noSuchProperty, cases);
+
+      int index = 0;
+      for (PropertyElement propertyElement: classProperties.getEqualsProperties()) {
+        mv.visitLabel(cases[index++]);
+        mv.visitFrame(F_FULL, 3, localVarTypes, 0, NO_STACK);
+        visitLineNumber(98, propertyElement);
+        visitAccessor(varPojo, propertyElement);
+        convertToObject(propertyElement.getPropertyType());
+        mv.visitInsn(ARETURN);
+      }
+
+      mv.visitLabel(noSuchProperty);
+      mv.visitFrame(F_FULL, 3, localVarTypes, 0, NO_STACK);
+    }
+    mv.visitTypeInsn(NEW, internalName(IndexOutOfBoundsException.class));
+    mv.visitInsn(DUP);
+    varIndex.acceptLoad(mv);
+    invokeStatic(String.class, "valueOf", String.class, int.class);
+    construct(IndexOutOfBoundsException.class, String.class);
+    mv.visitInsn(ATHROW);
+
+    Label end = visitNewLabel();
+    varThis.withScope(start, end).acceptLocalVariable(mv);
+    varPojo.withScope(start, end).acceptLocalVariable(mv);
+    varIndex.withScope(start, end).acceptLocalVariable(mv);
+    mv.visitMaxs(3, 3);
+    mv.visitEnd();
+  }
+
+  /**
+   * Push a mask with no bits set onto the stack, for {@link #makeDiffMask(ClassVisitor, boolean)}.
+   * @param bitSet {@code true} for a {@link BitSet}, or {@code false} for a {@code long}
+   * @param propertyCount the number of bits the mask is to hold
+   */
+  private void visitEmptyMask(boolean bitSet, int propertyCount) {
+    if (bitSet) {
+      mv.visitTypeInsn(NEW, internalName(BitSet.class));
+      mv.visitInsn(DUP);
+      mv.visitLdcInsn(propertyCount);
+      construct(BitSet.class, int.class);
+    }
+    else {
+      mv.visitInsn(LCONST_0);
+    }
+  }
+
   /**
    * Invoke {@link BasePojomator#checkCompatibleForEquality(Object, String)} on the specified variable
    * @param message the message to include in the {@link IllegalArgumentException} if the variable fails the
@@ -1,5 +1,8 @@
 package org.pojomatic.internal;
 
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.AnnotatedElement;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
@@ -7,14 +10,22 @@ import java.security.AccessController;
 import java.security.PrivilegedAction;
 import java.security.PrivilegedActionException;
 import java.security.PrivilegedExceptionAction;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
+import org.pojomatic.NoPojomaticPropertiesException;
 import org.pojomatic.Pojomator;
 import org.pojomatic.PropertyElement;
 import org.pojomatic.annotations.PropertyFormat;
 import org.pojomatic.formatter.DefaultEnhancedPropertyFormatter;
 import org.pojomatic.formatter.EnhancedPropertyFormatter;
+import org.pojomatic.formatter.StatelessPojoFormatter;
 
 public class PojomatorFactory {
+  private static final String PREGENERATED_SUFFIX = "$$Pojomator";
 
   private static final class DynamicClassLoader extends ClassLoader {
     private DynamicClassLoader(ClassLoader parent) {
@@ -26,34 +37,85 @@ public class PojomatorFactory {
     }
   }
 
-  private static volatile DynamicClassLoader CLASS_LOADER = null;
-  private final static Object CLASS_LOADER_MUTEX = new Object();
+  /**
+   * The class loaders used to define generated pojomator classes, keyed by the class loader of the pojo classes they
+   * were generated for. Keeping the generated classes for each pojo class loader separate allows them to be unloaded
+   * along with the pojo classes, for example when a web application is undeployed. A generated class references its
+   * pojo class, so the dynamic class loaders are only weakly held; each is kept alive by the pojomators it defined.
+   */
+  private static final Map<ClassLoader, WeakReference<DynamicClassLoader>> CLASS_LOADERS = new WeakHashMap<>();
 
-  // We don't initialize CLASS_LOADER at classLoad time because permission issues could cause an exception; we don't
+  /**
+   * Weak references to each generated pojomator class which has not yet been unloaded.
+   */
+  private static final Set<Reference<Class<?>>> LIVE_GENERATED_CLASSES =
+    Collections.newSetFromMap(new ConcurrentHashMap<Reference<Class<?>>, Boolean>());
+  private static final ReferenceQueue<Class<?>> UNLOADED_GENERATED_CLASSES = new ReferenceQueue<>();
+
+  // We don't create a DynamicClassLoader at classLoad time because permission issues could cause an exception; we don't
   // want that exception to be masked with a ClassNotFoundException
-  private static DynamicClassLoader getClassLoader() {
-    if (CLASS_LOADER == null) {
-      synchronized (CLASS_LOADER_MUTEX) {
-        if (CLASS_LOADER == null) {
-          CLASS_LOADER =
-            AccessController.doPrivileged(new PrivilegedAction<DynamicClassLoader>() {
-              @Override
-              public DynamicClassLoader run() {
-                return new DynamicClassLoader(PojomatorFactory.class.getClassLoader());
-              }
-            });
-        }
+  private static DynamicClassLoader getClassLoader(ClassLoader pojoClassLoader) {
+    synchronized (CLASS_LOADERS) {
+      WeakReference<DynamicClassLoader> classLoaderReference = CLASS_LOADERS.get(pojoClassLoader);
+      DynamicClassLoader classLoader = classLoaderReference == null ? null : classLoaderReference.get();
+      if (classLoader == null) {
+        classLoader =
+          AccessController.doPrivileged(new PrivilegedAction<DynamicClassLoader>() {
+            @Override
+            public DynamicClassLoader run() {
+              return new DynamicClassLoader(PojomatorFactory.class.getClassLoader());
+            }
+          });
+        CLASS_LOADERS.put(pojoClassLoader, new WeakReference<>(classLoader));
       }
+      return classLoader;
+    }
+  }
+
+  /**
+   * Get the number of pojomator classes generated at runtime which have not yet been unloaded. Pojomator classes
+   * are unloaded once the classes they were generated for have been unloaded, so this can be used to verify that
+   * repeatedly loading and discarding pojo classes does not leak generated classes.
+   * @return the number of generated pojomator classes which are still loaded
+   */
+  public static int liveGeneratedClassCount() {
+    Reference<? extends Class<?>> unloaded;
+    while ((unloaded = UNLOADED_GENERATED_CLASSES.poll()) != null) {
+      LIVE_GENERATED_CLASSES.remove(unloaded);
     }
-    return CLASS_LOADER;
+    return LIVE_GENERATED_CLASSES.size();
+  }
+
+  /**
+   * The means by which pojomator classes generated at runtime are defined.
+   */
+  enum Backend {
+    /**
+     * Define pojomator classes in a {@link DynamicClassLoader}. Properties are accessed through InvokeDynamic.
+     */
+    CLASS_LOADER,
+
+    /**
+     * Define pojomator classes as hidden nestmates of their pojo classes, as described in {@link HiddenClassDefiner},
+     * so that most properties can be accessed directly. Where this is not possible, fall back to
+     * {@link #CLASS_LOADER}.
+     */
+    HIDDEN_CLASS
+  }
+
+  private static final Backend DEFAULT_BACKEND =
+    HiddenClassDefiner.isSupported() ? Backend.HIDDEN_CLASS : Backend.CLASS_LOADER;
+
+  public static <T> Pojomator<T> makePojomator(Class<T> pojoClass) {
+    return makePojomator(pojoClass, DEFAULT_BACKEND);
   }
 
-  public static <T> Pojomator<T> makePojomator(final Class<T> pojoClass) {
+  static <T> Pojomator<T> makePojomator(final Class<T> pojoClass, final Backend backend) {
     try {
       return AccessController.doPrivileged(new PrivilegedExceptionAction<Pojomator<T>>() {
         @Override
         public Pojomator<T> run() throws Exception {
-          return makePojomatorChecked(pojoClass);
+          return makePojomatorChecked(pojoClass, backend);
         }
       });
     } catch (PrivilegedActionException e) {
@@ -61,12 +123,50 @@ public class PojomatorFactory {
     }
   }
 
-  private static <T> Pojomator<T> makePojomatorChecked(Class<T> pojoClass)
+  /**
+   * Generate the byte code for a pojomator class ahead of time. The resulting class is named
+   * {@link #pregeneratedPojomatorClassName(Class)}, and is intended to be placed alongside {@code pojoClass}, so
+   * that it will be found by {@code pojoClass}'s class loader. When such a class is present and up to date,
+   * {@link #makePojomator(Class)} will use it rather than generating a new pojomator class at runtime.
+   *
+   * @param pojoClass the class to generate a pojomator for
+   * @return the bytes of the pojomator class
+   * @throws NoPojomaticPropertiesException if {@code pojoClass} has no properties annotated for use with Pojomatic
+   */
+  public static byte[] pregeneratePojomatorClassBytes(Class<?> pojoClass) throws NoPojomaticPropertiesException {
+    return new PojomatorByteCodeGenerator(
+      pregeneratedPojomatorClassName(pojoClass), pojoClass, ClassProperties.forClass(pojoClass)).makeClassBytes();
+  }
+
+  /**
+   * Get the name of the pojomator class generated ahead of time for {@code pojoClass}.
+   * @param pojoClass the pojo class
+   * @return the binary name of the pregenerated pojomator class for {@code pojoClass}
+   * @see #pregeneratePojomatorClassBytes(Class)
+   */
+  public static String pregeneratedPojomatorClassName(Class<?> pojoClass) {
+    return pojoClass.getName() + PREGENERATED_SUFFIX;
+  }
+
+  private static <T> Pojomator<T> makePojomatorChecked(Class<T> pojoClass, Backend backend)
       throws IllegalAccessException, NoSuchFieldException, SecurityException, InstantiationException,
       InvocationTargetException, NoSuchMethodException {
-    ClassProperties classProperties = ClassProperties.forClass(pojoClass);
-    PojomatorByteCodeGenerator generator = new PojomatorByteCodeGenerator(pojoClass, classProperties);
-    Class<?> pojomatorClass = getClassLoader().loadClass(generator.pojomatorClassName, generator.makeClassBytes());
+    Class<?> pojomatorClass = findPregeneratedPojomatorClass(pojoClass);
+    ClassProperties classProperties =
+      pojomatorClass == null ? null : pregeneratedClassProperties(pojoClass, pojomatorClass);
+    if (classProperties == null) {
+      classProperties = ClassProperties.forClass(pojoClass);
+      pojomatorClass = null;
+      if (backend == Backend.HIDDEN_CLASS) {
+        pojomatorClass = defineHiddenPojomatorClass(pojoClass, classProperties);
+      }
+      if (pojomatorClass == null) {
+        PojomatorByteCodeGenerator generator = new PojomatorByteCodeGenerator(pojoClass, classProperties);
+        pojomatorClass = getClassLoader(pojoClass.getClassLoader())
+          .loadClass(generator.pojomatorClassName, generator.makeClassBytes());
+      }
+      LIVE_GENERATED_CLASSES.add(new WeakReference<Class<?>>(pojomatorClass, UNLOADED_GENERATED_CLASSES));
+    }
     @SuppressWarnings("unchecked")
     Pojomator<T> pojomator = (Pojomator<T>) pojomatorClass.getConstructor(Class.class, ClassProperties.class)
       .newInstance(pojoClass, classProperties);
@@ -79,9 +179,103 @@ public class PojomatorFactory {
     for (PropertyElement propertyElement: classProperties.getAllProperties()) {
       setStaticField(pojomatorClass, PojomatorByteCodeGenerator.propertyElementName(propertyElement), propertyElement);
     }
+    if (classProperties.getHashCodeCacheField() != null) {
+      setStaticField(
+        pojomatorClass, PojomatorByteCodeGenerator.HASH_CODE_CACHE_FIELD_NAME, classProperties.getHashCodeCacheField());
+    }
+    byte[][] utf8Constants = PojomatorByteCodeGenerator.utf8Constants(pojoClass, classProperties);
+    if (utf8Constants != null) {
+      setStaticField(pojomatorClass, PojomatorByteCodeGenerator.UTF8_CONSTANTS_FIELD_NAME, utf8Constants);
+    }
+    Class<? extends StatelessPojoFormatter> sharedPojoFormatterClass =
+      PojomatorByteCodeGenerator.sharedPojoFormatterClass(pojoClass);
+    if (sharedPojoFormatterClass != null) {
+      setStaticField(
+        pojomatorClass, PojomatorByteCodeGenerator.POJO_FORMATTER_FIELD_NAME, sharedPojoFormatterClass.newInstance());
+    }
     return pojomator;
   }
 
+  /**
+   * Generate a pojomator class and define it as a hidden nestmate of {@code pojoClass}.
+   * @param pojoClass the pojo class
+   * @param classProperties the properties of {@code pojoClass}
+   * @return the pojomator class, or {@code null} if it could not be defined as a hidden class.
+   */
+  private static Class<?> defineHiddenPojomatorClass(Class<?> pojoClass, ClassProperties classProperties) {
+    if (!HiddenClassDefiner.canDefineFor(pojoClass)) {
+      return null;
+    }
+    PojomatorByteCodeGenerator generator = new PojomatorByteCodeGenerator(
+      HiddenClassDefiner.pojomatorClassName(pojoClass), pojoClass, classProperties, true);
+    try {
+      return HiddenClassDefiner.defineHiddenNestmate(pojoClass, generator.makeClassBytes());
+    }
+    catch (IllegalAccessException e) {
+      return null; // we lack private access to pojoClass; for example, it is in a different module
+    }
+  }
+
+  /**
+   * Look for a pojomator class generated ahead of time for {@code pojoClass}.
+   * @param pojoClass the pojo class
+   * @return the pregenerated pojomator class, or {@code null} if there is none
+   */
+  private static Class<?> findPregeneratedPojomatorClass(Class<?> pojoClass) {
+    ClassLoader pojoClassLoader = pojoClass.getClassLoader();
+    if (pojoClassLoader == null) {
+      return null;
+    }
+    Class<?> pojomatorClass;
+    try {
+      pojomatorClass = Class.forName(pregeneratedPojomatorClassName(pojoClass), false, pojoClassLoader);
+    }
+    catch (ClassNotFoundException e) {
+      return null;
+    }
+    // The pojo's class loader might see a different copy of Pojomatic than we do.
+    return BasePojomator.class.isAssignableFrom(pojomatorClass) ? pojomatorClass : null;
+  }
+
+  /**
+   * Recreate the properties of {@code pojoClass} from the description carried by its pregenerated pojomator class,
+   * rather than inspecting the whole class hierarchy and rereading its class files, as
+   * {@link ClassProperties#forClass(Class)} does.
+   * @param pojoClass the pojo class
+   * @param pojomatorClass the pregenerated pojomator class for {@code pojoClass}
+   * @return the properties of {@code pojoClass}, or {@code null} if {@code pojomatorClass} was generated from a
+   * version of {@code pojoClass} whose properties differ from those of {@code pojoClass}, or by a different version
+   * of Pojomatic.
+   * @see ClassProperties#fromDescriptor(Class, String)
+   */
+  private static ClassProperties pregeneratedClassProperties(Class<?> pojoClass, Class<?> pojomatorClass)
+      throws IllegalAccessException {
+    String descriptor = (String) getStaticField(
+      pojomatorClass, PojomatorByteCodeGenerator.PROPERTY_DESCRIPTOR_FIELD_NAME);
+    ClassProperties classProperties =
+      descriptor == null ? null : ClassProperties.fromDescriptor(pojoClass, descriptor);
+    return classProperties != null
+      && PojomatorByteCodeGenerator.propertySignature(pojoClass, classProperties).equals(
+        getStaticField(pojomatorClass, PojomatorByteCodeGenerator.PROPERTY_SIGNATURE_FIELD_NAME))
+      ? classProperties
+      : null;
+  }
+
+  /**
+   * @return the value of the static field, or {@code null} if there is no such field
+   */
+  private static Object getStaticField(Class<?> clazz, String fieldName) throws IllegalAccessException {
+    Field field;
+    try {
+      field = clazz.getDeclaredField(fieldName);
+    }
+    catch (NoSuchFieldException e) {
+      return null;
+    }
+    field.setAccessible(true);
+    return field.get(null);
+  }
+
   private static void setStaticField(Class<?> clazz, String fieldName, Object value)
       throws NoSuchFieldException, SecurityException, IllegalAccessException {
     Field field = clazz.getDeclaredField(fieldName);
@@ -0,0 +1,677 @@
+package org.pojomatic.internal;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.AccessController;
+import java.security.PrivilegedActionException;
+import java.security.PrivilegedExceptionAction;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.pojomatic.NoPojomaticPropertiesException;
+import org.pojomatic.PojoCodec;
+import org.pojomatic.Pojomatic;
+import org.pojomatic.PropertyElement;
+import org.pojomatic.PropertySink;
+
+/**
+ * The {@link PojoCodec} for a pojo class. Property values are written by passing a {@link PropertySink} to the
+ * generated {@link BasePojomator#equalsPropertiesInto(Object, PropertySink)}, so that they are read through the same
+ * accessors as for {@code doEquals}, without boxing. Instances are constructed through method handles resolved once,
+ * when the codec is created.
+ *
+ * @param <T> the type of the pojo
+ */
+public final class PropertyCodec<T> implements PojoCodec<T> {
+  private static final ClassValue<PropertyCodec<?>> CODECS = new ClassValue<PropertyCodec<?>>() {
+    @Override
+    protected PropertyCodec<?> computeValue(Class<?> type) {
+      return new PropertyCodec<>(type);
+    }
+  };
+
+  private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(Object.class, Object[].class);
+  private static final MethodType NO_ARG_CONSTRUCTOR_TYPE = MethodType.methodType(Object.class);
+  private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+  private final Class<T> pojoClass;
+  private final BasePojomator<T> pojomator;
+  private final List<PropertyElement> properties;
+  private final Class<?>[] types;
+  private final int schemaHash;
+
+  /**
+   * A handle taking the property values, in an array, and returning a new instance; or {@code null} if instances
+   * are constructed by {@link #noArgConstructor} and {@link #setters}.
+   */
+  private final MethodHandle constructor;
+  private final MethodHandle noArgConstructor;
+  private final MethodHandle[] setters;
+
+  /**
+   * Get the codec for a pojo class.
+   * @param pojoClass the pojo class
+   * @return the codec for {@code pojoClass}
+   * @throws NoPojomaticPropertiesException if {@code pojoClass} has no properties annotated for use with Pojomatic
+   * @throws IllegalArgumentException if {@code pojoClass} has a property of an unsupported type, or cannot be
+   * constructed
+   */
+  public static <T> PojoCodec<T> forClass(Class<T> pojoClass) {
+    return codecFor(pojoClass);
+  }
+
+  @SuppressWarnings("unchecked") // CODECS holds a PropertyCodec<T> for each Class<T>
+  private static <T> PropertyCodec<T> codecFor(Class<T> pojoClass) {
+    return (PropertyCodec<T>) CODECS.get(pojoClass);
+  }
+
+  private PropertyCodec(Class<T> pojoClass) {
+    this.pojoClass = pojoClass;
+    this.pojomator = (BasePojomator<T>) Pojomatic.pojomator(pojoClass);
+    this.properties = pojomator.getEqualsProperties();
+    this.types = new Class<?>[properties.size()];
+    for (int i = 0; i < types.length; i++) {
+      PropertyElement property = properties.get(i);
+      types[i] = property.getPropertyType();
+      if (!isSupported(types[i])) {
+        throw new IllegalArgumentException("property " + property.getName() + " of " + pojoClass.getName()
+          + " is of type " + types[i].getName() + ", which cannot be encoded");
+      }
+    }
+    StringBuilder schema = new StringBuilder();
+    appendSchema(schema, pojoClass, new HashSet<Class<?>>());
+    this.schemaHash = schema.toString().hashCode();
+
+    try {
+      MethodHandle[] handles = AccessController.doPrivileged(new PrivilegedExceptionAction<MethodHandle[]>() {
+        @Override
+        public MethodHandle[] run() throws IllegalAccessException {
+          return resolveConstruction();
+        }
+      });
+      this.constructor = handles[0];
+      this.noArgConstructor = handles[1];
+      this.setters = Arrays.copyOfRange(handles, 2, handles.length);
+    }
+    catch (PrivilegedActionException e) {
+      throw new IllegalArgumentException("cannot construct instances of " + pojoClass.getName(), e.getCause());
+    }
+  }
+
+  private static boolean isSupported(Class<?> type) {
+    if (type.isPrimitive() || type == String.class || Primitives.isWrapperClass(type) || type.isEnum()) {
+      return true;
+    }
+    if (type.isArray()) {
+      return type.getComponentType().isPrimitive();
+    }
+    if (type == Object.class || type.isInterface() || Modifier.isAbstract(type.getModifiers())) {
+      return false;
+    }
+    try {
+      Pojomatic.pojomator(type);
+      return true;
+    }
+    catch (NoPojomaticPropertiesException e) {
+      return false;
+    }
+  }
+
+  private static void appendSchema(StringBuilder schema, Class<?> pojoClass, Set<Class<?>> visiting) {
+    visiting.add(pojoClass);
+    schema.append('{');
+    for (PropertyElement property: Pojomatic.pojomator(pojoClass).getEqualsProperties()) {
+      Class<?> type = property.getPropertyType();
+      schema.append(property.getName()).append(':').append(type.getName());
+      if (isNestedPojo(type) && !visiting.contains(type)) {
+        appendSchema(schema, type, visiting);
+      }
+      schema.append(';');
+    }
+    schema.append('}');
+    visiting.remove(pojoClass);
+  }
+
+  private static boolean isNestedPojo(Class<?> type) {
+    return !type.isPrimitive() && !type.isArray() && !type.isEnum() && type != String.class
+      && !Primitives.isWrapperClass(type);
+  }
+
+  /**
+   * Find how to construct instances: through a constructor taking every property, or else through a no-argument
+   * constructor and a setter, or non-final field, for each property. A constructor is matched by its parameter types
+   * alone, so it is only used if no two properties have the same type; otherwise, a constructor declared as
+   * {@code Point(int x, int y)} for properties {@code y} and {@code x} would swap them.
+   * @return the constructor, or {@code null}, followed by the no-argument constructor and setters, if needed
+   */
+  private MethodHandle[] resolveConstruction() throws IllegalAccessException {
+    MethodHandles.Lookup lookup = MethodHandles.lookup();
+    if (new HashSet<>(Arrays.asList(types)).size() == types.length) {
+      for (Constructor<?> candidate: pojoClass.getDeclaredConstructors()) {
+        if (Arrays.equals(candidate.getParameterTypes(), types)) {
+          candidate.setAccessible(true);
+          return new MethodHandle[] {
+            lookup.unreflectConstructor(candidate)
+              .asType(MethodType.genericMethodType(types.length))
+              .asSpreader(Object[].class, types.length),
+            null };
+        }
+      }
+    }
+    MethodHandle[] handles = new MethodHandle[2 + types.length];
+    Constructor<T> noArgConstructor;
+    try {
+      noArgConstructor = pojoClass.getDeclaredConstructor();
+    }
+    catch (NoSuchMethodException e) {
+      throw new IllegalArgumentException(pojoClass.getName() + " has neither a constructor taking "
+        + propertyNames() + ", nor a no-argument constructor");
+    }
+    noArgConstructor.setAccessible(true);
+    handles[1] = lookup.unreflectConstructor(noArgConstructor).asType(NO_ARG_CONSTRUCTOR_TYPE);
+    for (int i = 0; i < types.length; i++) {
+      handles[2 + i] = resolveSetter(lookup, properties.get(i), types[i]).asType(SETTER_TYPE);
+    }
+    return handles;
+  }
+
+  private MethodHandle resolveSetter(MethodHandles.Lookup lookup, PropertyElement property, Class<?> type)
+    throws IllegalAccessException {
+    String name = property.getName();
+    String setterName = "set" + Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    for (Class<?> clazz = pojoClass; clazz != null; clazz = clazz.getSuperclass()) {
+      try {
+        Method setter = clazz.getDeclaredMethod(setterName, type);
+        setter.setAccessible(true);
+        return lookup.unreflect(setter);
+      }
+      catch (NoSuchMethodException e) {
+        // try the superclass
+      }
+    }
+    AnnotatedElement element = property.getElement();
+    if (element instanceof Field && !Modifier.isFinal(((Field) element).getModifiers())) {
+      Field field = (Field) element;
+      field.setAccessible(true);
+      return lookup.unreflectSetter(field);
+    }
+    throw new IllegalArgumentException(pojoClass.getName() + " has neither a constructor taking " + propertyNames()
+      + ", nor a setter or non-final field for property " + name);
+  }
+
+  private String propertyNames() {
+    StringBuilder names = new StringBuilder("(");
+    for (PropertyElement property: properties) {
+      names.append(names.length() == 1 ? "" : ", ").append(property.getName());
+    }
+    return names.append(')').toString();
+  }
+
+  @Override
+  public int schemaHash() {
+    return schemaHash;
+  }
+
+  @Override
+  public void write(T instance, ByteBuffer buffer) {
+    BasePojomator.checkNotNull(instance, "instance is null");
+    BasePojomator.checkNotNull(buffer, "buffer is null");
+    buffer.putInt(schemaHash);
+    writeProperties(instance, buffer);
+  }
+
+  @Override
+  public T read(ByteBuffer buffer) {
+    BasePojomator.checkNotNull(buffer, "buffer is null");
+    int recordSchemaHash = buffer.getInt();
+    if (recordSchemaHash != schemaHash) {
+      throw new IllegalArgumentException("record has schema hash " + recordSchemaHash + ", but " + pojoClass.getName()
+        + " has schema hash " + schemaHash);
+    }
+    return readProperties(buffer);
+  }
+
+  private void writeProperties(T instance, ByteBuffer buffer) {
+    pojomator.equalsPropertiesInto(instance, new Writer(buffer));
+  }
+
+  private T readProperties(ByteBuffer buffer) {
+    Object[] values = new Object[types.length];
+    for (int i = 0; i < types.length; i++) {
+      values[i] = readValue(types[i], buffer);
+    }
+    try {
+      Object instance;
+      if (constructor != null) {
+        instance = constructor.invokeExact(values);
+      }
+      else {
+        instance = noArgConstructor.invokeExact();
+        for (int i = 0; i < setters.length; i++) {
+          setters[i].invokeExact(instance, values[i]);
+        }
+      }
+      return pojoClass.cast(instance);
+    }
+    catch (RuntimeException | Error e) {
+      throw e;
+    }
+    catch (Throwable t) {
+      throw new IllegalStateException("could not construct an instance of " + pojoClass.getName(), t);
+    }
+  }
+
+  /**
+   * Writes each property value passed to it, keeping track of which property it is at.
+   */
+  private final class Writer implements PropertySink {
+    private final ByteBuffer buffer;
+    private int index;
+
+    Writer(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override
+    public void putBoolean(boolean value) {
+      buffer.put((byte) (value ? 1 : 0));
+      index++;
+    }
+
+    @Override
+    public void putByte(byte value) {
+      buffer.put(value);
+      index++;
+    }
+
+    @Override
+    public void putChar(char value) {
+      buffer.putChar(value);
+      index++;
+    }
+
+    @Override
+    public void putShort(short value) {
+      buffer.putShort(value);
+      index++;
+    }
+
+    @Override
+    public void putInt(int value) {
+      buffer.putInt(value);
+      index++;
+    }
+
+    @Override
+    public void putLong(long value) {
+      buffer.putLong(value);
+      index++;
+    }
+
+    @Override
+    public void putFloat(float value) {
+      buffer.putFloat(value);
+      index++;
+    }
+
+    @Override
+    public void putDouble(double value) {
+      buffer.putDouble(value);
+      index++;
+    }
+
+    @Override
+    public void putString(String value) {
+      writeString(buffer, value);
+      index++;
+    }
+
+    @Override
+    public void putObject(Object value) {
+      writeObject(buffer, types[index++], value);
+    }
+
+    @Override
+    public void putBooleans(boolean[] values) {
+      if (writeLength(buffer, values == null ? -1 : values.length)) {
+        for (boolean value: values) {
+          buffer.put((byte) (value ? 1 : 0));
+        }
+      }
+      index++;
+    }
+
+    @Override
+    public void putBytes(byte[] values) {
+      if (writeLength(buffer, values == null ? -1 : values.length)) {
+        buffer.put(values);
+      }
+      index++;
+    }
+
+    @Override
+    public void putChars(char[] values) {
+      if (writeLength(buffer, values == null ? -1 : values.length)) {
+        for (char value: values) {
+          buffer.putChar(value);
+        }
+      }
+      index++;
+    }
+
+    @Override
+    public void putShorts(short[] values) {
+      if (writeLength(buffer, values == null ? -1 : values.length)) {
+        for (short value: values) {
+          buffer.putShort(value);
+        }
+      }
+      index++;
+    }
+
+    @Override
+    public void putInts(int[] values) {
+      if (writeLength(buffer, values == null ? -1 : values.length)) {
+        for (int value: values) {
+          buffer.putInt(value);
+        }
+      }
+      index++;
+    }
+
+    @Override
+    public void putLongs(long[] values) {
+      if (writeLength(buffer, values == null ? -1 : values.length)) {
+        for (long value: values) {
+          buffer.putLong(value);
+        }
+      }
+      index++;
+    }
+
+    @Override
+    public void putFloats(float[] values) {
+      if (writeLength(buffer, values == null ? -1 : values.length)) {
+        for (float value: values) {
+          buffer.putFloat(value);
+        }
+      }
+      index++;
+    }
+
+    @Override
+    public void putDoubles(double[] values) {
+      if (writeLength(buffer, values == null ? -1 : values.length)) {
+        for (double value: values) {
+          buffer.putDouble(value);
+        }
+      }
+      index++;
+    }
+
+    @Override
+    public void putObjects(Object[] values) {
+      // arrays of objects are rejected when the codec is created
+      throw new IllegalStateException("unexpected array property " + properties.get(index).getName());
+    }
+  }
+
+  /**
+   * Write a nullable value of a boxed primitive, enum or pojo type.
+   */
+  private static void writeObject(ByteBuffer buffer, Class<?> type, Object value) {
+    if (value == null) {
+      buffer.put((byte) 0);
+      return;
+    }
+    buffer.put((byte) 1);
+    if (type == Boolean.class) {
+      buffer.put((byte) ((Boolean) value ? 1 : 0));
+    }
+    else if (type == Byte.class) {
+      buffer.put((Byte) value);
+    }
+    else if (type == Character.class) {
+      buffer.putChar((Character) value);
+    }
+    else if (type == Short.class) {
+      buffer.putShort((Short) value);
+    }
+    else if (type == Integer.class) {
+      buffer.putInt((Integer) value);
+    }
+    else if (type == Long.class) {
+      buffer.putLong((Long) value);
+    }
+    else if (type == Float.class) {
+      buffer.putFloat((Float) value);
+    }
+    else if (type == Double.class) {
+      buffer.putDouble((Double) value);
+    }
+    else if (type.isEnum()) {
+      writeString(buffer, ((Enum<?>) value).name());
+    }
+    else {
+      if (value.getClass() != type) {
+        throw new IllegalArgumentException(
+          "cannot encode an instance of " + value.getClass().getName() + " as a " + type.getName());
+      }
+      writeNested(buffer, type, value);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> void writeNested(ByteBuffer buffer, Class<T> type, Object value) {
+    codecFor(type).writeProperties((T) value, buffer);
+  }
+
+  private static Object readValue(Class<?> type, ByteBuffer buffer) {
+    if (type.isPrimitive()) {
+      return readPrimitive(type, buffer);
+    }
+    if (type == String.class) {
+      return readString(buffer);
+    }
+    if (type.isArray()) {
+      return readArray(type.getComponentType(), buffer);
+    }
+    if (buffer.get() == 0) {
+      return null;
+    }
+    if (Primitives.isWrapperClass(type)) {
+      return readPrimitive(type, buffer);
+    }
+    if (type.isEnum()) {
+      return readEnum(type, readString(buffer));
+    }
+    return codecFor(type).readProperties(buffer);
+  }
+
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  private static Object readEnum(Class<?> type, String name) {
+    return Enum.valueOf((Class) type, name);
+  }
+
+  /**
+   * Read a value of a primitive type, or of its wrapper type, as a boxed value.
+   */
+  private static Object readPrimitive(Class<?> type, ByteBuffer buffer) {
+    if (type == boolean.class || type == Boolean.class) {
+      return buffer.get() != 0;
+    }
+    else if (type == byte.class || type == Byte.class) {
+      return buffer.get();
+    }
+    else if (type == char.class || type == Character.class) {
+      return buffer.getChar();
+    }
+    else if (type == short.class || type == Short.class) {
+      return buffer.getShort();
+    }
+    else if (type == int.class || type == Integer.class) {
+      return buffer.getInt();
+    }
+    else if (type == long.class || type == Long.class) {
+      return buffer.getLong();
+    }
+    else if (type == float.class || type == Float.class) {
+      return buffer.getFloat();
+    }
+    else if (type == double.class || type == Double.class) {
+      return buffer.getDouble();
+    }
+    else {
+      throw new IllegalStateException("unknown primitive type " + type.getName());
+    }
+  }
+
+  private static Object readArray(Class<?> componentType, ByteBuffer buffer) {
+    int length = readLength(buffer);
+    if (length < 0) {
+      return null;
+    }
+    checkRemaining(buffer, length, elementSize(componentType));
+    if (componentType == boolean.class) {
+      boolean[] values = new boolean[length];
+      for (int i = 0; i < length; i++) {
+        values[i] = buffer.get() != 0;
+      }
+      return values;
+    }
+    else if (componentType == byte.class) {
+      byte[] values = new byte[length];
+      buffer.get(values);
+      return values;
+    }
+    else if (componentType == char.class) {
+      char[] values = new char[length];
+      buffer.asCharBuffer().get(values);
+      buffer.position(buffer.position() + length * 2);
+      return values;
+    }
+    else if (componentType == short.class) {
+      short[] values = new short[length];
+      buffer.asShortBuffer().get(values);
+      buffer.position(buffer.position() + length * 2);
+      return values;
+    }
+    else if (componentType == int.class) {
+      int[] values = new int[length];
+      buffer.asIntBuffer().get(values);
+      buffer.position(buffer.position() + length * 4);
+      return values;
+    }
+    else if (componentType == long.class) {
+      long[] values = new long[length];
+      buffer.asLongBuffer().get(values);
+      buffer.position(buffer.position() + length * 8);
+      return values;
+    }
+    else if (componentType == float.class) {
+      float[] values = new float[length];
+      buffer.asFloatBuffer().get(values);
+      buffer.position(buffer.position() + length * 4);
+      return values;
+    }
+    else if (componentType == double.class) {
+      double[] values = new double[length];
+      buffer.asDoubleBuffer().get(values);
+      buffer.position(buffer.position() + length * 8);
+      return values;
+    }
+    else {
+      throw new IllegalStateException("unknown primitive type " + componentType.getName());
+    }
+  }
+
+  private static int elementSize(Class<?> componentType) {
+    if (componentType == boolean.class || componentType == byte.class) {
+      return 1;
+    }
+    else if (componentType == char.class || componentType == short.class) {
+      return 2;
+    }
+    else if (componentType == int.class || componentType == float.class) {
+      return 4;
+    }
+    else {
+      return 8;
+    }
+  }
+
+  /**
+   * Check that a buffer holds as many elements as a record claims, before allocating space for them, so that a
+   * truncated or corrupt record cannot cause a huge allocation.
+   */
+  private static void checkRemaining(ByteBuffer buffer, int length, int elementSize) {
+    if ((long) length * elementSize > buffer.remaining()) {
+      throw new BufferUnderflowException();
+    }
+  }
+
+  private static void writeString(ByteBuffer buffer, String value) {
+    if (writeLength(buffer, value == null ? -1 : Utf8Encoder.encodedLength(value))) {
+      Utf8Encoder.encode(value, buffer, null);
+    }
+  }
+
+  private static String readString(ByteBuffer buffer) {
+    int length = readLength(buffer);
+    if (length < 0) {
+      return null;
+    }
+    checkRemaining(buffer, length, 1);
+    byte[] bytes = new byte[length];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Write the length of a nullable value, as a varint of one more than the length, or zero for {@code null}.
+   * @param buffer the buffer to write to
+   * @param length the length, or -1 for {@code null}
+   * @return {@code true} if the value is not {@code null}, and so should be written
+   */
+  private static boolean writeLength(ByteBuffer buffer, int length) {
+    int value = length + 1;
+    while ((value & ~0x7F) != 0) {
+      buffer.put((byte) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    buffer.put((byte) value);
+    return length >= 0;
+  }
+
+  /**
+   * Read the length written by {@link #writeLength(ByteBuffer, int)}.
+   * @return the length, or -1 for {@code null}
+   * @throws IllegalArgumentException if the varint does not hold a non-negative {@code int}
+   */
+  private static int readLength(ByteBuffer buffer) {
+    int value = 0;
+    for (int shift = 0; shift < 35; shift += 7) {
+      byte b = buffer.get();
+      if (shift == 28 && (b & 0xF8) != 0) {
+        // the fifth byte may only hold the top three bits of a non-negative int, and must be the last
+        break;
+      }
+      value |= (b & 0x7F) << shift;
+      if (b >= 0) {
+        return value - 1;
+      }
+    }
+    throw new IllegalArgumentException("malformed length");
+  }
+}
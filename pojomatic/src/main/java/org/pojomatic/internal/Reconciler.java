@@ -0,0 +1,360 @@
+package org.pojomatic.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.pojomatic.Pojomatic;
+import org.pojomatic.Pojomator;
+import org.pojomatic.PropertyElement;
+import org.pojomatic.diff.ReconciliationListener;
+
+/**
+ * The engine behind {@link Pojomatic#reconcile(Class, Iterable, Iterable, ReconciliationListener, String...)}.
+ * Elements of the left collection are first distributed among partitions by the hash of their keys, so that matching
+ * elements always land in the same partition. The right collection is then streamed through the partitions in
+ * chunks: each chunk is distributed in the same way, and the partitions are reconciled independently, each by a single
+ * thread, which indexes the left elements of the partition by key on its first visit, and looks up the right elements
+ * in the index. Left elements still unmatched once the right collection is exhausted are reported as removed.
+ * <p>
+ * The memory used is therefore a {@link Key} (holding the element and an array of its key values) and an index entry
+ * for each left element, plus a {@code Key} for each of at most {@link #RIGHT_CHUNK_SIZE} right elements at a time,
+ * plus a {@code Key} and an index entry for each right element reported as added, kept so that duplicate keys can be
+ * detected. Elements themselves are released once they have been reported, so only their key values are kept.
+ * </p>
+ * <p>
+ * The calling thread reconciles partitions itself, alongside any workers the executor provides, so that
+ * reconciliation completes even if the executor is saturated, or is running the caller. Results are never
+ * accumulated, but passed straight to the listener.
+ * </p>
+ *
+ * @param <T> the type of the elements being reconciled
+ */
+public final class Reconciler<T> {
+  /**
+   * The number of partitions per thread; more than one, so that threads finishing early can help with the rest.
+   */
+  private static final int PARTITIONS_PER_THREAD = 4;
+
+  /**
+   * The number of right elements distributed among the partitions before they are reconciled.
+   */
+  private static final int RIGHT_CHUNK_SIZE = 64 * 1024;
+
+  /**
+   * The values of the key properties of an element, together with the element itself.
+   */
+  private static final class Key {
+    final Object[] values;
+    final int hash;
+    /**
+     * The element, or {@code null} once it has been reported to the listener.
+     */
+    Object element;
+    /**
+     * Whether this key has been matched by a right element, or is itself the key of a right element.
+     */
+    boolean matched;
+
+    Key(Object[] values, Object element) {
+      this.values = values;
+      this.hash = Arrays.deepHashCode(values);
+      this.element = element;
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      return other instanceof Key && Arrays.deepEquals(values, ((Key) other).values);
+    }
+  }
+
+  private static final class Partition {
+    /**
+     * The keys of the left elements, until they have been indexed.
+     */
+    List<Key> left = new ArrayList<>();
+    Map<Key, Key> index;
+    /**
+     * The keys of the right elements of the current chunk.
+     */
+    final List<Key> right = new ArrayList<>();
+  }
+
+  /**
+   * The executor used when none is specified, with a daemon thread per processor beyond the first.
+   */
+  private static final class SharedExecutor {
+    static final int PARALLELISM = Runtime.getRuntime().availableProcessors();
+    static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(
+      Math.max(1, PARALLELISM - 1),
+      new ThreadFactory() {
+        private final AtomicInteger threadNumber = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+          Thread thread = new Thread(runnable, "pojomatic-reconcile-" + threadNumber.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+  }
+
+  /**
+   * One pass over all partitions, reconciling the right elements of the current chunk, and, for the last chunk,
+   * reporting the remaining left elements as removed. Partitions are claimed in turn by the calling thread and by
+   * workers running this on the executor, until there are none left to claim.
+   */
+  private final class Round implements Runnable {
+    private final boolean last;
+    private final AtomicInteger nextPartition = new AtomicInteger();
+    private final CountDownLatch partitionsDone = new CountDownLatch(partitions.length);
+
+    Round(boolean last) {
+      this.last = last;
+    }
+
+    void execute() {
+      int workers = Math.min(parallelism, partitions.length) - 1;
+      try {
+        for (int i = 0; i < workers; i++) {
+          executor.execute(this);
+        }
+      }
+      catch (RejectedExecutionException e) {
+        // the calling thread will pick up the slack
+      }
+      run();
+      boolean interrupted = false;
+      while (true) {
+        try {
+          partitionsDone.await();
+          break;
+        }
+        catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+      Throwable thrown = failure.get();
+      if (thrown instanceof RuntimeException) {
+        throw (RuntimeException) thrown;
+      }
+      if (thrown instanceof Error) {
+        throw (Error) thrown;
+      }
+    }
+
+    @Override
+    public void run() {
+      int index;
+      while ((index = nextPartition.getAndIncrement()) < partitions.length) {
+        try {
+          if (failure.get() == null) {
+            reconcile(partitions[index], last);
+          }
+        }
+        catch (Throwable t) {
+          failure.compareAndSet(null, t);
+        }
+        finally {
+          partitionsDone.countDown();
+        }
+      }
+    }
+  }
+
+  private final BasePojomator<T> pojomator;
+  private final ReconciliationListener<? super T> listener;
+  private final int[] keyIndexes;
+  private final Executor executor;
+  private final int parallelism;
+  private final Partition[] partitions;
+  private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+  private Reconciler(
+    BasePojomator<T> pojomator, ReconciliationListener<? super T> listener, int[] keyIndexes, Executor executor,
+    int parallelism) {
+    this.pojomator = pojomator;
+    this.listener = listener;
+    this.keyIndexes = keyIndexes;
+    this.executor = executor;
+    this.parallelism = parallelism;
+    int partitionCount = parallelism == 1 ? 1 : parallelism * PARTITIONS_PER_THREAD;
+    this.partitions = new Partition[partitionCount];
+    for (int i = 0; i < partitionCount; i++) {
+      partitions[i] = new Partition();
+    }
+  }
+
+  /**
+   * Reconcile two collections on the shared executor, using the calling thread and a thread per processor beyond
+   * the first.
+   * @see #reconcile(Pojomator, Iterable, Iterable, ReconciliationListener, Executor, int, String...)
+   */
+  public static <T> void reconcile(
+    Pojomator<T> pojomator, Iterable<? extends T> left, Iterable<? extends T> right,
+    ReconciliationListener<? super T> listener, String... keyProperties) {
+    reconcile(
+      pojomator, left, right, listener, SharedExecutor.EXECUTOR, SharedExecutor.PARALLELISM, keyProperties);
+  }
+
+  /**
+   * Reconcile two collections, matching elements by the values of their key properties.
+   * @param pojomator the pojomator for the elements
+   * @param left the elements of the previous state
+   * @param right the elements of the current state
+   * @param listener the listener to report each element to
+   * @param executor the executor to run workers on, in addition to the calling thread
+   * @param parallelism the number of threads, including the calling thread, to reconcile with
+   * @param keyProperties the names of the properties used for equals which identify an element
+   * @throws NullPointerException if any argument or element is null
+   * @throws IllegalArgumentException if no key properties are given, if a key property is not a property used for
+   * equals, or if two elements of the same collection have the same key
+   */
+  public static <T> void reconcile(
+    Pojomator<T> pojomator, Iterable<? extends T> left, Iterable<? extends T> right,
+    ReconciliationListener<? super T> listener, Executor executor, int parallelism, String... keyProperties) {
+    BasePojomator.checkNotNull(pojomator, "pojomator is null");
+    BasePojomator.checkNotNull(left, "left is null");
+    BasePojomator.checkNotNull(right, "right is null");
+    BasePojomator.checkNotNull(listener, "listener is null");
+    BasePojomator.checkNotNull(executor, "executor is null");
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("parallelism must be positive, but was " + parallelism);
+    }
+    Reconciler<T> reconciler = new Reconciler<>(
+      (BasePojomator<T>) pojomator, listener, keyIndexes(pojomator, keyProperties), executor, parallelism);
+    reconciler.distributeLeft(left);
+    reconciler.streamRight(right);
+  }
+
+  private static int[] keyIndexes(Pojomator<?> pojomator, String... keyProperties) {
+    BasePojomator.checkNotNull(keyProperties, "keyProperties is null");
+    if (keyProperties.length == 0) {
+      throw new IllegalArgumentException("no key properties");
+    }
+    List<PropertyElement> equalsProperties = pojomator.getEqualsProperties();
+    int[] keyIndexes = new int[keyProperties.length];
+    keys: for (int k = 0; k < keyProperties.length; k++) {
+      for (int i = 0; i < equalsProperties.size(); i++) {
+        if (equalsProperties.get(i).getName().equals(keyProperties[k])) {
+          keyIndexes[k] = i;
+          continue keys;
+        }
+      }
+      throw new IllegalArgumentException("key property " + keyProperties[k] + " is not a property used for equals");
+    }
+    return keyIndexes;
+  }
+
+  private Key key(T element) {
+    Object[] values = new Object[keyIndexes.length];
+    for (int k = 0; k < keyIndexes.length; k++) {
+      values[k] = pojomator.getEqualsPropertyValue(element, keyIndexes[k]);
+    }
+    return new Key(values, element);
+  }
+
+  private Partition partition(Key key) {
+    int spread = key.hash ^ (key.hash >>> 16);
+    return partitions[(spread & Integer.MAX_VALUE) % partitions.length];
+  }
+
+  private void distributeLeft(Iterable<? extends T> left) {
+    for (T element: left) {
+      BasePojomator.checkNotNull(element, "left element is null");
+      Key key = key(element);
+      partition(key).left.add(key);
+    }
+  }
+
+  /**
+   * Distribute the right elements among the partitions a chunk at a time, reconciling each chunk before reading the
+   * next.
+   */
+  private void streamRight(Iterable<? extends T> right) {
+    Iterator<? extends T> iterator = right.iterator();
+    boolean last;
+    do {
+      for (int count = 0; count < RIGHT_CHUNK_SIZE && iterator.hasNext(); count++) {
+        T element = iterator.next();
+        BasePojomator.checkNotNull(element, "right element is null");
+        Key key = key(element);
+        partition(key).right.add(key);
+      }
+      last = !iterator.hasNext();
+      new Round(last).execute();
+    } while (!last);
+  }
+
+  @SuppressWarnings("unchecked")
+  private void reconcile(Partition partition, boolean last) {
+    Map<Key, Key> index = partition.index;
+    if (index == null) {
+      index = new HashMap<>(partition.left.size() * 4 / 3 + 1);
+      for (Key leftKey: partition.left) {
+        if (index.put(leftKey, leftKey) != null) {
+          throw duplicateKey(leftKey, "left");
+        }
+      }
+      partition.left = null;
+      partition.index = index;
+    }
+    for (Key rightKey: partition.right) {
+      T rightElement = (T) rightKey.element;
+      Key leftKey = index.get(rightKey);
+      if (leftKey == null) {
+        rightKey.matched = true;
+        rightKey.element = null;
+        index.put(rightKey, rightKey);
+        listener.onAdded(rightElement);
+      }
+      else if (leftKey.matched) {
+        throw duplicateKey(rightKey, "right");
+      }
+      else {
+        leftKey.matched = true;
+        T leftElement = (T) leftKey.element;
+        leftKey.element = null;
+        if (pojomator.doEquals(leftElement, rightElement)) {
+          listener.onUnchanged(leftElement, rightElement);
+        }
+        else {
+          listener.onChanged(leftElement, rightElement, pojomator.diffBitSet(leftElement, rightElement));
+        }
+      }
+    }
+    partition.right.clear();
+    if (last) {
+      partition.index = null;
+      for (Key key: index.values()) {
+        if (!key.matched) {
+          listener.onRemoved((T) key.element);
+        }
+      }
+    }
+  }
+
+  private static IllegalArgumentException duplicateKey(Key key, String side) {
+    return new IllegalArgumentException(
+      "more than one " + side + " element has key " + Arrays.deepToString(key.values));
+  }
+}
@@ -0,0 +1,125 @@
+package org.pojomatic.internal;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+import org.pojomatic.ByteBufferOverflowHandler;
+
+/**
+ * Encodes characters as UTF-8 directly into a {@code ByteBuffer}, without going through a {@code String} or a
+ * {@code CharsetEncoder}. The bytes written are the same as those of {@code String.getBytes(UTF_8)}; in particular,
+ * an unpaired surrogate is written as {@code '?'}.
+ */
+final class Utf8Encoder {
+  private static final byte REPLACEMENT = '?';
+
+  /**
+   * The marker bits of the first byte of an encoding, indexed by the number of bytes in the encoding.
+   */
+  private static final int[] LEADING_BYTE_MARKERS = { 0, 0x00, 0xC0, 0xE0, 0xF0 };
+
+  private Utf8Encoder() {}
+
+  /**
+   * Compute the number of bytes needed to encode characters as UTF-8.
+   * @param chars the characters to encode
+   * @return the number of bytes {@link #encode(CharSequence, ByteBuffer, ByteBufferOverflowHandler)} will write
+   */
+  static int encodedLength(CharSequence chars) {
+    int length = chars.length();
+    int bytes = length;
+    for (int i = 0; i < length; i++) {
+      char c = chars.charAt(i);
+      if (c >= 0x80) {
+        if (c < 0x800) {
+          bytes++;
+        }
+        else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(chars.charAt(i + 1))) {
+          // two chars, four bytes
+          bytes += 2;
+          i++;
+        }
+        else if (!Character.isSurrogate(c)) {
+          bytes += 2;
+        }
+      }
+    }
+    return bytes;
+  }
+
+  /**
+   * Encode characters as UTF-8 into a buffer.
+   * @param chars the characters to encode
+   * @param buffer the buffer to write to, starting at its position
+   * @param overflowHandler the handler to call when the buffer fills up, or {@code null} to throw a
+   *   {@code BufferOverflowException}, without writing anything, if the buffer is too small
+   * @return the buffer written to last; this is {@code buffer} unless {@code overflowHandler} provided another one
+   * @throws BufferOverflowException if {@code overflowHandler} is {@code null} and {@code buffer} does not have
+   *   enough space remaining
+   */
+  static ByteBuffer encode(CharSequence chars, ByteBuffer buffer, ByteBufferOverflowHandler overflowHandler) {
+    int bytesNeeded = encodedLength(chars);
+    if (overflowHandler == null && bytesNeeded > buffer.remaining()) {
+      throw new BufferOverflowException();
+    }
+    int length = chars.length();
+    int i = 0;
+    while (i < length) {
+      if (!buffer.hasRemaining()) {
+        buffer = overflow(overflowHandler, buffer, bytesNeeded);
+      }
+      char c = chars.charAt(i);
+      if (c < 0x80) {
+        // copy a run of ASCII characters, as far as the space remaining allows
+        int start = i;
+        int end = Math.min(length, i + buffer.remaining());
+        if (buffer.hasArray()) {
+          byte[] array = buffer.array();
+          int offset = buffer.arrayOffset() + buffer.position() - start;
+          while (i < end && (c = chars.charAt(i)) < 0x80) {
+            array[offset + i++] = (byte) c;
+          }
+          buffer.position(buffer.position() + i - start);
+        }
+        else {
+          while (i < end && (c = chars.charAt(i)) < 0x80) {
+            buffer.put((byte) c);
+            i++;
+          }
+        }
+        bytesNeeded -= i - start;
+      }
+      else {
+        i++;
+        int codePoint = c;
+        if (Character.isHighSurrogate(c) && i < length && Character.isLowSurrogate(chars.charAt(i))) {
+          codePoint = Character.toCodePoint(c, chars.charAt(i++));
+        }
+        else if (Character.isSurrogate(c)) {
+          codePoint = REPLACEMENT;
+        }
+        int byteCount = codePoint < 0x80 ? 1 : codePoint < 0x800 ? 2 : codePoint < 0x10000 ? 3 : 4;
+        for (int b = 0; b < byteCount; b++) {
+          if (!buffer.hasRemaining()) {
+            buffer = overflow(overflowHandler, buffer, bytesNeeded);
+          }
+          int shift = 6 * (byteCount - 1 - b);
+          buffer.put((byte) (b == 0
+            ? LEADING_BYTE_MARKERS[byteCount] | codePoint >> shift
+            : 0x80 | (codePoint >> shift) & 0x3F));
+          bytesNeeded--;
+        }
+      }
+    }
+    return buffer;
+  }
+
+  private static ByteBuffer overflow(ByteBufferOverflowHandler overflowHandler, ByteBuffer buffer, int bytesNeeded) {
+    ByteBuffer next = overflowHandler.onOverflow(buffer, bytesNeeded);
+    if (next == null || !next.hasRemaining()) {
+      throw new IllegalStateException(
+        "overflow handler " + overflowHandler + " did not provide a buffer with space remaining");
+    }
+    return next;
+  }
+}
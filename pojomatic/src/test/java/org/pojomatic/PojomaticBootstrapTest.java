@@ -0,0 +1,85 @@
+package org.pojomatic;
+
+import static org.testng.Assert.*;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+import org.pojomatic.annotations.Property;
+import org.testng.annotations.Test;
+
+public class PojomaticBootstrapTest {
+  public static class Bean {
+    @Property public final int x;
+    public Bean(int x) { this.x = x; }
+  }
+
+  public static class SubBean extends Bean {
+    @Property public final String s;
+    public SubBean(int x, String s) { super(x); this.s = s; }
+  }
+
+  private static MethodHandle bootstrap(String methodName, MethodType type, Class<?> pojoClass) {
+    return PojomaticBootstrap.bootstrap(MethodHandles.lookup(), methodName, type, pojoClass).dynamicInvoker();
+  }
+
+  @Test
+  public void testEquals() throws Throwable {
+    MethodHandle equals = bootstrap(
+      "equals", MethodType.methodType(boolean.class, Bean.class, Object.class), Bean.class);
+    assertTrue((boolean) equals.invokeExact(new Bean(3), (Object) new Bean(3)));
+    assertFalse((boolean) equals.invokeExact(new Bean(3), (Object) new Bean(4)));
+    assertFalse((boolean) equals.invokeExact(new Bean(3), (Object) null));
+  }
+
+  @Test
+  public void testHashCode() throws Throwable {
+    MethodHandle hashCode = bootstrap("hashCode", MethodType.methodType(int.class, Bean.class), Bean.class);
+    Bean bean = new Bean(3);
+    assertEquals((int) hashCode.invokeExact(bean), Pojomatic.hashCode(bean));
+  }
+
+  @Test
+  public void testToString() throws Throwable {
+    MethodHandle toString = bootstrap("toString", MethodType.methodType(String.class, Object.class), Bean.class);
+    assertEquals((String) toString.invokeExact((Object) new Bean(3)), "Bean{x: {3}}");
+  }
+
+  @Test
+  public void testSubclassFallsBackToPojomatic() throws Throwable {
+    MethodHandle equals = bootstrap(
+      "equals", MethodType.methodType(boolean.class, Bean.class, Object.class), Bean.class);
+    MethodHandle toString = bootstrap("toString", MethodType.methodType(String.class, Bean.class), Bean.class);
+    Bean subBean = new SubBean(3, "a");
+    assertFalse((boolean) equals.invokeExact(subBean, (Object) new SubBean(3, "b")));
+    assertTrue((boolean) equals.invokeExact(subBean, (Object) new SubBean(3, "a")));
+    assertEquals((String) toString.invokeExact(subBean), "SubBean{x: {3}, s: {a}}");
+  }
+
+  @Test(expectedExceptions = NullPointerException.class)
+  public void testNullPojo() throws Throwable {
+    MethodHandle hashCode = bootstrap("hashCode", MethodType.methodType(int.class, Bean.class), Bean.class);
+    int unused = (int) hashCode.invokeExact((Bean) null);
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testUnsupportedMethod() {
+    bootstrap("diff", MethodType.methodType(Object.class, Bean.class, Object.class), Bean.class);
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testWrongType() {
+    bootstrap("hashCode", MethodType.methodType(long.class, Bean.class), Bean.class);
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testIncompatibleReceiverType() {
+    bootstrap("hashCode", MethodType.methodType(int.class, String.class), Bean.class);
+  }
+
+  @Test(expectedExceptions = NoPojomaticPropertiesException.class)
+  public void testNoProperties() {
+    bootstrap("hashCode", MethodType.methodType(int.class, String.class), String.class);
+  }
+}
@@ -23,11 +23,34 @@ public class PojomaticTest {
     assertEquals(pojomator.doToString(BEAN), BEAN_POJOMATOR.doToString(BEAN));
   }
 
+  @Test
+  public void testPojomatorIsCached() {
+    assertSame(Pojomatic.pojomator(Bean.class), Pojomatic.pojomator(Bean.class));
+  }
+
+  @Test
+  public void testPojomatorFailureIsNotCached() {
+    for (int i = 0; i < 2; i++) {
+      try {
+        Pojomatic.pojomator(Object.class);
+        fail("exception expected");
+      }
+      catch (NoPojomaticPropertiesException e) {
+        assertEquals(e.getMessage(), "Class java.lang.Object has no Pojomatic properties");
+      }
+    }
+  }
+
   @Test
   public void testToString() {
     assertEquals(Pojomatic.toString(BEAN), BEAN_POJOMATOR.doToString(BEAN));
   }
 
+  @Test
+  public void testLazyToString() {
+    assertEquals(Pojomatic.lazyToString(BEAN).toString(), BEAN_POJOMATOR.doToString(BEAN));
+  }
+
   @Test
   public void testDiffNoDifferences() {
     assertEquals(Pojomatic.diff(BEAN, BEAN), NoDifferences.getInstance());
@@ -74,8 +74,15 @@ public class SecurityTest {
     Inaccessible z;
   }
 
+  private static class WarmUpPojo {
+    @Property
+    int x = 0;
+  }
+
   @Test
   public void testSecurityModel() {
+    // make sure the class loader for pojomators of this test's classes is already in place
+    Pojomatic.pojomator(WarmUpPojo.class);
     requestedPermissions.clear();
     SimplePojo pojo = new SimplePojo();
     String toString = null;
@@ -97,12 +104,26 @@ public class SecurityTest {
     String testClassPath = SimplePojo.class.getProtectionDomain().getCodeSource().getLocation().getPath();
     String simplePojoPath = SimplePojo.class.getName().replace('.', '/') + ".class";
 
-    assertEquals(
-      requestedPermissions,
-      ImmutableSet.of(
-        new FilePermission(testClassPath + simplePojoPath, "read"),
-        new RuntimePermission("accessDeclaredMembers"),
-        new ReflectPermission("suppressAccessChecks")));
+    ImmutableSet.Builder<Permission> expectedPermissions = ImmutableSet.<Permission>builder().add(
+      new FilePermission(testClassPath + simplePojoPath, "read"),
+      new ReflectPermission("suppressAccessChecks"));
+    // A hidden pojomator class is in the same class loader as the pojo, so reflecting on it needs no permission
+    if (!isHidden(Pojomatic.pojomator(SimplePojo.class).getClass())) {
+      expectedPermissions.add(new RuntimePermission("accessDeclaredMembers"));
+    }
+    assertEquals(requestedPermissions, expectedPermissions.build());
+  }
+
+  private static boolean isHidden(Class<?> clazz) {
+    try {
+      return (Boolean) Class.class.getMethod("isHidden").invoke(clazz);
+    }
+    catch (NoSuchMethodException e) {
+      return false;
+    }
+    catch (ReflectiveOperationException e) {
+      throw new RuntimeException(e);
+    }
   }
 
   public static class AttackingConstructorFormatter extends DefaultEnhancedPropertyFormatter {
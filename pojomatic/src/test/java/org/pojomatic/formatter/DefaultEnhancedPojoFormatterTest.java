@@ -55,6 +55,26 @@ public class DefaultEnhancedPojoFormatterTest {
     assertFormatted("}|}|}");
   }
 
+  @Test
+  public void testStatelessPropertyPrefix() {
+    // order of calls should not matter
+    formatter.appendPropertyPrefix(builder, LAST_NAME_FIELD, 1);
+    builder.append('|');
+    formatter.appendPropertyPrefix(builder, FIRST_NAME_FIELD, 0);
+    builder.append('|');
+    formatter.appendPropertyPrefix(builder, AGE_FIELD, 2);
+
+    assertFormatted(", lastName: {|firstName: {|, age: {");
+  }
+
+  @Test
+  public void testStatelessPropertySuffix() {
+    formatter.appendPropertySuffix(builder, FIRST_NAME_FIELD, 0);
+    builder.append('|');
+    formatter.appendPropertySuffix(builder, LAST_NAME_FIELD, 1);
+    assertFormatted("}|}");
+  }
+
   @Test
   public void testGetToStringPrefix() {
     formatter.appendToStringPrefix(builder, Integer.class);
@@ -0,0 +1,113 @@
+package org.pojomatic.formatter;
+
+import static org.testng.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+public class FormattingBudgetTest {
+  private final DefaultEnhancedPropertyFormatter formatter = new DefaultEnhancedPropertyFormatter();
+
+  @Test
+  public void testNoBudget() {
+    StringBuilder builder = new StringBuilder();
+    assertNull(FormattingBudget.forBuilder(builder));
+    formatter.appendFormatted(builder, new int[] { 1, 2, 3 });
+    formatter.appendFormatted(builder, (Object) Arrays.asList(4, 5));
+    assertEquals(builder.toString(), "[1, 2, 3][4, 5]");
+  }
+
+  @Test
+  public void testMaxElements() {
+    StringBuilder builder = new StringBuilder();
+    FormattingBudget budget = FormattingBudget.enter(builder, Integer.MAX_VALUE, 3);
+    try {
+      assertSame(FormattingBudget.forBuilder(builder), budget);
+      assertNull(FormattingBudget.forBuilder(new StringBuilder()));
+      formatter.appendFormatted(builder, new int[100000]);
+    }
+    finally {
+      budget.exit();
+    }
+    assertEquals(builder.toString(), "[0, 0, 0, ... (99997 more)]");
+    assertNull(FormattingBudget.forBuilder(builder));
+  }
+
+  @Test
+  public void testAllArrayTypes() {
+    StringBuilder builder = new StringBuilder();
+    FormattingBudget budget = FormattingBudget.enter(builder, Integer.MAX_VALUE, 1);
+    try {
+      formatter.appendFormatted(builder, new boolean[] { true, false });
+      formatter.appendFormatted(builder, new byte[] { 1, 2 });
+      formatter.appendFormatted(builder, new short[] { 1, 2 });
+      formatter.appendFormatted(builder, new char[] { 'a', 'b' });
+      formatter.appendFormatted(builder, new int[] { 1, 2 });
+      formatter.appendFormatted(builder, new long[] { 1, 2 });
+      formatter.appendFormatted(builder, new float[] { 1, 2 });
+      formatter.appendFormatted(builder, new double[] { 1, 2 });
+      formatter.appendFormatted(builder, new Object[] { "a", new int[] { 1, 2 } });
+      formatter.appendFormattedPossibleArray(builder, new String[] { "a", "b" });
+    }
+    finally {
+      budget.exit();
+    }
+    assertEquals(builder.toString(),
+      "[true, ... (1 more)][1, ... (1 more)][1, ... (1 more)]['a', ... (1 more)][1, ... (1 more)][1, ... (1 more)]"
+      + "[1.0, ... (1 more)][1.0, ... (1 more)][a, ... (1 more)][a, ... (1 more)]");
+  }
+
+  @Test
+  public void testMaxChars() {
+    StringBuilder builder = new StringBuilder("prefix");
+    FormattingBudget budget = FormattingBudget.enter(builder, 10, Integer.MAX_VALUE);
+    try {
+      assertEquals(budget.getLimit(), 16);
+      formatter.appendFormatted(builder, new int[] { 100, 200, 300, 400, 500 });
+      assertTrue(budget.isExhausted());
+      formatter.appendFormatted(builder, new int[] { 1 });
+    }
+    finally {
+      budget.exit();
+    }
+    assertEquals(builder.toString(), "prefix[100, 200, ... (3 more)][... (1 more)]");
+  }
+
+  @Test
+  public void testCollection() {
+    List<Object> list = Arrays.<Object>asList("a", "b", "c", "d");
+    StringBuilder builder = new StringBuilder();
+    FormattingBudget budget = FormattingBudget.enter(builder, Integer.MAX_VALUE, 2);
+    try {
+      formatter.appendFormatted(builder, (Object) list);
+      formatter.appendFormatted(builder, (Object) Arrays.asList("x"));
+    }
+    finally {
+      budget.exit();
+    }
+    assertEquals(builder.toString(), "[a, b, ... (2 more)][x]");
+  }
+
+  @Test
+  public void testNestedBudgetIsNoMoreGenerous() {
+    StringBuilder builder = new StringBuilder();
+    FormattingBudget outer = FormattingBudget.enter(builder, 10, 2);
+    try {
+      builder.append("12345");
+      FormattingBudget inner = FormattingBudget.enter(builder, 100, 5);
+      try {
+        assertEquals(inner.getLimit(), 10);
+        assertTrue(inner.omitsElement(2));
+      }
+      finally {
+        inner.exit();
+      }
+      assertSame(FormattingBudget.forBuilder(builder), outer);
+    }
+    finally {
+      outer.exit();
+    }
+  }
+}
@@ -0,0 +1,52 @@
+package org.pojomatic.internal;
+
+import static org.testng.Assert.*;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+import org.testng.annotations.Test;
+
+public class AdaptiveEqualsCallSiteTest {
+  private static final MethodType COMPARE_TYPE = MethodType.methodType(boolean.class, Object.class, Object.class);
+
+  /** Compare the character at a given position of two strings. */
+  public static boolean charEquals(int position, Object left, Object right) {
+    return ((String) left).charAt(position) == ((String) right).charAt(position);
+  }
+
+  private static MethodHandle[] comparisons(int count) throws Exception {
+    MethodHandle charEquals = MethodHandles.lookup().findStatic(
+      AdaptiveEqualsCallSiteTest.class, "charEquals", COMPARE_TYPE.insertParameterTypes(0, int.class));
+    MethodHandle[] comparisons = new MethodHandle[count];
+    for (int i = 0; i < count; i++) {
+      comparisons[i] = MethodHandles.insertArguments(charEquals, 0, i);
+    }
+    return comparisons;
+  }
+
+  @Test
+  public void testReorder() throws Throwable {
+    AdaptiveEqualsCallSite callSite = new AdaptiveEqualsCallSite(comparisons(3), 10);
+    MethodHandle invoker = callSite.dynamicInvoker();
+    assertEquals(callSite.getOrder(), new int[] { 0, 1, 2 });
+    assertTrue((boolean) invoker.invokeExact((Object) "abc", (Object) "abc"));
+    for (int i = 0; i < 9; i++) {
+      assertFalse((boolean) invoker.invokeExact((Object) "abc", (Object) (i % 3 == 0 ? "abd" : "bbc")));
+    }
+    assertEquals(callSite.getOrder(), new int[] { 0, 1, 2 });
+    assertFalse((boolean) invoker.invokeExact((Object) "abc", (Object) "abd"));
+    // position 0 decided 6 times, position 2 decided 4 times, and position 1 never
+    assertEquals(callSite.getOrder(), new int[] { 0, 2, 1 });
+
+    assertTrue((boolean) invoker.invokeExact((Object) "abc", (Object) "abc"));
+    assertFalse((boolean) invoker.invokeExact((Object) "abc", (Object) "axc"));
+  }
+
+  @Test
+  public void testNoProperties() throws Throwable {
+    AdaptiveEqualsCallSite callSite = new AdaptiveEqualsCallSite(new MethodHandle[0], 1);
+    assertTrue((boolean) callSite.dynamicInvoker().invokeExact((Object) "a", (Object) "b"));
+  }
+}
@@ -0,0 +1,161 @@
+package org.pojomatic.internal;
+
+import static org.testng.Assert.*;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.pojomatic.Pojomator;
+import org.pojomatic.annotations.AutoProperty;
+import org.testng.annotations.Test;
+
+public class AppendToTest {
+  @AutoProperty
+  public static class Pojo {
+    int x;
+    Object y;
+
+    Pojo(int x, Object y) {
+      this.x = x;
+      this.y = y;
+    }
+  }
+
+  /**
+   * A value whose {@code toString} itself uses {@link Pojomator#appendTo(Object, Appendable)}.
+   */
+  private static class NestedAppender {
+    private final Pojo pojo;
+
+    NestedAppender(Pojo pojo) {
+      this.pojo = pojo;
+    }
+
+    @Override
+    public String toString() {
+      StringWriter writer = new StringWriter();
+      try {
+        POJOMATOR.appendTo(pojo, writer);
+      }
+      catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+      return writer.toString();
+    }
+  }
+
+  /**
+   * A writer which records which of its methods were given characters to write.
+   */
+  static class RecordingWriter extends StringWriter {
+    final Set<String> calls = new HashSet<>();
+
+    @Override
+    public void write(char[] cbuf, int off, int len) {
+      calls.add("write(char[], int, int)");
+      super.write(cbuf, off, len);
+    }
+
+    @Override
+    public void write(String str) {
+      calls.add("write(String)");
+      super.write(str);
+    }
+
+    @Override
+    public void write(String str, int off, int len) {
+      calls.add("write(String, int, int)");
+      super.write(str, off, len);
+    }
+
+    @Override
+    public StringWriter append(CharSequence csq) {
+      calls.add("append(CharSequence)");
+      return super.append(csq);
+    }
+
+    @Override
+    public StringWriter append(CharSequence csq, int start, int end) {
+      calls.add("append(CharSequence, int, int)");
+      return super.append(csq, start, end);
+    }
+  }
+
+  private static final Pojomator<Pojo> POJOMATOR = PojomatorFactory.makePojomator(Pojo.class);
+
+  @Test
+  public void testAppendToStringBuilder() {
+    StringBuilder builder = new StringBuilder("before ");
+    POJOMATOR.appendTo(new Pojo(1, "a"), builder);
+    assertEquals(builder.toString(), "before Pojo{x: {1}, y: {a}}");
+  }
+
+  @Test
+  public void testAppendToAppendable() throws IOException {
+    StringWriter writer = new StringWriter();
+    writer.write("before ");
+    POJOMATOR.appendTo(new Pojo(1, "a"), writer);
+    POJOMATOR.appendTo(new Pojo(2, "b"), writer);
+    assertEquals(writer.toString(), "before Pojo{x: {1}, y: {a}}Pojo{x: {2}, y: {b}}");
+  }
+
+  @Test
+  public void testAppendToWriterWritesChars() throws IOException {
+    Pojo pojo = new Pojo(1, new int[1000]);
+    RecordingWriter writer = new RecordingWriter();
+    POJOMATOR.appendTo(pojo, writer);
+    assertEquals(writer.toString(), POJOMATOR.doToString(pojo));
+    assertEquals(writer.calls, Collections.singleton("write(char[], int, int)"));
+  }
+
+  @Test
+  public void testAppendToStringBuilderAsAppendable() throws IOException {
+    StringBuilder builder = new StringBuilder();
+    POJOMATOR.appendTo(new Pojo(1, "a"), (Appendable) builder);
+    assertEquals(builder.toString(), "Pojo{x: {1}, y: {a}}");
+  }
+
+  @Test
+  public void testNestedAppendToAppendable() throws IOException {
+    StringWriter writer = new StringWriter();
+    POJOMATOR.appendTo(new Pojo(1, new NestedAppender(new Pojo(2, "b"))), writer);
+    assertEquals(writer.toString(), "Pojo{x: {1}, y: {Pojo{x: {2}, y: {b}}}}");
+  }
+
+  @Test
+  public void testMatchesDoToString() {
+    Pojo pojo = new Pojo(3, new int[] { 1, 2 });
+    StringBuilder builder = new StringBuilder();
+    POJOMATOR.appendTo(pojo, builder);
+    assertEquals(builder.toString(), POJOMATOR.doToString(pojo));
+  }
+
+  @Test(expectedExceptions = IOException.class)
+  public void testIOException() throws IOException {
+    Writer failingWriter = new Writer() {
+      @Override public void write(char[] cbuf, int off, int len) throws IOException { throw new IOException(); }
+      @Override public void flush() {}
+      @Override public void close() {}
+    };
+    POJOMATOR.appendTo(new Pojo(1, "a"), failingWriter);
+  }
+
+  @Test(expectedExceptions = NullPointerException.class)
+  public void testNullInstance() {
+    POJOMATOR.appendTo(null, new StringBuilder());
+  }
+
+  @Test(expectedExceptions = NullPointerException.class)
+  public void testNullBuilder() {
+    POJOMATOR.appendTo(new Pojo(1, "a"), (StringBuilder) null);
+  }
+
+  @Test(expectedExceptions = NullPointerException.class)
+  public void testNullAppendable() throws IOException {
+    POJOMATOR.appendTo(new Pojo(1, "a"), (Appendable) null);
+  }
+}
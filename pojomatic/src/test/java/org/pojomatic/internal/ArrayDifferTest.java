@@ -0,0 +1,71 @@
+package org.pojomatic.internal;
+
+import static org.testng.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.pojomatic.diff.IndexRange;
+import org.testng.annotations.Test;
+
+public class ArrayDifferTest {
+  private static List<IndexRange> ranges(int... bounds) {
+    IndexRange[] ranges = new IndexRange[bounds.length / 2];
+    for (int i = 0; i < ranges.length; i++) {
+      ranges[i] = new IndexRange(bounds[2 * i], bounds[2 * i + 1]);
+    }
+    return Arrays.asList(ranges);
+  }
+
+  @Test
+  public void testEqualArrays() {
+    assertEquals(ArrayDiffer.differingRanges(new int[] { 1, 2, 3 }, new int[] { 1, 2, 3 }), ranges());
+    assertEquals(ArrayDiffer.differingRanges(new int[0], new int[0]), ranges());
+  }
+
+  @Test
+  public void testDifferingRanges() {
+    assertEquals(
+      ArrayDiffer.differingRanges(new long[] { 1, 2, 3, 4, 5, 6 }, new long[] { 0, 2, 0, 0, 5, 0 }),
+      ranges(0, 1, 2, 4, 5, 6));
+  }
+
+  @Test
+  public void testDifferentLengths() {
+    assertEquals(ArrayDiffer.differingRanges(new char[] { 'a', 'b' }, new char[] { 'a', 'c', 'd' }), ranges(1, 3));
+    assertEquals(ArrayDiffer.differingRanges(new char[] { 'a', 'b', 'c' }, new char[] { 'a' }), ranges(1, 3));
+  }
+
+  @Test
+  public void testFloatingPointComparedByBits() {
+    assertEquals(
+      ArrayDiffer.differingRanges(new double[] { Double.NaN, 0.0 }, new double[] { Double.NaN, -0.0 }), ranges(1, 2));
+    assertEquals(
+      ArrayDiffer.differingRanges(new float[] { Float.NaN, 0.0f }, new float[] { Float.NaN, -0.0f }), ranges(1, 2));
+  }
+
+  @Test
+  public void testObjectArrays() {
+    assertEquals(
+      ArrayDiffer.differingRanges(
+        new Object[] { "a", new int[] { 1 }, null, "d" }, new Object[] { "a", new int[] { 1 }, "c", null }),
+      ranges(2, 4));
+  }
+
+  @Test
+  public void testParallelScan() {
+    int length = ArrayDiffer.PARALLEL_THRESHOLD * 3 + 17;
+    double[] left = new double[length];
+    double[] right = new double[length + 5];
+    // a range straddling a chunk boundary, which must come back merged
+    for (int i = ArrayDiffer.CHUNK_SIZE - 3; i < ArrayDiffer.CHUNK_SIZE + 4; i++) {
+      right[i] = 1;
+    }
+    right[length - 1] = 1;
+    assertEquals(
+      ArrayDiffer.differingRanges(left, right),
+      ranges(ArrayDiffer.CHUNK_SIZE - 3, ArrayDiffer.CHUNK_SIZE + 4, length - 1, length + 5));
+    assertEquals(ArrayDiffer.differingRanges(left, left.clone()), Collections.<IndexRange>emptyList());
+  }
+}
@@ -0,0 +1,204 @@
+package org.pojomatic.internal;
+
+import static org.testng.Assert.*;
+
+import org.pojomatic.Pojomator;
+import org.pojomatic.annotations.AutoProperty;
+import org.pojomatic.annotations.CacheHashCode;
+import org.pojomatic.annotations.Property;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+public class CacheHashCodeTest {
+  @AutoProperty
+  @CacheHashCode("hashCode")
+  public static class FieldCached {
+    int x;
+    int hashCode;
+
+    public FieldCached(int x) { this.x = x; }
+  }
+
+  @AutoProperty
+  @CacheHashCode("cachedHashCode")
+  private static class PrivateFieldCached {
+    @SuppressWarnings("unused")
+    private int x;
+    private int cachedHashCode;
+
+    PrivateFieldCached(int x) { this.x = x; }
+  }
+
+  @AutoProperty
+  @CacheHashCode
+  public static class SideTableCached {
+    int x;
+
+    public SideTableCached(int x) { this.x = x; }
+  }
+
+  public static class FieldCachedChild extends FieldCached {
+    @Property int y;
+
+    public FieldCachedChild(int x, int y) {
+      super(x);
+      this.y = y;
+    }
+  }
+
+  @CacheHashCode("missing")
+  public static class MissingField {
+    @Property int x;
+  }
+
+  @CacheHashCode("cache")
+  public static class FinalField {
+    @Property int x;
+    final int cache = 0;
+  }
+
+  @CacheHashCode("cache")
+  public static class LongField {
+    @Property int x;
+    long cache;
+  }
+
+  @CacheHashCode("cache")
+  public static class PropertyField {
+    @Property int x;
+    @Property int cache;
+  }
+
+  @DataProvider(name = "backends")
+  public static Object[][] backends() {
+    Object[][] result = new Object[PojomatorFactory.Backend.values().length][];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = new Object[] { PojomatorFactory.Backend.values()[i] };
+    }
+    return result;
+  }
+
+  @Test(dataProvider = "backends")
+  public void testFieldCache(PojomatorFactory.Backend backend) {
+    Pojomator<FieldCached> pojomator = PojomatorFactory.makePojomator(FieldCached.class, backend);
+    FieldCached pojo = new FieldCached(3);
+    assertEquals(pojo.hashCode, 0);
+    int hashCode = pojomator.doHashCode(pojo);
+    assertEquals(hashCode, 31 + 3);
+    assertEquals(pojo.hashCode, hashCode);
+
+    // the cached value is used from now on, even if it is wrong
+    pojo.hashCode = 17;
+    assertEquals(pojomator.doHashCode(pojo), 17);
+  }
+
+  @Test(dataProvider = "backends")
+  public void testPrivateFieldCache(PojomatorFactory.Backend backend) {
+    Pojomator<PrivateFieldCached> pojomator = PojomatorFactory.makePojomator(PrivateFieldCached.class, backend);
+    PrivateFieldCached pojo = new PrivateFieldCached(3);
+    assertEquals(pojomator.doHashCode(pojo), 31 + 3);
+    assertEquals(pojo.cachedHashCode, 31 + 3);
+  }
+
+  @Test(dataProvider = "backends")
+  public void testSideTableCache(PojomatorFactory.Backend backend) {
+    Pojomator<SideTableCached> pojomator = PojomatorFactory.makePojomator(SideTableCached.class, backend);
+    SideTableCached pojo = new SideTableCached(3);
+    assertEquals(pojomator.doHashCode(pojo), 31 + 3);
+
+    // the cached value is used from now on, even if it is wrong
+    pojo.x = 4;
+    assertEquals(pojomator.doHashCode(pojo), 31 + 3);
+    assertEquals(pojomator.doHashCode(new SideTableCached(4)), 31 + 4);
+  }
+
+  @Test(dataProvider = "backends")
+  public void testEqualsRejectsDifferentCachedHashCodes(PojomatorFactory.Backend backend) {
+    Pojomator<FieldCached> pojomator = PojomatorFactory.makePojomator(FieldCached.class, backend);
+    FieldCached pojo1 = new FieldCached(3);
+    FieldCached pojo2 = new FieldCached(3);
+    assertTrue(pojomator.doEquals(pojo1, pojo2));
+
+    // only one hash code cached; properties are compared
+    pojo1.hashCode = 1;
+    assertTrue(pojomator.doEquals(pojo1, pojo2));
+    assertTrue(pojomator.doEquals(pojo2, pojo1));
+
+    // both hash codes cached and equal; properties are compared
+    pojo2.hashCode = 1;
+    assertTrue(pojomator.doEquals(pojo1, pojo2));
+    pojo2.x = 4;
+    assertFalse(pojomator.doEquals(pojo1, pojo2));
+
+    // both hash codes cached and different; properties are not compared
+    pojo2.x = 3;
+    pojo2.hashCode = 2;
+    assertFalse(pojomator.doEquals(pojo1, pojo2));
+  }
+
+  @Test(dataProvider = "backends")
+  public void testSideTableEqualsRejectsDifferentCachedHashCodes(PojomatorFactory.Backend backend) {
+    Pojomator<SideTableCached> pojomator = PojomatorFactory.makePojomator(SideTableCached.class, backend);
+    SideTableCached pojo1 = new SideTableCached(3);
+    SideTableCached pojo2 = new SideTableCached(4);
+    pojomator.doHashCode(pojo1);
+    pojomator.doHashCode(pojo2);
+    pojo2.x = 3;
+    assertFalse(pojomator.doEquals(pojo1, pojo2));
+  }
+
+  @Test(dataProvider = "backends")
+  public void testSubclassNotCachedByParentPojomator(PojomatorFactory.Backend backend) {
+    Pojomator<FieldCached> pojomator = PojomatorFactory.makePojomator(FieldCached.class, backend);
+    FieldCachedChild child = new FieldCachedChild(3, 4);
+    assertEquals(pojomator.doHashCode(child), 31 + 3);
+    assertEquals(child.hashCode, 0);
+
+    Pojomator<FieldCachedChild> childPojomator = PojomatorFactory.makePojomator(FieldCachedChild.class, backend);
+    assertEquals(childPojomator.doHashCode(child), (31 + 3) * 31 + 4);
+    assertEquals(child.hashCode, (31 + 3) * 31 + 4);
+  }
+
+  @Test(dataProvider = "backends", expectedExceptions = NullPointerException.class)
+  public void testHashCodeOfNull(PojomatorFactory.Backend backend) {
+    PojomatorFactory.makePojomator(FieldCached.class, backend).doHashCode(null);
+  }
+
+  @Test
+  public void testCacheFieldIsNotAProperty() throws Exception {
+    ClassProperties classProperties = ClassProperties.forClass(FieldCached.class);
+    assertEquals(classProperties.getAllProperties().size(), 1);
+    assertTrue(classProperties.isHashCodeCached());
+    assertEquals(classProperties.getHashCodeCacheField(), FieldCached.class.getDeclaredField("hashCode"));
+    assertEquals(
+      ClassProperties.forClass(FieldCachedChild.class).getHashCodeCacheField(),
+      FieldCached.class.getDeclaredField("hashCode"));
+  }
+
+  @Test
+  public void testSideTable() {
+    ClassProperties classProperties = ClassProperties.forClass(SideTableCached.class);
+    assertTrue(classProperties.isHashCodeCached());
+    assertNull(classProperties.getHashCodeCacheField());
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testMissingField() {
+    ClassProperties.forClass(MissingField.class);
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testFinalField() {
+    ClassProperties.forClass(FinalField.class);
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testLongField() {
+    ClassProperties.forClass(LongField.class);
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testPropertyField() {
+    ClassProperties.forClass(PropertyField.class);
+  }
+}
@@ -340,6 +340,43 @@ public class ClassPropertiesTest {
     }
   }
 
+  @Test
+  public void testDescriptor() throws Exception {
+    class Renamed extends ChildPojo {
+      @Property(name = "a/b,c;d%2F") String field;
+      @Property(name = "") long[] getArray() { return null; }
+    }
+    for (Class<?> clazz: Arrays.<Class<?>>asList(
+      FieldPojo.class, AutoMethodPojo.class, ChildPojo.class, ChildAutoFieldPojo.class, Synthetic.class,
+      Interface.class, Renamed.class)) {
+      ClassProperties classProperties = ClassProperties.forClass(clazz);
+      ClassProperties described = ClassProperties.fromDescriptor(clazz, classProperties.descriptor(clazz));
+      assertNotNull(described, clazz.getName());
+      assertNotSame(described, classProperties);
+      assertEquals(
+        new ArrayList<>(described.getEqualsProperties()), new ArrayList<>(classProperties.getEqualsProperties()));
+      assertEquals(
+        new ArrayList<>(described.getHashCodeProperties()), new ArrayList<>(classProperties.getHashCodeProperties()));
+      assertEquals(
+        new ArrayList<>(described.getToStringProperties()), new ArrayList<>(classProperties.getToStringProperties()));
+      for (PropertyElement property: described.getAllProperties()) {
+        assertTrue(classProperties.getAllProperties().contains(property));
+      }
+      assertEquals(described.descriptor(clazz), classProperties.descriptor(clazz));
+      for (Class<?> otherClass: Arrays.<Class<?>>asList(clazz, Renamed.class, Object.class)) {
+        assertEquals(
+          described.isCompatibleForEquals(otherClass), classProperties.isCompatibleForEquals(otherClass));
+      }
+    }
+  }
+
+  @Test
+  public void testDescriptorForDifferentClass() throws Exception {
+    String descriptor = ClassProperties.forClass(FieldPojo.class).descriptor(FieldPojo.class);
+    assertNull(ClassProperties.fromDescriptor(AutoFieldPojo.class, descriptor));
+    assertNull(ClassProperties.fromDescriptor(ChildPojo.class, descriptor));
+  }
+
   //Not all classes can be made internal.  In particular, autodetect=FIELD classes cannot, because of the synthetic
   //$this, and classes requiring static elements cannot.
 
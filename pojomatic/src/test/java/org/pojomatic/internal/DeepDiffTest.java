@@ -0,0 +1,199 @@
+package org.pojomatic.internal;
+
+import static org.testng.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import org.pojomatic.Pojomator;
+import org.pojomatic.annotations.AutoProperty;
+import org.pojomatic.diff.ArrayDifference;
+import org.pojomatic.diff.Difference;
+import org.pojomatic.diff.IndexRange;
+import org.pojomatic.diff.NoDifferences;
+import org.pojomatic.diff.OneSidedDifference;
+import org.pojomatic.diff.ValueDifference;
+import org.testng.annotations.Test;
+
+public class DeepDiffTest {
+  @AutoProperty
+  public static class Order {
+    String item;
+    int price;
+
+    Order(String item, int price) {
+      this.item = item;
+      this.price = price;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      return ORDER_POJOMATOR.doEquals(this, other);
+    }
+
+    @Override
+    public int hashCode() {
+      return ORDER_POJOMATOR.doHashCode(this);
+    }
+
+    @Override
+    public String toString() {
+      return ORDER_POJOMATOR.doToString(this);
+    }
+  }
+
+  @AutoProperty
+  public static class Customer {
+    String name;
+    List<Order> orders;
+    Map<String, Integer> limits;
+    Order[] favorites;
+
+    Customer(String name, List<Order> orders, Map<String, Integer> limits, Order... favorites) {
+      this.name = name;
+      this.orders = orders;
+      this.limits = limits;
+      this.favorites = favorites;
+    }
+  }
+
+  private static final Pojomator<Order> ORDER_POJOMATOR = PojomatorFactory.makePojomator(Order.class);
+  private static final Pojomator<Customer> POJOMATOR = PojomatorFactory.makePojomator(Customer.class);
+
+  private static Map<String, Integer> limits(Object... keysAndValues) {
+    Map<String, Integer> limits = new LinkedHashMap<>();
+    for (int i = 0; i < keysAndValues.length; i += 2) {
+      limits.put((String) keysAndValues[i], (Integer) keysAndValues[i + 1]);
+    }
+    return limits;
+  }
+
+  private static List<Difference> differences(Customer left, Customer right) {
+    List<Difference> differences = new ArrayList<>();
+    for (Difference difference: POJOMATOR.doDeepDiff(left, right).differences()) {
+      differences.add(difference);
+    }
+    return differences;
+  }
+
+  @Test
+  public void testNoDifferences() {
+    Customer customer = new Customer("a", Arrays.asList(new Order("x", 1)), limits("EUR", 5));
+    assertSame(POJOMATOR.doDeepDiff(customer, customer), NoDifferences.getInstance());
+    assertSame(
+      POJOMATOR.doDeepDiff(customer, new Customer("a", Arrays.asList(new Order("x", 1)), limits("EUR", 5))),
+      NoDifferences.getInstance());
+  }
+
+  /**
+   * A list without random access, which fails if accessed by index.
+   */
+  private static class SequentialList<E> extends LinkedList<E> {
+    @SafeVarargs
+    SequentialList(E... elements) {
+      super(Arrays.asList(elements));
+    }
+
+    @Override
+    public E get(int index) {
+      throw new UnsupportedOperationException("get(" + index + ")");
+    }
+  }
+
+  @Test
+  public void testSequentialListElements() {
+    assertEquals(
+      differences(
+        new Customer("a", new SequentialList<>(new Order("x", 1), new Order("y", 2)), null),
+        new Customer("a", new SequentialList<>(new Order("x", 3), new Order("y", 2), new Order("z", 4)), null)),
+      Arrays.asList(
+        new ValueDifference("orders[0].price", 1, 3),
+        OneSidedDifference.rightOnly("orders[2]", new Order("z", 4))));
+  }
+
+  @Test
+  public void testListElements() {
+    assertEquals(
+      differences(
+        new Customer("a", Arrays.asList(new Order("x", 1), new Order("y", 2), new Order("z", 3)), null),
+        new Customer("b", Arrays.asList(new Order("x", 1), new Order("y", 5)), null)),
+      Arrays.asList(
+        new ValueDifference("name", "a", "b"),
+        new ValueDifference("orders[1].price", 2, 5),
+        OneSidedDifference.leftOnly("orders[2]", new Order("z", 3))));
+  }
+
+  @Test
+  public void testMapEntries() {
+    assertEquals(
+      differences(
+        new Customer("a", null, limits("EUR", 5, "USD", 6)),
+        new Customer("a", null, limits("EUR", 7, "GBP", 8))),
+      Arrays.asList(
+        new ValueDifference("limits[EUR]", 5, 7),
+        OneSidedDifference.leftOnly("limits[USD]", 6),
+        OneSidedDifference.rightOnly("limits[GBP]", 8)));
+  }
+
+  @Test
+  public void testArrayElements() {
+    assertEquals(
+      differences(
+        new Customer("a", null, null, new Order("x", 1)),
+        new Customer("a", null, null, new Order("w", 1), new Order("y", 2))),
+      Arrays.asList(
+        new ValueDifference("favorites[0].item", "x", "w"),
+        OneSidedDifference.rightOnly("favorites[1]", new Order("y", 2))));
+  }
+
+  @AutoProperty
+  public static class Series {
+    double[] values;
+
+    Series(double... values) {
+      this.values = values;
+    }
+  }
+
+  @Test
+  public void testPrimitiveArrayRanges() {
+    double[] left = { 1, 2, 3, 4 };
+    double[] right = { 1, 0, 0, 4, 5 };
+    Pojomator<Series> pojomator = PojomatorFactory.makePojomator(Series.class);
+    assertEquals(
+      pojomator.doDeepDiff(new Series(left), new Series(right)).differences(),
+      Arrays.asList(new ArrayDifference(
+        "values", left, right, Arrays.asList(new IndexRange(1, 3), new IndexRange(4, 5)))));
+  }
+
+  @Test
+  public void testNullValuesNotDescended() {
+    List<Order> orders = Arrays.asList(new Order("x", 1));
+    assertEquals(
+      differences(new Customer("a", orders, null), new Customer("a", null, null)),
+      Arrays.asList(new ValueDifference("orders", orders, null)));
+  }
+
+  @Test
+  public void testOneSidedDifference() {
+    OneSidedDifference leftOnly = OneSidedDifference.leftOnly("orders[2]", "x");
+    assertEquals(leftOnly.leftValue(), "x");
+    assertEquals(leftOnly.toString(), "orders[2]: {x} versus nothing");
+    assertEquals(OneSidedDifference.rightOnly("orders[2]", "x").toString(), "orders[2]: nothing versus {x}");
+    try {
+      leftOnly.rightValue();
+      fail("exception expected");
+    }
+    catch (NoSuchElementException expected) {}
+  }
+
+  @Test(expectedExceptions = NullPointerException.class)
+  public void testNullInstance() {
+    POJOMATOR.doDeepDiff(null, new Customer("a", null, null));
+  }
+}
@@ -0,0 +1,110 @@
+package org.pojomatic.internal;
+
+import static org.testng.Assert.*;
+
+import java.util.BitSet;
+
+import org.pojomatic.Pojomator;
+import org.pojomatic.annotations.AutoProperty;
+import org.pojomatic.annotations.PojomaticPolicy;
+import org.pojomatic.annotations.Property;
+import org.testng.annotations.Test;
+
+public class DiffMaskTest {
+  @AutoProperty
+  public static class Pojo {
+    int i;
+    @Property(policy = PojomaticPolicy.TO_STRING)
+    int ignored;
+    double d;
+    String s;
+    long[] a;
+
+    Pojo(int i, int ignored, double d, String s, long[] a) {
+      this.i = i;
+      this.ignored = ignored;
+      this.d = d;
+      this.s = s;
+      this.a = a;
+    }
+  }
+
+  @AutoProperty
+  public static class Wide {
+    int p0, p1, p2, p3, p4, p5, p6, p7, p8, p9, p10, p11, p12, p13, p14, p15, p16, p17, p18, p19, p20,
+      p21, p22, p23, p24, p25, p26, p27, p28, p29, p30, p31, p32, p33, p34, p35, p36, p37, p38, p39, p40,
+      p41, p42, p43, p44, p45, p46, p47, p48, p49, p50, p51, p52, p53, p54, p55, p56, p57, p58, p59, p60,
+      p61, p62, p63, p64, p65, p66, p67, p68, p69;
+  }
+
+  private static final Pojomator<Pojo> POJOMATOR = PojomatorFactory.makePojomator(Pojo.class);
+  private static final Pojomator<Wide> WIDE_POJOMATOR = PojomatorFactory.makePojomator(Wide.class);
+
+  @Test
+  public void testEqualsProperties() {
+    assertEquals(POJOMATOR.getEqualsProperties().size(), 4);
+    assertEquals(POJOMATOR.getEqualsProperties().get(1).getName(), "d");
+    assertEquals(WIDE_POJOMATOR.getEqualsProperties().get(69).getName(), "p69");
+  }
+
+  @Test(expectedExceptions = UnsupportedOperationException.class)
+  public void testEqualsPropertiesUnmodifiable() {
+    POJOMATOR.getEqualsProperties().clear();
+  }
+
+  @Test
+  public void testDiffMask() {
+    Pojo pojo = new Pojo(1, 2, 3.0, "s", new long[] { 4 });
+    assertEquals(POJOMATOR.diffMask(pojo, pojo), 0L);
+    assertEquals(POJOMATOR.diffMask(pojo, new Pojo(1, 5, 3.0, "s", new long[] { 4 })), 0L);
+    assertEquals(POJOMATOR.diffMask(pojo, new Pojo(2, 2, 3.0, "s", new long[] { 4 })), 0b0001L);
+    assertEquals(POJOMATOR.diffMask(pojo, new Pojo(1, 2, 3.0, "t", new long[] { 5 })), 0b1100L);
+    assertEquals(POJOMATOR.diffMask(pojo, new Pojo(2, 2, -0.0, null, null)), 0b1111L);
+    assertEquals(
+      POJOMATOR.diffMask(new Pojo(1, 2, Double.NaN, "s", null), new Pojo(1, 2, Double.NaN, "s", null)), 0L);
+  }
+
+  @Test
+  public void testDiffBitSet() {
+    Pojo pojo = new Pojo(1, 2, 3.0, "s", new long[] { 4 });
+    assertEquals(POJOMATOR.diffBitSet(pojo, pojo), new BitSet());
+    assertEquals(
+      POJOMATOR.diffBitSet(pojo, new Pojo(1, 2, 3.0, "t", new long[] { 5 })),
+      BitSet.valueOf(new long[] { 0b1100L }));
+  }
+
+  @Test
+  public void testDiffBitSetWide() {
+    Wide wide = new Wide();
+    Wide other = new Wide();
+    other.p0 = 1;
+    other.p64 = 1;
+    other.p69 = 1;
+    BitSet expected = new BitSet();
+    expected.set(0);
+    expected.set(64);
+    expected.set(69);
+    assertEquals(WIDE_POJOMATOR.diffBitSet(wide, other), expected);
+  }
+
+  @Test(expectedExceptions = UnsupportedOperationException.class)
+  public void testDiffMaskWide() {
+    WIDE_POJOMATOR.diffMask(new Wide(), new Wide());
+  }
+
+  @Test(expectedExceptions = NullPointerException.class)
+  public void testDiffMaskNull() {
+    POJOMATOR.diffMask(new Pojo(1, 2, 3.0, "s", null), null);
+  }
+
+  @Test(expectedExceptions = NullPointerException.class)
+  public void testDiffBitSetNull() {
+    POJOMATOR.diffBitSet(null, new Pojo(1, 2, 3.0, "s", null));
+  }
+
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testDiffMaskIncompatibleClass() {
+    ((Pojomator) POJOMATOR).diffMask(new Pojo(1, 2, 3.0, "s", null), "not a pojo");
+  }
+}
@@ -0,0 +1,160 @@
+package org.pojomatic.internal;
+
+import static org.testng.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.pojomatic.Pojomatic;
+import org.pojomatic.Pojomator;
+import org.pojomatic.PropertyElement;
+import org.pojomatic.annotations.AutoProperty;
+import org.pojomatic.annotations.CompareDirection;
+import org.pojomatic.annotations.CompareOrder;
+import org.pojomatic.annotations.NullOrderPolicy;
+import org.pojomatic.annotations.PojomaticPolicy;
+import org.pojomatic.annotations.Property;
+import org.testng.annotations.Test;
+
+public class DoCompareTest {
+  @AutoProperty
+  public static class Trade {
+    String desk;
+    @CompareOrder(rank = 2, direction = CompareDirection.DESCENDING)
+    double price;
+    @CompareOrder(rank = 1, nulls = NullOrderPolicy.LAST)
+    String book;
+    @Property(policy = PojomaticPolicy.TO_STRING)
+    Object ignored;
+
+    Trade(String desk, double price, String book) {
+      this.desk = desk;
+      this.price = price;
+      this.book = book;
+    }
+
+    @Override
+    public String toString() {
+      return desk + "/" + price + "/" + book;
+    }
+  }
+
+  @AutoProperty
+  public static class Scalars {
+    boolean z;
+    char c;
+    long l;
+    float f;
+
+    Scalars(boolean z, char c, long l, float f) {
+      this.z = z;
+      this.c = c;
+      this.l = l;
+      this.f = f;
+    }
+  }
+
+  @AutoProperty
+  public static class Sequences {
+    @CompareOrder(rank = 0, nulls = NullOrderPolicy.FIRST, direction = CompareDirection.DESCENDING)
+    int[] ints;
+    Object objects;
+
+    Sequences(int[] ints, Object objects) {
+      this.ints = ints;
+      this.objects = objects;
+    }
+  }
+
+  private static final Pojomator<Trade> TRADE_POJOMATOR = PojomatorFactory.makePojomator(Trade.class);
+  private static final Pojomator<Scalars> SCALARS_POJOMATOR = PojomatorFactory.makePojomator(Scalars.class);
+  private static final Pojomator<Sequences> ARRAYS_POJOMATOR = PojomatorFactory.makePojomator(Sequences.class);
+
+  @Test
+  public void testCompareOrder() throws Exception {
+    List<String> names = new ArrayList<>();
+    for (PropertyElement property: ClassProperties.forClass(Trade.class).getCompareOrder()) {
+      names.add(property.getName());
+    }
+    assertEquals(names, Arrays.asList("book", "price", "desk"));
+  }
+
+  @Test
+  public void testRankDirectionAndNulls() {
+    List<Trade> trades = new ArrayList<>(Arrays.asList(
+      new Trade("x", 1.0, null),
+      new Trade("y", 2.0, "b"),
+      new Trade("x", 2.0, "a"),
+      new Trade("x", 3.0, "a"),
+      new Trade(null, 3.0, "a")));
+    Collections.sort(trades, TRADE_POJOMATOR.comparator());
+    assertEquals(trades.toString(), "[null/3.0/a, x/3.0/a, x/2.0/a, y/2.0/b, x/1.0/null]");
+  }
+
+  @Test
+  public void testConsistentWithEquals() {
+    Trade trade = new Trade("x", 1.0, "a");
+    Trade equalTrade = new Trade("x", 1.0, "a");
+    equalTrade.ignored = "different";
+    assertEquals(TRADE_POJOMATOR.doCompare(trade, trade), 0);
+    assertEquals(TRADE_POJOMATOR.doCompare(trade, equalTrade), 0);
+    assertTrue(TRADE_POJOMATOR.doCompare(trade, new Trade("x", 1.0, "b")) < 0);
+    assertTrue(TRADE_POJOMATOR.doCompare(new Trade("x", 1.0, "b"), trade) > 0);
+  }
+
+  @Test
+  public void testScalars() {
+    Scalars base = new Scalars(false, 'b', 5L, 1.0f);
+    assertTrue(SCALARS_POJOMATOR.doCompare(base, new Scalars(true, 'a', 0L, 0f)) < 0);
+    assertTrue(SCALARS_POJOMATOR.doCompare(base, new Scalars(false, 'a', 9L, 9f)) > 0);
+    assertTrue(SCALARS_POJOMATOR.doCompare(base, new Scalars(false, 'b', Long.MIN_VALUE, 9f)) > 0);
+    assertTrue(SCALARS_POJOMATOR.doCompare(base, new Scalars(false, 'b', 5L, Float.NaN)) < 0);
+    assertEquals(
+      SCALARS_POJOMATOR.doCompare(
+        new Scalars(false, 'b', 5L, Float.NaN), new Scalars(false, 'b', 5L, Float.NaN)),
+      0);
+  }
+
+  @Test
+  public void testArraysLexicographic() {
+    Sequences base = new Sequences(new int[] { 1, 2 }, new String[] { "a", "b" });
+    // ints are descending, with nulls first
+    assertTrue(ARRAYS_POJOMATOR.doCompare(base, new Sequences(new int[] { 1, 3 }, null)) > 0);
+    assertTrue(ARRAYS_POJOMATOR.doCompare(base, new Sequences(new int[] { 1 }, null)) < 0);
+    assertTrue(ARRAYS_POJOMATOR.doCompare(base, new Sequences(null, null)) > 0);
+    assertTrue(ARRAYS_POJOMATOR.doCompare(base, new Sequences(new int[] { 1, 2 }, new String[] { "a", "c" })) < 0);
+    assertTrue(ARRAYS_POJOMATOR.doCompare(base, new Sequences(new int[] { 1, 2 }, new String[] { "a" })) > 0);
+    assertTrue(
+      ARRAYS_POJOMATOR.doCompare(base, new Sequences(new int[] { 1, 2 }, new String[] { "a", null })) > 0);
+    assertEquals(
+      ARRAYS_POJOMATOR.doCompare(base, new Sequences(new int[] { 1, 2 }, new String[] { "a", "b" })), 0);
+  }
+
+  @Test(expectedExceptions = ClassCastException.class)
+  public void testIncomparableValues() {
+    ARRAYS_POJOMATOR.doCompare(new Sequences(null, new Object()), new Sequences(null, new Object()));
+  }
+
+  @Test(expectedExceptions = ClassCastException.class)
+  public void testIncomparableArrays() {
+    ARRAYS_POJOMATOR.doCompare(new Sequences(null, new int[0]), new Sequences(null, new long[0]));
+  }
+
+  @Test(expectedExceptions = NullPointerException.class)
+  public void testNullOther() {
+    TRADE_POJOMATOR.doCompare(new Trade("x", 1.0, "a"), null);
+  }
+
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testIncompatibleClass() {
+    ((Pojomator) TRADE_POJOMATOR).doCompare(new Trade("x", 1.0, "a"), "not a trade");
+  }
+
+  @Test
+  public void testPojomaticCompare() {
+    assertTrue(Pojomatic.compare(new Trade("x", 1.0, "a"), new Trade("x", 1.0, "b")) < 0);
+  }
+}
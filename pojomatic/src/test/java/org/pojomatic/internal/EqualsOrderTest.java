@@ -0,0 +1,138 @@
+package org.pojomatic.internal;
+
+import static org.testng.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.pojomatic.Pojomator;
+import org.pojomatic.PropertyElement;
+import org.pojomatic.annotations.EqualsOrder;
+import org.pojomatic.annotations.EqualsOrderPolicy;
+import org.pojomatic.annotations.PojomaticPolicy;
+import org.pojomatic.annotations.Property;
+import org.testng.annotations.Test;
+
+public class EqualsOrderTest {
+  public enum Color { RED, GREEN }
+
+  public static class Declared {
+    final List<String> accessed = new ArrayList<>();
+    String name;
+    int[] values;
+    Color color;
+    int id;
+
+    @Property public String getName() { accessed.add("name"); return name; }
+    @Property public int[] getValues() { accessed.add("values"); return values; }
+    @Property public Color getColor() { accessed.add("color"); return color; }
+    @Property public int getId() { accessed.add("id"); return id; }
+  }
+
+  @EqualsOrder(EqualsOrderPolicy.COST)
+  public static class CostOrdered extends Declared {
+    Long count;
+
+    @Property public Long getCount() { accessed.add("count"); return count; }
+  }
+
+  @EqualsOrder(EqualsOrderPolicy.ADAPTIVE)
+  public static class Adaptive {
+    final List<String> accessed = new ArrayList<>();
+    int tenant;
+    String source;
+    long sequenceId;
+
+    @Property public int getTenant() { accessed.add("tenant"); return tenant; }
+    @Property public String getSource() { accessed.add("source"); return source; }
+    @Property public long getSequenceId() { accessed.add("sequenceId"); return sequenceId; }
+  }
+
+  public static class EqualsOnly {
+    @Property int x;
+    @Property(policy = PojomaticPolicy.EQUALS) int y;
+  }
+
+  @Test
+  public void testDeclaredOrder() {
+    Pojomator<Declared> pojomator = PojomatorFactory.makePojomator(Declared.class);
+    Declared pojo1 = new Declared();
+    Declared pojo2 = new Declared();
+    pojo2.id = 1;
+    assertFalse(pojomator.doEquals(pojo1, pojo2));
+    assertEquals(pojo1.accessed, Arrays.asList("name", "values", "color", "id"));
+  }
+
+  @Test
+  public void testCostOrder() {
+    Pojomator<CostOrdered> pojomator = PojomatorFactory.makePojomator(CostOrdered.class);
+    CostOrdered pojo1 = new CostOrdered();
+    CostOrdered pojo2 = new CostOrdered();
+    assertTrue(pojomator.doEquals(pojo1, pojo2));
+    assertEquals(pojo1.accessed, Arrays.asList("id", "color", "count", "name", "values"));
+
+    pojo1.accessed.clear();
+    pojo2.id = 1;
+    assertFalse(pojomator.doEquals(pojo1, pojo2));
+    assertEquals(pojo1.accessed, Arrays.asList("id"));
+  }
+
+  @Test
+  public void testCostOrderDoesNotAffectDiffOrToString() {
+    Pojomator<CostOrdered> pojomator = PojomatorFactory.makePojomator(CostOrdered.class);
+    assertEquals(
+      pojomator.doToString(new CostOrdered()),
+      "CostOrdered{name: {null}, values: {null}, color: {null}, id: {0}, count: {null}}");
+  }
+
+  @Test
+  public void testComparisonOrder() {
+    List<String> names = new ArrayList<>();
+    for (PropertyElement property: ClassProperties.forClass(CostOrdered.class).getEqualsComparisonOrder()) {
+      names.add(property.getName());
+    }
+    assertEquals(names, Arrays.asList("id", "color", "count", "name", "values"));
+    assertEquals(ClassProperties.forClass(CostOrdered.class).getEqualsOrder(), EqualsOrderPolicy.COST);
+    assertEquals(ClassProperties.forClass(Declared.class).getEqualsOrder(), EqualsOrderPolicy.DECLARED);
+  }
+
+  @Test
+  public void testAdaptiveOrder() {
+    Pojomator<Adaptive> pojomator = PojomatorFactory.makePojomator(Adaptive.class);
+    Adaptive pojo1 = new Adaptive();
+    Adaptive pojo2 = new Adaptive();
+    pojo1.source = "source";
+    pojo2.source = new String("source");
+    assertTrue(pojomator.doEquals(pojo1, pojo2));
+    assertEquals(pojo1.accessed, Arrays.asList("tenant", "sequenceId", "source"));
+
+    // sequenceId decides every comparison, so it should be moved first
+    for (int i = 0; i < AdaptiveEqualsCallSite.DEFAULT_PROFILE_SIZE; i++) {
+      pojo2.sequenceId = i + 1;
+      assertFalse(pojomator.doEquals(pojo1, pojo2));
+    }
+
+    pojo1.accessed.clear();
+    assertFalse(pojomator.doEquals(pojo1, pojo2));
+    assertEquals(pojo1.accessed, Arrays.asList("sequenceId"));
+
+    pojo1.accessed.clear();
+    pojo2.sequenceId = 0;
+    assertTrue(pojomator.doEquals(pojo1, pojo2));
+    assertEquals(pojo1.accessed, Arrays.asList("sequenceId", "tenant", "source"));
+    pojo2.tenant = 1;
+    assertFalse(pojomator.doEquals(pojo1, pojo2));
+  }
+
+  @Test
+  public void testEqualsOnlyProperty() {
+    Pojomator<EqualsOnly> pojomator = PojomatorFactory.makePojomator(EqualsOnly.class);
+    EqualsOnly pojo1 = new EqualsOnly();
+    EqualsOnly pojo2 = new EqualsOnly();
+    pojo2.y = 1;
+    assertFalse(pojomator.doEquals(pojo1, pojo2));
+    assertFalse(pojomator.doDiff(pojo1, pojo2).areEqual());
+    assertEquals(pojomator.doHashCode(pojo1), pojomator.doHashCode(pojo2));
+  }
+}
@@ -0,0 +1,115 @@
+package org.pojomatic.internal;
+
+import static org.testng.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.pojomatic.Pojomator;
+import org.pojomatic.PropertySink;
+import org.pojomatic.annotations.AutoProperty;
+import org.pojomatic.annotations.PojomaticPolicy;
+import org.pojomatic.annotations.Property;
+import org.pojomatic.annotations.SkipArrayCheck;
+import org.testng.annotations.Test;
+
+public class HashIntoTest {
+  @AutoProperty
+  public static class Pojo {
+    boolean z = true;
+    byte b = 1;
+    char c = 'c';
+    short s = 2;
+    int i = 3;
+    long l = 4;
+    float f = 5;
+    double d = 6;
+    String string = "string";
+    Integer boxed = 7;
+    int[] ints = { 8 };
+    String[] strings = { "nine" };
+    Object possibleArray = new long[] { 10 };
+    @SkipArrayCheck Object skipArrayCheck = new long[] { 11 };
+    @Property(policy = PojomaticPolicy.EQUALS_TO_STRING) int notHashed = 12;
+  }
+
+  /**
+   * Record each call as the name of the method called and the value passed.
+   */
+  private static class RecordingSink implements PropertySink {
+    final List<Object> calls = new ArrayList<>();
+
+    private void record(String method, Object value) {
+      calls.add(method);
+      calls.add(value);
+    }
+
+    @Override public void putBoolean(boolean value) { record("boolean", value); }
+    @Override public void putByte(byte value) { record("byte", value); }
+    @Override public void putChar(char value) { record("char", value); }
+    @Override public void putShort(short value) { record("short", value); }
+    @Override public void putInt(int value) { record("int", value); }
+    @Override public void putLong(long value) { record("long", value); }
+    @Override public void putFloat(float value) { record("float", value); }
+    @Override public void putDouble(double value) { record("double", value); }
+    @Override public void putString(String value) { record("string", value); }
+    @Override public void putObject(Object value) { record("object", value); }
+    @Override public void putBooleans(boolean[] values) { record("booleans", values); }
+    @Override public void putBytes(byte[] values) { record("bytes", values); }
+    @Override public void putChars(char[] values) { record("chars", values); }
+    @Override public void putShorts(short[] values) { record("shorts", values); }
+    @Override public void putInts(int[] values) { record("ints", values); }
+    @Override public void putLongs(long[] values) { record("longs", values); }
+    @Override public void putFloats(float[] values) { record("floats", values); }
+    @Override public void putDoubles(double[] values) { record("doubles", values); }
+    @Override public void putObjects(Object[] values) { record("objects", values); }
+  }
+
+  private static final Pojomator<Pojo> POJOMATOR = PojomatorFactory.makePojomator(Pojo.class);
+
+  @Test
+  public void testHashInto() {
+    Pojo pojo = new Pojo();
+    RecordingSink sink = new RecordingSink();
+    POJOMATOR.hashInto(pojo, sink);
+    assertEquals(sink.calls, Arrays.<Object>asList(
+      "boolean", true,
+      "byte", (byte) 1,
+      "char", 'c',
+      "short", (short) 2,
+      "int", 3,
+      "long", 4L,
+      "float", 5f,
+      "double", 6.0,
+      "string", "string",
+      "object", 7,
+      "ints", pojo.ints,
+      "objects", pojo.strings,
+      "longs", pojo.possibleArray,
+      "object", pojo.skipArrayCheck));
+  }
+
+  @Test
+  public void testNullValues() {
+    Pojo pojo = new Pojo();
+    pojo.string = null;
+    pojo.ints = null;
+    pojo.possibleArray = null;
+    RecordingSink sink = new RecordingSink();
+    POJOMATOR.hashInto(pojo, sink);
+    assertEquals(sink.calls.subList(16, 18), Arrays.<Object>asList("string", null));
+    assertEquals(sink.calls.subList(20, 22), Arrays.<Object>asList("ints", null));
+    assertEquals(sink.calls.subList(24, 26), Arrays.<Object>asList("object", null));
+  }
+
+  @Test(expectedExceptions = NullPointerException.class)
+  public void testNullInstance() {
+    POJOMATOR.hashInto(null, new RecordingSink());
+  }
+
+  @Test(expectedExceptions = NullPointerException.class)
+  public void testNullSink() {
+    POJOMATOR.hashInto(new Pojo(), null);
+  }
+}
@@ -0,0 +1,69 @@
+package org.pojomatic.internal;
+
+import static org.testng.Assert.*;
+
+import org.pojomatic.internal.a.C1;
+import org.pojomatic.internal.b.C2;
+import org.testng.SkipException;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+public class HiddenClassDefinerTest {
+  private static class Outer {
+    private int outerField;
+
+    private class Inner {
+      private int innerField;
+    }
+  }
+
+  private static class Sub extends Outer {}
+
+  public static class Base {
+    int packagePrivateField;
+    private int privateField;
+  }
+
+  @BeforeClass
+  public void checkSupport() {
+    if (!HiddenClassDefiner.isSupported()) {
+      throw new SkipException("hidden classes are not supported by this runtime");
+    }
+  }
+
+  @Test
+  public void testSameClass() throws Exception {
+    assertTrue(HiddenClassDefiner.isAccessibleFromNestmate(Outer.class.getDeclaredField("outerField"), Outer.class));
+  }
+
+  @Test
+  public void testNestedClass() throws Exception {
+    // Classes compiled for Java 10 or earlier have no nestmates other than themselves
+    Class<?> nestHost = (Class<?>) Class.class.getMethod("getNestHost").invoke(Outer.Inner.class);
+    assertEquals(
+      HiddenClassDefiner.isAccessibleFromNestmate(Outer.Inner.class.getDeclaredField("innerField"), Outer.class),
+      nestHost == Outer.class);
+  }
+
+  @Test
+  public void testOtherNestInSamePackage() throws Exception {
+    Class<?> otherNest = PojomatorFactoryTest.HiddenPojo.class;
+    assertFalse(HiddenClassDefiner.isAccessibleFromNestmate(Base.class.getDeclaredField("privateField"), otherNest));
+    assertTrue(
+      HiddenClassDefiner.isAccessibleFromNestmate(Base.class.getDeclaredField("packagePrivateField"), otherNest));
+  }
+
+  @Test
+  public void testOtherPackage() throws Exception {
+    assertFalse(HiddenClassDefiner.isAccessibleFromNestmate(C1.class.getDeclaredMethod("packagePrivate"), C2.class));
+    assertFalse(HiddenClassDefiner.isAccessibleFromNestmate(C1.class.getDeclaredMethod("protectedMethod"), C2.class));
+    assertTrue(HiddenClassDefiner.isAccessibleFromNestmate(C1.class.getDeclaredMethod("publicMethod"), C2.class));
+  }
+
+  @Test
+  public void testCanDefineFor() {
+    assertTrue(HiddenClassDefiner.canDefineFor(Sub.class));
+    assertFalse(HiddenClassDefiner.canDefineFor(String.class));
+    assertFalse(HiddenClassDefiner.canDefineFor(int[].class));
+  }
+}
@@ -0,0 +1,143 @@
+package org.pojomatic.internal;
+
+import static org.testng.Assert.*;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.pojomatic.Pojomator;
+import org.pojomatic.annotations.Property;
+import org.testng.annotations.Test;
+
+public class LazyToStringTest {
+  public static class Pojo {
+    int formatCount;
+    private final String name;
+
+    Pojo(String name) {
+      this.name = name;
+    }
+
+    @Property
+    public String getName() {
+      formatCount++;
+      return name;
+    }
+  }
+
+  /**
+   * A pojo whose property, when formatted, rebinds the deferred view of its own pojomator.
+   */
+  public static class Rebinding {
+    @Property public final Object value;
+
+    Rebinding(Object value) {
+      this.value = value;
+    }
+  }
+
+  private static final Pojomator<Pojo> POJOMATOR = PojomatorFactory.makePojomator(Pojo.class);
+
+  @Test
+  public void testLazyToString() {
+    Pojo pojo = new Pojo("a");
+    CharSequence lazy = POJOMATOR.lazyToString(pojo);
+    assertEquals(pojo.formatCount, 0);
+    assertEquals(lazy.toString(), "Pojo{name: {a}}");
+    assertEquals(lazy.length(), "Pojo{name: {a}}".length());
+    assertEquals(lazy.charAt(0), 'P');
+    assertEquals(lazy.subSequence(0, 4), "Pojo");
+    assertEquals(pojo.formatCount, 1);
+  }
+
+  @Test
+  public void testDeferredToString() {
+    Pojo pojo1 = new Pojo("a");
+    Pojo pojo2 = new Pojo("b");
+    CharSequence deferred1 = POJOMATOR.deferredToString(pojo1);
+    assertEquals(pojo1.formatCount, 0);
+    assertEquals(deferred1.toString(), "Pojo{name: {a}}");
+    assertEquals(deferred1.length(), "Pojo{name: {a}}".length());
+    assertEquals(pojo1.formatCount, 1);
+
+    CharSequence deferred2 = POJOMATOR.deferredToString(pojo2);
+    assertSame(deferred2, deferred1);
+    assertEquals(deferred2.toString(), "Pojo{name: {b}}");
+    assertEquals(deferred2.toString(), "Pojo{name: {b}}");
+    assertEquals(pojo2.formatCount, 1);
+    assertEquals(pojo1.formatCount, 1);
+  }
+
+  @Test
+  public void testDeferredToStringSharedByPojomators() {
+    Pojomator<Rebinding> rebindingPojomator = PojomatorFactory.makePojomator(Rebinding.class);
+    CharSequence deferred = POJOMATOR.deferredToString(new Pojo("a"));
+    assertSame(rebindingPojomator.deferredToString(new Rebinding("b")), deferred);
+    assertEquals(deferred.toString(), "Rebinding{value: {b}}");
+  }
+
+  @Test
+  public void testDeferredToStringReleasesPojoOnceFormatted() throws Exception {
+    Pojo pojo = new Pojo("a");
+    WeakReference<Pojo> pojoReference = new WeakReference<>(pojo);
+    CharSequence deferred = POJOMATOR.deferredToString(pojo);
+    assertEquals(deferred.toString(), "Pojo{name: {a}}");
+    pojo = null;
+    for (int i = 0; i < 100 && pojoReference.get() != null; i++) {
+      System.gc();
+      Thread.sleep(10);
+    }
+    assertNull(pojoReference.get());
+    assertEquals(deferred.toString(), "Pojo{name: {a}}");
+  }
+
+  @Test
+  public void testDeferredToStringIsPerThread() throws Exception {
+    final CharSequence deferred = POJOMATOR.deferredToString(new Pojo("a"));
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<CharSequence> otherThreadView = executor.submit(new Callable<CharSequence>() {
+        @Override
+        public CharSequence call() {
+          CharSequence otherDeferred = POJOMATOR.deferredToString(new Pojo("b"));
+          assertNotSame(otherDeferred, deferred);
+          return otherDeferred;
+        }
+      });
+      assertEquals(otherThreadView.get().toString(), "Pojo{name: {b}}");
+    }
+    finally {
+      executor.shutdown();
+    }
+    assertEquals(deferred.toString(), "Pojo{name: {a}}");
+  }
+
+  @Test
+  public void testDeferredToStringReboundWhileFormatting() {
+    final Pojomator<Rebinding> pojomator = PojomatorFactory.makePojomator(Rebinding.class);
+    final Rebinding inner = new Rebinding("inner");
+    Rebinding outer = new Rebinding(new Object() {
+      @Override
+      public String toString() {
+        return pojomator.deferredToString(inner).toString();
+      }
+    });
+    CharSequence deferred = pojomator.deferredToString(outer);
+    assertEquals(deferred.toString(), "Rebinding{value: {Rebinding{value: {inner}}}}");
+    // the view is now bound to inner
+    assertEquals(deferred.toString(), "Rebinding{value: {inner}}");
+  }
+
+  @Test(expectedExceptions = NullPointerException.class)
+  public void testLazyToStringNull() {
+    POJOMATOR.lazyToString(null);
+  }
+
+  @Test(expectedExceptions = NullPointerException.class)
+  public void testDeferredToStringNull() {
+    POJOMATOR.deferredToString(null);
+  }
+}
@@ -0,0 +1,257 @@
+package org.pojomatic.internal;
+
+import static org.testng.Assert.*;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.pojomatic.Pojomator;
+import org.pojomatic.annotations.AutoProperty;
+import org.pojomatic.annotations.PojomaticPolicy;
+import org.pojomatic.annotations.Property;
+import org.pojomatic.annotations.SkipArrayCheck;
+import org.testng.annotations.Test;
+
+public class LongHashCodeTest {
+  @AutoProperty
+  public static class Primitives {
+    boolean z;
+    byte b;
+    char c;
+    short s;
+    int i;
+    long l;
+    float f;
+    double d;
+  }
+
+  @AutoProperty
+  public static class Arrays {
+    boolean[] z;
+    byte[] b;
+    char[] c;
+    short[] s;
+    int[] i;
+    long[] l;
+    float[] f;
+    double[] d;
+    String[] strings;
+    int[][] nested;
+  }
+
+  @AutoProperty
+  public static class Objects {
+    String string;
+    Object object;
+    @SkipArrayCheck Object skipArrayCheck;
+  }
+
+  @AutoProperty
+  public static class Boxed {
+    Long l;
+    Double d;
+    Object[] elements;
+    IntProperty nested;
+  }
+
+  public static class IntProperty {
+    @Property int x;
+    @Property(policy = PojomaticPolicy.EQUALS_TO_STRING) int notHashed;
+
+    IntProperty(int x) { this.x = x; }
+  }
+
+  private static final Pojomator<Primitives> PRIMITIVES_POJOMATOR = PojomatorFactory.makePojomator(Primitives.class);
+  private static final Pojomator<Arrays> ARRAYS_POJOMATOR = PojomatorFactory.makePojomator(Arrays.class);
+  private static final Pojomator<Objects> OBJECTS_POJOMATOR = PojomatorFactory.makePojomator(Objects.class);
+  private static final Pojomator<Boxed> BOXED_POJOMATOR = PojomatorFactory.makePojomator(Boxed.class);
+  private static final Pojomator<IntProperty> INT_POJOMATOR = PojomatorFactory.makePojomator(IntProperty.class);
+
+  @Test(expectedExceptions = NullPointerException.class)
+  public void testNull() {
+    PRIMITIVES_POJOMATOR.doLongHashCode(null);
+  }
+
+  @Test
+  public void testDefaultSeed() {
+    Primitives pojo = new Primitives();
+    pojo.i = 3;
+    assertEquals(PRIMITIVES_POJOMATOR.doLongHashCode(pojo), PRIMITIVES_POJOMATOR.doLongHashCode(pojo, 0));
+  }
+
+  @Test
+  public void testSeeds() {
+    IntProperty pojo = new IntProperty(3);
+    assertEquals(INT_POJOMATOR.doLongHashCode(pojo, 1), INT_POJOMATOR.doLongHashCode(new IntProperty(3), 1));
+    assertNotEquals(INT_POJOMATOR.doLongHashCode(pojo, 1), INT_POJOMATOR.doLongHashCode(pojo, 2));
+  }
+
+  @Test
+  public void testOnlyHashCodePropertiesUsed() {
+    IntProperty pojo1 = new IntProperty(3);
+    IntProperty pojo2 = new IntProperty(3);
+    pojo2.notHashed = 4;
+    assertEquals(INT_POJOMATOR.doLongHashCode(pojo1), INT_POJOMATOR.doLongHashCode(pojo2));
+  }
+
+  @Test
+  public void testPrimitives() {
+    Set<Long> hashes = new HashSet<>();
+    Primitives pojo = new Primitives();
+    assertTrue(hashes.add(PRIMITIVES_POJOMATOR.doLongHashCode(pojo)));
+    pojo.z = true;
+    assertTrue(hashes.add(PRIMITIVES_POJOMATOR.doLongHashCode(pojo)));
+    pojo.b = -1;
+    assertTrue(hashes.add(PRIMITIVES_POJOMATOR.doLongHashCode(pojo)));
+    pojo.c = 'x';
+    assertTrue(hashes.add(PRIMITIVES_POJOMATOR.doLongHashCode(pojo)));
+    pojo.s = 7;
+    assertTrue(hashes.add(PRIMITIVES_POJOMATOR.doLongHashCode(pojo)));
+    pojo.i = 8;
+    assertTrue(hashes.add(PRIMITIVES_POJOMATOR.doLongHashCode(pojo)));
+    pojo.l = 1L << 40; // only high bits
+    assertTrue(hashes.add(PRIMITIVES_POJOMATOR.doLongHashCode(pojo)));
+    pojo.f = 1.5f;
+    assertTrue(hashes.add(PRIMITIVES_POJOMATOR.doLongHashCode(pojo)));
+    pojo.d = -0.0;
+    assertTrue(hashes.add(PRIMITIVES_POJOMATOR.doLongHashCode(pojo)));
+  }
+
+  @Test
+  public void testArraysHashedByContents() {
+    assertEquals(ARRAYS_POJOMATOR.doLongHashCode(fullArrays()), ARRAYS_POJOMATOR.doLongHashCode(fullArrays()));
+    Arrays pojo = fullArrays();
+    pojo.nested[1][0] = 6;
+    assertNotEquals(ARRAYS_POJOMATOR.doLongHashCode(pojo), ARRAYS_POJOMATOR.doLongHashCode(fullArrays()));
+  }
+
+  @Test
+  public void testArrayLengths() {
+    // each length must be distinguished, including all partial blocks of elements
+    Set<Long> hashes = new HashSet<>();
+    Arrays pojo = new Arrays();
+    assertTrue(hashes.add(ARRAYS_POJOMATOR.doLongHashCode(pojo)));
+    for (int length = 0; length < 70; length++) {
+      pojo.z = new boolean[length];
+      assertTrue(hashes.add(ARRAYS_POJOMATOR.doLongHashCode(pojo)));
+    }
+    pojo.z = null;
+    for (int length = 0; length < 20; length++) {
+      pojo.b = new byte[length];
+      assertTrue(hashes.add(ARRAYS_POJOMATOR.doLongHashCode(pojo)));
+    }
+  }
+
+  @Test
+  public void testArrayElements() {
+    Set<Long> hashes = new HashSet<>();
+    Arrays pojo = new Arrays();
+    pojo.b = new byte[11];
+    pojo.c = new char[5];
+    pojo.s = new short[5];
+    pojo.i = new int[3];
+    pojo.f = new float[3];
+    pojo.z = new boolean[65];
+    assertTrue(hashes.add(ARRAYS_POJOMATOR.doLongHashCode(pojo)));
+    for (int i = 0; i < pojo.b.length; i++) {
+      pojo.b[i] = 1;
+      assertTrue(hashes.add(ARRAYS_POJOMATOR.doLongHashCode(pojo)));
+    }
+    for (int i = 0; i < pojo.c.length; i++) {
+      pojo.c[i] = 1;
+      assertTrue(hashes.add(ARRAYS_POJOMATOR.doLongHashCode(pojo)));
+      pojo.s[i] = 1;
+      assertTrue(hashes.add(ARRAYS_POJOMATOR.doLongHashCode(pojo)));
+    }
+    for (int i = 0; i < pojo.i.length; i++) {
+      pojo.i[i] = 1;
+      assertTrue(hashes.add(ARRAYS_POJOMATOR.doLongHashCode(pojo)));
+      pojo.f[i] = 1;
+      assertTrue(hashes.add(ARRAYS_POJOMATOR.doLongHashCode(pojo)));
+    }
+    for (int i = 0; i < pojo.z.length; i++) {
+      pojo.z[i] = true;
+      assertTrue(hashes.add(ARRAYS_POJOMATOR.doLongHashCode(pojo)));
+    }
+  }
+
+  @Test
+  public void testObjects() {
+    Objects pojo1 = new Objects();
+    Objects pojo2 = new Objects();
+    assertEquals(OBJECTS_POJOMATOR.doLongHashCode(pojo1), OBJECTS_POJOMATOR.doLongHashCode(pojo2));
+    pojo1.string = "hello, world";
+    pojo2.string = new String("hello, world");
+    pojo1.object = new long[] { 1, 2 };
+    pojo2.object = new long[] { 1, 2 };
+    pojo1.skipArrayCheck = pojo2.skipArrayCheck = new int[0];
+    assertEquals(OBJECTS_POJOMATOR.doLongHashCode(pojo1), OBJECTS_POJOMATOR.doLongHashCode(pojo2));
+    pojo2.string = "hello, world!";
+    assertNotEquals(OBJECTS_POJOMATOR.doLongHashCode(pojo1), OBJECTS_POJOMATOR.doLongHashCode(pojo2));
+  }
+
+  @Test
+  public void testBoxedLongsAndDoublesHashedByAllBits() {
+    // these have the same 32 bit hashCode
+    long wide = 0x1_00000001L;
+    assertEquals(Long.valueOf(wide).hashCode(), Long.valueOf(0L).hashCode());
+    assertEquals(Double.valueOf(Double.longBitsToDouble(wide)).hashCode(), Double.valueOf(0.0).hashCode());
+
+    Boxed pojo1 = new Boxed();
+    Boxed pojo2 = new Boxed();
+    pojo1.l = wide;
+    pojo2.l = 0L;
+    assertNotEquals(BOXED_POJOMATOR.doLongHashCode(pojo1), BOXED_POJOMATOR.doLongHashCode(pojo2));
+    pojo2.l = wide;
+    pojo1.d = Double.longBitsToDouble(wide);
+    pojo2.d = 0.0;
+    assertNotEquals(BOXED_POJOMATOR.doLongHashCode(pojo1), BOXED_POJOMATOR.doLongHashCode(pojo2));
+    pojo2.d = pojo1.d;
+    pojo1.elements = new Object[] { wide };
+    pojo2.elements = new Object[] { 0L };
+    assertNotEquals(BOXED_POJOMATOR.doLongHashCode(pojo1), BOXED_POJOMATOR.doLongHashCode(pojo2));
+  }
+
+  @Test
+  public void testNestedPojosHashedByTheirPojomator() {
+    // IntProperty does not override hashCode, so only its pojomator can hash it by its properties
+    Boxed pojo1 = new Boxed();
+    Boxed pojo2 = new Boxed();
+    pojo1.nested = new IntProperty(3);
+    pojo2.nested = new IntProperty(3);
+    assertEquals(BOXED_POJOMATOR.doLongHashCode(pojo1), BOXED_POJOMATOR.doLongHashCode(pojo2));
+    pojo2.nested = new IntProperty(4);
+    assertNotEquals(BOXED_POJOMATOR.doLongHashCode(pojo1), BOXED_POJOMATOR.doLongHashCode(pojo2));
+  }
+
+  @Test
+  public void testDispersion() {
+    // sequential values should spread across both the low and the high bits of the hash
+    int count = 1 << 16;
+    Set<Long> lowBits = new HashSet<>();
+    Set<Long> highBits = new HashSet<>();
+    for (int x = 0; x < count; x++) {
+      long hash = INT_POJOMATOR.doLongHashCode(new IntProperty(x));
+      lowBits.add(hash & 0xFFFF);
+      highBits.add(hash >>> 48);
+    }
+    // for random values, we would expect to see about 63% of the possible values
+    assertTrue(lowBits.size() > count / 2, "low bits: " + lowBits.size());
+    assertTrue(highBits.size() > count / 2, "high bits: " + highBits.size());
+  }
+
+  private static Arrays fullArrays() {
+    Arrays pojo = new Arrays();
+    pojo.z = new boolean[] { true, false, true };
+    pojo.b = new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9 };
+    pojo.c = new char[] { 'a', 'b', 'c', 'd', 'e' };
+    pojo.s = new short[] { 1, 2, 3 };
+    pojo.i = new int[] { 1, 2, 3 };
+    pojo.l = new long[] { 1, 2, 3 };
+    pojo.f = new float[] { 1, 2, 3 };
+    pojo.d = new double[] { 1, 2, 3 };
+    pojo.strings = new String[] { "a", null, "c" };
+    pojo.nested = new int[][] { { 1 }, { 2 } };
+    return pojo;
+  }
+}
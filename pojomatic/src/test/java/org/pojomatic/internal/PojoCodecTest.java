@@ -0,0 +1,288 @@
+package org.pojomatic.internal;
+
+import static org.testng.Assert.*;
+
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.pojomatic.PojoCodec;
+import org.pojomatic.Pojomatic;
+import org.pojomatic.Pojomator;
+import org.pojomatic.annotations.AutoProperty;
+import org.pojomatic.annotations.PojomaticPolicy;
+import org.pojomatic.annotations.Property;
+import org.testng.annotations.Test;
+
+public class PojoCodecTest {
+  public enum Side { BUY, SELL }
+
+  @AutoProperty
+  public static class Leg {
+    final String instrument;
+    final Side side;
+    final Leg hedge;
+
+    Leg(String instrument, Side side, Leg hedge) {
+      this.instrument = instrument;
+      this.side = side;
+      this.hedge = hedge;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      return Pojomatic.equals(this, other);
+    }
+
+    @Override
+    public int hashCode() {
+      return Pojomatic.hashCode(this);
+    }
+  }
+
+  @AutoProperty
+  public static class Everything {
+    final boolean z;
+    final byte b;
+    final char c;
+    final short s;
+    final int i;
+    final long l;
+    final float f;
+    final double d;
+    final String string;
+    final int[] ints;
+    final double[] doubles;
+    final byte[] bytes;
+    final Integer boxed;
+    final Leg leg;
+    @Property(policy = PojomaticPolicy.TO_STRING)
+    final Object notEncoded;
+
+    Everything(
+      boolean z, byte b, char c, short s, int i, long l, float f, double d, String string, int[] ints,
+      double[] doubles, byte[] bytes, Integer boxed, Leg leg) {
+      this.z = z;
+      this.b = b;
+      this.c = c;
+      this.s = s;
+      this.i = i;
+      this.l = l;
+      this.f = f;
+      this.d = d;
+      this.string = string;
+      this.ints = ints;
+      this.doubles = doubles;
+      this.bytes = bytes;
+      this.boxed = boxed;
+      this.leg = leg;
+      this.notEncoded = "not encoded";
+    }
+  }
+
+  @AutoProperty
+  public static class Bean {
+    private String name;
+    private long size;
+
+    public String getName() {
+      return name;
+    }
+
+    public void setName(String name) {
+      this.name = name;
+    }
+
+    public long getSize() {
+      return size;
+    }
+
+    public void setSize(long size) {
+      this.size = size;
+    }
+  }
+
+  /**
+   * A pojo whose constructor takes its properties in a different order than they are declared.
+   */
+  @AutoProperty
+  public static class Point {
+    int y;
+    int x;
+
+    Point() {}
+
+    Point(int x, int y) {
+      this.x = x;
+      this.y = y;
+    }
+  }
+
+  @AutoProperty
+  public static class ImmutablePoint {
+    final int y;
+    final int x;
+
+    ImmutablePoint(int x, int y) {
+      this.x = x;
+      this.y = y;
+    }
+  }
+
+  @AutoProperty
+  public static class Ints {
+    int[] values;
+  }
+
+  @AutoProperty
+  public static class Unsupported {
+    List<String> names;
+  }
+
+  @AutoProperty
+  public static class Immutable {
+    final int x;
+
+    Immutable(int x, int y) {
+      this.x = x;
+    }
+  }
+
+  private static <T> T roundTrip(Class<T> pojoClass, T instance) {
+    PojoCodec<T> codec = Pojomatic.codec(pojoClass);
+    ByteBuffer buffer = ByteBuffer.allocate(1024);
+    codec.write(instance, buffer);
+    buffer.flip();
+    T copy = codec.read(buffer);
+    assertFalse(buffer.hasRemaining());
+    Pojomator<T> pojomator = Pojomatic.pojomator(pojoClass);
+    assertTrue(pojomator.doEquals(instance, copy), pojomator.doDiff(instance, copy).toString());
+    return copy;
+  }
+
+  @Test
+  public void testRoundTrip() {
+    Leg leg = new Leg("GBP/USD", Side.BUY, new Leg("£ € 😀", Side.SELL, null));
+    roundTrip(Everything.class, new Everything(
+      true, (byte) -3, '€', (short) -300, Integer.MIN_VALUE, Long.MAX_VALUE, Float.NaN, -0.0,
+      "héllo", new int[] { 1, -1 }, new double[0], new byte[300], 7, leg));
+  }
+
+  @Test
+  public void testNulls() {
+    roundTrip(Everything.class, new Everything(
+      false, (byte) 0, 'a', (short) 0, 0, 0, 0, 0, null, null, null, null, null, new Leg(null, null, null)));
+    roundTrip(Everything.class, new Everything(
+      false, (byte) 0, 'a', (short) 0, 0, 0, 0, 0, "", null, null, null, null, null));
+  }
+
+  @Test
+  public void testSetters() {
+    Bean bean = new Bean();
+    bean.setName("bean");
+    bean.setSize(42);
+    roundTrip(Bean.class, bean);
+  }
+
+  @Test
+  public void testCompactLayout() {
+    Bean bean = new Bean();
+    bean.setName("ab");
+    ByteBuffer buffer = ByteBuffer.allocate(64);
+    Pojomatic.codec(Bean.class).write(bean, buffer);
+    // schema hash, then the properties in the order they are declared: varint 3 and "ab", then 8 bytes for size
+    assertEquals(buffer.position(), 4 + 1 + 2 + 8);
+    assertEquals(buffer.get(4), (byte) 3);
+  }
+
+  @Test
+  public void testCodecIsCached() {
+    assertSame(Pojomatic.codec(Leg.class), Pojomatic.codec(Leg.class));
+    assertSame(PropertyCodec.forClass(Leg.class), Pojomatic.codec(Leg.class));
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testSchemaMismatch() {
+    ByteBuffer buffer = ByteBuffer.allocate(64);
+    Pojomatic.codec(Leg.class).write(new Leg("x", Side.BUY, null), buffer);
+    buffer.flip();
+    Pojomatic.codec(Bean.class).read(buffer);
+  }
+
+  @Test
+  public void testSchemaHashDependsOnNestedProperties() {
+    assertNotEquals(Pojomatic.codec(Everything.class).schemaHash(), Pojomatic.codec(Leg.class).schemaHash());
+    assertEquals(Pojomatic.codec(Leg.class).schemaHash(), Pojomatic.codec(Leg.class).schemaHash());
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testUnsupportedPropertyType() {
+    Pojomatic.codec(Unsupported.class);
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testNoWayToConstruct() {
+    Pojomatic.codec(Immutable.class);
+  }
+
+  @Test
+  public void testConstructorWithSwappedParameters() {
+    Point copy = roundTrip(Point.class, new Point(1, 2));
+    assertEquals(copy.x, 1);
+    assertEquals(copy.y, 2);
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testAmbiguousConstructorNotUsed() {
+    Pojomatic.codec(ImmutablePoint.class);
+  }
+
+  @Test(expectedExceptions = BufferOverflowException.class)
+  public void testBufferTooSmall() {
+    Pojomatic.codec(Leg.class).write(new Leg("GBP/USD", Side.BUY, null), ByteBuffer.allocate(8));
+  }
+
+  private static ByteBuffer record(Class<?> pojoClass, int... bytes) {
+    ByteBuffer buffer = ByteBuffer.allocate(4 + bytes.length);
+    buffer.putInt(Pojomatic.codec(pojoClass).schemaHash());
+    for (int b: bytes) {
+      buffer.put((byte) b);
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  @Test(expectedExceptions = BufferUnderflowException.class)
+  public void testTruncatedString() {
+    // a string claiming to be 0x7ffffffe bytes long, followed by just one
+    Pojomatic.codec(Bean.class).read(record(Bean.class, 0xff, 0xff, 0xff, 0xff, 0x07, 'a'));
+  }
+
+  @Test(expectedExceptions = BufferUnderflowException.class)
+  public void testTruncatedArray() {
+    // an int[] of length 2, with only 4 bytes of elements
+    Pojomatic.codec(Ints.class).read(record(Ints.class, 3, 0, 0, 0, 1));
+  }
+
+  @Test(expectedExceptions = BufferUnderflowException.class)
+  public void testArrayLengthOverflowingInt() {
+    // an int[] claiming 0x3ffffffe elements, whose size in bytes does not fit in an int
+    Pojomatic.codec(Ints.class).read(record(Ints.class, 0xff, 0xff, 0xff, 0xff, 0x03));
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testLengthOverflowingInt() {
+    Pojomatic.codec(Bean.class).read(record(Bean.class, 0xff, 0xff, 0xff, 0xff, 0x0f));
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testLengthTooLong() {
+    Pojomatic.codec(Bean.class).read(record(Bean.class, 0x80, 0x80, 0x80, 0x80, 0x80, 0x00));
+  }
+
+  @Test(expectedExceptions = NullPointerException.class)
+  public void testNullInstance() {
+    Pojomatic.codec(Leg.class).write(null, ByteBuffer.allocate(8));
+  }
+}
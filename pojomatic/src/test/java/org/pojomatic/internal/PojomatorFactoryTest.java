@@ -3,18 +3,28 @@ package org.pojomatic.internal;
 import static org.testng.Assert.*;
 import static org.hamcrest.MatcherAssert.assertThat;
 
+import org.testng.SkipException;
 import org.testng.annotations.Test;
 
 import java.io.IOException;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.AnnotatedElement;
+import java.net.URL;
 import java.util.ArrayList;
 import java.util.regex.Pattern;
 
+import org.kohsuke.asm5.AnnotationVisitor;
+import org.kohsuke.asm5.ClassReader;
+import org.kohsuke.asm5.ClassVisitor;
+import org.kohsuke.asm5.ClassWriter;
+import org.kohsuke.asm5.FieldVisitor;
+import org.kohsuke.asm5.Opcodes;
 import org.mockito.Mockito;
 import org.pojomatic.Pojomatic;
 import org.pojomatic.Pojomator;
 import org.pojomatic.PropertyElement;
 import org.pojomatic.annotations.PojoFormat;
+import org.pojomatic.annotations.PojomaticPolicy;
 import org.pojomatic.annotations.Property;
 import org.pojomatic.annotations.PropertyFormat;
 import org.pojomatic.formatter.DefaultEnhancedPropertyFormatter;
@@ -60,6 +70,266 @@ public class PojomatorFactoryTest {
     assertTrue(pojomator2.doEquals(simple2.newInstance(), simple2.newInstance()));
   }
 
+  public static class ToBeUnloaded {
+    @Property int x;
+  }
+
+  /**
+   * A class loader which defines {@link ToBeUnloaded} itself.
+   */
+  private static class ReloadingClassLoader extends ClassLoader {
+    ReloadingClassLoader(ClassLoader parent) {
+      super(parent);
+    }
+
+    @Override
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+      if (!name.equals(ToBeUnloaded.class.getName())) {
+        return super.loadClass(name, resolve);
+      }
+      synchronized (getClassLoadingLock(name)) {
+        Class<?> clazz = findLoadedClass(name);
+        if (clazz == null) {
+          byte[] bytes;
+          try {
+            bytes = ByteStreams.toByteArray(getResourceAsStream(name.replace('.', '/') + ".class"));
+          } catch (IOException e) {
+            throw new RuntimeException(e);
+          }
+          clazz = defineClass(name, bytes, 0, bytes.length);
+        }
+        if (resolve) {
+          resolveClass(clazz);
+        }
+        return clazz;
+      }
+    }
+  }
+
+  @Test
+  public void testGeneratedClassesPartitionedByClassLoader() throws Exception {
+    Class<?> reloaded = new ReloadingClassLoader(getClass().getClassLoader()).loadClass(ToBeUnloaded.class.getName());
+    ClassLoader pojomatorClassLoader = PojomatorFactory.makePojomator(ToBeUnloaded.class).getClass().getClassLoader();
+    assertSame(
+      PojomatorFactory.makePojomator(ToBeDuplicated.class).getClass().getClassLoader(), pojomatorClassLoader);
+    assertNotSame(PojomatorFactory.makePojomator(reloaded).getClass().getClassLoader(), pojomatorClassLoader);
+  }
+
+  @Test
+  public void testGeneratedClassesUnloaded() throws Exception {
+    assertUnloaded(null);
+  }
+
+  @Test
+  public void testGeneratedClassesUnloadedAfterDeferredToString() throws Exception {
+    assertUnloaded(Pojomatic.pojomator(ToBeDuplicated.class));
+  }
+
+  /**
+   * @param rebindingPojomator if not {@code null}, a pojomator to rebind the deferred {@code toString} view to, after
+   * binding it to the pojo to be unloaded
+   */
+  private void assertUnloaded(Pojomator<ToBeDuplicated> rebindingPojomator) throws Exception {
+    int liveCount = PojomatorFactory.liveGeneratedClassCount();
+    WeakReference<ClassLoader> pojoClassLoader = loadAndDiscardPojomator(rebindingPojomator);
+    for (int i = 0; i < 100 && (pojoClassLoader.get() != null || PojomatorFactory.liveGeneratedClassCount() > liveCount);
+      i++) {
+      System.gc();
+      Thread.sleep(50);
+    }
+    assertNull(pojoClassLoader.get());
+    assertTrue(PojomatorFactory.liveGeneratedClassCount() <= liveCount);
+  }
+
+  private WeakReference<ClassLoader> loadAndDiscardPojomator(Pojomator<ToBeDuplicated> rebindingPojomator)
+    throws Exception {
+    int liveCount = PojomatorFactory.liveGeneratedClassCount();
+    ClassLoader classLoader = new ReloadingClassLoader(getClass().getClassLoader());
+    Class<?> pojoClass = classLoader.loadClass(ToBeUnloaded.class.getName());
+    @SuppressWarnings("unchecked")
+    Pojomator<Object> pojomator = (Pojomator<Object>) Pojomatic.pojomator(pojoClass);
+    assertEquals(pojomator.doHashCode(pojoClass.newInstance()), 31);
+    if (rebindingPojomator != null) {
+      // the reloaded class cannot be formatted, since its declaring class is not reloaded; rebinding the view to
+      // another pojo must release it, just as formatting would
+      CharSequence deferred = pojomator.deferredToString(pojoClass.newInstance());
+      assertSame(rebindingPojomator.deferredToString(new ToBeDuplicated()), deferred);
+    }
+    assertEquals(PojomatorFactory.liveGeneratedClassCount(), liveCount + 1);
+    return new WeakReference<>(classLoader);
+  }
+
+  public static class ToBePregenerated {
+    @Property int x;
+  }
+
+  public static class StalePregenerated {
+    @Property int x;
+    @Property int y;
+  }
+
+  /**
+   * A class loader which defines {@link ToBePregenerated} itself, and serves the supplied bytes for the pregenerated
+   * pojomator class of {@code ToBePregenerated}.
+   */
+  private static class PregeneratedClassLoader extends ClassLoader {
+    private final byte[] pojomatorBytes;
+
+    PregeneratedClassLoader(ClassLoader parent, byte[] pojomatorBytes) {
+      super(parent);
+      this.pojomatorBytes = pojomatorBytes;
+    }
+
+    @Override
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+      synchronized (getClassLoadingLock(name)) {
+        Class<?> clazz = findLoadedClass(name);
+        if (clazz == null) {
+          byte[] bytes;
+          if (name.equals(ToBePregenerated.class.getName())) {
+            try {
+              bytes = ByteStreams.toByteArray(
+                getParent().getResourceAsStream(name.replace('.', '/') + ".class"));
+            } catch (IOException e) {
+              throw new RuntimeException(e);
+            }
+          }
+          else if (name.equals(PojomatorFactory.pregeneratedPojomatorClassName(ToBePregenerated.class))) {
+            bytes = pojomatorBytes;
+          }
+          else {
+            return super.loadClass(name, resolve);
+          }
+          clazz = defineClass(name, bytes, 0, bytes.length);
+        }
+        if (resolve) {
+          resolveClass(clazz);
+        }
+        return clazz;
+      }
+    }
+  }
+
+  @Test
+  public void testPregeneratedPojomator() throws Exception {
+    ClassLoader loader = new PregeneratedClassLoader(
+      getClass().getClassLoader(), PojomatorFactory.pregeneratePojomatorClassBytes(ToBePregenerated.class));
+    Class<?> pojoClass = loader.loadClass(ToBePregenerated.class.getName());
+    @SuppressWarnings("unchecked")
+    Pojomator<Object> pojomator = (Pojomator<Object>) PojomatorFactory.makePojomator(pojoClass);
+    assertEquals(pojomator.getClass().getName(), PojomatorFactory.pregeneratedPojomatorClassName(pojoClass));
+    assertSame(pojomator.getClass().getClassLoader(), loader);
+    assertTrue(pojomator.doEquals(pojoClass.newInstance(), pojoClass.newInstance()));
+    assertEquals(pojomator.doHashCode(pojoClass.newInstance()), 31);
+  }
+
+  @Test
+  public void testPregeneratedPojomatorDoesNotReadClassFile() throws Exception {
+    ClassLoader loader = new PregeneratedClassLoader(
+      getClass().getClassLoader(), PojomatorFactory.pregeneratePojomatorClassBytes(ToBePregenerated.class)) {
+      @Override
+      public URL getResource(String name) {
+        // inspecting the pojo class itself would need its class file
+        return name.endsWith(".class") ? null : super.getResource(name);
+      }
+    };
+    Class<?> pojoClass = loader.loadClass(ToBePregenerated.class.getName());
+    @SuppressWarnings("unchecked")
+    Pojomator<Object> pojomator = (Pojomator<Object>) PojomatorFactory.makePojomator(pojoClass);
+    assertEquals(pojomator.getClass().getName(), PojomatorFactory.pregeneratedPojomatorClassName(pojoClass));
+    assertEquals(pojomator.getEqualsProperties().size(), 1);
+    assertTrue(pojomator.doEquals(pojoClass.newInstance(), pojoClass.newInstance()));
+    assertEquals(pojomator.doHashCode(pojoClass.newInstance()), 31);
+  }
+
+  @Test
+  public void testStalePregeneratedPojomatorIgnored() throws Exception {
+    byte[] staleBytes = new PojomatorByteCodeGenerator(
+      PojomatorFactory.pregeneratedPojomatorClassName(ToBePregenerated.class),
+      StalePregenerated.class,
+      ClassProperties.forClass(StalePregenerated.class)).makeClassBytes();
+    ClassLoader loader = new PregeneratedClassLoader(getClass().getClassLoader(), staleBytes);
+    Class<?> pojoClass = loader.loadClass(ToBePregenerated.class.getName());
+    Pojomator<?> pojomator = PojomatorFactory.makePojomator(pojoClass, PojomatorFactory.Backend.CLASS_LOADER);
+    assertThat(
+      pojomator.getClass().getName(),
+      RegexMatcher.matches(Pattern.quote(PojomatorStub.class.getName()+ "$") + "\\d+"));
+  }
+
+  /**
+   * A class loader which defines a single class from the supplied bytes.
+   */
+  private static class ByteArrayClassLoader extends ClassLoader {
+    ByteArrayClassLoader(ClassLoader parent) {
+      super(parent);
+    }
+
+    Class<?> define(String name, byte[] bytes) {
+      return defineClass(name, bytes, 0, bytes.length);
+    }
+  }
+
+  /**
+   * Generate a pojomator for a copy of {@link ToBePregenerated} whose property {@code x} is altered, and serve it as
+   * the pregenerated pojomator of {@code ToBePregenerated}.
+   * @param descriptor the descriptor to give the field {@code x}
+   * @param propertyName the name to give property {@code x} through {@link Property#name()}, or {@code null}
+   * @return the pojomator created for {@code ToBePregenerated}
+   */
+  private Pojomator<?> pregenerateForAlteredProperty(final String descriptor, final String propertyName)
+    throws Exception {
+    String className = ToBePregenerated.class.getName();
+    ClassWriter classWriter = new ClassWriter(0);
+    new ClassReader(getClass().getClassLoader().getResourceAsStream(className.replace('.', '/') + ".class")).accept(
+      new ClassVisitor(Opcodes.ASM5, classWriter) {
+        @Override
+        public FieldVisitor visitField(int access, String name, String desc, String signature, Object value) {
+          return new FieldVisitor(Opcodes.ASM5, super.visitField(access, name, descriptor, signature, value)) {
+            @Override
+            public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+              return new AnnotationVisitor(Opcodes.ASM5, super.visitAnnotation(desc, visible)) {
+                @Override
+                public void visitEnd() {
+                  if (propertyName != null) {
+                    visit("name", propertyName);
+                  }
+                  super.visitEnd();
+                }
+              };
+            }
+          };
+        }
+      },
+      0);
+    Class<?> altered = new ByteArrayClassLoader(getClass().getClassLoader()).define(className, classWriter.toByteArray());
+    byte[] pojomatorBytes = new PojomatorByteCodeGenerator(
+      PojomatorFactory.pregeneratedPojomatorClassName(altered), altered, ClassProperties.forClass(altered))
+      .makeClassBytes();
+    ClassLoader loader = new PregeneratedClassLoader(getClass().getClassLoader(), pojomatorBytes);
+    return PojomatorFactory.makePojomator(loader.loadClass(className), PojomatorFactory.Backend.CLASS_LOADER);
+  }
+
+  @Test
+  public void testPregeneratedPojomatorForEquivalentClassUsed() throws Exception {
+    assertEquals(
+      pregenerateForAlteredProperty("I", null).getClass().getName(),
+      PojomatorFactory.pregeneratedPojomatorClassName(ToBePregenerated.class));
+  }
+
+  @Test
+  public void testPregeneratedPojomatorStaleAfterPropertyTypeChange() throws Exception {
+    assertThat(
+      pregenerateForAlteredProperty("J", null).getClass().getName(),
+      RegexMatcher.matches(Pattern.quote(PojomatorStub.class.getName()+ "$") + "\\d+"));
+  }
+
+  @Test
+  public void testPregeneratedPojomatorStaleAfterPropertyRename() throws Exception {
+    assertThat(
+      pregenerateForAlteredProperty("I", "renamed").getClass().getName(),
+      RegexMatcher.matches(Pattern.quote(PojomatorStub.class.getName()+ "$") + "\\d+"));
+  }
+
   private static class Inaccessible {
     @Override
     public int hashCode() {
@@ -115,6 +385,19 @@ public class PojomatorFactoryTest {
     assertEquals(PojomatorFactory.makePojomator(Simple.class).doToString(new Simple()), "Simple{x: {foo}}");
   }
 
+  public static class ToStringOnly {
+    @Property(policy = PojomaticPolicy.TO_STRING) int x = 3;
+  }
+
+  @Test(dataProvider = "backends", dataProviderClass = CacheHashCodeTest.class)
+  public void testNoEqualsProperties(PojomatorFactory.Backend backend) throws Exception {
+    Pojomator<ToStringOnly> pojomator = PojomatorFactory.makePojomator(ToStringOnly.class, backend);
+    assertEquals(pojomator.doToString(new ToStringOnly()), "ToStringOnly{x: {3}}");
+    assertTrue(pojomator.doEquals(new ToStringOnly(), new ToStringOnly()));
+    assertEquals(pojomator.doHashCode(new ToStringOnly()), 1);
+    assertTrue(pojomator.getEqualsProperties().isEmpty());
+  }
+
   @Test
   public void testNonEnhancedPojoFormatter() throws Exception {
     @SuppressWarnings("deprecation")
@@ -234,7 +517,8 @@ public class PojomatorFactoryTest {
       @Property int getX() { return 3; }
       @Property int getY() throws Exception { throw new Exception("testing"); }
     }
-    Pojomator<Pojo> pojomator = PojomatorFactory.makePojomator(Pojo.class);
+    // frames from hidden classes do not show up in stack traces
+    Pojomator<Pojo> pojomator = PojomatorFactory.makePojomator(Pojo.class, PojomatorFactory.Backend.CLASS_LOADER);
     assertThat(
       pojomator.getClass().getName(),
       RegexMatcher.matches(Pattern.quote(PojomatorStub.class.getName()+ "$") + "\\d+"));
@@ -255,6 +539,82 @@ public class PojomatorFactoryTest {
     }
   }
 
+  public static class HiddenBase {
+    private int privateBase = 1;
+    protected int protectedBase = 2;
+    public int getPublicBase() { return 3; }
+  }
+
+  public static class HiddenPojo extends HiddenBase {
+    @Property private long x = 4;
+    @Property private String s = "five";
+    @Property private int[] ints = { 6 };
+    @Property private int getY() { return 7; }
+    @Property public int getPrivateBase() { return ((HiddenBase) this).privateBase; }
+    @Property public int getProtectedBase() { return protectedBase; }
+    @Override @Property public int getPublicBase() { return super.getPublicBase(); }
+  }
+
+  public interface HiddenInterface {
+    @Property int getZ();
+  }
+
+  @Test
+  public void testHiddenClassBackend() throws Exception {
+    if (!HiddenClassDefiner.isSupported()) {
+      throw new SkipException("hidden classes are not supported by this runtime");
+    }
+    Pojomator<HiddenPojo> pojomator = PojomatorFactory.makePojomator(
+      HiddenPojo.class, PojomatorFactory.Backend.HIDDEN_CLASS);
+    assertTrue((Boolean) Class.class.getMethod("isHidden").invoke(pojomator.getClass()));
+    assertSame(pojomator.getClass().getClassLoader(), HiddenPojo.class.getClassLoader());
+    assertEquals(
+      pojomator.doToString(new HiddenPojo()),
+      "HiddenPojo{x: {4}, s: {five}, ints: {[6]}, y: {7}, privateBase: {1}, protectedBase: {2}, publicBase: {3}}");
+    assertTrue(pojomator.doEquals(new HiddenPojo(), new HiddenPojo()));
+    HiddenPojo other = new HiddenPojo();
+    other.ints[0] = 0;
+    assertFalse(pojomator.doEquals(new HiddenPojo(), other));
+    assertEquals(pojomator.doHashCode(new HiddenPojo()), PojomatorFactory.makePojomator(
+      HiddenPojo.class, PojomatorFactory.Backend.CLASS_LOADER).doHashCode(new HiddenPojo()));
+
+    Pojomator<HiddenInterface> interfacePojomator = PojomatorFactory.makePojomator(
+      HiddenInterface.class, PojomatorFactory.Backend.HIDDEN_CLASS);
+    HiddenInterface hiddenInterface = new HiddenInterface() {
+      @Override public int getZ() { return 8; }
+    };
+    assertEquals(interfacePojomator.doToString(hiddenInterface), "HiddenInterface{z: {8}}");
+  }
+
+  /**
+   * A class loader which defines {@link ToBeUnloaded} itself, and cannot see Pojomatic's {@link BasePojomator}, so
+   * that a hidden pojomator class could not resolve its superclass through the pojo class.
+   */
+  private static class BasePojomatorHidingClassLoader extends ReloadingClassLoader {
+    BasePojomatorHidingClassLoader(ClassLoader parent) {
+      super(parent);
+    }
+
+    @Override
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+      if (name.equals(BasePojomator.class.getName())) {
+        throw new ClassNotFoundException(name);
+      }
+      return super.loadClass(name, resolve);
+    }
+  }
+
+  @Test
+  public void testHiddenClassBackendFallsBackForOtherClassLoaders() throws Exception {
+    Class<?> reloaded =
+      new BasePojomatorHidingClassLoader(getClass().getClassLoader()).loadClass(ToBeUnloaded.class.getName());
+    assertFalse(HiddenClassDefiner.canDefineFor(reloaded));
+    Pojomator<?> pojomator = PojomatorFactory.makePojomator(reloaded, PojomatorFactory.Backend.HIDDEN_CLASS);
+    assertThat(
+      pojomator.getClass().getName(),
+      RegexMatcher.matches(Pattern.quote(PojomatorStub.class.getName()+ "$") + "\\d+"));
+  }
+
   private void assertStackTraceElementFromGeneratedByteCode(
     StackTraceElement element, Pojomator<?> pojomator, String methodName, int lineNumber) {
     assertEquals(element.getClassName(), pojomator.getClass().getName());
@@ -0,0 +1,260 @@
+package org.pojomatic.internal;
+
+import static org.testng.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.pojomatic.Pojomatic;
+import org.pojomatic.Pojomator;
+import org.pojomatic.annotations.AutoProperty;
+import org.pojomatic.diff.ReconciliationListener;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.Test;
+
+public class ReconcilerTest {
+  @AutoProperty
+  public static class Position {
+    String book;
+    long id;
+    double quantity;
+
+    Position(String book, long id, double quantity) {
+      this.book = book;
+      this.id = id;
+      this.quantity = quantity;
+    }
+  }
+
+  private static class RecordingListener implements ReconciliationListener<Position> {
+    final Set<String> outcomes = Collections.synchronizedSet(new TreeSet<String>());
+
+    @Override
+    public void onAdded(Position right) {
+      outcomes.add("added " + right.book + right.id);
+    }
+
+    @Override
+    public void onRemoved(Position left) {
+      outcomes.add("removed " + left.book + left.id);
+    }
+
+    @Override
+    public void onChanged(Position left, Position right, BitSet changedProperties) {
+      outcomes.add("changed " + left.book + left.id + " " + changedProperties);
+    }
+
+    @Override
+    public void onUnchanged(Position left, Position right) {
+      outcomes.add("unchanged " + left.book + left.id);
+    }
+  }
+
+  private static final Executor REJECTING_EXECUTOR = new Executor() {
+    @Override
+    public void execute(Runnable command) {
+      throw new RejectedExecutionException();
+    }
+  };
+
+  private static final Pojomator<Position> POJOMATOR = Pojomatic.pojomator(Position.class);
+
+  private final ExecutorService executor = Executors.newFixedThreadPool(3);
+
+  @AfterClass
+  public void shutdown() {
+    executor.shutdown();
+  }
+
+  private static final List<Position> LEFT = Arrays.asList(
+    new Position("a", 1, 10), new Position("a", 2, 20), new Position("b", 1, 30), new Position("b", 2, 40));
+  private static final List<Position> RIGHT = Arrays.asList(
+    new Position("b", 2, 40), new Position("a", 1, 11), new Position("c", 1, 50), new Position("a", 2, 20));
+
+  private static final Set<String> EXPECTED = new TreeSet<>(Arrays.asList(
+    "changed a1 {2}", "unchanged a2", "removed b1", "unchanged b2", "added c1"));
+
+  @Test
+  public void testReconcile() {
+    RecordingListener listener = new RecordingListener();
+    Pojomatic.reconcile(Position.class, LEFT, RIGHT, listener, "book", "id");
+    assertEquals(listener.outcomes, EXPECTED);
+  }
+
+  @Test
+  public void testReconcileOnExecutor() {
+    RecordingListener listener = new RecordingListener();
+    Reconciler.reconcile(POJOMATOR, LEFT, RIGHT, listener, executor, 4, "book", "id");
+    assertEquals(listener.outcomes, EXPECTED);
+  }
+
+  @Test
+  public void testReconcileWhenExecutorRejects() {
+    RecordingListener listener = new RecordingListener();
+    Reconciler.reconcile(POJOMATOR, LEFT, RIGHT, listener, REJECTING_EXECUTOR, 4, "book", "id");
+    assertEquals(listener.outcomes, EXPECTED);
+  }
+
+  @Test
+  public void testReconcileMany() {
+    List<Position> left = new ArrayList<>();
+    List<Position> right = new ArrayList<>();
+    for (int i = 0; i < 10000; i++) {
+      left.add(new Position("a", i, i));
+      right.add(new Position("a", i + 5000, i + 5000 + (i % 2)));
+    }
+    final int[] counts = new int[4];
+    Reconciler.reconcile(POJOMATOR, left, right, new ReconciliationListener<Position>() {
+      @Override
+      public synchronized void onAdded(Position right) {
+        counts[0]++;
+      }
+
+      @Override
+      public synchronized void onRemoved(Position left) {
+        counts[1]++;
+      }
+
+      @Override
+      public synchronized void onChanged(Position left, Position right, BitSet changedProperties) {
+        counts[2]++;
+      }
+
+      @Override
+      public synchronized void onUnchanged(Position left, Position right) {
+        counts[3]++;
+      }
+    }, executor, 4, "id");
+    assertEquals(counts, new int[] { 5000, 5000, 2500, 2500 });
+  }
+
+  /**
+   * Positions "a" 0 to {@code count - 1}, generated as they are iterated over, with the quantity of each equal to its
+   * id, except for {@code duplicateId}, if not negative, which is generated again at the end.
+   */
+  private static Iterable<Position> generated(final int count, final int duplicateId) {
+    return new Iterable<Position>() {
+      @Override
+      public Iterator<Position> iterator() {
+        return new Iterator<Position>() {
+          private int next;
+
+          @Override
+          public boolean hasNext() {
+            return next < count || (next == count && duplicateId >= 0);
+          }
+
+          @Override
+          public Position next() {
+            int id = next++;
+            return new Position("a", id == count ? duplicateId : id, id == count ? duplicateId : id);
+          }
+
+          @Override
+          public void remove() {
+            throw new UnsupportedOperationException();
+          }
+        };
+      }
+    };
+  }
+
+  @Test
+  public void testReconcileStreamsRightInChunks() {
+    final int[] counts = new int[4];
+    Reconciler.reconcile(POJOMATOR, Arrays.asList(new Position("a", 1, 1), new Position("a", -1, 0)),
+      generated(200000, -1), new ReconciliationListener<Position>() {
+      @Override
+      public synchronized void onAdded(Position right) {
+        counts[0]++;
+      }
+
+      @Override
+      public synchronized void onRemoved(Position left) {
+        assertEquals(left.id, -1);
+        counts[1]++;
+      }
+
+      @Override
+      public synchronized void onChanged(Position left, Position right, BitSet changedProperties) {
+        counts[2]++;
+      }
+
+      @Override
+      public synchronized void onUnchanged(Position left, Position right) {
+        assertEquals(left.id, 1);
+        counts[3]++;
+      }
+    }, executor, 4, "id");
+    assertEquals(counts, new int[] { 199999, 1, 0, 1 });
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = ".*\\[7\\]")
+  public void testDuplicateRightKeyInLaterChunk() {
+    Reconciler.reconcile(
+      POJOMATOR, Collections.<Position>emptyList(), generated(100000, 7), new RecordingListener(), executor, 4, "id");
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testDuplicateLeftKey() {
+    Reconciler.reconcile(
+      POJOMATOR, Arrays.asList(new Position("a", 1, 1), new Position("a", 1, 2)), new ArrayList<Position>(),
+      new RecordingListener(), executor, 4, "book", "id");
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = ".*\\[a, 1\\]")
+  public void testDuplicateRightKey() {
+    Reconciler.reconcile(
+      POJOMATOR, new ArrayList<Position>(), Arrays.asList(new Position("a", 1, 1), new Position("a", 1, 2)),
+      new RecordingListener(), REJECTING_EXECUTOR, 1, "book", "id");
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testUnknownKeyProperty() {
+    Pojomatic.reconcile(Position.class, LEFT, RIGHT, new RecordingListener(), "name");
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testNoKeyProperties() {
+    Pojomatic.reconcile(Position.class, LEFT, RIGHT, new RecordingListener());
+  }
+
+  @Test(expectedExceptions = NullPointerException.class)
+  public void testNullElement() {
+    Pojomatic.reconcile(Position.class, LEFT, Arrays.asList((Position) null), new RecordingListener(), "id");
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class, expectedExceptionsMessageRegExp = "listener failed")
+  public void testListenerFailure() {
+    Reconciler.reconcile(POJOMATOR, LEFT, RIGHT, new RecordingListener() {
+      @Override
+      public void onAdded(Position right) {
+        throw new IllegalStateException("listener failed");
+      }
+    }, executor, 4, "book", "id");
+  }
+
+  @Test
+  public void testGetEqualsPropertyValue() {
+    BasePojomator<Position> pojomator = (BasePojomator<Position>) POJOMATOR;
+    Position position = new Position("a", 1, 2.5);
+    assertEquals(pojomator.getEqualsPropertyValue(position, 0), "a");
+    assertEquals(pojomator.getEqualsPropertyValue(position, 1), 1L);
+    assertEquals(pojomator.getEqualsPropertyValue(position, 2), 2.5);
+    try {
+      pojomator.getEqualsPropertyValue(position, 3);
+      fail("exception expected");
+    }
+    catch (IndexOutOfBoundsException expected) {}
+  }
+}
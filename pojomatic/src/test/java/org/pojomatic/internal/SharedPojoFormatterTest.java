@@ -0,0 +1,163 @@
+package org.pojomatic.internal;
+
+import static org.testng.Assert.*;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.pojomatic.Pojomator;
+import org.pojomatic.PropertyElement;
+import org.pojomatic.annotations.AutoProperty;
+import org.pojomatic.annotations.PojoFormat;
+import org.pojomatic.annotations.PojomaticPolicy;
+import org.pojomatic.annotations.Property;
+import org.pojomatic.formatter.DefaultEnhancedPojoFormatter;
+import org.pojomatic.formatter.DefaultPojoFormatter;
+import org.testng.annotations.Test;
+
+public class SharedPojoFormatterTest {
+  private static final AtomicInteger statelessInstances = new AtomicInteger();
+  private static final AtomicInteger statefulInstances = new AtomicInteger();
+
+  public static class CountingStatelessFormatter extends DefaultEnhancedPojoFormatter {
+    public CountingStatelessFormatter() {
+      statelessInstances.incrementAndGet();
+    }
+
+    @Override
+    public void appendPropertyPrefix(StringBuilder builder, PropertyElement property, int propertyIndex) {
+      builder.append(propertyIndex == 0 ? "" : "; ").append(property.getName()).append('=');
+    }
+
+    @Override
+    public void appendPropertySuffix(StringBuilder builder, PropertyElement property, int propertyIndex) {}
+  }
+
+  /**
+   * Overrides only the stateful method, so cannot be shared.
+   */
+  public static class StatefulFormatter extends DefaultEnhancedPojoFormatter {
+    private int propertyCount;
+
+    public StatefulFormatter() {
+      statefulInstances.incrementAndGet();
+    }
+
+    @Override
+    public void appendPropertyPrefix(StringBuilder builder, PropertyElement property) {
+      builder.append(propertyCount++).append(':');
+    }
+
+    @Override
+    public void appendPropertySuffix(StringBuilder builder, PropertyElement property) {
+      builder.append(' ');
+    }
+  }
+
+  /**
+   * Overrides no property methods, but declares state.
+   */
+  public static class FieldFormatter extends DefaultEnhancedPojoFormatter {
+    @SuppressWarnings("unused")
+    private int state;
+  }
+
+  @AutoProperty
+  public static class DefaultFormatted {
+    int x = 1;
+    String y = "y";
+  }
+
+  public static class NoToStringProperties {
+    @Property(policy = PojomaticPolicy.EQUALS) int x;
+  }
+
+  @AutoProperty
+  public static class OneProperty {
+    int[] x = { 1, 2 };
+  }
+
+  @AutoProperty
+  @PojoFormat(DefaultEnhancedPojoFormatter.class)
+  public static class ExplicitDefaultFormatted {
+    int x = 1;
+    String y = "y";
+    Object z = null;
+  }
+
+  @AutoProperty
+  @PojoFormat(CountingStatelessFormatter.class)
+  public static class StatelessFormatted {
+    int x = 1;
+    String y = "y";
+  }
+
+  @AutoProperty
+  @PojoFormat(StatefulFormatter.class)
+  public static class StatefulFormatted {
+    int x = 1;
+    String y = "y";
+  }
+
+  @AutoProperty
+  @PojoFormat(FieldFormatter.class)
+  public static class FieldFormatted {
+    int x;
+  }
+
+  @SuppressWarnings("deprecation")
+  @AutoProperty
+  @PojoFormat(DefaultPojoFormatter.class)
+  public static class LegacyFormatted {
+    int x;
+  }
+
+  @Test
+  public void testSharedPojoFormatterClass() {
+    assertEquals(
+      PojomatorByteCodeGenerator.sharedPojoFormatterClass(DefaultFormatted.class), DefaultEnhancedPojoFormatter.class);
+    assertEquals(
+      PojomatorByteCodeGenerator.sharedPojoFormatterClass(StatelessFormatted.class), CountingStatelessFormatter.class);
+    assertNull(PojomatorByteCodeGenerator.sharedPojoFormatterClass(StatefulFormatted.class));
+    assertNull(PojomatorByteCodeGenerator.sharedPojoFormatterClass(FieldFormatted.class));
+    assertNull(PojomatorByteCodeGenerator.sharedPojoFormatterClass(LegacyFormatted.class));
+  }
+
+  @Test
+  public void testDefaultFormatter() {
+    Pojomator<DefaultFormatted> pojomator = PojomatorFactory.makePojomator(DefaultFormatted.class);
+    assertEquals(pojomator.doToString(new DefaultFormatted()), "DefaultFormatted{x: {1}, y: {y}}");
+    assertEquals(pojomator.doToString(new DefaultFormatted()), "DefaultFormatted{x: {1}, y: {y}}");
+  }
+
+  @Test
+  public void testDefaultFormatterAffixes() {
+    assertEquals(
+      PojomatorFactory.makePojomator(NoToStringProperties.class).doToString(new NoToStringProperties()),
+      "NoToStringProperties{}");
+    assertEquals(
+      PojomatorFactory.makePojomator(OneProperty.class).doToString(new OneProperty()), "OneProperty{x: {[1, 2]}}");
+    assertEquals(
+      PojomatorFactory.makePojomator(ExplicitDefaultFormatted.class).doToString(new ExplicitDefaultFormatted()),
+      "ExplicitDefaultFormatted{x: {1}, y: {y}, z: {null}}");
+  }
+
+  @Test
+  public void testStatelessFormatterShared() {
+    Pojomator<StatelessFormatted> pojomator = PojomatorFactory.makePojomator(StatelessFormatted.class);
+    int instances = statelessInstances.get();
+    for (int i = 0; i < 3; i++) {
+      assertEquals(pojomator.doToString(new StatelessFormatted()), "StatelessFormatted{x=1; y=y}");
+    }
+    assertEquals(statelessInstances.get(), instances);
+  }
+
+  @Test
+  public void testStatefulFormatterNotShared() {
+    Pojomator<StatefulFormatted> pojomator = PojomatorFactory.makePojomator(StatefulFormatted.class);
+    int instances = statefulInstances.get();
+    for (int i = 0; i < 3; i++) {
+      assertEquals(pojomator.doToString(new StatefulFormatted()), "StatefulFormatted{0:1 1:y }");
+    }
+    assertEquals(statefulInstances.get(), instances + 3);
+  }
+}
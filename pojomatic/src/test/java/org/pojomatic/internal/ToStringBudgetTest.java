@@ -0,0 +1,148 @@
+package org.pojomatic.internal;
+
+import static org.testng.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.pojomatic.Pojomator;
+import org.pojomatic.annotations.AutoProperty;
+import org.pojomatic.annotations.ToStringBudget;
+import org.testng.annotations.Test;
+
+public class ToStringBudgetTest {
+  @AutoProperty
+  public static class Unbudgeted {
+    String name = "name";
+    int[] values = new int[100000];
+  }
+
+  @AutoProperty
+  @ToStringBudget(maxChars = 60, maxElements = 3)
+  public static class Budgeted {
+    String name = "name";
+    int[] values = { 1, 2, 3, 4, 5 };
+    List<String> tags = Arrays.asList("a", "b", "c", "d");
+  }
+
+  @AutoProperty
+  @ToStringBudget(maxChars = 20)
+  public static class Short {
+    String name = "a rather long name";
+  }
+
+  @AutoProperty
+  @ToStringBudget(maxChars = 100, maxElements = 2)
+  public static class Outer {
+    Unbudgeted nested = new Unbudgeted();
+  }
+
+  @AutoProperty
+  @ToStringBudget(maxElements = 2)
+  public static class WithMap {
+    Map<String, Object> map = new LinkedHashMap<>();
+  }
+
+  private static final Pojomator<Unbudgeted> UNBUDGETED = PojomatorFactory.makePojomator(Unbudgeted.class);
+  private static final Pojomator<Budgeted> BUDGETED = PojomatorFactory.makePojomator(Budgeted.class);
+
+  @Test
+  public void testMaxChars() {
+    String string = UNBUDGETED.doToString(new Unbudgeted(), 40);
+    assertEquals(string, "Unbudgeted{name: {name}, values: {[0,...");
+    assertEquals(string.length(), 40);
+  }
+
+  @Test
+  public void testMaxCharsNotReached() {
+    Unbudgeted pojo = new Unbudgeted();
+    pojo.values = new int[] { 1 };
+    assertEquals(UNBUDGETED.doToString(pojo, 1000), UNBUDGETED.doToString(pojo));
+  }
+
+  @Test
+  public void testTinyMaxChars() {
+    assertEquals(UNBUDGETED.doToString(new Unbudgeted(), 3), "...");
+    assertEquals(UNBUDGETED.doToString(new Unbudgeted(), 2), "Un");
+    assertEquals(UNBUDGETED.doToString(new Unbudgeted(), 0), "");
+  }
+
+  @Test
+  public void testNoBudgetAfterwards() {
+    Unbudgeted pojo = new Unbudgeted();
+    pojo.values = new int[] { 1, 2 };
+    UNBUDGETED.doToString(new Unbudgeted(), 10);
+    assertEquals(UNBUDGETED.doToString(pojo), "Unbudgeted{name: {name}, values: {[1, 2]}}");
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testNegativeMaxChars() {
+    UNBUDGETED.doToString(new Unbudgeted(), -1);
+  }
+
+  @Test(expectedExceptions = NullPointerException.class)
+  public void testNullInstance() {
+    UNBUDGETED.doToString(null, 10);
+  }
+
+  @Test
+  public void testClassBudget() {
+    String expected = "Budgeted{name: {name}, values: {[1, 2, 3, ... (2 more)]}, tags: {[a, b, c, ... (1 more)]}}";
+    expected = expected.substring(0, 57) + "...";
+    assertEquals(BUDGETED.doToString(new Budgeted()), expected);
+
+    StringBuilder builder = new StringBuilder("before ");
+    BUDGETED.appendTo(new Budgeted(), builder);
+    assertEquals(builder.toString(), "before " + expected);
+
+    ByteBuffer buffer = ByteBuffer.allocate(100);
+    BUDGETED.writeUtf8(new Budgeted(), buffer);
+    assertEquals(new String(buffer.array(), 0, buffer.position(), StandardCharsets.UTF_8), expected);
+  }
+
+  @Test
+  public void testClassBudgetWithTighterMaxChars() {
+    assertEquals(BUDGETED.doToString(new Budgeted(), 30), "Budgeted{name: {name}, valu...");
+  }
+
+  @Test
+  public void testClassBudgetTruncatesLongValues() {
+    assertEquals(PojomatorFactory.makePojomator(Short.class).doToString(new Short()), "Short{name: {a ra...");
+  }
+
+  @Test
+  public void testClassBudgetAppliesToNestedPojos() {
+    assertEquals(
+      PojomatorFactory.makePojomator(Outer.class).doToString(new Outer()),
+      "Outer{nested: {Unbudgeted{name: {name}, values: {[0, 0, ... (99998 more)]}}}}");
+  }
+
+  @Test
+  public void testBudgetLimitsNestedStrings() {
+    Unbudgeted pojo = new Unbudgeted();
+    pojo.name = new String(new char[100000]).replace('\0', 'x');
+    assertEquals(UNBUDGETED.doToString(pojo, 30), "Unbudgeted{name: {xxxxxxxxx...");
+  }
+
+  @Test
+  public void testClassBudgetAppliesToMaps() {
+    WithMap pojo = new WithMap();
+    pojo.map.put("a", 1);
+    pojo.map.put("b", pojo.map);
+    pojo.map.put("c", 3);
+    assertEquals(
+      PojomatorFactory.makePojomator(WithMap.class).doToString(pojo),
+      "WithMap{map: {{a=1, b=(this Map), ... (1 more)}}}");
+  }
+
+  @Test
+  public void testSignature() {
+    assertNotEquals(
+      PojomatorByteCodeGenerator.propertySignature(Budgeted.class, ClassProperties.forClass(Budgeted.class)),
+      PojomatorByteCodeGenerator.propertySignature(Budgeted.class, ClassProperties.forClass(Unbudgeted.class)));
+  }
+}
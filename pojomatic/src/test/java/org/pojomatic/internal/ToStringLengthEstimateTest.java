@@ -0,0 +1,70 @@
+package org.pojomatic.internal;
+
+import static org.testng.Assert.*;
+
+import org.pojomatic.annotations.AutoProperty;
+import org.testng.annotations.Test;
+
+public class ToStringLengthEstimateTest {
+  @AutoProperty
+  public static class Pojo {
+    int x;
+    String name;
+
+    Pojo(int x, String name) {
+      this.x = x;
+      this.name = name;
+    }
+  }
+
+  @Test
+  public void testInitialLength() {
+    // "Pojo{x: {0}, name: {abcdefgh}}" is 31 characters; values are assumed to be 8 long
+    assertEquals(
+      PojomatorByteCodeGenerator.initialToStringLength(Pojo.class, ClassProperties.forClass(Pojo.class)),
+      "Pojo{}".length() + "x: {}, ".length() + 8 + "name: {}, ".length() + 8);
+  }
+
+  @Test
+  public void testEstimate() {
+    BasePojomator<Pojo> pojomator = (BasePojomator<Pojo>) PojomatorFactory.makePojomator(Pojo.class);
+    assertEquals(pojomator.getToStringLengthEstimate(), 0);
+
+    String shortString = pojomator.doToString(new Pojo(1, "a"));
+    assertEquals(pojomator.getToStringLengthEstimate(), shortString.length());
+
+    // a longer representation raises the estimate at once
+    String longString = pojomator.doToString(new Pojo(1, repeat('a', 200)));
+    assertEquals(pojomator.getToStringLengthEstimate(), longString.length());
+
+    // shorter ones lower it gradually
+    int previous = pojomator.getToStringLengthEstimate();
+    for (int i = 0; i < 10; i++) {
+      pojomator.doToString(new Pojo(1, "a"));
+      int estimate = pojomator.getToStringLengthEstimate();
+      assertTrue(estimate < previous);
+      assertTrue(estimate > shortString.length());
+      previous = estimate;
+    }
+    for (int i = 0; i < 200; i++) {
+      pojomator.doToString(new Pojo(1, "a"));
+    }
+    assertTrue(pojomator.getToStringLengthEstimate() < shortString.length() + 16);
+  }
+
+  @Test
+  public void testEstimateIsCapped() {
+    BasePojomator<Pojo> pojomator = (BasePojomator<Pojo>) PojomatorFactory.makePojomator(Pojo.class);
+    String hugeName = repeat('a', 1024 * 1024);
+    assertEquals(pojomator.doToString(new Pojo(1, hugeName)), "Pojo{x: {1}, name: {" + hugeName + "}}");
+    assertEquals(pojomator.getToStringLengthEstimate(), 64 * 1024);
+  }
+
+  private static String repeat(char c, int count) {
+    StringBuilder builder = new StringBuilder(count);
+    for (int i = 0; i < count; i++) {
+      builder.append(c);
+    }
+    return builder.toString();
+  }
+}
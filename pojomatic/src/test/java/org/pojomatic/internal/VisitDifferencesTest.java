@@ -0,0 +1,182 @@
+package org.pojomatic.internal;
+
+import static org.testng.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.pojomatic.Pojomator;
+import org.pojomatic.PropertyElement;
+import org.pojomatic.annotations.AutoProperty;
+import org.pojomatic.diff.DifferenceVisitor;
+import org.pojomatic.diff.DifferingPropertyVisitor;
+import org.testng.annotations.Test;
+
+public class VisitDifferencesTest {
+  @AutoProperty
+  public static class Pojo {
+    boolean z;
+    int i;
+    long l;
+    double d;
+    String s;
+    int[] a;
+
+    Pojo(boolean z, int i, long l, double d, String s, int[] a) {
+      this.z = z;
+      this.i = i;
+      this.l = l;
+      this.d = d;
+      this.s = s;
+      this.a = a;
+    }
+  }
+
+  private static class RecordingVisitor implements DifferenceVisitor {
+    final List<String> differences = new ArrayList<>();
+    final int stopAfter;
+
+    RecordingVisitor(int stopAfter) {
+      this.stopAfter = stopAfter;
+    }
+
+    private boolean record(PropertyElement property, Object leftValue, Object rightValue) {
+      differences.add(property.getName() + ": " + leftValue + " -> " + rightValue);
+      return differences.size() < stopAfter;
+    }
+
+    @Override
+    public boolean onBooleanDifference(PropertyElement property, boolean leftValue, boolean rightValue) {
+      return record(property, "boolean " + leftValue, rightValue);
+    }
+
+    @Override
+    public boolean onByteDifference(PropertyElement property, byte leftValue, byte rightValue) {
+      return record(property, "byte " + leftValue, rightValue);
+    }
+
+    @Override
+    public boolean onCharDifference(PropertyElement property, char leftValue, char rightValue) {
+      return record(property, "char " + leftValue, rightValue);
+    }
+
+    @Override
+    public boolean onShortDifference(PropertyElement property, short leftValue, short rightValue) {
+      return record(property, "short " + leftValue, rightValue);
+    }
+
+    @Override
+    public boolean onIntDifference(PropertyElement property, int leftValue, int rightValue) {
+      return record(property, "int " + leftValue, rightValue);
+    }
+
+    @Override
+    public boolean onLongDifference(PropertyElement property, long leftValue, long rightValue) {
+      return record(property, "long " + leftValue, rightValue);
+    }
+
+    @Override
+    public boolean onFloatDifference(PropertyElement property, float leftValue, float rightValue) {
+      return record(property, "float " + leftValue, rightValue);
+    }
+
+    @Override
+    public boolean onDoubleDifference(PropertyElement property, double leftValue, double rightValue) {
+      return record(property, "double " + leftValue, rightValue);
+    }
+
+    @Override
+    public boolean onObjectDifference(PropertyElement property, Object leftValue, Object rightValue) {
+      if (leftValue instanceof int[]) {
+        return record(property, Arrays.toString((int[]) leftValue), Arrays.toString((int[]) rightValue));
+      }
+      return record(property, "Object " + leftValue, rightValue);
+    }
+  }
+
+  private static final Pojomator<Pojo> POJOMATOR = PojomatorFactory.makePojomator(Pojo.class);
+
+  @Test
+  public void testVisitDifferences() {
+    RecordingVisitor visitor = new RecordingVisitor(Integer.MAX_VALUE);
+    assertTrue(POJOMATOR.visitDifferences(
+      new Pojo(true, 1, 2L, 3.0, "s", new int[] { 1 }),
+      new Pojo(false, 4, 5L, 6.0, "t", new int[] { 2 }),
+      visitor));
+    assertEquals(visitor.differences, Arrays.asList(
+      "z: boolean true -> false",
+      "i: int 1 -> 4",
+      "l: long 2 -> 5",
+      "d: double 3.0 -> 6.0",
+      "s: Object s -> t",
+      "a: [1] -> [2]"));
+  }
+
+  @Test
+  public void testOnlyDifferingPropertiesVisited() {
+    RecordingVisitor visitor = new RecordingVisitor(Integer.MAX_VALUE);
+    assertTrue(POJOMATOR.visitDifferences(
+      new Pojo(true, 1, 2L, Double.NaN, "s", new int[] { 1 }),
+      new Pojo(true, 1, 7L, Double.NaN, "s", new int[] { 1 }),
+      visitor));
+    assertEquals(visitor.differences, Arrays.asList("l: long 2 -> 7"));
+  }
+
+  @Test
+  public void testStopEarly() {
+    RecordingVisitor visitor = new RecordingVisitor(2);
+    assertFalse(POJOMATOR.visitDifferences(
+      new Pojo(true, 1, 2L, 3.0, "s", null),
+      new Pojo(false, 4, 5L, 6.0, "t", null),
+      visitor));
+    assertEquals(visitor.differences, Arrays.asList("z: boolean true -> false", "i: int 1 -> 4"));
+  }
+
+  @Test
+  public void testSameInstance() {
+    Pojo pojo = new Pojo(true, 1, 2L, 3.0, "s", null);
+    RecordingVisitor visitor = new RecordingVisitor(Integer.MAX_VALUE);
+    assertTrue(POJOMATOR.visitDifferences(pojo, pojo, visitor));
+    assertEquals(visitor.differences, new ArrayList<String>());
+  }
+
+  @Test
+  public void testDifferingPropertyVisitor() {
+    final List<String> names = new ArrayList<>();
+    assertTrue(POJOMATOR.visitDifferences(
+      new Pojo(true, 1, 2L, 3.0, "s", null),
+      new Pojo(true, 1, 2L, 4.0, null, null),
+      new DifferingPropertyVisitor() {
+        @Override
+        protected boolean onDifference(PropertyElement property) {
+          names.add(property.getName());
+          return true;
+        }
+      }));
+    assertEquals(names, Arrays.asList("d", "s"));
+  }
+
+  @Test(expectedExceptions = NullPointerException.class)
+  public void testNullInstance() {
+    POJOMATOR.visitDifferences(null, new Pojo(true, 1, 2L, 3.0, "s", null), new RecordingVisitor(1));
+  }
+
+  @Test(expectedExceptions = NullPointerException.class)
+  public void testNullOther() {
+    POJOMATOR.visitDifferences(new Pojo(true, 1, 2L, 3.0, "s", null), null, new RecordingVisitor(1));
+  }
+
+  @Test(expectedExceptions = NullPointerException.class)
+  public void testNullVisitor() {
+    Pojo pojo = new Pojo(true, 1, 2L, 3.0, "s", null);
+    POJOMATOR.visitDifferences(pojo, pojo, null);
+  }
+
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testIncompatibleClass() {
+    ((Pojomator) POJOMATOR).visitDifferences(
+      new Pojo(true, 1, 2L, 3.0, "s", null), "not a pojo", new RecordingVisitor(1));
+  }
+}
@@ -0,0 +1,150 @@
+package org.pojomatic.internal;
+
+import static org.testng.Assert.*;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.pojomatic.Pojomator;
+import org.pojomatic.annotations.AutoProperty;
+import org.pojomatic.annotations.PojomaticPolicy;
+import org.pojomatic.annotations.Property;
+import org.testng.annotations.Test;
+
+public class WriteJsonTest {
+  public enum Color { RED }
+
+  @AutoProperty
+  public static class Primitives {
+    boolean z = true;
+    byte b = 1;
+    short s = 2;
+    char c = 'c';
+    int i = 3;
+    long l = 4;
+    float f = 5.5f;
+    double d = Double.NaN;
+  }
+
+  @AutoProperty
+  public static class Objects {
+    String string = "a \"quoted\"\\ line\n\u0001";
+    Integer boxed = 7;
+    Double boxedInfinity = Double.POSITIVE_INFINITY;
+    Color color = Color.RED;
+    Object nothing = null;
+    int[] ints = { 1, 2 };
+    String[][] strings = { { "x" }, null };
+    Object possibleArray = new char[] { 'y' };
+    Object list = Arrays.asList(1, "two");
+    Map<Object, Object> map = new LinkedHashMap<>();
+    Primitives nested = new Primitives();
+    Object other = new OtherValue();
+    @Property(name = "re\"named") int renamed = 8;
+    @Property(policy = PojomaticPolicy.EQUALS) int notInJson = 9;
+  }
+
+  @AutoProperty
+  public static class Floats {
+    float primitive = 1.1f;
+    Float boxed = 1.1f;
+    Float[] array = { 1.1f, null };
+    List<Float> list = Arrays.asList(1.1f, Float.NaN);
+  }
+
+  public static class OtherValue {
+    @Override
+    public String toString() {
+      return "other";
+    }
+  }
+
+  public static class NoToStringProperties {
+    @Property(policy = PojomaticPolicy.EQUALS) int x;
+  }
+
+  private static final String PRIMITIVES_JSON =
+    "{\"z\":true,\"b\":1,\"s\":2,\"c\":\"c\",\"i\":3,\"l\":4,\"f\":5.5,\"d\":\"NaN\"}";
+
+  @Test
+  public void testPrimitives() {
+    StringBuilder builder = new StringBuilder();
+    PojomatorFactory.makePojomator(Primitives.class).writeJson(new Primitives(), builder);
+    assertEquals(builder.toString(), PRIMITIVES_JSON);
+  }
+
+  @Test
+  public void testBoxedFloats() {
+    StringBuilder builder = new StringBuilder();
+    PojomatorFactory.makePojomator(Floats.class).writeJson(new Floats(), builder);
+    assertEquals(
+      builder.toString(), "{\"primitive\":1.1,\"boxed\":1.1,\"array\":[1.1,null],\"list\":[1.1,\"NaN\"]}");
+  }
+
+  @Test
+  public void testObjects() {
+    Objects pojo = new Objects();
+    pojo.map.put(1, "one");
+    pojo.map.put(null, null);
+    StringBuilder builder = new StringBuilder("before ");
+    PojomatorFactory.makePojomator(Objects.class).writeJson(pojo, builder);
+    assertEquals(builder.toString(), "before {"
+      + "\"string\":\"a \\\"quoted\\\"\\\\ line\\n\\u0001\","
+      + "\"boxed\":7,"
+      + "\"boxedInfinity\":\"Infinity\","
+      + "\"color\":\"RED\","
+      + "\"nothing\":null,"
+      + "\"ints\":[1,2],"
+      + "\"strings\":[[\"x\"],null],"
+      + "\"possibleArray\":[\"y\"],"
+      + "\"list\":[1,\"two\"],"
+      + "\"map\":{\"1\":\"one\",\"null\":null},"
+      + "\"nested\":" + PRIMITIVES_JSON + ","
+      + "\"other\":\"other\","
+      + "\"re\\\"named\":8}");
+  }
+
+  @Test
+  public void testNoProperties() {
+    StringBuilder builder = new StringBuilder();
+    PojomatorFactory.makePojomator(NoToStringProperties.class).writeJson(new NoToStringProperties(), builder);
+    assertEquals(builder.toString(), "{}");
+  }
+
+  @Test
+  public void testAppendable() throws IOException {
+    StringWriter writer = new StringWriter();
+    Pojomator<Primitives> pojomator = PojomatorFactory.makePojomator(Primitives.class);
+    pojomator.writeJson(new Primitives(), writer);
+    pojomator.writeJson(new Primitives(), (Appendable) writer);
+    assertEquals(writer.toString(), PRIMITIVES_JSON + PRIMITIVES_JSON);
+  }
+
+  @Test
+  public void testWriterWritesChars() throws IOException {
+    AppendToTest.RecordingWriter writer = new AppendToTest.RecordingWriter();
+    PojomatorFactory.makePojomator(Primitives.class).writeJson(new Primitives(), writer);
+    assertEquals(writer.toString(), PRIMITIVES_JSON);
+    assertEquals(writer.calls, Collections.singleton("write(char[], int, int)"));
+  }
+
+  @Test(expectedExceptions = NullPointerException.class)
+  public void testNullInstance() {
+    PojomatorFactory.makePojomator(Primitives.class).writeJson(null, new StringBuilder());
+  }
+
+  @Test(expectedExceptions = NullPointerException.class)
+  public void testNullBuilder() {
+    PojomatorFactory.makePojomator(Primitives.class).writeJson(new Primitives(), (StringBuilder) null);
+  }
+
+  @Test(expectedExceptions = NullPointerException.class)
+  public void testNullAppendable() throws IOException {
+    PojomatorFactory.makePojomator(Primitives.class).writeJson(new Primitives(), (Appendable) null);
+  }
+}
@@ -0,0 +1,287 @@
+package org.pojomatic.internal;
+
+import static org.testng.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.pojomatic.ByteBufferOverflowHandler;
+import org.pojomatic.Pojomator;
+import org.pojomatic.annotations.AutoProperty;
+import org.pojomatic.annotations.PropertyFormat;
+import org.pojomatic.annotations.ToStringBudget;
+import org.pojomatic.formatter.DefaultEnhancedPropertyFormatter;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+public class WriteUtf8Test {
+  @AutoProperty
+  public static class Pojo {
+    int x;
+    Object y;
+
+    Pojo(int x, Object y) {
+      this.x = x;
+      this.y = y;
+    }
+  }
+
+  @AutoProperty
+  public static class Primitives {
+    boolean b = true;
+    byte by = Byte.MIN_VALUE;
+    char c = '\u00e9';
+    char control = '\n';
+    short sh = -1;
+    int i = Integer.MIN_VALUE;
+    long l = Long.MIN_VALUE;
+    float f = 1.1f;
+    double d = -0.0;
+    boolean[] booleans = { false, true };
+    byte[] bytes = { 0, -128, 127 };
+    char[] chars = { 'a', '\u20ac', '\u0000' };
+    short[] shorts = {};
+    int[] ints = { 1, -22, 333 };
+    long[] longs = { Long.MAX_VALUE, 0 };
+    float[] floats = { Float.NaN, 1e10f };
+    double[] doubles = null;
+    String s = "\u00df";
+    Integer boxed = -7;
+    Object array = new long[] { -1 };
+    Object[] objects = { 'x', new int[] { 1 } };
+  }
+
+  @AutoProperty
+  public static class Custom {
+    int x = 3;
+    @PropertyFormat(UpperCaseFormatter.class)
+    String s = "caf\u00e9";
+  }
+
+  @AutoProperty
+  @ToStringBudget(maxChars = 10)
+  public static class Budgeted {
+    String s = "a string longer than the budget";
+  }
+
+  public static class UpperCaseFormatter extends DefaultEnhancedPropertyFormatter {
+    @Override
+    public void appendFormatted(StringBuilder builder, Object value) {
+      builder.append(String.valueOf(value).toUpperCase());
+    }
+  }
+
+  /**
+   * Grows the buffer by copying it into one twice as large.
+   */
+  private static class GrowingHandler implements ByteBufferOverflowHandler {
+    int calls;
+
+    @Override
+    public ByteBuffer onOverflow(ByteBuffer buffer, int bytesNeeded) {
+      calls++;
+      ByteBuffer grown = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytesNeeded));
+      buffer.flip();
+      return grown.put(buffer);
+    }
+  }
+
+  /**
+   * Drains the buffer into a stream, and hands it back to be reused.
+   */
+  private static class DrainingHandler implements ByteBufferOverflowHandler {
+    final ByteArrayOutputStream drained = new ByteArrayOutputStream();
+
+    @Override
+    public ByteBuffer onOverflow(ByteBuffer buffer, int bytesNeeded) {
+      drain(buffer);
+      return buffer;
+    }
+
+    void drain(ByteBuffer buffer) {
+      buffer.flip();
+      while (buffer.hasRemaining()) {
+        drained.write(buffer.get());
+      }
+      buffer.clear();
+    }
+  }
+
+  private static final Pojomator<Pojo> POJOMATOR = PojomatorFactory.makePojomator(Pojo.class);
+
+  @DataProvider
+  public Object[][] values() {
+    return new Object[][] {
+      { "ascii" },
+      { "caf\u00e9 \u20ac" },
+      { "emoji \ud83d\ude00!" },
+      { "unpaired \ud83d and \ude00" },
+      { "ends with high surrogate \ud83d" },
+      { new int[] { 1, 2, 3 } },
+      { new String[] { "a", "\u00df" } },
+      { null }
+    };
+  }
+
+  @Test(dataProvider = "values")
+  public void testHeapBuffer(Object value) {
+    Pojo pojo = new Pojo(7, value);
+    ByteBuffer buffer = ByteBuffer.allocate(256);
+    buffer.put((byte) 'x');
+    POJOMATOR.writeUtf8(pojo, buffer);
+    assertEquals(written(buffer, 1), expected(pojo));
+  }
+
+  @Test(dataProvider = "values")
+  public void testDirectBuffer(Object value) {
+    Pojo pojo = new Pojo(7, value);
+    ByteBuffer buffer = ByteBuffer.allocateDirect(256);
+    POJOMATOR.writeUtf8(pojo, buffer);
+    assertEquals(written(buffer, 0), expected(pojo));
+  }
+
+  @Test(dataProvider = "values")
+  public void testSlicedHeapBuffer(Object value) {
+    Pojo pojo = new Pojo(7, value);
+    ByteBuffer backing = ByteBuffer.allocate(256);
+    backing.position(10);
+    ByteBuffer buffer = backing.slice();
+    POJOMATOR.writeUtf8(pojo, buffer);
+    assertEquals(written(buffer, 0), expected(pojo));
+  }
+
+  @Test(dataProvider = "values")
+  public void testGrowingHandler(Object value) {
+    Pojo pojo = new Pojo(7, value);
+    GrowingHandler handler = new GrowingHandler();
+    ByteBuffer buffer = POJOMATOR.writeUtf8(pojo, ByteBuffer.allocate(4), handler);
+    assertEquals(written(buffer, 0), expected(pojo));
+    assertEquals(handler.calls, 1);
+  }
+
+  @Test(dataProvider = "values")
+  public void testDrainingHandler(Object value) {
+    Pojo pojo = new Pojo(7, value);
+    DrainingHandler handler = new DrainingHandler();
+    // a direct buffer, so that multi-byte characters are split across drains
+    ByteBuffer buffer = POJOMATOR.writeUtf8(pojo, ByteBuffer.allocateDirect(3), handler);
+    handler.drain(buffer);
+    assertEquals(handler.drained.toByteArray(), expected(pojo));
+  }
+
+  @Test
+  public void testOverflowWritesNothing() {
+    ByteBuffer buffer = ByteBuffer.allocate(8);
+    try {
+      POJOMATOR.writeUtf8(new Pojo(7, "too long"), buffer);
+      fail("exception expected");
+    }
+    catch (BufferOverflowException expected) {}
+    assertEquals(buffer.position(), 0);
+  }
+
+  @Test
+  public void testExactFit() {
+    Pojo pojo = new Pojo(7, "\u00e9");
+    ByteBuffer buffer = ByteBuffer.allocate(expected(pojo).length);
+    POJOMATOR.writeUtf8(pojo, buffer);
+    assertFalse(buffer.hasRemaining());
+    assertEquals(written(buffer, 0), expected(pojo));
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void testHandlerWithoutSpace() {
+    POJOMATOR.writeUtf8(new Pojo(7, "y"), ByteBuffer.allocate(4), new ByteBufferOverflowHandler() {
+      @Override
+      public ByteBuffer onOverflow(ByteBuffer buffer, int bytesNeeded) {
+        return buffer;
+      }
+    });
+  }
+
+  @Test(expectedExceptions = NullPointerException.class)
+  public void testNullInstance() {
+    POJOMATOR.writeUtf8(null, ByteBuffer.allocate(64));
+  }
+
+  @Test(expectedExceptions = NullPointerException.class)
+  public void testNullBuffer() {
+    POJOMATOR.writeUtf8(new Pojo(7, "y"), null);
+  }
+
+  @Test(expectedExceptions = NullPointerException.class)
+  public void testNullHandler() {
+    POJOMATOR.writeUtf8(new Pojo(7, "y"), ByteBuffer.allocate(64), null);
+  }
+
+  @Test
+  public void testWrittenDirectly() {
+    assertDirectlyWritten(new Primitives(), true);
+    assertDirectlyWritten(new Pojo(7, "y"), true);
+  }
+
+  @Test
+  public void testCustomFormatterWrittenThroughBuilder() {
+    assertDirectlyWritten(new Custom(), false);
+  }
+
+  @Test
+  public void testBudgetWrittenThroughBuilder() {
+    assertDirectlyWritten(new Budgeted(), false);
+  }
+
+  @Test
+  public void testPrimitivesOverflow() {
+    Primitives primitives = new Primitives();
+    Pojomator<Primitives> pojomator = PojomatorFactory.makePojomator(Primitives.class);
+    byte[] expected = pojomator.doToString(primitives).getBytes(StandardCharsets.UTF_8);
+    GrowingHandler handler = new GrowingHandler();
+    ByteBuffer buffer = pojomator.writeUtf8(primitives, ByteBuffer.allocate(expected.length - 1), handler);
+    assertEquals(written(buffer, 0), expected);
+    assertEquals(handler.calls, 1);
+
+    buffer = ByteBuffer.allocate(expected.length - 1);
+    try {
+      pojomator.writeUtf8(primitives, buffer);
+      fail("exception expected");
+    }
+    catch (BufferOverflowException expected2) {}
+    assertEquals(buffer.position(), 0);
+  }
+
+  @Test
+  public void testEncodedLength() {
+    for (String s: Arrays.asList("", "abc", "\u00e9\u20ac", "\ud83d\ude00", "\ud83d", "\ude00\ud83d", "a\ud83d")) {
+      assertEquals(Utf8Encoder.encodedLength(s), s.getBytes(StandardCharsets.UTF_8).length, s);
+    }
+  }
+
+  private static <T> void assertDirectlyWritten(T pojo, boolean direct) {
+    @SuppressWarnings("unchecked")
+    BasePojomator<T> pojomator = (BasePojomator<T>) PojomatorFactory.makePojomator(pojo.getClass());
+    byte[] expected = pojomator.doToString(pojo).getBytes(StandardCharsets.UTF_8);
+    ByteBuffer buffer = ByteBuffer.allocate(expected.length);
+    assertEquals(pojomator.writeUtf8Directly(pojo, buffer), direct);
+    if (direct) {
+      assertEquals(written(buffer, 0), expected);
+    }
+    buffer.clear();
+    pojomator.writeUtf8(pojo, buffer);
+    assertEquals(written(buffer, 0), expected);
+  }
+
+  private static byte[] expected(Pojo pojo) {
+    return POJOMATOR.doToString(pojo).getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static byte[] written(ByteBuffer buffer, int start) {
+    byte[] bytes = new byte[buffer.position() - start];
+    buffer.flip();
+    buffer.position(start);
+    buffer.get(bytes);
+    return bytes;
+  }
+}